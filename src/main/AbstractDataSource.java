@@ -2,20 +2,34 @@ package webapi;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
 
@@ -39,11 +53,70 @@ public abstract class AbstractDataSource {
 	 * Analogous to the urlStart
 	 */
 	protected String urlEnd;
+	/**
+	 * Caps the number of queries sent to the server per second
+	 */
+	protected TokenBucketRateLimiter rateLimiter;
+	/**
+	 * Caps the number of queries processed by the server at the same time, adapts to the condition of the server
+	 */
+	protected AdaptiveConcurrencyLimiter concurrencyLimiter;
+	/**
+	 * Statistics of the queries sent by this data source
+	 */
+	protected DataSourceMetrics metrics;
+	/**
+	 * Number of times a throttled query (or a query which ended with a server error) is repeated before giving up
+	 */
+	protected int maxRetries;
+	/**
+	 * Coalesces identical JsonObject queries sent at the same time
+	 */
+	private final SingleFlight<String, JsonObject> objectFlights = new SingleFlight<>();
+	/**
+	 * Coalesces identical JsonArray queries sent at the same time
+	 */
+	private final SingleFlight<String, JsonArray> arrayFlights = new SingleFlight<>();
+	/**
+	 * Non-blocking HTTP client shared by all queries of this data source
+	 */
+	protected HttpClient httpClient;
+	/**
+	 * Number of chunks of a long period which are downloaded ahead of the one being processed
+	 */
+	protected int prefetchedChunks;
+	/**
+	 * Threads reading the bodies of the responses, shared by all data sources, the bodies are read with blocking
+	 * streams so this must not be the pool of the HTTP client
+	 */
+	private static final Executor BODY_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "data-source-body-reader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * Creates the data source with the default limits: 10 queries per second and 4 concurrent queries at the start
+	 */
+	protected AbstractDataSource() {
+		this.rateLimiter = new TokenBucketRateLimiter(10, 10);
+		this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(4, 1, 16);
+		this.metrics = new DataSourceMetrics(this.rateLimiter, this.concurrencyLimiter, this.objectFlights, this.arrayFlights);
+		this.maxRetries = 3;
+		this.prefetchedChunks = 2;
+		this.httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(10))
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+	}
 	
 	/**
 	 * A shared method, used by all Data Sources, it can receive the inner part of a URL to a specific data source
 	 * and automatically fetch from the server the data and then process it with a JSON parser to eventually
-	 * return a single JsonObject object
+	 * return a single JsonObject object. Identical queries made at the same time (for example by many threads in
+	 * the batch mode) are sent to the server only once and all of them receive the same result.
+	 * It is a thin blocking wrapper of getJsonObjFromURLAsync
 	 * @param innerURL The inner most part of the url to a web API data source
 	 * @return the JsonObject object that represents the contents of the URL
 	 * @throws WebApiException thrown when no data has been found for this query, or the query was invalid (wrong format or exceeded limit)
@@ -51,20 +124,7 @@ public abstract class AbstractDataSource {
 	 * @throws IOException thrown when an IO error was encountered during the process of fetching data from the server
 	 */
 	public JsonObject getJsonObjFromURL(String innerURL) throws WebApiException, MalformedURLException, IOException {
-		String urlNew = this.urlStart + innerURL + this.urlEnd;
-		URL urlObj = new URL(urlNew);
-		HttpURLConnection connection = (HttpURLConnection)urlObj.openConnection();
-		connection.setRequestMethod("GET");
-		connection.connect();
-		int code = connection.getResponseCode();
-		if(code == 400 || code == 404)
-			throw new WebApiException(connection.getResponseMessage());
-		InputStream stream = new URL(urlNew).openStream();
-		JsonReader reader = Json.createReader(stream);
-		JsonObject object = reader.readObject();
-		reader.close();
-		stream.close();
-		return object;
+		return AsyncUtils.await(getJsonObjFromURLAsync(innerURL));
 	}
 
 	/**
@@ -77,20 +137,195 @@ public abstract class AbstractDataSource {
 	 * @throws IOException thrown when an IO error was encountered during the process of fetching data from the server
 	 */
 	public JsonArray getJsonArrFromURL(String innerURL) throws WebApiException, MalformedURLException, IOException {
+		return AsyncUtils.await(getJsonArrFromURLAsync(innerURL));
+	}
+
+	/**
+	 * The asynchronous version of getJsonObjFromURL, no thread is blocked while the query waits for the limiters
+	 * or for the response of the server. The future fails with the same exceptions the blocking version throws
+	 * @param innerURL The inner most part of the url to a web API data source
+	 * @return the future of the JsonObject object that represents the contents of the URL
+	 */
+	public CompletableFuture<JsonObject> getJsonObjFromURLAsync(String innerURL) {
+		return objectFlights.execute(innerURL, () -> fetchAsync(innerURL, body -> readJson(body, JsonReader::readObject), 0));
+	}
+
+	/**
+	 * The asynchronous version of getJsonArrFromURL
+	 * @param innerURL The inner most part of the url to a web API data source
+	 * @return the future of the JsonArray object that represents the contents of the URL
+	 */
+	public CompletableFuture<JsonArray> getJsonArrFromURLAsync(String innerURL) {
+		return arrayFlights.execute(innerURL, () -> fetchAsync(innerURL, body -> readJson(body, JsonReader::readArray), 0));
+	}
+
+	/**
+	 * Helper method, parses the whole body of a response into a JSON tree
+	 * @param body the body of the response
+	 * @param readFunction reads the expected type of the JSON tree
+	 * @return the parsed body
+	 */
+	private static <T> T readJson(InputStream body, Function<JsonReader, T> readFunction) {
+		try (JsonReader reader = Json.createReader(body)) {
+			return readFunction.apply(reader);
+		}
+	}
+
+	/**
+	 * Sends a query to the server and passes the body of the response to the sink record by record, as it is being
+	 * downloaded, so neither the body nor the parsed JSON tree of the whole response is held in memory. Such queries are
+	 * not coalesced, since every caller has its own sink
+	 * @param innerURL The inner most part of the url to a web API data source
+	 * @param reader decodes the records of the response
+	 * @param sink the consumer of the records, called from a single thread at a time
+	 * @return the future completed when all the records have been passed to the sink, failed with the same exceptions
+	 * the blocking methods throw
+	 */
+	public CompletableFuture<Void> streamRecordsAsync(String innerURL, RateRecordReader reader, RateRecordSink sink) {
+		return fetchAsync(innerURL, body -> {
+			reader.read(body, sink);
+			return null;
+		}, 0);
+	}
+
+	/**
+	 * Sends a single query straight to the server, bypassing the limiters, the coalescing and the retries of all the other
+	 * queries, so its latency is the latency of the server alone and not the time spent in the queues of this data source.
+	 * Used to probe the health of the server, the body of the response is discarded
+	 * @param innerURL The inner most part of the url to a web API data source
+	 * @return the future of the HTTP response code
+	 */
+	public CompletableFuture<Integer> probeAsync(String innerURL) {
+		HttpRequest request;
+		try {
+			request = HttpRequest.newBuilder(URI.create(this.urlStart + innerURL + this.urlEnd)).GET().build();
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new MalformedURLException(e.getMessage()));
+		}
+		metrics.recordProbe();
+		return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(HttpResponse::statusCode);
+	}
+
+	/**
+	 * Sends a single query to the server and reads its response, every query waits for a permit of the rate limiter
+	 * and for a free slot of the concurrency limiter first. The slot is held until the body has been read, the body is
+	 * read on the bodyExecutor threads while it is still being downloaded. Throttled queries (429) and queries which ended
+	 * with a server error (5xx) are repeated up to maxRetries times, each of them also makes the concurrency limiter back off
+	 * @param innerURL The inner most part of the url to a web API data source
+	 * @param bodyReader reads the body of a successful response
+	 * @param attempt the number of the previous attempts of this query
+	 * @return the future of the result of the bodyReader
+	 */
+	private <T> CompletableFuture<T> fetchAsync(String innerURL, Function<InputStream, T> bodyReader, int attempt) {
 		String urlNew = this.urlStart + innerURL + this.urlEnd;
-		URL urlObj = new URL(urlNew);
-		HttpURLConnection connection = (HttpURLConnection)urlObj.openConnection();
-		connection.setRequestMethod("GET");
-		connection.connect();
-		int code = connection.getResponseCode();
+		HttpRequest request;
+		try {
+			request = HttpRequest.newBuilder(URI.create(urlNew)).GET().build();
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new MalformedURLException(e.getMessage()));
+		}
+		AdaptiveConcurrencyLimiter limiter = this.concurrencyLimiter;
+		CompletableFuture<T> result = new CompletableFuture<>();
+		//a query cancelled while it waits for the limiters gives its token and its slot back
+		CompletableFuture<Void> token = rateLimiter.acquireAsync();
+		result.whenComplete((value, error) -> {
+			if(result.isCancelled())
+				token.cancel(false);
+		});
+		token.thenCompose(v -> {
+					CompletableFuture<Void> slot = limiter.acquireAsync();
+					result.whenComplete((value, error) -> {
+						if(result.isCancelled())
+							slot.cancel(false);
+					});
+					return slot;
+				})
+				.thenCompose(v -> {
+					if(result.isCancelled()) {
+						limiter.releaseUnused();
+						return CompletableFuture.<T>failedFuture(new CancellationException("The query has been cancelled"));
+					}
+					long startTime = System.nanoTime();
+					CompletableFuture<HttpResponse<InputStream>> sent;
+					try {
+						sent = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+					} catch (RuntimeException e) {
+						sent = CompletableFuture.failedFuture(e);
+					}
+					return sent.handleAsync((response, error) -> {
+						long latency = System.nanoTime() - startTime;
+						if(error != null) {
+							limiter.release(latency, false);
+							return CompletableFuture.<T>failedFuture(AsyncUtils.unwrap(error));
+						}
+						int code = response.statusCode();
+						metrics.recordRequest(code, latency);
+						try {
+							return readResponse(innerURL, response, bodyReader, attempt);
+						} finally {
+							limiter.release(latency, code == 429 || code >= 500);
+						}
+					}, BODY_EXECUTOR).thenCompose(Function.identity());
+				})
+				.whenComplete((value, error) -> {
+					if(error != null)
+						result.completeExceptionally(AsyncUtils.unwrap(error));
+					else
+						result.complete(value);
+				});
+		return result;
+	}
+
+	/**
+	 * Helper method of fetchAsync, handles a single response of the server
+	 * @param innerURL The inner most part of the url to a web API data source
+	 * @param response the response, whose body has not been read yet
+	 * @param bodyReader reads the body of a successful response
+	 * @param attempt the number of the previous attempts of this query
+	 * @return the future of the result of the bodyReader, or of the repeated query
+	 */
+	private <T> CompletableFuture<T> readResponse(String innerURL, HttpResponse<InputStream> response, Function<InputStream, T> bodyReader, int attempt) {
+		int code = response.statusCode();
 		if(code == 400 || code == 404)
-			throw new WebApiException(connection.getResponseMessage());
-		InputStream stream = new URL(urlNew).openStream();
-		JsonReader reader = Json.createReader(stream);
-		JsonArray array = reader.readArray();
-		reader.close();
-		stream.close();
-		return array;
+			return CompletableFuture.failedFuture(new WebApiException(getErrorMessage(response)));
+		if(code == 429 || code >= 500) {
+			String message = getErrorMessage(response);
+			Optional<String> retryAfter = response.headers().firstValue("Retry-After");
+			if(retryAfter.isPresent() && retryAfter.get().matches("\\d+"))
+				rateLimiter.penalize(Long.parseLong(retryAfter.get()), TimeUnit.SECONDS);
+			if(attempt >= maxRetries)
+				return CompletableFuture.failedFuture(new WebApiException(message));
+			metrics.recordRetry();
+			return fetchAsync(innerURL, bodyReader, attempt + 1);
+		}
+		try (InputStream body = response.body()) {
+			return CompletableFuture.completedFuture(bodyReader.apply(body));
+		} catch (JsonException e) {
+			//an IO error while the body was being parsed
+			return CompletableFuture.failedFuture((e.getCause() instanceof IOException) ? e.getCause() : e);
+		} catch (IOException | RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Extracts the error message from a response, the NBP Web API returns it as a plain text body in the form
+	 * "404 NotFound - Not Found - Brak danych", of which only the part after the code is kept
+	 * @param response the response with an error code
+	 * @return the message describing the error
+	 */
+	private String getErrorMessage(HttpResponse<InputStream> response) {
+		String body;
+		try (InputStream stream = response.body()) {
+			body = new String(stream.readAllBytes(), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			body = "";
+		}
+		if(body.matches("\\d{3} \\S+ - .+"))
+			return body.substring(body.indexOf(" - ") + 3);
+		if(!body.isEmpty() && body.length() < 200 && !body.startsWith("<"))
+			return body;
+		return "HTTP error " + response.statusCode();
 	}
 	
 	/**
@@ -166,6 +401,41 @@ public abstract class AbstractDataSource {
 		return formatter.format(result);
 	}
 	
+	/**
+	 * Splits a period of time into consecutive chunks, none of them longer than a single query to the data source
+	 * can handle, the same way the orders used to do it in their loops: every chunk but the last one is exactly
+	 * maxPeriod days long, the next chunk starts on the day following the end of the previous one
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @param maxPeriod the maximal number of days in a single chunk
+	 * @return the list of chunks, each of them is a two element array {start, end} of dates in the yyyy-MM-dd format
+	 */
+	public List<String[]> splitPeriod(String start, String end, int maxPeriod) {
+		List<String[]> chunks = new ArrayList<>();
+		String chunkStart = start;
+		while((int) getDateDiff(chunkStart, end, TimeUnit.DAYS) >= maxPeriod) {
+			chunks.add(new String[] {chunkStart, addDaysStr(chunkStart, maxPeriod - 1)});
+			chunkStart = addDaysStr(chunkStart, maxPeriod);
+		}
+		chunks.add(new String[] {chunkStart, end});
+		return chunks;
+	}
+	
+	/**
+	 * Folds the chunks of a long period with a bounded fetch-parse-aggregate pipeline: chunk k+1 (and further ones, up to
+	 * prefetchedChunks) is being downloaded and parsed while chunk k is folded, but no more chunks than that are held in memory
+	 * @param chunks the chunks of the period, as returned by splitPeriod
+	 * @param fetch starts fetching a single chunk, usually with one of the asynchronous methods of this data source
+	 * @param identity the initial value of the result
+	 * @param accumulator folds a single chunk into the result, the chunks are folded in chronological order
+	 * @return the future of the result
+	 */
+	public <T, R> CompletableFuture<R> foldChunks(List<String[]> chunks, Function<String[], CompletableFuture<T>> fetch, R identity, BiFunction<R, T, R> accumulator) {
+		ChunkFoldSubscriber<T, R> subscriber = new ChunkFoldSubscriber<>(this.prefetchedChunks, identity, accumulator);
+		new ChunkPublisher<T>(chunks, fetch).subscribe(subscriber);
+		return subscriber.getResult();
+	}
+	
 	/**
 	 * Retrieves the urlStart field value
 	 * @return value of the urlStart field
@@ -212,4 +482,55 @@ public abstract class AbstractDataSource {
 		this.urlEnd = urlEnd;
 	}
 
+	/**
+	 * Retrieves the statistics of the queries sent by this data source
+	 * @return the metrics field value
+	 */
+	public DataSourceMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Replaces the limiters of this data source, the collected statistics are reset
+	 * @param rateLimiter the new rate limiter
+	 * @param concurrencyLimiter the new concurrency limiter
+	 */
+	public void setLimiters(TokenBucketRateLimiter rateLimiter, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.rateLimiter = rateLimiter;
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.metrics = new DataSourceMetrics(rateLimiter, concurrencyLimiter, this.objectFlights, this.arrayFlights);
+	}
+
+	/**
+	 * Retrieves the prefetchedChunks field value
+	 * @return the number of chunks downloaded ahead of the one being processed
+	 */
+	public int getPrefetchedChunks() {
+		return prefetchedChunks;
+	}
+
+	/**
+	 * Sets the prefetchedChunks field to a new value
+	 * @param prefetchedChunks the number of chunks which should be downloaded ahead of the one being processed
+	 */
+	public void setPrefetchedChunks(int prefetchedChunks) {
+		this.prefetchedChunks = prefetchedChunks;
+	}
+
+	/**
+	 * Retrieves the maxRetries field value
+	 * @return the number of times a throttled query is repeated
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the maxRetries field to a new value
+	 * @param maxRetries the number of times a throttled query should be repeated
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
 }
@@ -0,0 +1,243 @@
+package webapi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Limits the number of requests which can be sent to a Web API at the same time. The limit itself
+ * is adapted in the AIMD (additive increase, multiplicative decrease) fashion: every healthy response
+ * raises the limit by roughly one request per round trip, while throttling, server errors or a rising latency
+ * cut it down by a constant factor
+ * @author Patryk Wegrzyn
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	/**
+	 * The lowest value the limit can ever reach
+	 */
+	private final int minLimit;
+	/**
+	 * The highest value the limit can ever reach
+	 */
+	private final int maxLimit;
+	/**
+	 * Factor by which the limit is multiplied when the server is overloaded
+	 */
+	private final double backoffRatio;
+	/**
+	 * A response is treated as a congestion signal when its latency exceeds the long term average latency this many times
+	 */
+	private final double latencyTolerance;
+	/**
+	 * The current limit, fractional so that the additive increase can be spread over a whole round trip
+	 */
+	private double limit;
+	/**
+	 * Number of requests which are currently being processed
+	 */
+	private int inFlight;
+	/**
+	 * Exponentially smoothed long term latency in nanoseconds, used as the baseline
+	 */
+	private double baselineLatency;
+	/**
+	 * Exponentially smoothed short term latency in nanoseconds
+	 */
+	private double recentLatency;
+	/**
+	 * Asynchronous requests waiting for a free slot, in the order of arrival
+	 */
+	private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+	/**
+	 * Creates a limiter with the default backoff ratio of 0.5 and latency tolerance of 2.0
+	 * @param initialLimit the limit used before any response has been received
+	 * @param minLimit the lowest allowed limit
+	 * @param maxLimit the highest allowed limit
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this(initialLimit, minLimit, maxLimit, 0.5, 2.0);
+	}
+
+	/**
+	 * Creates a limiter with custom parameters
+	 * @param initialLimit the limit used before any response has been received
+	 * @param minLimit the lowest allowed limit
+	 * @param maxLimit the highest allowed limit
+	 * @param backoffRatio the factor applied to the limit on congestion, between 0 and 1
+	 * @param latencyTolerance how many times the latency can exceed its long term average before it is treated as congestion
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double latencyTolerance) {
+		if(minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+			throw new IllegalArgumentException("Invalid concurrency limits");
+		if(backoffRatio <= 0 || backoffRatio >= 1)
+			throw new IllegalArgumentException("The backoff ratio must be between 0 and 1");
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.backoffRatio = backoffRatio;
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * Reserves a slot for a single request, waits while the limit is reached
+	 * @throws InterruptedException thrown when the waiting thread has been interrupted
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while(!waiting.isEmpty() || inFlight >= (int) limit) {
+			wait();
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Non-blocking version of acquire, the returned future is completed once a slot has been reserved
+	 * @return the future completed when the slot has been reserved
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+		synchronized(this) {
+			if(waiting.isEmpty() && inFlight < (int) limit) {
+				inFlight++;
+				return CompletableFuture.completedFuture(null);
+			}
+			CompletableFuture<Void> slot = new CompletableFuture<>();
+			waiting.add(slot);
+			//a request cancelled while it waits leaves the queue
+			slot.whenComplete((v, error) -> {
+				if(slot.isCancelled())
+					withdraw(slot);
+			});
+			return slot;
+		}
+	}
+
+	/**
+	 * Helper method, removes a cancelled request from the queue
+	 * @param slot the future of the request
+	 */
+	private synchronized void withdraw(CompletableFuture<Void> slot) {
+		if(waiting.remove(slot))
+			notifyAll();
+	}
+
+	/**
+	 * Frees the slot of a finished request and adapts the limit according to its outcome,
+	 * the freed slots are handed to the waiting asynchronous requests first
+	 * @param latencyNanos the time the request took, in nanoseconds
+	 * @param overloaded true if the server answered with a throttling or a server error code
+	 */
+	public void release(long latencyNanos, boolean overloaded) {
+		List<CompletableFuture<Void>> granted;
+		synchronized(this) {
+			adapt(latencyNanos, overloaded);
+			granted = free();
+		}
+		grant(granted);
+	}
+
+	/**
+	 * Frees the slot of a request which has been cancelled before it was sent, the limit is not adapted
+	 */
+	public void releaseUnused() {
+		List<CompletableFuture<Void>> granted;
+		synchronized(this) {
+			granted = free();
+		}
+		grant(granted);
+	}
+
+	/**
+	 * Helper method, frees a slot and reserves the free slots for the waiting requests, has to be called with the lock held
+	 * @return the requests which have been given a slot
+	 */
+	private List<CompletableFuture<Void>> free() {
+		List<CompletableFuture<Void>> granted = new ArrayList<>();
+		inFlight--;
+		while(!waiting.isEmpty() && inFlight < (int) limit) {
+			CompletableFuture<Void> slot = waiting.poll();
+			if(slot.isDone())
+				continue;
+			inFlight++;
+			granted.add(slot);
+		}
+		notifyAll();
+		return granted;
+	}
+
+	/**
+	 * Helper method, completes the requests which have been given a slot, outside of the lock, so the waiting requests
+	 * continue in this thread. The slot of a request cancelled in the meantime is freed again
+	 * @param granted the requests which have been given a slot
+	 */
+	private void grant(List<CompletableFuture<Void>> granted) {
+		for(CompletableFuture<Void> slot : granted)
+			if(!slot.complete(null))
+				releaseUnused();
+	}
+
+	/**
+	 * Adapts the limit according to the outcome of a single request
+	 * @param latencyNanos the time the request took, in nanoseconds
+	 * @param overloaded true if the server answered with a throttling or a server error code
+	 */
+	private void adapt(long latencyNanos, boolean overloaded) {
+		boolean congested = overloaded;
+		if(!overloaded) {
+			if(baselineLatency == 0) {
+				baselineLatency = latencyNanos;
+				recentLatency = latencyNanos;
+			} else {
+				recentLatency = 0.8 * recentLatency + 0.2 * latencyNanos;
+				congested = recentLatency > latencyTolerance * baselineLatency;
+				baselineLatency = 0.99 * baselineLatency + 0.01 * latencyNanos;
+			}
+		}
+		if(congested)
+			limit = Math.max(minLimit, limit * backoffRatio);
+		else
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+	}
+
+	/**
+	 * Retrieves the current limit
+	 * @return the number of requests which can be processed at the same time
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * Retrieves the number of requests which are being processed right now
+	 * @return the number of requests in flight
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Retrieves the lowest allowed limit
+	 * @return the minLimit field value
+	 */
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	/**
+	 * Retrieves the highest allowed limit
+	 * @return the maxLimit field value
+	 */
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Retrieves the short term average latency
+	 * @return the smoothed latency of recent requests in nanoseconds
+	 */
+	public synchronized long getRecentLatency() {
+		return (long) recentLatency;
+	}
+
+}
@@ -57,8 +57,8 @@ public class ArgumentParser {
 		
 		//create options
 		Options options = new Options();
-		options.addOption(Option.builder("c").longOpt("date-price").desc("Print the price on a given date of "
-				+ "gold and a given currency").argName("currency,[date]").hasArgs().valueSeparator(',').build());
+		options.addOption(Option.builder("c").longOpt("date-price").desc("Print the prices on given dates of "
+				+ "gold and given currencies").argName("currency[,currency...][,date...]").hasArgs().valueSeparator(',').build());
 		options.addOption(Option.builder("a").longOpt("gold-average").desc("Print the average price of "
 				+ "gold for a given period").argName("start,[end]").hasArgs().valueSeparator(',').build());
 		options.addOption(Option.builder("h").longOpt("highest-amplitude").desc("Print the currency, "
@@ -68,9 +68,38 @@ public class ArgumentParser {
 		options.addOption(Option.builder("s").longOpt("sort-by-difference").desc("Prints the list of "
 				+ "N currencies from table C sorted by the difference of their buy and sell price on a given date").argName("N,[date]").hasArgs().valueSeparator(',').build());
 		options.addOption(Option.builder("w").longOpt("lowest-highest").desc("Print the dates "
-				+ "on which a given currency reached its highest and lowest price").argName("currency").hasArg().build());
+				+ "on which given currencies reached their highest and lowest price").argName("currency,[currency...]").hasArgs().valueSeparator(',').build());
 		options.addOption(Option.builder("p").longOpt("week-graph").desc("Print a week - based ASCII graph presenting the relative "
-				+ "change of value of a given currency during a given period").argName("currency;start;end").hasArgs().valueSeparator(';').build());
+				+ "change of value of given currencies during a given period").argName("currency[,currency...];start;end").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("r").longOpt("rollup").desc("Print the weekly, monthly or yearly open, high, low, close "
+				+ "and mean prices of a given currency or gold during a given period").argName("currency|gold;week|month|year;start;[end]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("t").longOpt("rolling-stats").desc("Print the moving averages, the rolling volatility and the rolling "
+				+ "minimum and maximum of a given currency or gold over given windows of trading days during a given period")
+				.argName("currency|gold;window[,window...];start;[end]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("q").longOpt("quantiles").desc("Print the 5th, 50th and 95th percentiles of the daily changes "
+				+ "of the price of a given currency or gold, or of the spreads of a given currency from table C, during a given period")
+				.argName("currency|gold;change|spread;start;[end];[exact]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("x").longOpt("correlation").desc("Print the correlation or covariance matrix of the daily returns "
+				+ "of all the currencies from table A during a given period").argName("start;[end];[covariance]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("k").longOpt("cross-rates").desc("Print the cross rates of given pairs of currencies from table A, "
+				+ "or the pair matrix of given currencies, on every day of a given period").argName("pair[,pair...]|currency[,currency...]|all;start;[end]")
+				.hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("g").longOpt("gold-in").desc("Print the price of a gram of gold in a given currency from table A "
+				+ "on every day of a given period").argName("currency;start;[end]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("b").longOpt("spread-history").desc("Print the currency from table C which was the cheapest to buy "
+				+ "on every day, the average spread of every currency and the N widest spreads during a given period").argName("start;[end];[N]")
+				.hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("d").longOpt("drawdown").desc("Print the largest drawdown and the largest rise of every currency "
+				+ "from table A during a given period, with the dates of their peaks and troughs").argName("start;[end]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("m").longOpt("metrics").desc("Print the statistics of the queries sent "
+				+ "to the Web API and the current limits of the data source after all orders are done").build());
+		options.addOption(Option.builder("S").longOpt("serve").desc("Keep the history of the prices up to date after all orders are done "
+				+ "and serve the live results of the orders as server-sent events on a given port").argName("port").hasArg().build());
+		options.addOption(Option.builder("M").longOpt("mirrors").desc("Race the queries for the prices of a single currency and of gold "
+				+ "between the NBP Web API and its given mirrors, the fastest answer is used, and move all the queries to "
+				+ "a healthy mirror while the NBP Web API is degraded").argName("url;[url...]").hasArgs().valueSeparator(';').build());
+		options.addOption(Option.builder("f").longOpt("snapshot").desc("Restore the history of the prices from a given snapshot "
+				+ "file in the server mode, and save it there periodically").argName("file").hasArg().build());
 		
 		if(this.args.length == 0) {
 			HelpFormatter formatter = new HelpFormatter();
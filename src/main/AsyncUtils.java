@@ -0,0 +1,115 @@
+package webapi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * Static helper methods used to bridge the asynchronous (CompletableFuture based) API of the data sources and orders
+ * with the blocking one, and to reduce the results of many chunk fetches into a single result
+ * @author Patryk Wegrzyn
+ */
+public final class AsyncUtils {
+
+	/**
+	 * No instances, only static helpers
+	 */
+	private AsyncUtils() {}
+
+	/**
+	 * Waits for the future and returns its result, the exceptions of the asynchronous computation are rethrown
+	 * the same way the blocking API would have thrown them
+	 * @param future the future to be awaited
+	 * @return the result of the future
+	 * @throws WebApiException thrown when no data has been found for this query, or the query was invalid (wrong format or exceeded limit)
+	 * @throws IOException thrown when an IO error was encountered during the process of fetching data from the server
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws WebApiException, IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an asynchronous query");
+		} catch (ExecutionException e) {
+			Throwable cause = unwrap(e);
+			if(cause instanceof WebApiException)
+				throw (WebApiException) cause;
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Strips the wrappers added by the CompletableFuture machinery
+	 * @param error the exception thrown by a future
+	 * @return the original exception
+	 */
+	public static Throwable unwrap(Throwable error) {
+		while((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null)
+			error = error.getCause();
+		return error;
+	}
+
+	/**
+	 * Wraps an exception so that it can be rethrown from a CompletableFuture stage without losing its type
+	 * @param error the exception to be wrapped
+	 * @return the wrapped exception
+	 */
+	public static CompletionException wrap(Throwable error) {
+		return (error instanceof CompletionException) ? (CompletionException) error : new CompletionException(error);
+	}
+
+	/**
+	 * Checks whether a query failed only because the server has no data for its period (for example a period
+	 * consisting of holidays, or preceding the first publication of a currency)
+	 * @param error the exception thrown by a future
+	 * @return true if the error is the "Not Found" answer of the server
+	 */
+	public static boolean isMissingData(Throwable error) {
+		Throwable cause = unwrap(error);
+		return cause instanceof WebApiException && "Not Found - Brak danych".equals(cause.getMessage());
+	}
+
+	/**
+	 * Completes with the partial result of a query (for example the sink its records have been streamed into)
+	 * once the query completes, also when it has failed only because the server has no data for its period
+	 * @param query the future of the query
+	 * @param partial the partial result
+	 * @return the future of the partial result, failed with the error of the query if the error is not isMissingData
+	 */
+	public static <T> CompletableFuture<T> skipMissingData(CompletableFuture<?> query, T partial) {
+		return query.handle((v, error) -> {
+			if(error != null && !isMissingData(error))
+				throw wrap(unwrap(error));
+			return partial;
+		});
+	}
+
+	/**
+	 * Joins the futures of partial results (for example the results of chunk fetches) with a reduction step,
+	 * the partial results are folded in the order of the list, regardless of the order in which they are completed
+	 * @param partials the futures of the partial results
+	 * @param identity the initial value of the reduction
+	 * @param accumulator folds a single partial result into the reduced value
+	 * @return the future of the reduced value, failed if any of the partial results has failed
+	 */
+	public static <T, R> CompletableFuture<R> reduce(List<CompletableFuture<T>> partials, R identity, BiFunction<R, T, R> accumulator) {
+		return CompletableFuture.allOf(partials.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+			R result = identity;
+			for(CompletableFuture<T> partial : partials)
+				result = accumulator.apply(result, partial.join());
+			return result;
+		});
+	}
+
+}
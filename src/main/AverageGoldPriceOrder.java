@@ -1,28 +1,26 @@
 package webapi;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 /**
- * Order for calculating the average price of gold in a given period of time
+ * Order for calculating the average price of gold in a given period of time. When the ingested prices are fed to it,
+ * it keeps a running sum and count of the prices of the period, a period without an end is extended by every new price
  * @author Patryk Wegrzyn
  */
-public class AverageGoldPriceOrder implements IOrderExecutable,Observer {
+public class AverageGoldPriceOrder implements IAsyncOrderExecutable,ILiveOrder {
 	
 	/**
 	 * Represents the data source of the API
 	 */
-	private NBPDataSource dataSource;
-	/**
-	 * Includes helper methods for numeric and statistical operations
-	 */
-	private JsonNumericOperations operations;
+	private volatile NBPDataSource dataSource;
 	/**
 	 * Start of the time period
 	 */
@@ -36,13 +34,33 @@ public class AverageGoldPriceOrder implements IOrderExecutable,Observer {
 	 */
 	private int dayDifference;
 	/**
-	 * Sum of days found in server response Json
+	 * Sum of days found in server response Json, set once the order has been executed
 	 */
 	private int effectiveDays;
 	/**
 	 * Flag set when the passed argumets have an invalid format
 	 */
 	private boolean wrongArgFormat = false;
+	/**
+	 * Set when no end of the period has been provided
+	 */
+	private boolean openEnded = false;
+	/**
+	 * The running sum of the fed prices of the period, in ten thousandths
+	 */
+	private long liveSum;
+	/**
+	 * The running number of the fed prices of the period
+	 */
+	private int liveCount;
+	/**
+	 * The date of the latest fed price of the period
+	 */
+	private String liveEnd;
+	/**
+	 * The listener of the updates of the running average
+	 */
+	private volatile Consumer<String> resultListener;
 
 	/**
 	 * Normal constructor
@@ -58,6 +76,7 @@ public class AverageGoldPriceOrder implements IOrderExecutable,Observer {
 				Date now = new Date(System.currentTimeMillis());
 				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
 				this.end = formatter.format(now);
+				this.openEnded = true;
 			} else if (parameters.length == 2) {
 				this.end = parameters[1];
 				if(!parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d"))
@@ -68,83 +87,101 @@ public class AverageGoldPriceOrder implements IOrderExecutable,Observer {
 			if (!wrongArgFormat)
 				this.dayDifference = (int) dataSource.getDateDiff(this.start, this.end, TimeUnit.DAYS);
 			this.effectiveDays = 0;
-			this.operations = JsonNumericOperations.getInstance();
 			orderPerformer.register(this);
 		}
 	}
 
 	/* (non-Javadoc)
-	 * @see webapi.IOrderExecutable#execute()
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
 	 */
-	public void execute() throws MalformedURLException, IOException, WebApiException {
+	@Override
+	public CompletableFuture<Void> executeAsync() {
 		System.out.println("Finding the average price of gold in a given period of time...");
 		if(wrongArgFormat) {
 			System.out.println("Error! The format of passed arguments is invalid");
-			return;
+			return CompletableFuture.completedFuture(null);
 		}
 		
-		JsonArray array;
-		JsonObject arrayObject;
-		double sum = 0;
-		
-		if(this.dayDifference < this.dataSource.getMaxPeriodPerQuery()) {
-			if(this.start.equals(this.end)) {
-				try {
-					array = dataSource.getJsonArrFromURL("cenyzlota/" + this.start);
-					arrayObject = array.getJsonObject(0);
+		if(this.dayDifference < this.dataSource.getMaxPeriodPerQuery() && this.start.equals(this.end)) {
+			return dataSource.getJsonArrFromURLAsync("cenyzlota/" + this.start).handle((array, error) -> {
+				if(error != null) {
+					reportError("The average price of gold on " + this.start, error);
+				} else {
+					JsonObject arrayObject = array.getJsonObject(0);
 					System.out.println("The average price of gold on " + this.start + " was " + arrayObject.get("cena"));
-				} catch (WebApiException e) {
-					System.out.println("The average price of gold on " + this.start + " could not be retrieved: " + e.getMessage());
-				}
-			}
-			else {
-				try {
-					array = dataSource.getJsonArrFromURL("cenyzlota/" + this.start + "/" + this.end);
-					System.out.println("The average price of gold from " + this.start + " to " + this.end + " was " + operations.getAvgOfArr(array, "cena"));
-				} catch (WebApiException e) {
-					System.out.println("The average price of gold from " + this.start + " to " + this.end + " could not be retrieved: " + e.getMessage());
-				} catch (javax.json.stream.JsonParsingException e) {
-					System.out.println("The average price of gold from " + this.start + " to " + this.end + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
 				}
-			}
-		} else {
-			String originalStart = this.start;
-			String originalEnd = this.end;
-			try {
-				while((int) dataSource.getDateDiff(this.start, originalEnd, TimeUnit.DAYS) >= dataSource.getMaxPeriodPerQuery()) {
-					Date endDate = this.dataSource.addDays(this.start, this.dataSource.getMaxPeriodPerQuery() - 1);
-					Date endDateNext = this.dataSource.addDays(this.start, this.dataSource.getMaxPeriodPerQuery());
-					SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-					this.end = formatter.format(endDate);
-					String nextEnd = formatter.format(endDateNext);
-					sum += getSumForShortPeriod(this.start, this.end);
-					this.start = nextEnd;
-				}
-				sum += getSumForShortPeriod(this.start, originalEnd);
-				System.out.println("The average price of gold from " + originalStart + " to " + originalEnd + " was " + sum/this.effectiveDays);
-			} catch (WebApiException e) {
-				System.out.println("The average price of gold from " + originalStart + " to " + originalEnd + " could not be retrieved: " + e.getMessage());
-			} catch (javax.json.stream.JsonParsingException e) {
-				System.out.println("The average price of gold from " + originalStart + " to " + originalEnd + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
-			}
+				return null;
+			});
 		}
+		
+		//the next chunk is downloaded while the current one is summed, the prices are streamed into exact fixed-point sums
+		RateRecordReader reader = RateRecordReader.forGoldPrices(SeriesStore.GOLD);
+		List<String[]> chunks = dataSource.splitPeriod(this.start, this.end, dataSource.getMaxPeriodPerQuery());
+		return dataSource.foldChunks(chunks, chunk -> {
+					long partial[] = new long[2];
+					return dataSource.streamRecordsAsync("cenyzlota/" + chunk[0] + "/" + chunk[1], reader, createSumSink(partial))
+							.thenApply(v -> partial);
+				}, new long[2], this::addShortPeriod)
+				.handle((total, error) -> {
+					if(error != null) {
+						reportError("The average price of gold from " + this.start + " to " + this.end, error);
+					} else if(total[1] == 0) {
+						reportError("The average price of gold from " + this.start + " to " + this.end, new WebApiException("Not Found - Brak danych"));
+					} else {
+						this.effectiveDays = (int) total[1];
+						System.out.println("The average price of gold from " + this.start + " to " + this.end + " was " + FixedPoint.format(FixedPoint.average(total[0], total[1])));
+					}
+					return null;
+				});
 	}
 	
+	/**
+	 * Helper method, prints the message explaining why the result could not be retrieved, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param subject the beginning of the message
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(String subject, Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println(subject + " could not be retrieved: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println(subject + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+	
+	/**
+	 * Helper method, creates the sink which sums the streamed prices of gold
+	 * @param total The sum of prices in ten thousandths and the number of days, in this order, updated in place
+	 * @return The sink
+	 */
+	private RateRecordSink createSumSink(long[] total) {
+		return new RateRecordSink() {
+			@Override
+			public void accept(String date, String code, double value) {
+				acceptFixed(date, code, null, FixedPoint.fromDouble(value));
+			}
+
+			@Override
+			public void acceptFixed(String date, String code, String field, long value) {
+				total[0] += value;
+				total[1]++;
+			}
+		};
+	}
+
 	//assumes that the period is short
 	/**
-	 * Helper method, used to calculate the sum of price of gold for a short period of time
-	 * @param startDate The beginning of the time period
-	 * @param endDate The end of the time period
-	 * @return Calculated sum
-	 * @throws MalformedURLException thrown when an invalid URL was encountered
-	 * @throws WebApiException thrown when no data has been found for this query, or the query was invalid (wrong format or exceeded limit)
-	 * @throws IOException thrown when an IO error was encountered during the process of fetching data from the server
-	 */
-	private double getSumForShortPeriod(String startDate, String endDate) throws MalformedURLException, WebApiException, IOException {
-		JsonArray array;
-		array = dataSource.getJsonArrFromURL("cenyzlota/" + startDate + "/" + endDate);
-		this.effectiveDays += array.size();
-		return operations.getSumOfArr(array, "cena");
+	 * Helper method, the folding step of the pipeline, adds the prices of gold of a short period of time to the total
+	 * @param total The sum of prices and the number of days found so far, in this order, updated in place
+	 * @param partial The sum of prices and the number of days of a short period of time
+	 * @return The updated total
+	 */
+	private long[] addShortPeriod(long[] total, long[] partial) {
+		total[0] += partial[0];
+		total[1] += partial[1];
+		return total;
 	}
 
 	/* (non-Javadoc)
@@ -156,4 +193,54 @@ public class AverageGoldPriceOrder implements IOrderExecutable,Observer {
 		
 	}
 
+	/* (non-Javadoc)
+	 * @see webapi.Observer#dataArrived(java.lang.String, int, double)
+	 */
+	@Override
+	public void dataArrived(String key, int day, double value) {
+		if(wrongArgFormat || !key.equals(SeriesStore.GOLD))
+			return;
+		String date = LocalDate.ofEpochDay(day).toString();
+		if(date.compareTo(this.start) < 0 || (!openEnded && date.compareTo(this.end) > 0))
+			return;
+		String update;
+		synchronized(this) {
+			liveSum += FixedPoint.fromDouble(value);
+			liveCount++;
+			liveEnd = date;
+			update = formatAverage();
+		}
+		Consumer<String> listener = resultListener;
+		if(listener != null)
+			listener.accept(update);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.ILiveOrder#getResult()
+	 */
+	@Override
+	public synchronized String getResult() {
+		if(wrongArgFormat)
+			return "Error! The format of passed arguments is invalid";
+		if(liveCount == 0)
+			return "No prices of gold from " + this.start + " have been ingested yet";
+		return formatAverage();
+	}
+
+	/**
+	 * Helper method, formats the running average, a period without an end ends with the latest fed price
+	 * @return the running average of the period
+	 */
+	private String formatAverage() {
+		return "The average price of gold from " + this.start + " to " + (openEnded ? liveEnd : this.end) + " was " + FixedPoint.format(FixedPoint.average(liveSum, liveCount));
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.ILiveOrder#setResultListener(java.util.function.Consumer)
+	 */
+	@Override
+	public void setResultListener(Consumer<String> listener) {
+		this.resultListener = listener;
+	}
+
 }
@@ -0,0 +1,265 @@
+package webapi;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The bid and ask prices of the currencies of table C over a period, as dense columns: one row per publication day,
+ * one bid column and one ask column per currency, NaN where a table lacks the currency. The records of the responses
+ * of the tables endpoint arrive day by day, so a record of a new day appends a row. All the range queries of the
+ * spreads are answered by a single scan of the columns, see scan
+ * @author Patryk Wegrzyn
+ */
+public class BidAskHistory implements FieldRecordSink {
+
+	/**
+	 * The initial number of rows of the columns
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The codes of the currencies, in the order of their first record
+	 */
+	private final List<String> codes = new ArrayList<>();
+	/**
+	 * The indexes of the currencies, by their codes
+	 */
+	private final Map<String, Integer> indexes = new HashMap<>();
+	/**
+	 * The days of the rows, as the number of days since 1970-01-01, in ascending order
+	 */
+	private int[] days = new int[INITIAL_CAPACITY];
+	/**
+	 * The bid prices, one column per currency
+	 */
+	private final List<double[]> bids = new ArrayList<>();
+	/**
+	 * The ask prices, one column per currency
+	 */
+	private final List<double[]> asks = new ArrayList<>();
+	/**
+	 * The number of rows
+	 */
+	private int rows = 0;
+
+	/* (non-Javadoc)
+	 * @see webapi.FieldRecordSink#accept(java.lang.String, java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public void accept(String date, String code, String field, double value) {
+		put((int) LocalDate.parse(date).toEpochDay(), code, field, value);
+	}
+
+	/**
+	 * Puts a price into the history, a day following all the rows appends a row, the prices of the days preceding
+	 * the last row are put into their rows, or ignored if there are no such rows. The prices of the other fields are ignored
+	 * @param day the day of the price, as the number of days since 1970-01-01
+	 * @param code the code of the currency
+	 * @param field the price field, bid or ask
+	 * @param value the price
+	 */
+	public void put(int day, String code, String field, double value) {
+		if(!"bid".equals(field) && !"ask".equals(field))
+			return;
+		int row = (rows > 0 && days[rows - 1] == day) ? rows - 1 : findRow(day);
+		if(row < 0)
+			return;
+		double[] column = (field.equals("bid") ? bids : asks).get(getIndex(code));
+		column[row] = value;
+	}
+
+	/**
+	 * Appends a row without any prices, unless the day has a row already
+	 * @param day the day following all the rows, as the number of days since 1970-01-01
+	 */
+	public void addDay(int day) {
+		findRow(day);
+	}
+
+	/**
+	 * Appends all the rows of the history of a later period
+	 * @param later the history of the period following the last row of this one
+	 * @return this history
+	 */
+	public BidAskHistory append(BidAskHistory later) {
+		for(int r=0; r<later.rows; r++)
+			addDay(later.days[r]);
+		for(int c=0; c<later.codes.size(); c++) {
+			String code = later.codes.get(c);
+			for(int r=0; r<later.rows; r++) {
+				if(!Double.isNaN(later.getBid(c, r)))
+					put(later.days[r], code, "bid", later.getBid(c, r));
+				if(!Double.isNaN(later.getAsk(c, r)))
+					put(later.days[r], code, "ask", later.getAsk(c, r));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Scans the columns once, currency after currency, and collects the answers of all the range queries: the
+	 * currency with the lowest bid price of every day, the average spread of every currency and the widest spreads
+	 * @param widest the number of the widest spreads to be found
+	 * @return the results of the scan
+	 */
+	public SpreadScan scan(int widest) {
+		double[] lowestBids = new double[rows];
+		int[] cheapest = new int[rows];
+		Arrays.fill(lowestBids, Double.POSITIVE_INFINITY);
+		Arrays.fill(cheapest, -1);
+		double[] averages = new double[codes.size()];
+		int[] counts = new int[codes.size()];
+		//the narrowest of the widest spreads found so far is on the top
+		PriorityQueue<int[]> top = new PriorityQueue<>((a, b) -> Double.compare(spread(a[1], a[0]), spread(b[1], b[0])));
+		for(int c=0; c<codes.size(); c++) {
+			double[] bid = bids.get(c), ask = asks.get(c);
+			double sum = 0;
+			for(int r=0; r<rows; r++) {
+				if(bid[r] < lowestBids[r]) {
+					lowestBids[r] = bid[r];
+					cheapest[r] = c;
+				}
+				double spread = ask[r] - bid[r];
+				if(Double.isNaN(spread))
+					continue;
+				sum += spread;
+				counts[c]++;
+				if(top.size() < widest) {
+					top.add(new int[] {r, c});
+				} else if(widest > 0 && spread > spread(top.peek()[1], top.peek()[0])) {
+					top.poll();
+					top.add(new int[] {r, c});
+				}
+			}
+			averages[c] = (counts[c] == 0) ? Double.NaN : sum / counts[c];
+		}
+		List<int[]> widestSpreads = new ArrayList<>(top);
+		widestSpreads.sort((a, b) -> Double.compare(spread(b[1], b[0]), spread(a[1], a[0])));
+		String[] codeArray = codes.toArray(new String[0]);
+		String[] cheapestCodes = new String[rows];
+		for(int r=0; r<rows; r++)
+			cheapestCodes[r] = (cheapest[r] < 0) ? null : codeArray[cheapest[r]];
+		int[] widestDays = new int[widestSpreads.size()];
+		String[] widestCodes = new String[widestSpreads.size()];
+		double[] widestValues = new double[widestSpreads.size()];
+		for(int i=0; i<widestSpreads.size(); i++) {
+			int r = widestSpreads.get(i)[0], c = widestSpreads.get(i)[1];
+			widestDays[i] = days[r];
+			widestCodes[i] = codeArray[c];
+			widestValues[i] = spread(c, r);
+		}
+		return new SpreadScan(Arrays.copyOf(days, rows), cheapestCodes, lowestBids, codeArray, averages, counts, widestDays, widestCodes, widestValues);
+	}
+
+	/**
+	 * Retrieves the number of rows
+	 * @return the number of publication days
+	 */
+	public int getDays() {
+		return rows;
+	}
+
+	/**
+	 * Retrieves the codes of the currencies
+	 * @return the codes, in the order of their first record
+	 */
+	public List<String> getCodes() {
+		return codes;
+	}
+
+	/**
+	 * Retrieves the day of a row
+	 * @param row the index of the row
+	 * @return the day, as the number of days since 1970-01-01
+	 */
+	public int getDay(int row) {
+		return days[row];
+	}
+
+	/**
+	 * Retrieves a bid price
+	 * @param currency the index of the currency, see getCodes
+	 * @param row the index of the row
+	 * @return the bid price, NaN if the table of the day lacks the currency
+	 */
+	public double getBid(int currency, int row) {
+		return bids.get(currency)[row];
+	}
+
+	/**
+	 * Retrieves an ask price
+	 * @param currency the index of the currency, see getCodes
+	 * @param row the index of the row
+	 * @return the ask price, NaN if the table of the day lacks the currency
+	 */
+	public double getAsk(int currency, int row) {
+		return asks.get(currency)[row];
+	}
+
+	/**
+	 * Helper method, computes a spread
+	 * @param currency the index of the currency
+	 * @param row the row
+	 * @return the difference of the ask and bid prices
+	 */
+	private double spread(int currency, int row) {
+		return asks.get(currency)[row] - bids.get(currency)[row];
+	}
+
+	/**
+	 * Helper method, finds the row of a day, a row is appended for a day following all the rows
+	 * @param day the day, as the number of days since 1970-01-01
+	 * @return the index of the row, -1 if the day precedes the last row and has no row
+	 */
+	private int findRow(int day) {
+		if(rows == 0 || day > days[rows - 1]) {
+			if(rows == days.length) {
+				days = Arrays.copyOf(days, rows * 2);
+				for(int c=0; c<codes.size(); c++) {
+					bids.set(c, grow(bids.get(c), days.length));
+					asks.set(c, grow(asks.get(c), days.length));
+				}
+			}
+			days[rows] = day;
+			return rows++;
+		}
+		int row = Arrays.binarySearch(days, 0, rows, day);
+		return (row < 0) ? -1 : row;
+	}
+
+	/**
+	 * Helper method, finds the index of a currency, its columns are created if it has none
+	 * @param code the code of the currency
+	 * @return the index of its columns
+	 */
+	private int getIndex(String code) {
+		Integer index = indexes.get(code);
+		if(index == null) {
+			index = codes.size();
+			codes.add(code);
+			indexes.put(code, index);
+			bids.add(grow(new double[0], days.length));
+			asks.add(grow(new double[0], days.length));
+		}
+		return index;
+	}
+
+	/**
+	 * Helper method, enlarges a column, the new rows have no prices
+	 * @param column the column
+	 * @param capacity the new number of rows
+	 * @return the enlarged column
+	 */
+	private static double[] grow(double[] column, int capacity) {
+		int size = column.length;
+		column = Arrays.copyOf(column, capacity);
+		Arrays.fill(column, size, capacity, Double.NaN);
+		return column;
+	}
+
+}
@@ -0,0 +1,105 @@
+package webapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+
+/**
+ * The consumer side of the fetch-parse-aggregate pipeline, folds the chunks published by a ChunkPublisher into a single
+ * result. It keeps a fixed number of chunks requested ahead, so that the next chunks are being downloaded while the
+ * current one is folded, and requests another chunk only after the current one has been folded
+ * @author Patryk Wegrzyn
+ * @param <T> the type of a fetched chunk
+ * @param <R> the type of the result
+ */
+public class ChunkFoldSubscriber<T, R> implements Flow.Subscriber<T> {
+
+	/**
+	 * Number of chunks which can be fetched ahead of the one being folded
+	 */
+	private final int prefetch;
+	/**
+	 * Folds a single chunk into the result
+	 */
+	private final BiFunction<R, T, R> accumulator;
+	/**
+	 * The future of the final result
+	 */
+	private final CompletableFuture<R> result = new CompletableFuture<>();
+	/**
+	 * The result of the chunks folded so far
+	 */
+	private R accumulated;
+	/**
+	 * The subscription of the publisher
+	 */
+	private Flow.Subscription subscription;
+
+	/**
+	 * Typical constructor
+	 * @param prefetch the number of chunks which can be fetched ahead of the one being folded, at least 1
+	 * @param identity the initial value of the result
+	 * @param accumulator folds a single chunk into the result
+	 */
+	public ChunkFoldSubscriber(int prefetch, R identity, BiFunction<R, T, R> accumulator) {
+		if(prefetch < 1)
+			throw new IllegalArgumentException("At least one chunk must be prefetched");
+		this.prefetch = prefetch;
+		this.accumulated = identity;
+		this.accumulator = accumulator;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Flow.Subscriber#onSubscribe(java.util.concurrent.Flow.Subscription)
+	 */
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		this.subscription = subscription;
+		//cancelling the result stops the downloads which are not needed anymore
+		result.whenComplete((value, error) -> {
+			if(error != null) subscription.cancel();
+		});
+		//the chunk to be folded first and the chunks to be fetched ahead of it
+		subscription.request(prefetch + 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Flow.Subscriber#onNext(java.lang.Object)
+	 */
+	@Override
+	public void onNext(T chunk) {
+		if(result.isDone()) return;
+		try {
+			accumulated = accumulator.apply(accumulated, chunk);
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		subscription.request(1);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Flow.Subscriber#onError(java.lang.Throwable)
+	 */
+	@Override
+	public void onError(Throwable error) {
+		result.completeExceptionally(error);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Flow.Subscriber#onComplete()
+	 */
+	@Override
+	public void onComplete() {
+		result.complete(accumulated);
+	}
+
+	/**
+	 * Retrieves the future of the final result
+	 * @return the future completed when all the chunks have been folded
+	 */
+	public CompletableFuture<R> getResult() {
+		return result;
+	}
+
+}
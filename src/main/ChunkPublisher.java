@@ -0,0 +1,167 @@
+package webapi;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The producer side of the fetch-parse-aggregate pipeline used by the orders which process a long period chunk by chunk.
+ * Publishes the fetched chunks in their chronological order, but starts fetching a chunk only when the subscriber has
+ * signalled demand for it, so the subscriber decides how many chunks can be downloaded ahead of the one it is
+ * processing (the backpressure of the Flow API keeps the memory bounded to a few chunks in flight)
+ * @author Patryk Wegrzyn
+ * @param <T> the type of a fetched chunk
+ */
+public class ChunkPublisher<T> implements Flow.Publisher<T> {
+
+	/**
+	 * The chunks of the period, each of them is a two element array {start, end}
+	 */
+	private final List<String[]> chunks;
+	/**
+	 * Starts fetching a single chunk
+	 */
+	private final Function<String[], CompletableFuture<T>> fetch;
+
+	/**
+	 * Typical constructor
+	 * @param chunks the chunks of the period, as returned by AbstractDataSource.splitPeriod
+	 * @param fetch starts fetching a single chunk, usually with one of the asynchronous methods of a data source
+	 */
+	public ChunkPublisher(List<String[]> chunks, Function<String[], CompletableFuture<T>> fetch) {
+		this.chunks = chunks;
+		this.fetch = fetch;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Flow.Publisher#subscribe(java.util.concurrent.Flow.Subscriber)
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		ChunkSubscription subscription = new ChunkSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		subscription.drain();
+	}
+
+	/**
+	 * A single subscription, every subscriber fetches the chunks on its own. All the signals to the subscriber
+	 * are sent from the drain loop, which is entered by one thread at a time
+	 */
+	private class ChunkSubscription implements Flow.Subscription {
+
+		/**
+		 * The subscriber of this subscription
+		 */
+		private final Flow.Subscriber<? super T> subscriber;
+		/**
+		 * Number of chunks requested by the subscriber and not delivered yet
+		 */
+		private final AtomicLong demand = new AtomicLong();
+		/**
+		 * Number of threads which want to run the drain loop, only the first one runs it
+		 */
+		private final AtomicInteger wip = new AtomicInteger();
+		/**
+		 * The fetches which have been started and not delivered yet, in chronological order
+		 */
+		private final ArrayDeque<CompletableFuture<T>> pending = new ArrayDeque<>();
+		/**
+		 * Index of the next chunk to be fetched
+		 */
+		private int nextChunk = 0;
+		/**
+		 * Set when the subscription has been cancelled, or a terminal signal has been sent
+		 */
+		private volatile boolean done = false;
+		/**
+		 * Set when the subscriber has requested an invalid number of chunks
+		 */
+		private volatile boolean invalidRequest = false;
+
+		/**
+		 * Typical constructor
+		 * @param subscriber the subscriber of this subscription
+		 */
+		private ChunkSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Flow.Subscription#request(long)
+		 */
+		@Override
+		public void request(long n) {
+			if(n <= 0)
+				invalidRequest = true;
+			else
+				demand.accumulateAndGet(n, (current, added) -> (current + added < 0) ? Long.MAX_VALUE : current + added);
+			drain();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Flow.Subscription#cancel()
+		 */
+		@Override
+		public void cancel() {
+			done = true;
+			drain();
+		}
+
+		/**
+		 * Starts the fetches allowed by the current demand and delivers the fetched chunks in order
+		 */
+		private void drain() {
+			if(wip.getAndIncrement() != 0)
+				return;
+			do {
+				if(done) {
+					for(CompletableFuture<T> fetched : pending)
+						fetched.cancel(true);
+					pending.clear();
+					continue;
+				}
+				if(invalidRequest) {
+					terminate(new IllegalArgumentException("The number of requested chunks must be positive"));
+					continue;
+				}
+				//prefetch: one fetch in flight for every requested chunk
+				while(nextChunk < chunks.size() && pending.size() < demand.get()) {
+					CompletableFuture<T> fetched = fetch.apply(chunks.get(nextChunk++));
+					pending.add(fetched);
+					fetched.whenComplete((chunk, error) -> drain());
+				}
+				while(!done && !pending.isEmpty() && pending.peek().isDone() && demand.get() > 0) {
+					CompletableFuture<T> fetched = pending.poll();
+					if(fetched.isCompletedExceptionally()) {
+						terminate(AsyncUtils.unwrap(fetched.handle((chunk, error) -> error).join()));
+					} else {
+						demand.decrementAndGet();
+						subscriber.onNext(fetched.join());
+					}
+				}
+				if(!done && pending.isEmpty() && nextChunk == chunks.size()) {
+					done = true;
+					subscriber.onComplete();
+				}
+			} while(wip.decrementAndGet() != 0);
+		}
+
+		/**
+		 * Ends the subscription with an error
+		 * @param error the cause of the failure
+		 */
+		private void terminate(Throwable error) {
+			done = true;
+			for(CompletableFuture<T> fetched : pending)
+				fetched.cancel(true);
+			pending.clear();
+			subscriber.onError(error);
+		}
+
+	}
+
+}
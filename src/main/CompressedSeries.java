@@ -0,0 +1,583 @@
+package webapi;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compressed in-memory series of daily prices of a single instrument (for example the mid prices of a currency
+ * from table A, the bid or ask prices from table C, or the prices of gold), encoded the way Facebook's Gorilla encodes
+ * time series: the dates as deltas of deltas (consecutive trading days cost a single bit) and the prices as the XOR with
+ * the previous price (an unchanged price costs a single bit, a similar one only its meaningful bits).
+ * The points are split into blocks of BLOCK_SIZE points, every block can be decoded on its own and keeps the summary of
+ * its points, so the aggregates of a range skip decoding the blocks it covers entirely.
+ * The points have to be appended in chronological order, appending is synchronized with the reads
+ * @author Patryk Wegrzyn
+ */
+public class CompressedSeries {
+
+	/**
+	 * Number of points in a single block
+	 */
+	public static final int BLOCK_SIZE = 256;
+
+	/**
+	 * The sealed blocks, in chronological order
+	 */
+	private final List<Block> blocks = new ArrayList<>();
+	/**
+	 * The block currently being appended to
+	 */
+	private BlockWriter current = new BlockWriter();
+	/**
+	 * Number of points in the whole series
+	 */
+	private int size = 0;
+
+	/**
+	 * Appends a point to the series, points which are not later than the last one are ignored,
+	 * so overlapping periods can be loaded without duplicating the points
+	 * @param day the date of the point, as the number of days since 1970-01-01
+	 * @param value the price
+	 * @return true if the point has been appended
+	 */
+	public synchronized boolean append(int day, double value) {
+		if(size > 0 && day <= getLastDay())
+			return false;
+		current.append(day, value);
+		if(current.count == BLOCK_SIZE) {
+			blocks.add(current.seal());
+			current = new BlockWriter();
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Appends a point to the series
+	 * @param date the date of the point, format yyyy-MM-dd
+	 * @param value the price
+	 * @return true if the point has been appended
+	 */
+	public boolean append(String date, double value) {
+		return append((int) LocalDate.parse(date).toEpochDay(), value);
+	}
+
+	/**
+	 * Appends all the points of another series, which are later than the last point of this one
+	 * @param other the series to be appended
+	 */
+	public void appendAll(CompressedSeries other) {
+		Cursor cursor = other.cursor();
+		while(cursor.next())
+			append(cursor.getDay(), cursor.getValue());
+	}
+
+	/**
+	 * Retrieves the number of points
+	 * @return the number of points of the series
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Retrieves the date of the first point
+	 * @return the number of days since 1970-01-01, -1 if the series is empty
+	 */
+	public synchronized int getFirstDay() {
+		if(size == 0) return -1;
+		return blocks.isEmpty() ? current.firstDay : blocks.get(0).firstDay;
+	}
+
+	/**
+	 * Retrieves the date of the last point
+	 * @return the number of days since 1970-01-01, -1 if the series is empty
+	 */
+	public synchronized int getLastDay() {
+		if(size == 0) return -1;
+		return (current.count > 0) ? current.lastDay : blocks.get(blocks.size() - 1).lastDay;
+	}
+
+	/**
+	 * Retrieves the number of bytes used by the encoded points and the block summaries
+	 * @return the size of the series in bytes
+	 */
+	public synchronized long getCompressedBytes() {
+		long bytes = 0;
+		for(Block block : blocks)
+			bytes += block.getBytes();
+		return bytes + current.getBytes();
+	}
+
+	/**
+	 * Creates a cursor over all the points
+	 * @return the cursor, placed before the first point
+	 */
+	public Cursor cursor() {
+		return cursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a cursor over the points of a range, the blocks outside the range are not decoded
+	 * @param fromDay the first date of the range (inclusive), as the number of days since 1970-01-01
+	 * @param toDay the last date of the range (inclusive)
+	 * @return the cursor, placed before the first point of the range
+	 */
+	public Cursor cursor(int fromDay, int toDay) {
+		return new Cursor(snapshot(), fromDay, toDay);
+	}
+
+	/**
+	 * Computes the aggregates of a range, the blocks which are covered by the range entirely are not decoded
+	 * @param fromDay the first date of the range (inclusive), as the number of days since 1970-01-01
+	 * @param toDay the last date of the range (inclusive)
+	 * @return the summary of the points of the range
+	 */
+	public SeriesSummary summarize(int fromDay, int toDay) {
+		SeriesSummary result = new SeriesSummary();
+		for(Block block : snapshot()) {
+			if(block.lastDay < fromDay || block.firstDay > toDay)
+				continue;
+			if(block.firstDay >= fromDay && block.lastDay <= toDay) {
+				result.merge(block.summary);
+			} else {
+				BlockReader reader = new BlockReader(block);
+				while(reader.hasNext()) {
+					reader.next();
+					if(reader.day > toDay) break;
+					if(reader.day >= fromDay)
+						result.add(reader.day, reader.value);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method, takes the blocks to be read, the block being appended to is sealed into a copy
+	 * @return the blocks of the series at the moment of the call
+	 */
+	private synchronized List<Block> snapshot() {
+		List<Block> result = new ArrayList<>(blocks.size() + 1);
+		result.addAll(blocks);
+		if(current.count > 0)
+			result.add(current.seal());
+		return result;
+	}
+
+	/**
+	 * Sequential decoder of a range of the series, decodes a single point per call of next(), without allocations
+	 */
+	public static class Cursor {
+
+		/**
+		 * The blocks of the series
+		 */
+		private final List<Block> blocks;
+		/**
+		 * The first date of the range
+		 */
+		private final int fromDay;
+		/**
+		 * The last date of the range
+		 */
+		private final int toDay;
+		/**
+		 * Index of the next block to be decoded
+		 */
+		private int nextBlock = 0;
+		/**
+		 * Decoder of the current block
+		 */
+		private BlockReader reader;
+
+		/**
+		 * Typical constructor
+		 * @param blocks the blocks of the series
+		 * @param fromDay the first date of the range
+		 * @param toDay the last date of the range
+		 */
+		private Cursor(List<Block> blocks, int fromDay, int toDay) {
+			this.blocks = blocks;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+			while(nextBlock < blocks.size() && blocks.get(nextBlock).lastDay < fromDay)
+				nextBlock++;
+		}
+
+		/**
+		 * Moves the cursor to the next point of the range
+		 * @return false if there are no more points in the range
+		 */
+		public boolean next() {
+			while(true) {
+				if(reader == null || !reader.hasNext()) {
+					if(nextBlock == blocks.size() || blocks.get(nextBlock).firstDay > toDay)
+						return false;
+					reader = new BlockReader(blocks.get(nextBlock++));
+				}
+				reader.next();
+				if(reader.day > toDay) {
+					nextBlock = blocks.size();
+					reader = null;
+					return false;
+				}
+				if(reader.day >= fromDay)
+					return true;
+			}
+		}
+
+		/**
+		 * Retrieves the date of the current point
+		 * @return the number of days since 1970-01-01
+		 */
+		public int getDay() {
+			return reader.day;
+		}
+
+		/**
+		 * Retrieves the price of the current point
+		 * @return the price
+		 */
+		public double getValue() {
+			return reader.value;
+		}
+
+	}
+
+	/**
+	 * An immutable encoded block of points together with their summary
+	 */
+	private static class Block {
+
+		/**
+		 * The encoded points
+		 */
+		private final long[] words;
+		/**
+		 * Number of points
+		 */
+		private final int count;
+		/**
+		 * Date of the first point
+		 */
+		private final int firstDay;
+		/**
+		 * Date of the last point
+		 */
+		private final int lastDay;
+		/**
+		 * Aggregates of the points
+		 */
+		private final SeriesSummary summary;
+
+		/**
+		 * Typical constructor
+		 * @param words the encoded points
+		 * @param count the number of points
+		 * @param firstDay the date of the first point
+		 * @param lastDay the date of the last point
+		 * @param summary the aggregates of the points
+		 */
+		private Block(long[] words, int count, int firstDay, int lastDay, SeriesSummary summary) {
+			this.words = words;
+			this.count = count;
+			this.firstDay = firstDay;
+			this.lastDay = lastDay;
+			this.summary = summary;
+		}
+
+		/**
+		 * Retrieves the size of the block, the encoded points, the dates and the summary (count, sum, min, max and their dates)
+		 * @return the size in bytes
+		 */
+		private long getBytes() {
+			return 8L * words.length + 4 * 3 + (4 + 8 * 3 + 4 * 2);
+		}
+
+	}
+
+	/**
+	 * Encoder of the block currently being appended to
+	 */
+	private static class BlockWriter {
+
+		/**
+		 * The encoded points, as a stream of bits starting with the most significant bit of the first word
+		 */
+		private long[] words = new long[16];
+		/**
+		 * Number of bits written
+		 */
+		private int bits = 0;
+		/**
+		 * Number of points
+		 */
+		private int count = 0;
+		/**
+		 * Date of the first point
+		 */
+		private int firstDay;
+		/**
+		 * Date of the last point
+		 */
+		private int lastDay;
+		/**
+		 * Difference between the dates of the last two points
+		 */
+		private int lastDelta = 0;
+		/**
+		 * Bits of the last price
+		 */
+		private long lastValue;
+		/**
+		 * Number of leading zeros of the last meaningful XOR, -1 before the first one
+		 */
+		private int lastLeading = -1;
+		/**
+		 * Number of trailing zeros of the last meaningful XOR
+		 */
+		private int lastTrailing = 0;
+		/**
+		 * Aggregates of the points
+		 */
+		private final SeriesSummary summary = new SeriesSummary();
+
+		/**
+		 * Encodes a single point
+		 * @param day the date of the point
+		 * @param value the price
+		 */
+		private void append(int day, double value) {
+			long valueBits = Double.doubleToRawLongBits(value);
+			if(count == 0) {
+				firstDay = day;
+				write(day, 32);
+				write(valueBits, 64);
+			} else {
+				int delta = day - lastDay;
+				writeDeltaOfDelta(delta - lastDelta);
+				lastDelta = delta;
+				writeXor(valueBits ^ lastValue);
+			}
+			lastDay = day;
+			lastValue = valueBits;
+			summary.add(day, value);
+			count++;
+		}
+
+		/**
+		 * Helper method, encodes the difference between two consecutive deltas of the dates
+		 * @param deltaOfDelta the difference
+		 */
+		private void writeDeltaOfDelta(int deltaOfDelta) {
+			if(deltaOfDelta == 0) {
+				write(0, 1);
+			} else if(deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+				write(0b10, 2);
+				write(deltaOfDelta + 63, 7);
+			} else if(deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+				write(0b110, 3);
+				write(deltaOfDelta + 255, 9);
+			} else if(deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+				write(0b1110, 4);
+				write(deltaOfDelta + 2047, 12);
+			} else {
+				write(0b1111, 4);
+				write(deltaOfDelta, 32);
+			}
+		}
+
+		/**
+		 * Helper method, encodes the XOR of two consecutive prices
+		 * @param xor the XOR of the bits of the prices
+		 */
+		private void writeXor(long xor) {
+			if(xor == 0) {
+				write(0, 1);
+				return;
+			}
+			write(1, 1);
+			int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if(lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+				//the meaningful bits fit into the window of the previous XOR
+				write(0, 1);
+				write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+			} else {
+				int meaningful = 64 - leading - trailing;
+				write(1, 1);
+				write(leading, 5);
+				write(meaningful - 1, 6);
+				write(xor >>> trailing, meaningful);
+				lastLeading = leading;
+				lastTrailing = trailing;
+			}
+		}
+
+		/**
+		 * Helper method, appends the lowest bits of a value to the stream
+		 * @param value the value
+		 * @param length the number of bits, at most 64
+		 */
+		private void write(long value, int length) {
+			if(length < 64)
+				value &= (1L << length) - 1;
+			int index = bits >>> 6;
+			int free = 64 - (bits & 63);
+			if(index + 1 >= words.length)
+				words = Arrays.copyOf(words, words.length * 2);
+			if(length <= free) {
+				words[index] |= value << (free - length);
+			} else {
+				words[index] |= value >>> (length - free);
+				words[index + 1] |= value << (64 - (length - free));
+			}
+			bits += length;
+		}
+
+		/**
+		 * Creates an immutable copy of the block
+		 * @return the block
+		 */
+		private Block seal() {
+			SeriesSummary copy = new SeriesSummary().merge(summary);
+			return new Block(Arrays.copyOf(words, (bits + 63) >>> 6), count, firstDay, lastDay, copy);
+		}
+
+		/**
+		 * Retrieves the size of the block
+		 * @return the size in bytes
+		 */
+		private long getBytes() {
+			return (count == 0) ? 0 : 8L * ((bits + 63) >>> 6) + 4 * 3 + (4 + 8 * 3 + 4 * 2);
+		}
+
+	}
+
+	/**
+	 * Decoder of a single block
+	 */
+	private static class BlockReader {
+
+		/**
+		 * The encoded points
+		 */
+		private final long[] words;
+		/**
+		 * Number of points in the block
+		 */
+		private final int count;
+		/**
+		 * Number of bits read
+		 */
+		private int bits = 0;
+		/**
+		 * Number of points decoded
+		 */
+		private int decoded = 0;
+		/**
+		 * Date of the current point
+		 */
+		private int day;
+		/**
+		 * Price of the current point
+		 */
+		private double value;
+		/**
+		 * Difference between the dates of the last two points
+		 */
+		private int lastDelta = 0;
+		/**
+		 * Bits of the current price
+		 */
+		private long valueBits;
+		/**
+		 * Number of leading zeros of the last meaningful XOR
+		 */
+		private int lastLeading = 0;
+		/**
+		 * Number of trailing zeros of the last meaningful XOR
+		 */
+		private int lastTrailing = 0;
+
+		/**
+		 * Typical constructor
+		 * @param block the block to be decoded
+		 */
+		private BlockReader(Block block) {
+			this.words = block.words;
+			this.count = block.count;
+		}
+
+		/**
+		 * Checks whether there are more points
+		 * @return true if next() can be called
+		 */
+		private boolean hasNext() {
+			return decoded < count;
+		}
+
+		/**
+		 * Decodes the next point
+		 */
+		private void next() {
+			if(decoded == 0) {
+				day = (int) read(32);
+				valueBits = read(64);
+			} else {
+				lastDelta += readDeltaOfDelta();
+				day += lastDelta;
+				if(read(1) != 0) {
+					if(read(1) != 0) {
+						lastLeading = (int) read(5);
+						int meaningful = (int) read(6) + 1;
+						lastTrailing = 64 - lastLeading - meaningful;
+					}
+					valueBits ^= read(64 - lastLeading - lastTrailing) << lastTrailing;
+				}
+			}
+			value = Double.longBitsToDouble(valueBits);
+			decoded++;
+		}
+
+		/**
+		 * Helper method, decodes the difference between two consecutive deltas of the dates
+		 * @return the difference
+		 */
+		private int readDeltaOfDelta() {
+			if(read(1) == 0)
+				return 0;
+			if(read(1) == 0)
+				return (int) read(7) - 63;
+			if(read(1) == 0)
+				return (int) read(9) - 255;
+			if(read(1) == 0)
+				return (int) read(12) - 2047;
+			return (int) read(32);
+		}
+
+		/**
+		 * Helper method, reads the next bits of the stream
+		 * @param length the number of bits, at most 64
+		 * @return the bits as the lowest bits of the result
+		 */
+		private long read(int length) {
+			int index = bits >>> 6;
+			int free = 64 - (bits & 63);
+			long result;
+			if(length <= free) {
+				result = words[index] >>> (free - length);
+			} else {
+				int rest = length - free;
+				result = (words[index] << rest) | (words[index + 1] >>> (64 - rest));
+			}
+			bits += length;
+			return (length == 64) ? result : result & ((1L << length) - 1);
+		}
+
+	}
+
+}
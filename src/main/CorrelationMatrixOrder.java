@@ -0,0 +1,154 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the correlation (or covariance) matrix of the daily logarithmic returns of all the currencies of table A
+ * in a given period. The prices are read from the series store when the period is resident, otherwise the tables
+ * are fetched chunk by chunk. The prices are assembled into a dense matrix of the returns and the covariances are
+ * computed by the blocked, multi-threaded kernels of MatrixAnalytics
+ * @author Patryk Wegrzyn
+ */
+public class CorrelationMatrixOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Set when the covariances are to be printed instead of the correlations
+	 */
+	private boolean covariance = false;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the start and optionally the end of the period, optionally
+	 * followed by the word covariance
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public CorrelationMatrixOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		int dates = (parameters == null) ? 0 : parameters.length;
+		if(dates > 0 && parameters[dates - 1].equalsIgnoreCase("covariance")) {
+			this.covariance = true;
+			dates--;
+		}
+		if(parameters == null || (dates != 1 && dates != 2) || !parameters[0].matches("[\\d]{4}-\\d\\d-\\d\\d")
+				|| (dates == 2 && !parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.start = parameters[0];
+			if(dates == 2) {
+				this.end = parameters[1];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the correlation matrix of the daily returns of all the currencies from table A in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		Map<String, PriceColumn> resident = SeriesStore.getInstance().readTable("A", "mid", startDay, endDay);
+		if(resident != null) {
+			print(resident);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return dataSource.getMidColumnsAsync(this.start, this.end)
+				.handle((columns, error) -> {
+					if(error != null)
+						reportError(error);
+					else
+						print(columns);
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, computes and prints the matrix
+	 * @param columns the prices of the period, by the codes of the currencies
+	 */
+	private void print(Map<String, PriceColumn> columns) {
+		long startTime = System.nanoTime();
+		ReturnMatrix returns = ReturnMatrix.of(columns);
+		if(returns.getDays() < 2) {
+			reportError(new WebApiException("Not Found - Brak danych"));
+			return;
+		}
+		MatrixAnalytics analytics = MatrixAnalytics.getInstance();
+		CovarianceMatrix matrix = analytics.covariance(returns);
+		double millis = Math.round((System.nanoTime() - startTime) / 10000.0) / 100.0;
+		int size = matrix.getSize();
+		System.out.println("The " + (this.covariance ? "covariance" : "correlation") + " matrix of the daily returns of " + size
+				+ " currencies from " + this.start + " to " + this.end + " (" + matrix.getDays() + " days, " + size + " x " + size
+				+ ", computed in " + millis + " ms on " + analytics.getParallelism() + " threads):");
+		String format = this.covariance ? "%11.3e" : "%7.2f";
+		int width = this.covariance ? 11 : 7;
+		StringBuilder header = new StringBuilder("   ");
+		for(String code : matrix.getCodes())
+			header.append(String.format(Locale.ROOT, "%" + width + "s", code));
+		System.out.println(header);
+		for(int i=0; i<size; i++) {
+			StringBuilder row = new StringBuilder(matrix.getCodes()[i]);
+			for(int j=0; j<size; j++)
+				row.append(String.format(Locale.ROOT, format, this.covariance ? matrix.getCovariance(i, j) : matrix.getCorrelation(i, j)));
+			System.out.println(row);
+		}
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the matrix could not be computed, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The matrix of the returns from " + this.start + " to " + this.end + " could not be computed: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The matrix of the returns from " + this.start + " to " + this.end + " could not be computed: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
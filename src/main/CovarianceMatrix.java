@@ -0,0 +1,88 @@
+package webapi;
+
+/**
+ * The covariance and correlation matrices of the returns of many currencies, both of them symmetric and stored
+ * as full currencies x currencies arrays in row-major order
+ * @author Patryk Wegrzyn
+ */
+public class CovarianceMatrix {
+
+	/**
+	 * The codes of the currencies, one per row and column
+	 */
+	private final String[] codes;
+	/**
+	 * The number of days of the returns
+	 */
+	private final int days;
+	/**
+	 * The sample covariances
+	 */
+	private final double[] covariance;
+	/**
+	 * The correlations, NaN for a currency whose returns are constant
+	 */
+	private final double[] correlation;
+
+	/**
+	 * Typical constructor
+	 * @param codes the codes of the currencies
+	 * @param days the number of days of the returns
+	 * @param covariance the sample covariances, codes.length * codes.length of them
+	 */
+	public CovarianceMatrix(String[] codes, int days, double[] covariance) {
+		int size = codes.length;
+		this.codes = codes;
+		this.days = days;
+		this.covariance = covariance;
+		this.correlation = new double[size * size];
+		for(int i=0; i<size; i++)
+			for(int j=0; j<size; j++)
+				correlation[i * size + j] = covariance[i * size + j] / Math.sqrt(covariance[i * size + i] * covariance[j * size + j]);
+	}
+
+	/**
+	 * Retrieves the codes of the currencies
+	 * @return the codes, one per row and column
+	 */
+	public String[] getCodes() {
+		return codes;
+	}
+
+	/**
+	 * Retrieves the number of currencies
+	 * @return the number of rows and of columns
+	 */
+	public int getSize() {
+		return codes.length;
+	}
+
+	/**
+	 * Retrieves the number of days of the returns
+	 * @return the number of days
+	 */
+	public int getDays() {
+		return days;
+	}
+
+	/**
+	 * Retrieves the covariance of the returns of two currencies
+	 * @param i the index of the first currency
+	 * @param j the index of the second currency
+	 * @return the sample covariance
+	 */
+	public double getCovariance(int i, int j) {
+		return covariance[i * codes.length + j];
+	}
+
+	/**
+	 * Retrieves the correlation of the returns of two currencies
+	 * @param i the index of the first currency
+	 * @param j the index of the second currency
+	 * @return the Pearson correlation, NaN if the returns of one of them are constant
+	 */
+	public double getCorrelation(int i, int j) {
+		return correlation[i * codes.length + j];
+	}
+
+}
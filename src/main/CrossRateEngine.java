@@ -0,0 +1,143 @@
+package webapi;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Computes the rates of any pairs of the currencies of table A locally, from the tables of the tables endpoint.
+ * The tables are cached by their dates, together with the days known to have no table (weekends and holidays),
+ * so a query for any pairs in a period which has been fetched once needs no further queries to the Web API.
+ * Only the days of the period missing from the cache are fetched, as a single range split into chunks.
+ * Uses the singleton design pattern.
+ * @author Patryk Wegrzyn
+ */
+public class CrossRateEngine {
+
+	//Singleton Design Pattern
+	/**
+	 * Static field, which holds the only instance of this class during the lifetime of an application run
+	 */
+	private static CrossRateEngine firstInstance = null;
+
+	/**
+	 * The cached tables, by their days as the number of days since 1970-01-01
+	 */
+	private final Map<Integer, CrossRateTable> tables = new HashMap<>();
+	/**
+	 * The past days known to have no table
+	 */
+	private final Set<Integer> emptyDays = new HashSet<>();
+
+	/**
+	 * Private constructor because we only allow to create this object be using the getInstance method
+	 */
+	private CrossRateEngine() {}
+
+	/**
+	 * Static method used as a factory for this class, if an object of this class already exists - it returns it,
+	 * otherwise it returns a newly created object and saves it for further requests
+	 * @return The only available instance of this class
+	 */
+	public static synchronized CrossRateEngine getInstance() {
+		if(firstInstance == null) {
+			firstInstance = new CrossRateEngine();
+		}
+		return firstInstance;
+	}
+
+	/**
+	 * Retrieves the tables of a period, the days missing from the cache are fetched first
+	 * @param dataSource the data source of the tables
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the future of the tables of the period, in chronological order
+	 */
+	public CompletableFuture<List<CrossRateTable>> getTables(NBPDataSource dataSource, String start, String end) {
+		int startDay = (int) LocalDate.parse(start).toEpochDay();
+		int endDay = (int) LocalDate.parse(end).toEpochDay();
+		int[] missing = findMissing(startDay, endDay);
+		if(missing == null)
+			return CompletableFuture.completedFuture(getCached(startDay, endDay));
+		List<String[]> chunks = dataSource.splitPeriod(LocalDate.ofEpochDay(missing[0]).toString(),
+				LocalDate.ofEpochDay(missing[1]).toString(), dataSource.getMaxPeriodPerQuery2());
+		return dataSource.foldChunks(chunks, chunk -> {
+					CrossRateTables partial = new CrossRateTables((int) LocalDate.parse(chunk[0]).toEpochDay(), (int) LocalDate.parse(chunk[1]).toEpochDay());
+					//the chunks without any table are cached as empty days as well
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync("exchangerates/tables/A/" + chunk[0] + "/" + chunk[1], RateRecordReader.forMidRates(), partial), partial);
+				}, this, CrossRateEngine::cache)
+				.thenApply(engine -> getCached(startDay, endDay));
+	}
+
+	/**
+	 * Retrieves the tables of a period from the cache only
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the cached tables of the period, in chronological order
+	 */
+	public synchronized List<CrossRateTable> getCached(int startDay, int endDay) {
+		List<CrossRateTable> result = new ArrayList<>();
+		for(int day=startDay; day<=endDay; day++) {
+			CrossRateTable table = tables.get(day);
+			if(table != null)
+				result.add(table);
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieves the number of the cached tables
+	 * @return the number of the tables
+	 */
+	public synchronized int getCachedTables() {
+		return tables.size();
+	}
+
+	/**
+	 * Removes all the cached tables
+	 */
+	public synchronized void clear() {
+		tables.clear();
+		emptyDays.clear();
+	}
+
+	/**
+	 * Helper method, finds the days of a period which are missing from the cache
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the first and the last missing day, null if the whole period is cached
+	 */
+	private synchronized int[] findMissing(int startDay, int endDay) {
+		int first = -1, last = -1;
+		for(int day=startDay; day<=endDay; day++) {
+			if(tables.containsKey(day) || emptyDays.contains(day))
+				continue;
+			if(first < 0)
+				first = day;
+			last = day;
+		}
+		return (first < 0) ? null : new int[] {first, last};
+	}
+
+	/**
+	 * Helper method, caches the tables of a chunk, the other days of its period are cached as empty unless
+	 * their table may still be published
+	 * @param partial the tables of the chunk
+	 * @return this engine
+	 */
+	private synchronized CrossRateEngine cache(CrossRateTables partial) {
+		for(CrossRateTable table : partial.getTables())
+			tables.put((int) LocalDate.parse(table.getDate()).toEpochDay(), table);
+		int today = (int) LocalDate.now().toEpochDay();
+		for(int day=partial.getStartDay(); day<=partial.getEndDay() && day<today; day++)
+			if(!tables.containsKey(day))
+				emptyDays.add(day);
+		return this;
+	}
+
+}
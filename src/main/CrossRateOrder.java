@@ -0,0 +1,177 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the cross rates of given pairs of currencies from table A on every day of a given period, or the pair
+ * matrix of given currencies (or of all of them) on every day of the period. The rates are computed locally by
+ * the cross rate engine, from the tables of the period, which are fetched once and cached
+ * @author Patryk Wegrzyn
+ */
+public class CrossRateOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The pairs in question, each of them a two element array {base, quote}, null when the matrix is printed
+	 */
+	private List<String[]> pairs = null;
+	/**
+	 * The currencies of the matrix, null when all of them are in question or the pairs are printed
+	 */
+	private String[] currencies = null;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the pairs separated with commas (for example EUR/USD,GBP/JPY),
+	 * or the currencies of the matrix separated with commas (or the word all), the start and optionally the end of the period
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public CrossRateOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		if(parameters == null || (parameters.length != 2 && parameters.length != 3)
+				|| !parameters[0].matches("[\\w]{3}/[\\w]{3}(,[\\w]{3}/[\\w]{3})*|[\\w]{3}(,[\\w]{3})*|all")
+				|| !parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d") || (parameters.length == 3 && !parameters[2].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			if(parameters[0].contains("/")) {
+				this.pairs = new ArrayList<>();
+				for(String pair : parameters[0].toUpperCase().split(","))
+					this.pairs.add(pair.split("/"));
+			} else if(!parameters[0].equals("all")) {
+				this.currencies = parameters[0].toUpperCase().split(",");
+			}
+			this.start = parameters[1];
+			if(parameters.length == 3) {
+				this.end = parameters[2];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the cross rates of given currencies from table A in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		return CrossRateEngine.getInstance().getTables(dataSource, this.start, this.end)
+				.handle((tables, error) -> {
+					if(error == null && tables.isEmpty())
+						error = new WebApiException("Not Found - Brak danych");
+					if(error != null)
+						reportError(error);
+					else if(this.pairs != null)
+						printPairs(tables);
+					else
+						printMatrices(tables);
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, prints the rates of the pairs, one line per table
+	 * @param tables the tables of the period
+	 */
+	private void printPairs(List<CrossRateTable> tables) {
+		StringBuilder names = new StringBuilder();
+		for(String[] pair : this.pairs)
+			names.append(names.length() == 0 ? "" : ", ").append(pair[0]).append("/").append(pair[1]);
+		System.out.println("The cross rates of " + names + " from " + this.start + " to " + this.end + ":");
+		for(CrossRateTable table : tables) {
+			StringBuilder line = new StringBuilder(table.getDate()).append(":");
+			for(int i=0; i<this.pairs.size(); i++) {
+				String[] pair = this.pairs.get(i);
+				double rate = table.getRate(pair[0], pair[1]);
+				line.append(i == 0 ? " " : ", ").append(pair[0]).append("/").append(pair[1]).append(" ")
+						.append(Double.isNaN(rate) ? "n/a" : String.valueOf(round(rate)));
+			}
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * Helper method, prints the pair matrix of every table, the rate of the pair row/column is in the row of its base
+	 * @param tables the tables of the period
+	 */
+	private void printMatrices(List<CrossRateTable> tables) {
+		System.out.println("The cross rates (row/column) from " + this.start + " to " + this.end + ":");
+		for(CrossRateTable table : tables) {
+			String[] codes = (this.currencies == null) ? table.getCodes() : this.currencies;
+			double[] matrix = table.getMatrix(codes);
+			System.out.println(table.getDate() + ":");
+			StringBuilder header = new StringBuilder("   ");
+			for(String code : codes)
+				header.append(String.format(Locale.ROOT, "%14s", code));
+			System.out.println(header);
+			for(int i=0; i<codes.length; i++) {
+				StringBuilder row = new StringBuilder(codes[i]);
+				for(int j=0; j<codes.length; j++)
+					row.append(String.format(Locale.ROOT, "%14.6f", matrix[i * codes.length + j]));
+				System.out.println(row);
+			}
+		}
+	}
+
+	/**
+	 * Helper method, rounds a rate for printing
+	 * @param value the rate
+	 * @return the rate rounded to 6 decimal places
+	 */
+	private static double round(double value) {
+		return Math.round(value * 1000000) / 1000000.0;
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the rates could not be computed, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The cross rates from " + this.start + " to " + this.end + " could not be computed: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The cross rates from " + this.start + " to " + this.end + " could not be computed: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
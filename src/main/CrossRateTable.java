@@ -0,0 +1,138 @@
+package webapi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The cross rates of all the currencies of a single table A. The table publishes the mid prices in zloty only, so the
+ * rate of a pair base/quote (the price of a unit of the base currency in the quote currency) is the mid price of the
+ * base divided by the mid price of the quote. The zloty itself is a currency of the table, with the mid price 1.
+ * A row of the pair matrix is the vector of the inverted mid prices scaled by the mid price of its base currency,
+ * so the whole matrix, or the matrix of any subset of the currencies, is computed by the scale kernel row by row
+ * @author Patryk Wegrzyn
+ */
+public class CrossRateTable {
+
+	/**
+	 * The code of the Polish zloty, the currency of all the mid prices
+	 */
+	public static final String PLN = "PLN";
+
+	/**
+	 * The date of the table, format yyyy-MM-dd
+	 */
+	private final String date;
+	/**
+	 * The codes of the currencies, the zloty first
+	 */
+	private final String[] codes;
+	/**
+	 * The mid prices of the currencies in zloty
+	 */
+	private final double[] mids;
+	/**
+	 * The inverted mid prices, the prices of a zloty in the currencies
+	 */
+	private final double[] inverses;
+	/**
+	 * The indexes of the currencies, by their codes
+	 */
+	private final Map<String, Integer> indexes = new HashMap<>();
+
+	/**
+	 * Typical constructor
+	 * @param date the date of the table, format yyyy-MM-dd
+	 * @param codes the codes of the currencies of the table, without the zloty
+	 * @param mids the mid prices of the currencies in zloty
+	 * @param size the number of the currencies, the arrays may be longer
+	 */
+	public CrossRateTable(String date, String[] codes, double[] mids, int size) {
+		this.date = date;
+		this.codes = new String[size + 1];
+		this.mids = new double[size + 1];
+		this.codes[0] = PLN;
+		this.mids[0] = 1;
+		System.arraycopy(codes, 0, this.codes, 1, size);
+		System.arraycopy(mids, 0, this.mids, 1, size);
+		this.inverses = new double[size + 1];
+		for(int i=0; i<=size; i++) {
+			this.inverses[i] = 1 / this.mids[i];
+			this.indexes.put(this.codes[i].toUpperCase(), i);
+		}
+	}
+
+	/**
+	 * Retrieves the date of the table
+	 * @return the date, format yyyy-MM-dd
+	 */
+	public String getDate() {
+		return date;
+	}
+
+	/**
+	 * Retrieves the codes of the currencies
+	 * @return the codes, the zloty first and then in the order of the table
+	 */
+	public String[] getCodes() {
+		return codes.clone();
+	}
+
+	/**
+	 * Checks whether a currency is in the table
+	 * @param code the code of the currency, case insensitive
+	 * @return true if the table has its mid price (always for the zloty)
+	 */
+	public boolean contains(String code) {
+		return indexes.containsKey(code.toUpperCase());
+	}
+
+	/**
+	 * Computes the rate of a single pair
+	 * @param base the code of the base currency, case insensitive
+	 * @param quote the code of the quote currency, case insensitive
+	 * @return the price of a unit of the base currency in the quote currency, NaN if one of them is not in the table
+	 */
+	public double getRate(String base, String quote) {
+		Integer i = indexes.get(base.toUpperCase()), j = indexes.get(quote.toUpperCase());
+		return (i == null || j == null) ? Double.NaN : mids[i] * inverses[j];
+	}
+
+	/**
+	 * Computes the pair matrix of all the currencies of the table
+	 * @return the rates in row-major order, the rate of the pair getCodes()[i]/getCodes()[j] is at i * size + j
+	 */
+	public double[] getMatrix() {
+		return getMatrix(codes);
+	}
+
+	/**
+	 * Computes the pair matrix of a subset of the currencies
+	 * @param subset the codes of the currencies, case insensitive
+	 * @return the rates in row-major order, the rate of the pair subset[i]/subset[j] is at i * subset.length + j,
+	 * NaN in the rows and columns of the currencies which are not in the table
+	 */
+	public double[] getMatrix(String[] subset) {
+		int size = subset.length;
+		double[] bases = new double[size], quotes = new double[size];
+		for(int i=0; i<size; i++) {
+			Integer index = indexes.get(subset[i].toUpperCase());
+			bases[i] = (index == null) ? Double.NaN : mids[index];
+			quotes[i] = (index == null) ? Double.NaN : inverses[index];
+		}
+		double[] matrix = new double[size * size];
+		PriceKernels kernels = PriceKernels.getInstance();
+		for(int i=0; i<size; i++)
+			kernels.scale(quotes, 0, size, bases[i], matrix, i * size);
+		return matrix;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return date + " " + Arrays.toString(codes);
+	}
+
+}
@@ -0,0 +1,105 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the cross rate tables of a response of the tables endpoint of table A, the records of a table arrive
+ * one after another, so a table is complete when the first record of the next date (or the end of the response)
+ * arrives. Remembers the period of the query as well, so that the days without a table can be told apart
+ * @author Patryk Wegrzyn
+ */
+public class CrossRateTables implements RateRecordSink {
+
+	/**
+	 * The first day of the period of the query, as the number of days since 1970-01-01
+	 */
+	private final int startDay;
+	/**
+	 * The last day of the period of the query
+	 */
+	private final int endDay;
+	/**
+	 * The completed tables, in chronological order
+	 */
+	private final List<CrossRateTable> tables = new ArrayList<>();
+	/**
+	 * The date of the table being collected, null before the first record
+	 */
+	private String date = null;
+	/**
+	 * The codes of the table being collected
+	 */
+	private String[] codes = new String[64];
+	/**
+	 * The mid prices of the table being collected
+	 */
+	private double[] mids = new double[64];
+	/**
+	 * The number of the currencies of the table being collected
+	 */
+	private int size = 0;
+
+	/**
+	 * Typical constructor
+	 * @param startDay the first day of the period of the query, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period of the query
+	 */
+	public CrossRateTables(int startDay, int endDay) {
+		this.startDay = startDay;
+		this.endDay = endDay;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.RateRecordSink#accept(java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public void accept(String date, String code, double value) {
+		if(!date.equals(this.date)) {
+			complete();
+			this.date = date;
+		}
+		if(size == codes.length) {
+			codes = Arrays.copyOf(codes, size * 2);
+			mids = Arrays.copyOf(mids, size * 2);
+		}
+		codes[size] = code;
+		mids[size++] = value;
+	}
+
+	/**
+	 * Retrieves the collected tables, the last one is completed by this call
+	 * @return the tables, in chronological order
+	 */
+	public List<CrossRateTable> getTables() {
+		complete();
+		return tables;
+	}
+
+	/**
+	 * Retrieves the first day of the period of the query
+	 * @return the number of days since 1970-01-01
+	 */
+	public int getStartDay() {
+		return startDay;
+	}
+
+	/**
+	 * Retrieves the last day of the period of the query
+	 * @return the number of days since 1970-01-01
+	 */
+	public int getEndDay() {
+		return endDay;
+	}
+
+	/**
+	 * Helper method, completes the table being collected
+	 */
+	private void complete() {
+		if(size > 0)
+			tables.add(new CrossRateTable(date, codes, mids, size));
+		size = 0;
+	}
+
+}
@@ -0,0 +1,369 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the orders of an order performer on a healthy mirror of the Web API. Holds a primary data source and one or
+ * more secondary ones, probes all of them periodically with a cheap query, and when the active one degrades (its probes
+ * fail or exceed the latency threshold several times in a row) swaps the data source of the performer for the first
+ * healthy one, in the order they have been given, through the observer mechanism of the performer. The probes bypass the
+ * limiters of the data sources, so a data source busy with the orders is not mistaken for a slow one. The primary data
+ * source is switched back to once it has recovered, every switch is counted in the metrics of the data source made
+ * active. The queries already sent to the previous data source are not cancelled, they are drained: they finish there
+ * while all the new queries go to the new one
+ * @author Patryk Wegrzyn
+ */
+public class DataSourceFailover implements AutoCloseable {
+
+	/**
+	 * The query used to probe the data sources, the current price of gold
+	 */
+	public static final String DEFAULT_PROBE = "cenyzlota";
+	/**
+	 * The default interval between the health checks, in seconds
+	 */
+	public static final long DEFAULT_CHECK_INTERVAL = 30;
+
+	/**
+	 * The performer whose data source is swapped
+	 */
+	private final NBPOrderPerformer orderPerformer;
+	/**
+	 * The health of every data source, the primary one first
+	 */
+	private final Map<NBPDataSource, Health> endpoints = new LinkedHashMap<>();
+	/**
+	 * Runs the health checks and polls the drained data sources
+	 */
+	private final ScheduledExecutorService executor;
+	/**
+	 * Set when the executor has been created by this object and has to be shut down with it
+	 */
+	private final boolean ownsExecutor;
+	/**
+	 * Number of swaps of the data source so far
+	 */
+	private final AtomicInteger switches = new AtomicInteger();
+	/**
+	 * Number of the health checks which could not be completed
+	 */
+	private final AtomicInteger failedChecks = new AtomicInteger();
+	/**
+	 * The error of the latest health check which could not be completed, null if there has been none
+	 */
+	private volatile Throwable lastCheckError;
+	/**
+	 * The data source the performer is using
+	 */
+	private volatile NBPDataSource active;
+	/**
+	 * The periodic health check, null if it has not been started
+	 */
+	private ScheduledFuture<?> healthCheck;
+	/**
+	 * The query used to probe the data sources
+	 */
+	private volatile String probe = DEFAULT_PROBE;
+	/**
+	 * Probes slower than this are counted as failed, in milliseconds
+	 */
+	private volatile long latencyThreshold = 2000;
+	/**
+	 * Number of failed probes in a row after which a data source is considered unhealthy
+	 */
+	private volatile int failureThreshold = 3;
+	/**
+	 * Number of successful probes in a row after which an unhealthy data source is considered healthy again
+	 */
+	private volatile int recoveryThreshold = 3;
+
+	/**
+	 * The results of the recent probes of a single data source
+	 */
+	private static class Health {
+
+		/**
+		 * Number of the latest probes which have failed
+		 */
+		private int failures = 0;
+		/**
+		 * Number of the latest probes which have succeeded
+		 */
+		private int successes = 0;
+		/**
+		 * Whether the data source may be used
+		 */
+		private boolean healthy = true;
+		/**
+		 * Latency of the latest successful probe in milliseconds, -1 if none has succeeded yet
+		 */
+		private long latency = -1;
+
+	}
+
+	/**
+	 * Creates the failover with a background thread of its own, the primary data source is made active
+	 * @param orderPerformer the performer whose data source is swapped
+	 * @param primary the preferred data source
+	 * @param secondaries the data sources used when the primary one is unhealthy, in the order of preference
+	 */
+	public DataSourceFailover(NBPOrderPerformer orderPerformer, NBPDataSource primary, NBPDataSource... secondaries) {
+		this(orderPerformer, Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "data-source-failover");
+			thread.setDaemon(true);
+			return thread;
+		}), true, primary, secondaries);
+	}
+
+	/**
+	 * Creates the failover with a given executor, which is not shut down by the failover
+	 * @param orderPerformer the performer whose data source is swapped
+	 * @param executor runs the health checks
+	 * @param primary the preferred data source
+	 * @param secondaries the data sources used when the primary one is unhealthy, in the order of preference
+	 */
+	public DataSourceFailover(NBPOrderPerformer orderPerformer, ScheduledExecutorService executor, NBPDataSource primary, NBPDataSource... secondaries) {
+		this(orderPerformer, executor, false, primary, secondaries);
+	}
+
+	/**
+	 * Common constructor
+	 * @param orderPerformer the performer whose data source is swapped
+	 * @param executor runs the health checks
+	 * @param ownsExecutor true if the executor has to be shut down with the failover
+	 * @param primary the preferred data source
+	 * @param secondaries the data sources used when the primary one is unhealthy, in the order of preference
+	 */
+	private DataSourceFailover(NBPOrderPerformer orderPerformer, ScheduledExecutorService executor, boolean ownsExecutor, NBPDataSource primary, NBPDataSource... secondaries) {
+		if(secondaries.length == 0)
+			throw new IllegalArgumentException("At least one secondary data source is required");
+		this.orderPerformer = orderPerformer;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		endpoints.put(primary, new Health());
+		for(NBPDataSource secondary : secondaries)
+			endpoints.put(secondary, new Health());
+		this.active = primary;
+		if(orderPerformer.getDataSource() != primary)
+			orderPerformer.setDataSource(primary);
+	}
+
+	/**
+	 * Starts the periodic health checks
+	 * @param interval the interval between the checks
+	 * @param unit the unit of the interval
+	 */
+	public synchronized void start(long interval, TimeUnit unit) {
+		if(healthCheck != null)
+			return;
+		healthCheck = executor.scheduleWithFixedDelay(() -> {
+			try {
+				checkHealth().join();
+			} catch (RuntimeException e) {
+				//the next check runs anyway, the failure is kept for the reports
+				lastCheckError = AsyncUtils.unwrap(e);
+				failedChecks.incrementAndGet();
+			}
+		}, 0, interval, unit);
+	}
+
+	/**
+	 * Probes all the data sources at the same time, updates their health and swaps the active one if needed
+	 * @return the future completed when the probes have been evaluated
+	 */
+	public CompletableFuture<Void> checkHealth() {
+		List<CompletableFuture<Void>> probes = new ArrayList<>();
+		for(NBPDataSource endpoint : getEndpoints()) {
+			long start = System.nanoTime();
+			probes.add(endpoint.probeAsync(probe)
+					.orTimeout(latencyThreshold, TimeUnit.MILLISECONDS)
+					.handle((code, error) -> {
+						long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+						//the server answers, even if it has no data for the probe, unless it is overloaded
+						record(endpoint, error == null && code != 429 && code < 500 && latency <= latencyThreshold, latency);
+						return null;
+					}));
+		}
+		return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).thenRun(this::evaluate);
+	}
+
+	/**
+	 * Helper method, records the result of a single probe
+	 * @param endpoint the probed data source
+	 * @param success whether the probe has succeeded in time
+	 * @param latency the latency of the probe in milliseconds
+	 */
+	private synchronized void record(NBPDataSource endpoint, boolean success, long latency) {
+		Health health = endpoints.get(endpoint);
+		if(success) {
+			health.failures = 0;
+			health.successes++;
+			health.latency = latency;
+			if(!health.healthy && health.successes >= recoveryThreshold)
+				health.healthy = true;
+		} else {
+			health.successes = 0;
+			health.failures++;
+			if(health.healthy && health.failures >= failureThreshold)
+				health.healthy = false;
+		}
+	}
+
+	/**
+	 * Helper method, makes the most preferred healthy data source active, nothing is changed when none is healthy
+	 */
+	private synchronized void evaluate() {
+		for(Map.Entry<NBPDataSource, Health> endpoint : endpoints.entrySet()) {
+			if(endpoint.getValue().healthy) {
+				if(endpoint.getKey() != active)
+					switchTo(endpoint.getKey());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Makes a data source active: the data source of the performer is swapped and all its observers (the orders) are
+	 * notified, the queries already sent to the previous data source are left to finish there
+	 * @param endpoint one of the data sources of the failover
+	 * @return the future completed when the previous data source has no more queries in flight
+	 */
+	public synchronized CompletableFuture<Void> switchTo(NBPDataSource endpoint) {
+		if(!endpoints.containsKey(endpoint))
+			throw new IllegalArgumentException("Unknown data source " + endpoint.getUrlStart());
+		NBPDataSource previous = active;
+		if(previous == endpoint)
+			return CompletableFuture.completedFuture(null);
+		active = endpoint;
+		orderPerformer.setDataSource(endpoint);
+		switches.incrementAndGet();
+		endpoint.getMetrics().recordActivation();
+		return drain(previous);
+	}
+
+	/**
+	 * Waits until a data source has no more queries in flight, it is polled every 10 ms
+	 * @param endpoint the data source
+	 * @return the future completed when the data source is idle
+	 */
+	public CompletableFuture<Void> drain(AbstractDataSource endpoint) {
+		CompletableFuture<Void> drained = new CompletableFuture<>();
+		Runnable[] poll = new Runnable[1];
+		poll[0] = () -> {
+			if(endpoint.getMetrics().getInFlight() == 0)
+				drained.complete(null);
+			else if(!executor.isShutdown())
+				executor.schedule(poll[0], 10, TimeUnit.MILLISECONDS);
+			else
+				drained.cancel(false);
+		};
+		poll[0].run();
+		return drained;
+	}
+
+	/**
+	 * Retrieves the data source the performer is using
+	 * @return the active data source
+	 */
+	public NBPDataSource getActive() {
+		return active;
+	}
+
+	/**
+	 * Retrieves all the data sources, the primary one first
+	 * @return the data sources in the order of preference
+	 */
+	public synchronized List<NBPDataSource> getEndpoints() {
+		return Collections.unmodifiableList(new ArrayList<>(endpoints.keySet()));
+	}
+
+	/**
+	 * Checks whether a data source is considered healthy
+	 * @param endpoint one of the data sources of the failover
+	 * @return true if the data source may be used
+	 */
+	public synchronized boolean isHealthy(NBPDataSource endpoint) {
+		return endpoints.get(endpoint).healthy;
+	}
+
+	/**
+	 * Retrieves the latency of the latest successful probe of a data source
+	 * @param endpoint one of the data sources of the failover
+	 * @return the latency in milliseconds, -1 if no probe has succeeded yet
+	 */
+	public synchronized long getLatency(NBPDataSource endpoint) {
+		return endpoints.get(endpoint).latency;
+	}
+
+	/**
+	 * Retrieves the number of swaps of the data source so far
+	 * @return the number of swaps
+	 */
+	public int getSwitches() {
+		return switches.get();
+	}
+
+	/**
+	 * Retrieves the number of the health checks which could not be completed
+	 * @return the number of failed checks
+	 */
+	public int getFailedChecks() {
+		return failedChecks.get();
+	}
+
+	/**
+	 * Retrieves the error of the latest health check which could not be completed
+	 * @return the error, null if every check has been completed
+	 */
+	public Throwable getLastCheckError() {
+		return lastCheckError;
+	}
+
+	/**
+	 * Sets the query used to probe the data sources
+	 * @param probe the inner part of the URL of the query, sent outside of the limiters of the data sources
+	 */
+	public void setProbe(String probe) {
+		this.probe = probe;
+	}
+
+	/**
+	 * Sets the latency above which a probe is counted as failed
+	 * @param latencyThreshold the threshold in milliseconds
+	 */
+	public void setLatencyThreshold(long latencyThreshold) {
+		this.latencyThreshold = latencyThreshold;
+	}
+
+	/**
+	 * Sets the number of probes in a row which decide about the health of a data source
+	 * @param failureThreshold the number of failed probes after which a data source is unhealthy
+	 * @param recoveryThreshold the number of successful probes after which it is healthy again
+	 */
+	public void setThresholds(int failureThreshold, int recoveryThreshold) {
+		this.failureThreshold = failureThreshold;
+		this.recoveryThreshold = recoveryThreshold;
+	}
+
+	/**
+	 * Stops the health checks, the active data source stays in use
+	 */
+	@Override
+	public synchronized void close() {
+		if(healthCheck != null)
+			healthCheck.cancel(false);
+		if(ownsExecutor)
+			executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,208 @@
+package webapi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the statistics of the requests sent by a data source to its Web API, alongside
+ * with the current values of the limits used to protect the server from being overloaded
+ * @author Patryk Wegrzyn
+ */
+public class DataSourceMetrics {
+
+	/**
+	 * Number of requests sent to the server, retries included
+	 */
+	private final AtomicLong requests = new AtomicLong();
+	/**
+	 * Number of responses with the 429 (Too Many Requests) code
+	 */
+	private final AtomicLong throttled = new AtomicLong();
+	/**
+	 * Number of responses with a 5xx code
+	 */
+	private final AtomicLong serverErrors = new AtomicLong();
+	/**
+	 * Number of requests which have been repeated after a throttling or a server error
+	 */
+	private final AtomicLong retries = new AtomicLong();
+	/**
+	 * Number of health probes sent to the server outside of the limiters
+	 */
+	private final AtomicLong probes = new AtomicLong();
+	/**
+	 * Number of times a failover has made the data source active
+	 */
+	private final AtomicLong activations = new AtomicLong();
+	/**
+	 * Sum of the latencies of all requests, in nanoseconds
+	 */
+	private final AtomicLong totalLatency = new AtomicLong();
+	/**
+	 * The rate limiter of the data source
+	 */
+	private final TokenBucketRateLimiter rateLimiter;
+	/**
+	 * The concurrency limiter of the data source
+	 */
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+	/**
+	 * The single-flight layers of the data source, used to count the coalesced queries
+	 */
+	private final SingleFlight<?, ?>[] flights;
+
+	/**
+	 * Binds the metrics with the limiters of a data source
+	 * @param rateLimiter the rate limiter of the data source
+	 * @param concurrencyLimiter the concurrency limiter of the data source
+	 * @param flights the single-flight layers of the data source
+	 */
+	public DataSourceMetrics(TokenBucketRateLimiter rateLimiter, AdaptiveConcurrencyLimiter concurrencyLimiter, SingleFlight<?, ?>... flights) {
+		this.rateLimiter = rateLimiter;
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.flights = flights;
+	}
+
+	/**
+	 * Records a single request which has been answered by the server
+	 * @param code the HTTP response code
+	 * @param latencyNanos the time the request took, in nanoseconds
+	 */
+	public void recordRequest(int code, long latencyNanos) {
+		requests.incrementAndGet();
+		totalLatency.addAndGet(latencyNanos);
+		if(code == 429)
+			throttled.incrementAndGet();
+		else if(code >= 500)
+			serverErrors.incrementAndGet();
+	}
+
+	/**
+	 * Records a repeated request
+	 */
+	public void recordRetry() {
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * Records a health probe
+	 */
+	public void recordProbe() {
+		probes.incrementAndGet();
+	}
+
+	/**
+	 * Records the data source being made active by a failover
+	 */
+	public void recordActivation() {
+		activations.incrementAndGet();
+	}
+
+	/**
+	 * Retrieves the number of sent requests
+	 * @return the requests counter value
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Retrieves the number of throttled requests
+	 * @return the throttled counter value
+	 */
+	public long getThrottled() {
+		return throttled.get();
+	}
+
+	/**
+	 * Retrieves the number of requests answered with a server error
+	 * @return the serverErrors counter value
+	 */
+	public long getServerErrors() {
+		return serverErrors.get();
+	}
+
+	/**
+	 * Retrieves the number of repeated requests
+	 * @return the retries counter value
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Retrieves the number of health probes
+	 * @return the probes counter value
+	 */
+	public long getProbes() {
+		return probes.get();
+	}
+
+	/**
+	 * Retrieves the number of times a failover has made the data source active
+	 * @return the activations counter value
+	 */
+	public long getActivations() {
+		return activations.get();
+	}
+
+	/**
+	 * Retrieves the number of queries which have been served with the result of an identical query made at the same time
+	 * @return the number of coalesced queries
+	 */
+	public long getCoalesced() {
+		long sum = 0;
+		for(SingleFlight<?, ?> flight : flights)
+			sum += flight.getShared();
+		return sum;
+	}
+
+	/**
+	 * Calculates the average latency of all sent requests
+	 * @return the average latency in milliseconds, 0 if no request has been sent yet
+	 */
+	public double getAverageLatencyMillis() {
+		long count = requests.get();
+		if(count == 0) return 0;
+		return (double) totalLatency.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Retrieves the current rate limit
+	 * @return the number of requests allowed per second
+	 */
+	public double getRateLimit() {
+		return rateLimiter.getPermitsPerSecond();
+	}
+
+	/**
+	 * Retrieves the current concurrency limit
+	 * @return the number of requests allowed at the same time
+	 */
+	public int getConcurrencyLimit() {
+		return concurrencyLimiter.getLimit();
+	}
+
+	/**
+	 * Retrieves the number of requests being processed right now
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight() {
+		return concurrencyLimiter.getInFlight();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Requests: " + getRequests() + " (retried: " + getRetries() + ", throttled: " + getThrottled()
+				+ ", server errors: " + getServerErrors() + ", coalesced: " + getCoalesced() + ")\n"
+				+ "Average latency: " + String.format("%.1f", getAverageLatencyMillis()) + " ms\n"
+				+ "Rate limit: " + getRateLimit() + " requests/s (burst " + rateLimiter.getCapacity() + ")\n"
+				+ "Concurrency limit: " + getConcurrencyLimit() + " (in flight: " + getInFlight() + ", range "
+				+ concurrencyLimiter.getMinLimit() + "-" + concurrencyLimiter.getMaxLimit() + ")"
+				+ ((getProbes() + getActivations() > 0) ? "\nFailover: " + getProbes() + " probes, made active " + getActivations() + " times" : "");
+	}
+
+}
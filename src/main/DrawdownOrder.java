@@ -0,0 +1,164 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the largest drawdown (the largest fall from a peak to a later trough) and the largest rise (the largest
+ * growth from a trough to a later peak) of every currency of table A in a given period, with the dates and prices
+ * of their ends. Unlike the amplitude, the order of the extremes matters here. Every currency is scanned in a single
+ * pass, the currencies and the blocks of their history in parallel, see ParallelAnalytics.drawdowns. The prices are
+ * read from the series store when the period is resident, otherwise the tables are fetched chunk by chunk
+ * @author Patryk Wegrzyn
+ */
+public class DrawdownOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the start and optionally the end of the period
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public DrawdownOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		if(parameters == null || (parameters.length != 1 && parameters.length != 2) || !parameters[0].matches("[\\d]{4}-\\d\\d-\\d\\d")
+				|| (parameters.length == 2 && !parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.start = parameters[0];
+			if(parameters.length == 2) {
+				this.end = parameters[1];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the largest drawdowns and rises of all the currencies from table A in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		Map<String, PriceColumn> resident = SeriesStore.getInstance().readTable("A", "mid", startDay, endDay);
+		if(resident != null) {
+			print(resident);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return dataSource.getMidColumnsAsync(this.start, this.end)
+				.handle((columns, error) -> {
+					if(error != null)
+						reportError(error);
+					else
+						print(columns);
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, scans the columns and prints the moves of every currency, the largest drawdown first
+	 * @param columns the prices of the period, by the codes of the currencies
+	 */
+	private void print(Map<String, PriceColumn> columns) {
+		long startTime = System.nanoTime();
+		ParallelAnalytics analytics = ParallelAnalytics.getInstance();
+		Map<String, DrawdownState> states = analytics.drawdowns(columns);
+		double millis = Math.round((System.nanoTime() - startTime) / 10000.0) / 100.0;
+		List<String> codes = new ArrayList<>();
+		for(Map.Entry<String, DrawdownState> entry : states.entrySet())
+			if(!entry.getValue().isEmpty())
+				codes.add(entry.getKey());
+		if(codes.isEmpty()) {
+			reportError(new WebApiException("Not Found - Brak danych"));
+			return;
+		}
+		codes.sort((a, b) -> Double.compare(states.get(b).getDrawdown(), states.get(a).getDrawdown()));
+		System.out.println("The largest drawdowns and rises of " + codes.size() + " currencies from " + this.start + " to " + this.end
+				+ " (computed in " + millis + " ms on " + analytics.getParallelism() + " threads):");
+		for(String code : codes) {
+			DrawdownState state = states.get(code);
+			PriceColumn column = columns.get(code);
+			String drawdown = (state.getDrawdownPeak() < 0) ? "no drawdown"
+					: "drawdown " + percent(state.getDrawdown()) + " (" + describe(column, state.getDrawdownPeak()) + " to " + describe(column, state.getDrawdownTrough()) + ")";
+			String rise = (state.getRiseTrough() < 0) ? "no rise"
+					: "rise " + percent(state.getRise()) + " (" + describe(column, state.getRiseTrough()) + " to " + describe(column, state.getRisePeak()) + ")";
+			System.out.println(code + ": " + drawdown + ", " + rise);
+		}
+	}
+
+	/**
+	 * Helper method, describes an end of a move
+	 * @param column the column of the prices
+	 * @param index the index of the price
+	 * @return the price and its date
+	 */
+	private static String describe(PriceColumn column, int index) {
+		return column.getValues()[index] + " on " + column.getDate(index);
+	}
+
+	/**
+	 * Helper method, formats a relative move
+	 * @param fraction the move as a fraction
+	 * @return the move in percent, rounded to 2 decimal places
+	 */
+	private static String percent(double fraction) {
+		return Math.round(fraction * 10000) / 100.0 + "%";
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the moves could not be found, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The drawdowns from " + this.start + " to " + this.end + " could not be found: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The drawdowns from " + this.start + " to " + this.end + " could not be found: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
@@ -0,0 +1,205 @@
+package webapi;
+
+/**
+ * The partial result of a scan of a column of prices for its largest ordered moves: the largest drawdown (the largest
+ * relative fall from a price to any later price) and the largest rise (the largest relative growth from a price to
+ * any later price), together with the indices of their ends, and the minimal and the maximal price. A block is
+ * scanned in one pass, keeping the highest price so far as the peak of the drawdowns and the lowest one as the trough
+ * of the rises. The states of consecutive blocks are merged associatively: the moves crossing the border of two blocks
+ * start at the maximum (or the minimum) of the earlier one and end at the minimum (or the maximum) of the later one.
+ * Of equal moves the earliest one is kept
+ * @author Patryk Wegrzyn
+ */
+public final class DrawdownState {
+
+	/**
+	 * The state of an empty block, the identity of the merge
+	 */
+	public static final DrawdownState EMPTY = new DrawdownState(MinMaxState.EMPTY, 0, -1, -1, 0, -1, -1);
+
+	/**
+	 * The minimal and the maximal price
+	 */
+	private final MinMaxState extremes;
+	/**
+	 * The largest drawdown, as a fraction of its peak
+	 */
+	private final double drawdown;
+	/**
+	 * The index of the peak of the largest drawdown, -1 if the prices never fall
+	 */
+	private final int drawdownPeak;
+	/**
+	 * The index of the trough of the largest drawdown
+	 */
+	private final int drawdownTrough;
+	/**
+	 * The largest rise, as a fraction of its trough
+	 */
+	private final double rise;
+	/**
+	 * The index of the trough of the largest rise, -1 if the prices never rise
+	 */
+	private final int riseTrough;
+	/**
+	 * The index of the peak of the largest rise
+	 */
+	private final int risePeak;
+
+	/**
+	 * Typical constructor
+	 * @param extremes the minimal and the maximal price
+	 * @param drawdown the largest drawdown, as a fraction of its peak
+	 * @param drawdownPeak the index of the peak of the largest drawdown
+	 * @param drawdownTrough the index of the trough of the largest drawdown
+	 * @param rise the largest rise, as a fraction of its trough
+	 * @param riseTrough the index of the trough of the largest rise
+	 * @param risePeak the index of the peak of the largest rise
+	 */
+	public DrawdownState(MinMaxState extremes, double drawdown, int drawdownPeak, int drawdownTrough, double rise, int riseTrough, int risePeak) {
+		this.extremes = extremes;
+		this.drawdown = drawdown;
+		this.drawdownPeak = drawdownPeak;
+		this.drawdownTrough = drawdownTrough;
+		this.rise = rise;
+		this.riseTrough = riseTrough;
+		this.risePeak = risePeak;
+	}
+
+	/**
+	 * Scans a block of a column sequentially
+	 * @param values the column of prices
+	 * @param from the first index of the block
+	 * @param to the index following the block
+	 * @return the state of the block
+	 */
+	public static DrawdownState of(double[] values, int from, int to) {
+		if(from >= to)
+			return EMPTY;
+		int minIdx = from, maxIdx = from;
+		double drawdown = 0, rise = 0;
+		int drawdownPeak = -1, drawdownTrough = -1, riseTrough = -1, risePeak = -1;
+		for(int i=from; i<to; i++) {
+			double value = values[i];
+			if(value > values[maxIdx])
+				maxIdx = i;
+			if(value < values[minIdx])
+				minIdx = i;
+			double fall = 1 - value / values[maxIdx];
+			if(fall > drawdown) {
+				drawdown = fall;
+				drawdownPeak = maxIdx;
+				drawdownTrough = i;
+			}
+			double growth = value / values[minIdx] - 1;
+			if(growth > rise) {
+				rise = growth;
+				riseTrough = minIdx;
+				risePeak = i;
+			}
+		}
+		return new DrawdownState(new MinMaxState(values[minIdx], minIdx, values[maxIdx], maxIdx), drawdown, drawdownPeak, drawdownTrough, rise, riseTrough, risePeak);
+	}
+
+	/**
+	 * Merges the state of the following block into this one
+	 * @param later the state of a block following this one in the column
+	 * @return the state of both blocks
+	 */
+	public DrawdownState merge(DrawdownState later) {
+		if(later.isEmpty())
+			return this;
+		if(isEmpty())
+			return later;
+		double drawdown = this.drawdown, rise = this.rise;
+		int drawdownPeak = this.drawdownPeak, drawdownTrough = this.drawdownTrough, riseTrough = this.riseTrough, risePeak = this.risePeak;
+		double crossFall = 1 - later.extremes.getMin() / extremes.getMax();
+		if(crossFall > drawdown) {
+			drawdown = crossFall;
+			drawdownPeak = extremes.getIndexOfMax();
+			drawdownTrough = later.extremes.getIndexOfMin();
+		}
+		if(later.drawdown > drawdown) {
+			drawdown = later.drawdown;
+			drawdownPeak = later.drawdownPeak;
+			drawdownTrough = later.drawdownTrough;
+		}
+		double crossGrowth = later.extremes.getMax() / extremes.getMin() - 1;
+		if(crossGrowth > rise) {
+			rise = crossGrowth;
+			riseTrough = extremes.getIndexOfMin();
+			risePeak = later.extremes.getIndexOfMax();
+		}
+		if(later.rise > rise) {
+			rise = later.rise;
+			riseTrough = later.riseTrough;
+			risePeak = later.risePeak;
+		}
+		return new DrawdownState(extremes.merge(later.extremes), drawdown, drawdownPeak, drawdownTrough, rise, riseTrough, risePeak);
+	}
+
+	/**
+	 * Checks whether the state is the state of an empty block
+	 * @return true if no prices have been scanned
+	 */
+	public boolean isEmpty() {
+		return extremes.isEmpty();
+	}
+
+	/**
+	 * Retrieves the minimal and the maximal price
+	 * @return the extremes of the prices, the same as the result of a plain scan
+	 */
+	public MinMaxState getExtremes() {
+		return extremes;
+	}
+
+	/**
+	 * Retrieves the largest drawdown
+	 * @return the largest relative fall, 0.25 for a fall by a quarter, 0 if the prices never fall
+	 */
+	public double getDrawdown() {
+		return drawdown;
+	}
+
+	/**
+	 * Retrieves the index of the peak of the largest drawdown
+	 * @return the index into the column, -1 if the prices never fall
+	 */
+	public int getDrawdownPeak() {
+		return drawdownPeak;
+	}
+
+	/**
+	 * Retrieves the index of the trough of the largest drawdown
+	 * @return the index into the column, -1 if the prices never fall
+	 */
+	public int getDrawdownTrough() {
+		return drawdownTrough;
+	}
+
+	/**
+	 * Retrieves the largest rise
+	 * @return the largest relative growth, 0.25 for a growth by a quarter, 0 if the prices never rise
+	 */
+	public double getRise() {
+		return rise;
+	}
+
+	/**
+	 * Retrieves the index of the trough of the largest rise
+	 * @return the index into the column, -1 if the prices never rise
+	 */
+	public int getRiseTrough() {
+		return riseTrough;
+	}
+
+	/**
+	 * Retrieves the index of the peak of the largest rise
+	 * @return the index into the column, -1 if the prices never rise
+	 */
+	public int getRisePeak() {
+		return risePeak;
+	}
+
+}
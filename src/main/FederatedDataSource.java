@@ -0,0 +1,365 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A composite data source, which sends the same logical query (the mid prices of a currency or the prices of gold in a
+ * period) to several providers with different URL schemes and adapts their responses into a compressed series. The
+ * providers are tried in the order of their recent latency: the query is sent to the fastest one first and hedged with
+ * the next one when no answer has arrived within a few of its typical latencies, or straight away when it has failed.
+ * The first valid (non-empty) answer wins: the other providers stop reading their responses, and the queries which are
+ * still waiting for the limiters of their data sources are cancelled, giving their permits back, or not sent at all
+ * @author Patryk Wegrzyn
+ */
+public class FederatedDataSource {
+
+	/**
+	 * The weight of the latest latency in the moving average of the latencies of a provider
+	 */
+	public static final double LATENCY_WEIGHT = 0.2;
+	/**
+	 * The typical latencies of the fastest provider after which the query is hedged with the next one
+	 */
+	public static final double HEDGE_FACTOR = 3;
+	/**
+	 * The shortest time after which the query is hedged with the next provider, in milliseconds
+	 */
+	public static final long MIN_HEDGE_DELAY = 20;
+	/**
+	 * The latency added to a failed query in the moving average, in milliseconds
+	 */
+	public static final long FAILURE_PENALTY = 1000;
+
+	/**
+	 * The providers and their statistics, in the order they have been given
+	 */
+	private final Map<IRateProvider, ProviderStats> providers = new LinkedHashMap<>();
+	/**
+	 * The fixed time after which a query is hedged in milliseconds, -1 if it is derived from the latencies
+	 */
+	private volatile long hedgeDelay = -1;
+
+	/**
+	 * The statistics of the queries sent to a single provider
+	 */
+	private static class ProviderStats {
+
+		/**
+		 * Exponentially weighted moving average of the latencies in milliseconds, -1 if none has been measured yet
+		 */
+		private double latency = -1;
+		/**
+		 * Number of the valid answers
+		 */
+		private long successes = 0;
+		/**
+		 * Number of the failed queries and empty answers
+		 */
+		private long failures = 0;
+		/**
+		 * Number of the answers which have won the race
+		 */
+		private long wins = 0;
+
+		/**
+		 * Adds a latency to the moving average
+		 * @param millis the latency in milliseconds
+		 */
+		private synchronized void record(double millis) {
+			latency = (latency < 0) ? millis : latency + LATENCY_WEIGHT * (millis - latency);
+		}
+
+	}
+
+	/**
+	 * Typical constructor
+	 * @param providers the providers, the ones without any statistics yet are tried in this order
+	 */
+	public FederatedDataSource(IRateProvider... providers) {
+		if(providers.length == 0)
+			throw new IllegalArgumentException("At least one provider is required");
+		for(IRateProvider provider : providers)
+			this.providers.put(provider, new ProviderStats());
+	}
+
+	/**
+	 * Retrieves the mid prices of a currency in a period from the fastest provider which has them
+	 * @param code the code of the currency
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the future of the prices, failed with the "Not Found" WebApiException when no provider has them
+	 */
+	public CompletableFuture<CompressedSeries> getMidRatesAsync(String code, String start, String end) {
+		return query(provider -> provider.getMidRatesURL(code, start, end), provider -> provider.getMidRatesReader(code));
+	}
+
+	/**
+	 * Retrieves the prices of gold in a period from the fastest provider which has them
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the future of the prices, failed with the "Not Found" WebApiException when no provider has them
+	 */
+	public CompletableFuture<CompressedSeries> getGoldPricesAsync(String start, String end) {
+		return query(provider -> provider.getGoldPricesURL(start, end), IRateProvider::getGoldPricesReader);
+	}
+
+	/**
+	 * Helper method, races the providers which support a query
+	 * @param urls translates the query for a provider, null if the provider does not support it
+	 * @param readers supplies the reader of the responses of a provider
+	 * @return the future of the first valid answer
+	 */
+	private CompletableFuture<CompressedSeries> query(Function<IRateProvider, String> urls, Function<IRateProvider, RateRecordReader> readers) {
+		List<IRateProvider> ranking = new ArrayList<>();
+		for(IRateProvider provider : getRanking())
+			if(urls.apply(provider) != null)
+				ranking.add(provider);
+		if(ranking.isEmpty())
+			return CompletableFuture.failedFuture(new WebApiException("No provider supports this query"));
+		Race race = new Race(ranking, urls, readers);
+		race.launch();
+		return race.winner;
+	}
+
+	/**
+	 * A single query raced by the providers
+	 */
+	private class Race {
+
+		/**
+		 * The providers which support the query, in the order they are tried
+		 */
+		private final List<IRateProvider> ranking;
+		/**
+		 * Translates the query for a provider
+		 */
+		private final Function<IRateProvider, String> urls;
+		/**
+		 * Supplies the reader of the responses of a provider
+		 */
+		private final Function<IRateProvider, RateRecordReader> readers;
+		/**
+		 * The future of the first valid answer
+		 */
+		private final CompletableFuture<CompressedSeries> winner = new CompletableFuture<>();
+		/**
+		 * The queries sent to the providers, cancelled when the race is over
+		 */
+		private final List<CompletableFuture<Void>> attempts = new ArrayList<>();
+		/**
+		 * Number of the providers the query has been sent to
+		 */
+		private int launched = 0;
+		/**
+		 * Number of the providers which have answered without winning
+		 */
+		private int lost = 0;
+		/**
+		 * Set while every answer so far has had no data
+		 */
+		private boolean allMissing = true;
+		/**
+		 * The error of the latest failed provider
+		 */
+		private Throwable lastError;
+
+		/**
+		 * Typical constructor
+		 * @param ranking the providers which support the query, in the order they are tried
+		 * @param urls translates the query for a provider
+		 * @param readers supplies the reader of the responses of a provider
+		 */
+		private Race(List<IRateProvider> ranking, Function<IRateProvider, String> urls, Function<IRateProvider, RateRecordReader> readers) {
+			this.ranking = ranking;
+			this.urls = urls;
+			this.readers = readers;
+			winner.whenComplete((series, error) -> cancelLosers());
+		}
+
+		/**
+		 * Cancels the queries which have not answered yet, once there is a winner or the race has been cancelled
+		 */
+		private void cancelLosers() {
+			List<CompletableFuture<Void>> losers;
+			synchronized(this) {
+				losers = new ArrayList<>(attempts);
+			}
+			for(CompletableFuture<Void> attempt : losers)
+				attempt.cancel(true);
+		}
+
+		/**
+		 * Sends the query to the next provider, unless the race is over, and schedules the hedge with the one after it
+		 */
+		private void launch() {
+			IRateProvider provider;
+			synchronized(this) {
+				if(winner.isDone() || launched == ranking.size())
+					return;
+				provider = ranking.get(launched++);
+				if(launched < ranking.size())
+					CompletableFuture.delayedExecutor(getHedgeDelay(ranking.get(0)), TimeUnit.MILLISECONDS).execute(this::launch);
+			}
+			long start = System.nanoTime();
+			CompressedSeries series = new CompressedSeries();
+			RateRecordSink sink = (date, code, value) -> {
+				//the losers which have been sent stop reading their responses once they arrive, and only their latency is recorded
+				if(winner.isDone()) {
+					recordLoser(provider, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+					throw new CancellationException("Another provider has answered first");
+				}
+				series.append(date, value);
+			};
+			CompletableFuture<Void> answered;
+			try {
+				answered = provider.getDataSource().streamRecordsAsync(urls.apply(provider), readers.apply(provider), sink);
+			} catch (RuntimeException e) {
+				answered = CompletableFuture.failedFuture(e);
+			}
+			synchronized(this) {
+				attempts.add(answered);
+			}
+			//the race may have ended while the query was being sent
+			if(winner.isDone())
+				answered.cancel(true);
+			answered.whenComplete((v, error) -> finish(provider, series, error, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+		}
+
+		/**
+		 * Records the latency of an answer which has arrived after the race was over
+		 * @param provider the provider
+		 * @param latency the time until the first record of the answer in milliseconds
+		 */
+		private void recordLoser(IRateProvider provider, long latency) {
+			ProviderStats stats = providers.get(provider);
+			//only a lower bound of the latency is known, it matters only if the provider is slower than expected
+			synchronized(stats) {
+				if(latency > stats.latency)
+					stats.record(latency);
+			}
+		}
+
+		/**
+		 * Records the answer of a provider, the first valid one wins the race, a failure sends the query to the next provider
+		 * @param provider the provider
+		 * @param series the prices read from its answer
+		 * @param error the failure of the query, null if it has succeeded
+		 * @param latency the latency of the query in milliseconds
+		 */
+		private void finish(IRateProvider provider, CompressedSeries series, Throwable error, long latency) {
+			ProviderStats stats = providers.get(provider);
+			Throwable cause = (error == null) ? null : AsyncUtils.unwrap(error);
+			if(cause == null && series.size() > 0) {
+				stats.record(latency);
+				synchronized(stats) {
+					stats.successes++;
+					if(winner.complete(series))
+						stats.wins++;
+				}
+				return;
+			}
+			//a cancelled query has been measured by its sink, if its answer has arrived at all
+			if(cause instanceof CancellationException)
+				return;
+			stats.record(latency + FAILURE_PENALTY);
+			synchronized(stats) {
+				stats.failures++;
+			}
+			boolean over;
+			synchronized(this) {
+				lost++;
+				if(cause != null && !AsyncUtils.isMissingData(cause)) {
+					allMissing = false;
+					lastError = cause;
+				}
+				over = (lost == ranking.size());
+			}
+			if(over)
+				winner.completeExceptionally(allMissing ? new WebApiException("Not Found - Brak danych") : lastError);
+			else
+				launch();
+		}
+
+	}
+
+	/**
+	 * Helper method, finds the time after which a query is hedged with the next provider
+	 * @param first the provider the query has been sent to first
+	 * @return the time in milliseconds
+	 */
+	private long getHedgeDelay(IRateProvider first) {
+		if(hedgeDelay >= 0)
+			return hedgeDelay;
+		double latency = getLatency(first);
+		return Math.max(MIN_HEDGE_DELAY, (long) (HEDGE_FACTOR * latency));
+	}
+
+	/**
+	 * Retrieves the providers in the order they are tried, from the lowest average latency, the ones without any
+	 * statistics yet go first, so that they are measured
+	 * @return the ranking of the providers
+	 */
+	public synchronized List<IRateProvider> getRanking() {
+		List<IRateProvider> ranking = new ArrayList<>(providers.keySet());
+		ranking.sort(Comparator.comparingDouble(provider -> Math.max(0, getLatency(provider))));
+		return ranking;
+	}
+
+	/**
+	 * Retrieves the average latency of a provider
+	 * @param provider one of the providers
+	 * @return the moving average of its latencies in milliseconds, -1 if none has been measured yet
+	 */
+	public double getLatency(IRateProvider provider) {
+		ProviderStats stats = providers.get(provider);
+		synchronized(stats) {
+			return stats.latency;
+		}
+	}
+
+	/**
+	 * Retrieves the number of the races won by a provider
+	 * @param provider one of the providers
+	 * @return the number of its answers which have been used
+	 */
+	public long getWins(IRateProvider provider) {
+		ProviderStats stats = providers.get(provider);
+		synchronized(stats) {
+			return stats.wins;
+		}
+	}
+
+	/**
+	 * Sets a fixed time after which a query is hedged with the next provider
+	 * @param hedgeDelay the time in milliseconds, 0 to send every query to all the providers at once,
+	 * -1 to derive it from the latencies of the providers
+	 */
+	public void setHedgeDelay(long hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for(IRateProvider provider : getRanking()) {
+			ProviderStats stats = providers.get(provider);
+			synchronized(stats) {
+				builder.append(String.format("%s: latency %.1f ms, %d answers, %d failures, %d wins%n", provider.getName(),
+						stats.latency, stats.successes, stats.failures, stats.wins));
+			}
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,76 @@
+package webapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Exposes a federated data source to the orders as the NBP data source: the streamed queries for the mid prices of a
+ * single currency and for the prices of gold are raced by the providers of the federation, all the other queries (the
+ * tables, and the JSON trees of getJsonObjFromURL / getJsonArrFromURL) are sent to the primary data source, whose limits,
+ * limiters and metrics this data source shares
+ * @author Patryk Wegrzyn
+ */
+public class FederatedNBPDataSource extends NBPDataSource {
+
+	/**
+	 * The query for the mid prices of a single currency in a period
+	 */
+	private static final Pattern MID_RATES = Pattern.compile("exchangerates/rates/[aA]/(\\w+)/(\\d{4}-\\d{2}-\\d{2})/(\\d{4}-\\d{2}-\\d{2})");
+	/**
+	 * The query for the prices of gold in a period
+	 */
+	private static final Pattern GOLD_PRICES = Pattern.compile("cenyzlota/(\\d{4}-\\d{2}-\\d{2})/(\\d{4}-\\d{2}-\\d{2})");
+
+	/**
+	 * The providers the federated queries are raced by
+	 */
+	private final FederatedDataSource federation;
+
+	/**
+	 * Typical constructor
+	 * @param primary the data source of the queries which are not federated
+	 * @param federation the providers of the federated queries
+	 */
+	public FederatedNBPDataSource(NBPDataSource primary, FederatedDataSource federation) {
+		this.federation = federation;
+		this.urlStart = primary.getUrlStart();
+		this.urlEnd = primary.getUrlEnd();
+		this.maxPeriodPerQuery = primary.getMaxPeriodPerQuery();
+		this.maxRetries = primary.getMaxRetries();
+		this.prefetchedChunks = primary.getPrefetchedChunks();
+		this.rateLimiter = primary.rateLimiter;
+		this.concurrencyLimiter = primary.concurrencyLimiter;
+		this.metrics = primary.metrics;
+		this.httpClient = primary.httpClient;
+		setMaxPeriodPerQuery2(primary.getMaxPeriodPerQuery2());
+		setCurrenciesInTableA(primary.getCurrenciesInTableA());
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.AbstractDataSource#streamRecordsAsync(java.lang.String, webapi.RateRecordReader, webapi.RateRecordSink)
+	 */
+	@Override
+	public CompletableFuture<Void> streamRecordsAsync(String innerURL, RateRecordReader reader, RateRecordSink sink) {
+		Matcher matcher = MID_RATES.matcher(innerURL);
+		if(matcher.matches()) {
+			String code = matcher.group(1).toUpperCase();
+			return federation.getMidRatesAsync(code, matcher.group(2), matcher.group(3))
+					.thenAccept(series -> reader.replay(series, code, sink));
+		}
+		matcher = GOLD_PRICES.matcher(innerURL);
+		if(matcher.matches())
+			return federation.getGoldPricesAsync(matcher.group(1), matcher.group(2))
+					.thenAccept(series -> reader.replay(series, null, sink));
+		return super.streamRecordsAsync(innerURL, reader, sink);
+	}
+
+	/**
+	 * Retrieves the providers of the federated queries
+	 * @return the federated data source
+	 */
+	public FederatedDataSource getFederation() {
+		return federation;
+	}
+
+}
@@ -0,0 +1,30 @@
+package webapi;
+
+/**
+ * A sink which keeps the name of the price field of every record, for example the bid and ask prices of table C.
+ * The records without a field name are consumed with a null field
+ * @author Patryk Wegrzyn
+ *
+ */
+@FunctionalInterface
+public interface FieldRecordSink extends RateRecordSink {
+
+	/* (non-Javadoc)
+	 * @see webapi.RateRecordSink#accept(java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public default void accept(String date, String code, double value) {
+		accept(date, code, null, value);
+	}
+
+	/**
+	 * Consumes a single decoded record together with the name of its price field
+	 * @param date the date of the record, format yyyy-MM-dd
+	 * @param code the code of the currency (or the default code of the reader)
+	 * @param field the name of the price field, null if the record has none
+	 * @param value the price
+	 */
+	@Override
+	public void accept(String date, String code, String field, double value);
+
+}
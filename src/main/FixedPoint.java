@@ -0,0 +1,148 @@
+package webapi;
+
+/**
+ * Static helpers of the fixed-point representation of the prices: a price is a long holding the number of ten
+ * thousandths, so the four decimal places of the NBP prices are represented exactly and the sums, averages and
+ * differences of the prices are computed with exact long arithmetic. The prices are parsed straight from the text
+ * of the JSON numbers, without a BigDecimal or a double in between
+ * @author Patryk Wegrzyn
+ */
+public final class FixedPoint {
+
+	/**
+	 * Number of decimal places of the representation
+	 */
+	public static final int DIGITS = 4;
+	/**
+	 * The value of 1 in the representation
+	 */
+	public static final long SCALE = 10_000;
+	/**
+	 * Returned by parseExact when the text cannot be represented exactly
+	 */
+	public static final long INEXACT = Long.MIN_VALUE;
+
+	/**
+	 * No instances, only static helpers
+	 */
+	private FixedPoint() {}
+
+	/**
+	 * Parses a decimal number in the plain notation of JSON (an optional minus, digits and an optional fraction)
+	 * @param text the number, for example "154.23"
+	 * @return the fixed-point value, INEXACT if the number has more than four significant decimal places, an exponent,
+	 * or more than 11 integer digits (so that every exact value converts to a double without rounding)
+	 */
+	public static long parseExact(CharSequence text) {
+		int length = text.length();
+		int i = 0;
+		boolean negative = false;
+		if(i < length && text.charAt(i) == '-') {
+			negative = true;
+			i++;
+		}
+		if(i == length)
+			return INEXACT;
+		long units = 0;
+		int digits = 0;
+		for(; i < length && text.charAt(i) != '.'; i++) {
+			char c = text.charAt(i);
+			if(c < '0' || c > '9' || ++digits > 11)
+				return INEXACT;
+			units = units * 10 + (c - '0');
+		}
+		if(digits == 0)
+			return INEXACT;
+		long fraction = 0;
+		int places = 0;
+		if(i < length) {
+			//skip the dot, at least one digit has to follow it
+			if(++i == length)
+				return INEXACT;
+			for(; i < length; i++) {
+				char c = text.charAt(i);
+				if(c < '0' || c > '9')
+					return INEXACT;
+				if(places == DIGITS) {
+					if(c != '0')
+						return INEXACT;
+					continue;
+				}
+				fraction = fraction * 10 + (c - '0');
+				places++;
+			}
+		}
+		for(; places < DIGITS; places++)
+			fraction *= 10;
+		long value = units * SCALE + fraction;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a decimal number, the numbers which cannot be represented exactly are rounded to four decimal places
+	 * @param text the number, for example "154.23" or "1.5E-3"
+	 * @return the fixed-point value
+	 * @throws NumberFormatException thrown when the text is not a number
+	 */
+	public static long parse(CharSequence text) {
+		long value = parseExact(text);
+		return (value != INEXACT) ? value : fromDouble(Double.parseDouble(text.toString()));
+	}
+
+	/**
+	 * Converts a double to the representation, rounding it to four decimal places
+	 * @param value the number
+	 * @return the fixed-point value
+	 */
+	public static long fromDouble(double value) {
+		return Math.round(value * SCALE);
+	}
+
+	/**
+	 * Converts a fixed-point value to the nearest double, which is the same double the text of the number parses to
+	 * @param value the fixed-point value
+	 * @return the number
+	 */
+	public static double toDouble(long value) {
+		return value / (double) SCALE;
+	}
+
+	/**
+	 * Computes the average of fixed-point values, rounded half away from zero to four decimal places
+	 * @param sum the sum of the values
+	 * @param count the number of the values, positive
+	 * @return the fixed-point average
+	 */
+	public static long average(long sum, long count) {
+		long quotient = sum / count;
+		long remainder = sum % count;
+		if(Math.abs(remainder) * 2 >= count)
+			quotient += (sum < 0) ? -1 : 1;
+		return quotient;
+	}
+
+	/**
+	 * Formats a fixed-point value without the trailing zeros of the fraction, but with at least one decimal place,
+	 * the same way a double with this value would be printed
+	 * @param value the fixed-point value
+	 * @return the text of the number, for example "154.23" or "150.0"
+	 */
+	public static String format(long value) {
+		StringBuilder text = new StringBuilder(24);
+		if(value < 0)
+			text.append('-');
+		long magnitude = Math.abs(value);
+		text.append(magnitude / SCALE).append('.');
+		long fraction = magnitude % SCALE;
+		int places = DIGITS;
+		while(places > 1 && fraction % 10 == 0) {
+			fraction /= 10;
+			places--;
+		}
+		String digits = Long.toString(fraction);
+		for(int i=digits.length(); i<places; i++)
+			text.append('0');
+		return text.append(digits).toString();
+	}
+
+}
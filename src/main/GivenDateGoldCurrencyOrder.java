@@ -1,31 +1,33 @@
 package webapi;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 /**
- * Retrieves the price of gold and given currency on a given date
+ * Retrieves the price of gold and given currencies on given dates. The whole table A and the price of gold are
+ * fetched once per date, all the dates concurrently, and the currencies are looked up in the fetched tables
  * @author Patryk Wegrzyn
  */
-public class GivenDateGoldCurrencyOrder implements IOrderExecutable, Observer {
+public class GivenDateGoldCurrencyOrder implements IAsyncOrderExecutable, Observer {
 
 	/**
-	 * The currency in question
+	 * The currencies in question, in the order they have been given
 	 */
-	private String currency;
+	private List<String> currencies = new ArrayList<>();
 	/**
-	 * The date in question, if none is provided the current date is assumed
+	 * The dates in question, if none is provided the current date is assumed
 	 */
-	private String date;
+	private List<String> dates = new ArrayList<>();
 	/**
 	 * The NBP data source API
 	 */
-	private NBPDataSource dataSource;
+	private volatile NBPDataSource dataSource;
 	/**
 	 * Flag set when the passed arguments have and invalid format
 	 */
@@ -33,63 +35,111 @@ public class GivenDateGoldCurrencyOrder implements IOrderExecutable, Observer {
 
 	/**
 	 * Typical constructor
-	 * @param parameters User input CLI parameters
+	 * @param parameters User input CLI parameters, the codes of the currencies followed by the dates
 	 * @param dataSource The given NBP data source
 	 * @param orderPerformer The subject to be observed
 	 */
 	public GivenDateGoldCurrencyOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
-		if((parameters.length != 2 && parameters.length != 1) || !parameters[0].matches("[\\w]{3}"))
+		if(parameters == null || parameters.length == 0 || !parameters[0].matches("[\\w]{3}"))
 			this.wrongArgFormat = true;
 		if (!wrongArgFormat) {
-			if (parameters.length == 1) {
+			for(String parameter : parameters) {
+				if(parameter.matches("[\\w]{3}") && this.dates.isEmpty()) {
+					if(!this.currencies.contains(parameter))
+						this.currencies.add(parameter);
+				} else if(parameter.matches("[\\d]{4}-\\d\\d-\\d\\d")) {
+					if(!this.dates.contains(parameter))
+						this.dates.add(parameter);
+				} else {
+					this.wrongArgFormat = true;
+				}
+			}
+			if (this.dates.isEmpty()) {
 				Date now = new Date(System.currentTimeMillis());
 				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-				this.date = formatter.format(now);
-			} else if (parameters.length == 2) {
-				this.date = parameters[1];
-				if(!parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d"))
-					this.wrongArgFormat = true;
+				this.dates.add(formatter.format(now));
 			}
-			this.currency = parameters[0];
 			this.dataSource = dataSource;
 			orderPerformer.register(this);
 		}
 	}
 
 	/* (non-Javadoc)
-	 * @see webapi.IOrderExecutable#execute()
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
 	 */
 	@Override
-	public void execute() throws MalformedURLException, IOException, WebApiException  {
-		System.out.println("Price of gold and given currency in a given day...");
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Prices of gold and given currencies on given days...");
 		if(wrongArgFormat) {
 			System.out.println("Error! The format of passed arguments is invalid");
-			return;
+			return CompletableFuture.completedFuture(null);
 		}
 		
-		JsonObject object, arrayObject;
-		JsonArray array;
-		
-		try {
-			object = dataSource.getJsonObjFromURL("exchangerates/rates/A/" + this.currency + "/" + this.date);
-			array = object.get("rates").asJsonArray();
-			arrayObject = array.getJsonObject(0);
-			System.out.println("The price of " + object.getString("code") + " on " + this.date + " was " + arrayObject.get("mid"));
-		} catch (WebApiException e) {
-			System.out.println("The price of " + this.currency + " on " + this.date + " could not be retrieved: " + e.getMessage());
-		} catch (javax.json.stream.JsonParsingException e) {
-			System.out.println("The price of " + this.currency + " on " + this.date + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
+		//the queries of all the dates are sent at once, the results are printed in the order of the dates
+		List<CompletableFuture<JsonArray>> tables = new ArrayList<>();
+		List<CompletableFuture<JsonArray>> goldPrices = new ArrayList<>();
+		for(String date : this.dates) {
+			tables.add(dataSource.getJsonArrFromURLAsync("exchangerates/tables/A/" + date));
+			goldPrices.add(dataSource.getJsonArrFromURLAsync("cenyzlota/" + date));
 		}
-		
-		try {
-			array = dataSource.getJsonArrFromURL("cenyzlota/" + this.date);
-			arrayObject = array.getJsonObject(0);
-			System.out.println("The price of gold on " + this.date + " was " + arrayObject.get("cena"));
-		} catch (WebApiException e) {
-			System.out.println("The price of gold on " + this.date + " could not be retrieved: " + e.getMessage());
-		} catch (javax.json.stream.JsonParsingException e) {
-			System.out.println("The price of gold on " + this.date + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
+		List<CompletableFuture<JsonArray>> all = new ArrayList<>(tables);
+		all.addAll(goldPrices);
+		return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).handle((v, ignored) -> {
+			for(int i=0; i<this.dates.size(); i++) {
+				String date = this.dates.get(i);
+				JsonArray table = tables.get(i).handle((array, error) -> {
+					if(error != null)
+						reportError(error, String.join(", ", this.currencies), date);
+					return array;
+				}).join();
+				if(table != null)
+					for(String currency : this.currencies)
+						printCurrency(table, currency, date);
+				JsonArray gold = goldPrices.get(i).handle((array, error) -> {
+					if(error != null)
+						reportError(error, "gold", date);
+					return array;
+				}).join();
+				if(gold != null)
+					System.out.println("The price of gold on " + date + " was " + gold.getJsonObject(0).get("cena"));
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Helper method, looks up the price of a currency in a fetched table and prints it
+	 * @param table the fetched table A
+	 * @param currency the currency, as it has been requested
+	 * @param date the date of the table
+	 */
+	private void printCurrency(JsonArray table, String currency, String date) {
+		JsonArray rates = table.getJsonObject(0).getJsonArray("rates");
+		for(int i=0; i<rates.size(); i++) {
+			JsonObject rate = rates.getJsonObject(i);
+			if(rate.getString("code").equalsIgnoreCase(currency)) {
+				System.out.println("The price of " + rate.getString("code") + " on " + date + " was " + rate.get("mid"));
+				return;
+			}
 		}
+		reportError(new WebApiException("Not Found - Brak danych"), currency, date);
+	}
+
+	/**
+	 * Helper method, prints the message explaining why a price could not be retrieved, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 * @param subject the currency (or the list of the currencies, or gold) in question
+	 * @param date the date in question
+	 */
+	private void reportError(Throwable error, String subject, String date) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The price of " + subject + " on " + date + " could not be retrieved: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The price of " + subject + " on " + date + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
 	}
 
 	/* (non-Javadoc)
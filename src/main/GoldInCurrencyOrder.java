@@ -0,0 +1,191 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the price of a gram of gold in a given currency from table A on every day of a given period. The prices of
+ * gold and the mid prices of the currency are fetched chunk by chunk, the two queries of a chunk in parallel, and
+ * joined on their dates with a merge join: both of them are sorted by date, so the join walks each of them once.
+ * The lines of a chunk are printed as soon as the chunk is joined, so a long period is streamed rather than collected.
+ * The series store is read instead when it holds the whole period of both of them
+ * @author Patryk Wegrzyn
+ */
+public class GoldInCurrencyOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The currency in question
+	 */
+	private String currency;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the currency, the start and optionally the end of the period
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public GoldInCurrencyOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		if(parameters == null || (parameters.length != 2 && parameters.length != 3) || !parameters[0].matches("[\\w]{3}")
+				|| !parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d") || (parameters.length == 3 && !parameters[2].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.currency = parameters[0].toUpperCase();
+			this.start = parameters[1];
+			if(parameters.length == 3) {
+				this.end = parameters[2];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the price of gold in a given currency in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		SeriesStore store = SeriesStore.getInstance();
+		String key = SeriesStore.key("A", this.currency, "mid");
+		if(store.covers(SeriesStore.GOLD, startDay, endDay) && store.covers(key, startDay, endDay)) {
+			int printed = print(0, join(read(store.getSeries(SeriesStore.GOLD), startDay, endDay), read(store.getSeries(key), startDay, endDay)));
+			if(printed == 0)
+				reportError(new WebApiException("Not Found - Brak danych"));
+			return CompletableFuture.completedFuture(null);
+		}
+
+		List<String[]> chunks = dataSource.splitPeriod(this.start, this.end, dataSource.getMaxPeriodPerQuery());
+		return dataSource.foldChunks(chunks, chunk -> fetch("cenyzlota/" + chunk[0] + "/" + chunk[1], RateRecordReader.forGoldPrices(SeriesStore.GOLD))
+						.thenCombine(fetch("exchangerates/rates/A/" + this.currency + "/" + chunk[0] + "/" + chunk[1], RateRecordReader.forMidRates()),
+								this::join),
+				0, this::print)
+				.handle((printed, error) -> {
+					if(error == null && printed == 0)
+						error = new WebApiException("Not Found - Brak danych");
+					if(error != null)
+						reportError(error);
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, fetches the prices of a chunk into a column, a chunk without any data gives an empty column
+	 * @param innerURL the query of the chunk
+	 * @param reader decodes the records of the response
+	 * @return the future of the column of the prices
+	 */
+	private CompletableFuture<PriceColumn> fetch(String innerURL, RateRecordReader reader) {
+		PriceColumn column = new PriceColumn(0, true);
+		return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(innerURL, reader, (date, code, value) -> column.append(date, value)), column);
+	}
+
+	/**
+	 * Helper method, reads the prices of the period from a resident series
+	 * @param series the series
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the column of the prices
+	 */
+	private static PriceColumn read(CompressedSeries series, int startDay, int endDay) {
+		PriceColumn column = new PriceColumn(0, true);
+		CompressedSeries.Cursor cursor = series.cursor(startDay, endDay);
+		while(cursor.next())
+			column.append(LocalDate.ofEpochDay(cursor.getDay()).toString(), cursor.getValue());
+		return column;
+	}
+
+	/**
+	 * Helper method, joins the prices of gold with the mid prices of the currency on their dates, both of the columns
+	 * are sorted by date, so they are walked in step and every price is visited once
+	 * @param gold the prices of gold in zloty
+	 * @param rates the mid prices of the currency in zloty
+	 * @return the lines of the days present in both of them, in chronological order
+	 */
+	private List<String> join(PriceColumn gold, PriceColumn rates) {
+		List<String> lines = new ArrayList<>();
+		int i = 0, j = 0;
+		while(i < gold.getSize() && j < rates.getSize()) {
+			int order = gold.getDate(i).compareTo(rates.getDate(j));
+			if(order < 0) {
+				i++;
+			} else if(order > 0) {
+				j++;
+			} else {
+				double price = Math.round(gold.getValues()[i] / rates.getValues()[j] * 10000) / 10000.0;
+				lines.add(gold.getDate(i) + ": " + price + " " + this.currency);
+				i++;
+				j++;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Helper method, prints the joined lines of a chunk, preceded by the title before the first of them
+	 * @param printed the number of lines printed so far
+	 * @param lines the lines of the chunk
+	 * @return the number of lines printed with the lines of the chunk
+	 */
+	private int print(int printed, List<String> lines) {
+		if(printed == 0 && !lines.isEmpty())
+			System.out.println("The price of a gram of gold in " + this.currency + " from " + this.start + " to " + this.end + ":");
+		for(String line : lines)
+			System.out.println(line);
+		return printed + lines.size();
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the prices could not be joined, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The price of gold in " + this.currency + " from " + this.start + " to " + this.end + " could not be found: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The price of gold in " + this.currency + " from " + this.start + " to " + this.end + " could not be found: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
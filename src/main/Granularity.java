@@ -0,0 +1,82 @@
+package webapi;
+
+import java.time.LocalDate;
+
+/**
+ * The granularities of the rollups of the series of prices, every granularity splits the days into buckets
+ * (ISO weeks starting on Monday, calendar months or calendar years) identified by the first day of the bucket
+ * @author Patryk Wegrzyn
+ */
+public enum Granularity {
+
+	/**
+	 * Weeks starting on Monday
+	 */
+	WEEK {
+		@Override
+		public int bucketOf(int day) {
+			//1970-01-05 was a Monday
+			return day - Math.floorMod(day - 4, 7);
+		}
+
+		@Override
+		public String label(int bucket) {
+			return LocalDate.ofEpochDay(bucket).toString();
+		}
+	},
+	/**
+	 * Calendar months
+	 */
+	MONTH {
+		@Override
+		public int bucketOf(int day) {
+			return (int) LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay();
+		}
+
+		@Override
+		public String label(int bucket) {
+			return LocalDate.ofEpochDay(bucket).toString().substring(0, 7);
+		}
+	},
+	/**
+	 * Calendar years
+	 */
+	YEAR {
+		@Override
+		public int bucketOf(int day) {
+			return (int) LocalDate.ofEpochDay(day).withDayOfYear(1).toEpochDay();
+		}
+
+		@Override
+		public String label(int bucket) {
+			return LocalDate.ofEpochDay(bucket).toString().substring(0, 4);
+		}
+	};
+
+	/**
+	 * Finds the bucket of a day
+	 * @param day the number of days since 1970-01-01
+	 * @return the first day of its bucket, as the number of days since 1970-01-01
+	 */
+	public abstract int bucketOf(int day);
+
+	/**
+	 * Formats a bucket for the reports
+	 * @param bucket the first day of the bucket
+	 * @return the label, format yyyy-MM-dd for weeks, yyyy-MM for months and yyyy for years
+	 */
+	public abstract String label(int bucket);
+
+	/**
+	 * Parses the name of a granularity
+	 * @param name the name, week, month or year, case insensitive
+	 * @return the granularity, null if the name is not valid
+	 */
+	public static Granularity parse(String name) {
+		for(Granularity granularity : values())
+			if(granularity.name().equalsIgnoreCase(name))
+				return granularity;
+		return null;
+	}
+
+}
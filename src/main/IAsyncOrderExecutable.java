@@ -0,0 +1,32 @@
+package webapi;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous extension of the IOrderExecutable interface, implemented by the orders which express their
+ * queries (usually one per chunk of a longer period) as futures joined by a reduction step, so that no thread
+ * is tied up while the queries are in progress
+ * @author Patryk Wegrzyn
+ */
+public interface IAsyncOrderExecutable extends IOrderExecutable {
+
+	/**
+	 * Starts the execution of a particular order
+	 * @return the future completed when the order has been executed, failed with the same exceptions execute() would throw
+	 */
+	public CompletableFuture<Void> executeAsync();
+
+	/**
+	 * The blocking execution of the order is a thin wrapper of executeAsync
+	 * @throws MalformedURLException thrown when an invalid URL was encountered
+	 * @throws IOException thrown when an IO error was encountered during the process of fetching data from the server
+	 * @throws WebApiException thrown when no data has been found for this query, or the query was invalid (wrong format or exceeded limit)
+	 */
+	@Override
+	public default void execute() throws MalformedURLException, IOException, WebApiException {
+		AsyncUtils.await(executeAsync());
+	}
+
+}
@@ -0,0 +1,25 @@
+package webapi;
+
+import java.util.function.Consumer;
+
+/**
+ * Implemented by the orders which keep their results up to date incrementally as the ingested data is fed to them
+ * through the dataArrived method of the Observer interface, instead of computing them again from the whole history
+ * @author Patryk Wegrzyn
+ */
+public interface ILiveOrder extends Observer {
+
+	/**
+	 * Retrieves the current result of the order, the same text the execution of the order prints
+	 * @return the current result, or the message explaining why there is none yet
+	 */
+	public String getResult();
+
+	/**
+	 * Sets the listener which is called with the update of the result every time a fed price changes it, the update
+	 * is the whole result for the orders with a short one, or the changed part of it for the others
+	 * @param listener the listener of the updates, null to stop listening
+	 */
+	public void setResultListener(Consumer<String> listener);
+
+}
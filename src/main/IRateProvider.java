@@ -0,0 +1,53 @@
+package webapi;
+
+/**
+ * A provider of exchange rates and gold prices for the federated data source. Every provider has its own URL scheme
+ * and response format, the provider translates the logical queries into its URLs and supplies the readers which adapt
+ * its responses into the common rate records
+ * @author Patryk Wegrzyn
+ */
+public interface IRateProvider {
+
+	/**
+	 * Retrieves the name of the provider, used in the statistics and the error messages
+	 * @return the name of the provider
+	 */
+	public String getName();
+
+	/**
+	 * Retrieves the data source which sends the queries of the provider
+	 * @return the data source, with the URL of the provider
+	 */
+	public AbstractDataSource getDataSource();
+
+	/**
+	 * Translates the query of the mid prices of a currency
+	 * @param code the code of the currency
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the inner part of the URL of the query, null if the provider has no such prices
+	 */
+	public String getMidRatesURL(String code, String start, String end);
+
+	/**
+	 * Supplies the reader of the responses of the mid prices queries
+	 * @param code the code of the currency of the query
+	 * @return the reader of the mid prices
+	 */
+	public RateRecordReader getMidRatesReader(String code);
+
+	/**
+	 * Translates the query of the prices of gold
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the inner part of the URL of the query, null if the provider has no such prices
+	 */
+	public String getGoldPricesURL(String start, String end);
+
+	/**
+	 * Supplies the reader of the responses of the gold prices queries
+	 * @return the reader of the gold prices
+	 */
+	public RateRecordReader getGoldPricesReader();
+
+}
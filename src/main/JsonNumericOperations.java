@@ -49,34 +49,55 @@ public class JsonNumericOperations {
 	}
 	
 	/**
-	 * Calculates the sum of a particular field in a JsonArray object
+	 * Calculates the sum of a particular field in a JsonArray object, the sum is exact (see getFixedSumOfArr)
 	 * @param array the JsonArray object which represents an array in a real JSON file
 	 * @param field name of field which this method is supposed to sum
 	 * @return the calculated sum of all fields with the provided name
 	 */
 	public double getSumOfArr(JsonArray array, String field) {
-		double sum = 0;
-		JsonObject object;
-		for(int i=0; i<array.size(); i++) {
-			object = array.getJsonObject(i);
-			sum += object.getJsonNumber(field).doubleValue();
-		}
-		return sum;
+		return FixedPoint.toDouble(getFixedSumOfArr(array, field));
+	}
+
+	/**
+	 * Calculates the sum of a particular field in a JsonArray object with the fixed-point arithmetic, so it does not
+	 * drift however many prices are summed. The values are read into a primitive column first and summed by PriceKernels
+	 * @param array the JsonArray object which represents an array in a real JSON file
+	 * @param field name of field which this method is supposed to sum
+	 * @return the sum in ten thousandths, see FixedPoint
+	 */
+	public long getFixedSumOfArr(JsonArray array, String field) {
+		long[] column = new long[array.size()];
+		for(int i=0; i<array.size(); i++)
+			column[i] = getFixedValue(array.getJsonObject(i), field);
+		return PriceKernels.getInstance().sum(column, 0, column.length);
+	}
+
+	/**
+	 * Reads a numeric field of a Json Object into the fixed-point representation
+	 * @param object the Json Object
+	 * @param field name of the numeric field
+	 * @return the value in ten thousandths, see FixedPoint
+	 */
+	public long getFixedValue(JsonObject object, String field) {
+		return FixedPoint.parse(object.getJsonNumber(field).toString());
 	}
 	
 	/**
-	 * Calculates the average of a particular field in a JsonArray object
+	 * Calculates the average of a particular field in a JsonArray object, rounded to four decimal places
 	 * @param array the JsonArray object which represents an array in a real JSON file
 	 * @param field name of field which this method is supposed to get the average of
-	 * @return the calculated average of all fields with the provided name
+	 * @return the calculated average of all fields with the provided name, NaN if the array is empty
 	 */
 	public double getAvgOfArr(JsonArray array, String field) {
-		return getSumOfArr(array, field) / array.size();
+		if(array.isEmpty())
+			return Double.NaN;
+		return FixedPoint.toDouble(FixedPoint.average(getFixedSumOfArr(array, field), array.size()));
 	}
 	
 	/**
 	 * Finds the the biggest fluctuation in a particular numeric filed in a Json Object, alongside with all the additional
-	 * information about the found object, is parametric which means it can be used to find any sort of fluctuations
+	 * information about the found object, is parametric which means it can be used to find any sort of fluctuations.
+	 * The values of every object are read into a PriceColumn, and the columns are scanned in parallel by ParallelAnalytics
 	 * @param outerArray The outer array of objects which represents all the data sets which are supposed to be checked
 	 * @param field1 First parametric field name
 	 * @param field2 Second parametric field name
@@ -86,13 +107,6 @@ public class JsonNumericOperations {
 	 */
 	public Map<String, Object> findMaxAmpOfArr(JsonArray outerArray, String field1, String field2, String field3, String field4 ) {
 		
-		JsonArray innerArray;
-		JsonObject arrayObject;
-		JsonObject innerObject;
-		Map<String,Double> min = new HashMap<>();
-		Map<String,Double> max = new HashMap<>();
-		Map<String,String> whenMin = new HashMap<>();
-		Map<String,String> whenMax = new HashMap<>();
 		double maxAmp = Double.MIN_VALUE;
 		double minVal = Double.MAX_VALUE;
 		double maxVal = Double.MIN_VALUE;
@@ -100,41 +114,17 @@ public class JsonNumericOperations {
 		String whenMinVal = "";
 		String whenMaxVal = "";
 		
-		arrayObject = outerArray.getJsonObject(0);
-		innerArray = arrayObject.getJsonArray(field1);
-		for(int i=0; i<innerArray.size(); i++) {
-			arrayObject = innerArray.getJsonObject(i);
-			min.put(arrayObject.getString(field2), Double.MAX_VALUE);
-			max.put(arrayObject.getString(field2), Double.MIN_VALUE);
-			whenMin.put(arrayObject.getString(field2), "");
-			whenMax.put(arrayObject.getString(field2), "");
-		}
-		for(int i=0; i<outerArray.size(); i++) {
-			arrayObject = outerArray.getJsonObject(i);
-			innerArray = arrayObject.getJsonArray(field1);
-			for(int j=0; j<innerArray.size(); j++) {
-				innerObject = innerArray.getJsonObject(j);
-				if(min.get(innerObject.getString(field2)) > innerObject.getJsonNumber(field3).doubleValue()) {
-					min.put(innerObject.getString(field2), innerObject.getJsonNumber(field3).doubleValue());
-					whenMin.put(innerObject.getString(field2), arrayObject.getString(field4));
-				}
-				if(max.get(innerObject.getString(field2)) < innerObject.getJsonNumber(field3).doubleValue()) {
-					max.put(innerObject.getString(field2), innerObject.getJsonNumber(field3).doubleValue());
-					whenMax.put(innerObject.getString(field2), arrayObject.getString(field4));
-				}
-			}
-		}
-		arrayObject = outerArray.getJsonObject(0);
-		innerArray = arrayObject.getJsonArray(field1);
-		for(int i=0; i<innerArray.size(); i++) {
-			arrayObject = innerArray.getJsonObject(i);
-			if(max.get(arrayObject.getString(field2)) - min.get(arrayObject.getString(field2)) > maxAmp) {
-				maxAmp = max.get(arrayObject.getString(field2)) - min.get(arrayObject.getString(field2));
-				whichObject = arrayObject.getString(field2);
-				whenMinVal = whenMin.get(arrayObject.getString(field2));
-				whenMaxVal = whenMax.get(arrayObject.getString(field2));
-				minVal = min.get(arrayObject.getString(field2));
-				maxVal = max.get(arrayObject.getString(field2));
+		Map<String, PriceColumn> columns = PriceColumn.ofTables(outerArray, field1, field2, field3, field4);
+		for(Map.Entry<String, MinMaxState> entry : ParallelAnalytics.getInstance().scanAll(columns).entrySet()) {
+			MinMaxState state = entry.getValue();
+			if(!state.isEmpty() && state.getAmplitude() > maxAmp) {
+				PriceColumn column = columns.get(entry.getKey());
+				maxAmp = state.getAmplitude();
+				whichObject = entry.getKey();
+				whenMinVal = column.getDate(state.getIndexOfMin());
+				whenMaxVal = column.getDate(state.getIndexOfMax());
+				minVal = state.getMin();
+				maxVal = state.getMax();
 			}
 		}
 		
@@ -148,55 +138,6 @@ public class JsonNumericOperations {
 		return result;
 	}
 	
-	/**
-	 * For a given Json Array this methods is able to generate value arrays holding minimal and maximal values of a particular field for every object in the inner array,
-	 * is parametric in the same way as findMaxAmpOfArr
-	 * @param outerArray The outer array of objects which represents all the data sets which are supposed to be checked
-	 * @param field1 First parametric field name
-	 * @param field2 Second parametric field name
-	 * @param field3 Third parametric field name
-	 * @param field4 Fourth parametric field name
-	 * @return Map, containing the maps of mins and maxs for all objects alongside with other usefull information
-	 */
-	public Map<String, Map<String, Object>> getMinMaxArrays(JsonArray outerArray, String field1, String field2, String field3, String field4) {
-		JsonArray innerArray;
-		JsonObject arrayObject;
-		JsonObject innerObject;
-		Map<String,Object> min = new HashMap<>();
-		Map<String,Object> max = new HashMap<>();
-		Map<String,Object> whenMin = new HashMap<>();
-		Map<String,Object> whenMax = new HashMap<>();
-		
-		for(int i=0; i<outerArray.size(); i++) {
-			arrayObject = outerArray.getJsonObject(i);
-			innerArray = arrayObject.getJsonArray(field1);
-			for(int j=0; j<innerArray.size(); j++) {
-				innerObject = innerArray.getJsonObject(j);
-				if(!min.containsKey(innerObject.getString(field2))) {
-					min.put(innerObject.getString(field2), Double.MAX_VALUE);
-					max.put(innerObject.getString(field2), Double.MIN_VALUE);
-					whenMin.put(innerObject.getString(field2), "");
-					whenMax.put(innerObject.getString(field2), "");
-				}
-				if((Double)(min.get(innerObject.getString(field2))) > innerObject.getJsonNumber(field3).doubleValue()) {
-					min.put(innerObject.getString(field2), (innerObject.getJsonNumber(field3).doubleValue()));
-					whenMin.put(innerObject.getString(field2), arrayObject.getString(field4));
-				}
-				if((Double)(max.get(innerObject.getString(field2))) < innerObject.getJsonNumber(field3).doubleValue()) {
-					max.put(innerObject.getString(field2), (innerObject.getJsonNumber(field3).doubleValue()));
-					whenMax.put(innerObject.getString(field2), arrayObject.getString(field4));
-				}
-			}
-		}
-		
-		Map<String, Map<String, Object>> result = new HashMap<>();
-		result.put("min", min);
-		result.put("max", max);
-		result.put("whenMin", whenMin);
-		result.put("whenMax", whenMax);
-		return result;
-	}
-	
 	/**
 	 * Simple numeric method, finds the object with the minimal value in a particular field in a Json Array
 	 * @param array The Json Array in which we will be looking for a minimum
@@ -222,41 +163,26 @@ public class JsonNumericOperations {
 	}
 	
 	/**
-	 * Works almost the same ways as getMinOfArr, only this one returns the full found JsonObject
+	 * Works almost the same ways as getMinOfArr, only this one returns the full found JsonObject. The values are read
+	 * into a PriceColumn, and the index of the minimum is found by PriceKernels
 	 * @param array The Json Array in which we will be looking for a minimum
 	 * @param value The name of field used to finding the minimum
-	 * @return The found JsonObject with the minimal value in the given field
+	 * @return The found JsonObject with the minimal value in the given field, null for an empty array
 	 */
 	public JsonObject getMinOfArrJsonObj(JsonArray array, String value) {
-		double min = Double.MAX_VALUE;
-		JsonObject object, result = null;
-		for(int i=0; i<array.size(); i++) {
-			object = array.getJsonObject(i);
-			if(object.getJsonNumber(value).doubleValue() < min) {
-				min = object.getJsonNumber(value).doubleValue();
-				result = object;
-			}
-		}
-		return result;
+		int found = PriceColumn.of(array, value, null).indexOfMin();
+		return found < 0 ? null : array.getJsonObject(found);
 	}
 	
 	/**
 	 * Analogous method to getMinOfArrJsonObj, only this one finds the maximum
 	 * @param array The Json Array in which we will be looking for a maximum
 	 * @param value The name of field used to finding the maximum
-	 * @return The found JsonObject with the maximal value in the given field
+	 * @return The found JsonObject with the maximal value in the given field, null for an empty array
 	 */
 	public JsonObject getMaxOfArrJsonObj(JsonArray array, String value) {
-		double max = Double.MIN_VALUE;
-		JsonObject object, result = null;
-		for(int i=0; i<array.size(); i++) {
-			object = array.getJsonObject(i);
-			if(object.getJsonNumber(value).doubleValue() > max) {
-				max = object.getJsonNumber(value).doubleValue();
-				result = object;
-			}
-		}
-		return result;
+		int found = PriceColumn.of(array, value, null).indexOfMax();
+		return found < 0 ? null : array.getJsonObject(found);
 	}
 	
 	/**
@@ -276,14 +202,22 @@ public class JsonNumericOperations {
 		Collections.sort(myList, new Comparator<JsonObject>() {
 			@Override
 			public int compare(JsonObject o1, JsonObject o2) {
-				double diff1 = o1.getJsonNumber(value1).doubleValue() - o1.getJsonNumber(value2).doubleValue();
-				double diff2 = o2.getJsonNumber(value1).doubleValue() - o2.getJsonNumber(value2).doubleValue();
-				if (diff2 - diff1 > 0) return 1;
-				else if (diff2 - diff1 < 0) return -1;
-				else return 0;
+				return Long.compare(getFixedDiff(o2, value1, value2), getFixedDiff(o1, value1, value2));
 			}
 		});
 		return (n <= myList.size()) ? myList.subList(0, n) : myList;
 	}
 
+	/**
+	 * Calculates the exact difference of two numeric fields of a Json Object
+	 * @param object the Json Object
+	 * @param value1 Name of the first field in question
+	 * @param value2 Name of the second field in question
+	 * @return the value of the first field minus the value of the second one, in ten thousandths, see FixedPoint
+	 */
+	public long getFixedDiff(JsonObject object, String value1, String value2) {
+		return getFixedValue(object, value1) - getFixedValue(object, value2);
+	}
+
+	
 }
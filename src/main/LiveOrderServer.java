@@ -0,0 +1,191 @@
+package webapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the results of the live orders as server-sent events. A client subscribes to an order with a request like
+ * GET /subscribe?order=lowest-highest&amp;args=USD (the arguments are passed the same way as on the command line),
+ * receives the current result of the order as a "result" event, and then an "update" event every time the data
+ * fed from the series store changes the result. Every subscription creates an order of its own, which is unregistered
+ * when the client disconnects
+ * @author Patryk Wegrzyn
+ */
+public class LiveOrderServer implements AutoCloseable {
+
+	/**
+	 * The number of updates which may wait for a slow client, when it is exceeded the waiting updates are replaced
+	 * by the whole current result
+	 */
+	public static final int MAX_PENDING_UPDATES = 256;
+	/**
+	 * The interval of the comments sent to idle clients, which also detect the disconnected ones
+	 */
+	public static final long KEEP_ALIVE_SECONDS = 15;
+
+	/**
+	 * The HTTP server
+	 */
+	private final HttpServer server;
+	/**
+	 * The threads of the server, every subscription occupies one of them
+	 */
+	private final ExecutorService executor;
+	/**
+	 * Creates the orders and feeds them with the ingested data
+	 */
+	private final NBPOrderPerformer orderPerformer;
+	/**
+	 * The store the ingested data is appended to
+	 */
+	private final SeriesStore store;
+
+	/**
+	 * Typical constructor, the server does not accept any connections until it is started
+	 * @param port the port of the server, 0 for any free one
+	 * @param orderPerformer creates the orders, it should be a subject of the store
+	 * @param store the store whose history is replayed to every new order
+	 * @throws IOException thrown when the port could not be bound
+	 */
+	public LiveOrderServer(int port, NBPOrderPerformer orderPerformer, SeriesStore store) throws IOException {
+		this.orderPerformer = orderPerformer;
+		this.store = store;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "live-order-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/subscribe", this::subscribe);
+	}
+
+	/**
+	 * Starts accepting the subscriptions
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Retrieves the port the server is bound to
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server and ends all the subscriptions
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Helper method, handles a single subscription: creates its order, sends its current result and then its updates
+	 * until the client disconnects
+	 * @param exchange the request of the subscription
+	 * @throws IOException thrown when the response could not be sent
+	 */
+	private void subscribe(HttpExchange exchange) throws IOException {
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		String option = query.get("order");
+		String args = query.get("args");
+		String parameters[] = (args == null) ? null : args.split(option != null && option.equals("week-graph") ? ";" : ",");
+		ILiveOrder created;
+		try {
+			created = (option == null) ? null : store.subscribe(() -> {
+				IOrderExecutable order = orderPerformer.createOrder(option, parameters);
+				if(order instanceof ILiveOrder)
+					return (ILiveOrder) order;
+				if(order instanceof Observer)
+					orderPerformer.unregister((Observer) order);
+				return null;
+			});
+		} catch (RuntimeException e) {
+			created = null;
+		}
+		if(created == null) {
+			byte[] message = ("Unknown live order: " + option + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(400, message.length);
+			exchange.getResponseBody().write(message);
+			exchange.close();
+			return;
+		}
+		ILiveOrder order = created;
+
+		BlockingQueue<String> events = new LinkedBlockingQueue<>(MAX_PENDING_UPDATES);
+		order.setResultListener(update -> {
+			if(!events.offer(formatEvent("update", update))) {
+				events.clear();
+				events.offer(formatEvent("result", order.getResult()));
+			}
+		});
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+		try(OutputStream body = exchange.getResponseBody()) {
+			String event = formatEvent("result", order.getResult());
+			while(true) {
+				body.write(event.getBytes(StandardCharsets.UTF_8));
+				body.flush();
+				event = events.poll(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+				if(event == null)
+					event = ": keep-alive\n\n";
+			}
+		} catch (IOException | InterruptedException e) {
+			//the client has disconnected or the server is being stopped
+		} finally {
+			order.setResultListener(null);
+			orderPerformer.unregister(order);
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Helper method, formats a server-sent event, every line of the data is sent as a data field of its own
+	 * @param name the name of the event
+	 * @param data the data of the event
+	 * @return the event, ended with a blank line
+	 */
+	private static String formatEvent(String name, String data) {
+		StringBuilder event = new StringBuilder("event: ").append(name).append('\n');
+		for(String line : data.split("\\R"))
+			event.append("data: ").append(line).append('\n');
+		return event.append('\n').toString();
+	}
+
+	/**
+	 * Helper method, decodes the parameters of a query
+	 * @param rawQuery the encoded query, may be null
+	 * @return the parameters by their names
+	 */
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> parameters = new HashMap<>();
+		if(rawQuery == null)
+			return parameters;
+		for(String pair : rawQuery.split("&")) {
+			int split = pair.indexOf('=');
+			if(split > 0)
+				parameters.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+
+}
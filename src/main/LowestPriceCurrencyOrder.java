@@ -22,7 +22,7 @@ public class LowestPriceCurrencyOrder implements IOrderExecutable, Observer {
 	/**
 	 * The NBP API data source 
 	 */
-	private NBPDataSource dataSource;
+	private volatile NBPDataSource dataSource;
 	/**
 	 * Included helper methods for numeric and statistical operations on Json objects
 	 */
@@ -0,0 +1,232 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the covariance matrix of the returns of many currencies on all the cores, with a ForkJoinPool. The columns
+ * are centered first, then the upper triangle of the product of the centered matrix with its transposition is split
+ * into tiles of COLUMN_BLOCK x COLUMN_BLOCK currencies. A tile is computed one block of ROW_BLOCK days at a time,
+ * so the segments of its columns stay in the cache while they are multiplied with each other, and the products
+ * themselves are computed by the dot kernel of PriceKernels
+ * @author Patryk Wegrzyn
+ */
+public class MatrixAnalytics {
+
+	/**
+	 * The number of currencies of a tile
+	 */
+	public static final int COLUMN_BLOCK = 16;
+	/**
+	 * The number of days processed at a time, two tiles of columns of this length fit into the L2 cache
+	 */
+	public static final int ROW_BLOCK = 1024;
+
+	/**
+	 * Static field, which holds the instance running on the common pool
+	 */
+	private static MatrixAnalytics firstInstance = null;
+
+	/**
+	 * The pool running the computations
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates the analytics running on a given pool, for example one limited to a number of cores
+	 * @param pool the pool running the computations
+	 */
+	public MatrixAnalytics(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Static method used as a factory for this class, returns the analytics running on the common pool
+	 * @return The shared instance of this class
+	 */
+	public static synchronized MatrixAnalytics getInstance() {
+		if(firstInstance == null) {
+			firstInstance = new MatrixAnalytics(ForkJoinPool.commonPool());
+		}
+		return firstInstance;
+	}
+
+	/**
+	 * Retrieves the number of threads computing in parallel
+	 * @return the parallelism of the pool
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Computes the sample covariances and the correlations of the returns
+	 * @param matrix the returns, at least two days of them
+	 * @return the covariance and correlation matrices
+	 */
+	public CovarianceMatrix covariance(ReturnMatrix matrix) {
+		int days = matrix.getDays(), size = matrix.getCurrencies();
+		if(days < 2)
+			throw new IllegalArgumentException("The covariance needs the returns of at least two days");
+		double[] centered = matrix.getReturns().clone();
+		pool.invoke(new CenterTask(centered, days, 0, size));
+		List<int[]> tiles = new ArrayList<>();
+		for(int i=0; i<size; i+=COLUMN_BLOCK)
+			for(int j=i; j<size; j+=COLUMN_BLOCK)
+				tiles.add(new int[] {i, j});
+		double[] covariance = new double[size * size];
+		if(!tiles.isEmpty())
+			pool.invoke(new TileTask(centered, days, size, covariance, tiles, 0, tiles.size()));
+		//the tiles fill the upper triangle only
+		for(int i=0; i<size; i++)
+			for(int j=i; j<size; j++) {
+				covariance[i * size + j] /= days - 1;
+				covariance[j * size + i] = covariance[i * size + j];
+			}
+		return new CovarianceMatrix(matrix.getCodes(), days, covariance);
+	}
+
+	/**
+	 * Subtracts the means of a range of columns from their returns, halving the range until a single column is left
+	 */
+	private static class CenterTask extends RecursiveAction {
+
+		/**
+		 * Serial version, the tasks are never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The returns in column-major order, centered in place
+		 */
+		private final double[] values;
+		/**
+		 * The number of days of a column
+		 */
+		private final int days;
+		/**
+		 * The first column of the range
+		 */
+		private final int from;
+		/**
+		 * The column following the range
+		 */
+		private final int to;
+
+		/**
+		 * Typical constructor
+		 * @param values the returns in column-major order
+		 * @param days the number of days of a column
+		 * @param from the first column of the range
+		 * @param to the column following the range
+		 */
+		private CenterTask(double[] values, int days, int from, int to) {
+			this.values = values;
+			this.days = days;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new CenterTask(values, days, from, middle), new CenterTask(values, days, middle, to));
+				return;
+			}
+			int offset = from * days;
+			double mean = PriceKernels.getInstance().sum(values, offset, offset + days) / days;
+			for(int d=offset; d<offset+days; d++)
+				values[d] -= mean;
+		}
+
+	}
+
+	/**
+	 * Computes a range of the tiles of the upper triangle, halving the range until a single tile is left.
+	 * Every tile writes its own cells of the result only
+	 */
+	private static class TileTask extends RecursiveAction {
+
+		/**
+		 * Serial version, the tasks are never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The centered returns in column-major order
+		 */
+		private final double[] values;
+		/**
+		 * The number of days of a column
+		 */
+		private final int days;
+		/**
+		 * The number of currencies
+		 */
+		private final int size;
+		/**
+		 * The sums of the products, in row-major order
+		 */
+		private final double[] result;
+		/**
+		 * The first rows and columns of all the tiles
+		 */
+		private final List<int[]> tiles;
+		/**
+		 * The first tile of the range
+		 */
+		private final int from;
+		/**
+		 * The tile following the range
+		 */
+		private final int to;
+
+		/**
+		 * Typical constructor
+		 * @param values the centered returns in column-major order
+		 * @param days the number of days of a column
+		 * @param size the number of currencies
+		 * @param result the sums of the products, in row-major order
+		 * @param tiles the first rows and columns of all the tiles
+		 * @param from the first tile of the range
+		 * @param to the tile following the range
+		 */
+		private TileTask(double[] values, int days, int size, double[] result, List<int[]> tiles, int from, int to) {
+			this.values = values;
+			this.days = days;
+			this.size = size;
+			this.result = result;
+			this.tiles = tiles;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TileTask(values, days, size, result, tiles, from, middle),
+						new TileTask(values, days, size, result, tiles, middle, to));
+				return;
+			}
+			PriceKernels kernels = PriceKernels.getInstance();
+			int rowStart = tiles.get(from)[0], columnStart = tiles.get(from)[1];
+			int rowEnd = Math.min(size, rowStart + COLUMN_BLOCK), columnEnd = Math.min(size, columnStart + COLUMN_BLOCK);
+			for(int block=0; block<days; block+=ROW_BLOCK) {
+				int length = Math.min(ROW_BLOCK, days - block);
+				for(int i=rowStart; i<rowEnd; i++)
+					for(int j=Math.max(i, columnStart); j<columnEnd; j++)
+						result[i * size + j] += kernels.dot(values, i * days + block, values, j * days + block, length);
+			}
+		}
+
+	}
+
+}
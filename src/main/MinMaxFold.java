@@ -0,0 +1,203 @@
+package webapi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Incremental fold of rate records into the minimal and maximal price (and their dates) of every currency.
+ * Its size depends only on the number of currencies, not on the number of records, so a period of any length
+ * can be processed in bounded memory. The records are expected in chronological order: of equal prices the
+ * earliest one is kept, and partial folds of consecutive chunks have to be merged in chronological order as well
+ * @author Patryk Wegrzyn
+ */
+public class MinMaxFold implements RateRecordSink {
+
+	/**
+	 * Index of every currency in the arrays below
+	 */
+	private final Map<String, Integer> indexes = new HashMap<>();
+	/**
+	 * Codes of the currencies, in the order of their first appearance
+	 */
+	private String[] codes = new String[8];
+	/**
+	 * Minimal price of every currency
+	 */
+	private double[] mins = new double[8];
+	/**
+	 * Maximal price of every currency
+	 */
+	private double[] maxs = new double[8];
+	/**
+	 * Date of the minimal price of every currency
+	 */
+	private String[] whenMins = new String[8];
+	/**
+	 * Date of the maximal price of every currency
+	 */
+	private String[] whenMaxs = new String[8];
+	/**
+	 * Number of currencies
+	 */
+	private int size = 0;
+
+	/* (non-Javadoc)
+	 * @see webapi.RateRecordSink#accept(java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public void accept(String date, String code, double value) {
+		update(getOrAddIndex(code), value, date, value, date);
+	}
+
+	/**
+	 * Consumes the peaks of a currency found by a scan (for example by ParallelAnalytics), the same way as if its
+	 * records had been consumed one by one
+	 * @param code the code of the currency
+	 * @param min the minimal price
+	 * @param whenMin the date of the minimal price
+	 * @param max the maximal price
+	 * @param whenMax the date of the maximal price
+	 */
+	public void accept(String code, double min, String whenMin, double max, String whenMax) {
+		update(getOrAddIndex(code), min, whenMin, max, whenMax);
+	}
+
+	/**
+	 * Merges the partial fold of the next chunk into this one
+	 * @param partial the fold of a chunk following all the records folded so far
+	 * @return this fold
+	 */
+	public MinMaxFold merge(MinMaxFold partial) {
+		for(int i=0; i<partial.size; i++)
+			update(getOrAddIndex(partial.codes[i]), partial.mins[i], partial.whenMins[i], partial.maxs[i], partial.whenMaxs[i]);
+		return this;
+	}
+
+	/**
+	 * Helper method, updates the peaks of a single currency
+	 * @param index the index of the currency
+	 * @param min the candidate minimum
+	 * @param whenMin the date of the candidate minimum
+	 * @param max the candidate maximum
+	 * @param whenMax the date of the candidate maximum
+	 */
+	private void update(int index, double min, String whenMin, double max, String whenMax) {
+		if(min < mins[index]) {
+			mins[index] = min;
+			whenMins[index] = whenMin;
+		}
+		if(max > maxs[index]) {
+			maxs[index] = max;
+			whenMaxs[index] = whenMax;
+		}
+	}
+
+	/**
+	 * Helper method, finds the index of a currency, the currency is added if it has not been seen yet
+	 * @param code the code of the currency
+	 * @return its index
+	 */
+	private int getOrAddIndex(String code) {
+		Integer index = indexes.get(code);
+		if(index != null)
+			return index;
+		if(size == codes.length) {
+			codes = Arrays.copyOf(codes, size * 2);
+			mins = Arrays.copyOf(mins, size * 2);
+			maxs = Arrays.copyOf(maxs, size * 2);
+			whenMins = Arrays.copyOf(whenMins, size * 2);
+			whenMaxs = Arrays.copyOf(whenMaxs, size * 2);
+		}
+		codes[size] = code;
+		mins[size] = Double.POSITIVE_INFINITY;
+		maxs[size] = Double.NEGATIVE_INFINITY;
+		indexes.put(code, size);
+		return size++;
+	}
+
+	/**
+	 * Finds the currency whose price had the biggest amplitude, of equal amplitudes the first found currency is chosen
+	 * @return the index of the currency, -1 if no records have been folded
+	 */
+	public int findMaxAmplitude() {
+		int result = -1;
+		for(int i=0; i<size; i++)
+			if(result < 0 || getAmplitude(i) > getAmplitude(result))
+				result = i;
+		return result;
+	}
+
+	/**
+	 * Finds the index of a currency
+	 * @param code the code of the currency
+	 * @return its index, -1 if no records of this currency have been folded
+	 */
+	public int indexOf(String code) {
+		Integer index = indexes.get(code);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * Retrieves the number of currencies
+	 * @return the number of currencies which had at least one record
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Retrieves the code of a currency
+	 * @param index the index of the currency
+	 * @return its code
+	 */
+	public String getCode(int index) {
+		return codes[index];
+	}
+
+	/**
+	 * Retrieves the minimal price of a currency
+	 * @param index the index of the currency
+	 * @return its minimal price
+	 */
+	public double getMin(int index) {
+		return mins[index];
+	}
+
+	/**
+	 * Retrieves the maximal price of a currency
+	 * @param index the index of the currency
+	 * @return its maximal price
+	 */
+	public double getMax(int index) {
+		return maxs[index];
+	}
+
+	/**
+	 * Retrieves the date of the minimal price of a currency
+	 * @param index the index of the currency
+	 * @return the date, format yyyy-MM-dd
+	 */
+	public String getWhenMin(int index) {
+		return whenMins[index];
+	}
+
+	/**
+	 * Retrieves the date of the maximal price of a currency
+	 * @param index the index of the currency
+	 * @return the date, format yyyy-MM-dd
+	 */
+	public String getWhenMax(int index) {
+		return whenMaxs[index];
+	}
+
+	/**
+	 * Retrieves the amplitude of the price of a currency
+	 * @param index the index of the currency
+	 * @return the difference between its maximal and minimal price
+	 */
+	public double getAmplitude(int index) {
+		return maxs[index] - mins[index];
+	}
+
+}
@@ -0,0 +1,132 @@
+package webapi;
+
+/**
+ * The partial result of a scan of a column of prices: the minimal and the maximal price and their indices into the
+ * column of the dates. The states of consecutive blocks of a column are merged associatively, so the blocks can be
+ * scanned in any order and by any number of threads, as long as every merge keeps the earlier block on the left.
+ * Of equal prices the earliest one is kept, the same as in the sequential scans
+ * @author Patryk Wegrzyn
+ */
+public final class MinMaxState {
+
+	/**
+	 * The state of an empty block, the identity of the merge
+	 */
+	public static final MinMaxState EMPTY = new MinMaxState(Double.POSITIVE_INFINITY, -1, Double.NEGATIVE_INFINITY, -1);
+
+	/**
+	 * The minimal price
+	 */
+	private final double min;
+	/**
+	 * The index of the minimal price
+	 */
+	private final int indexOfMin;
+	/**
+	 * The maximal price
+	 */
+	private final double max;
+	/**
+	 * The index of the maximal price
+	 */
+	private final int indexOfMax;
+
+	/**
+	 * Typical constructor
+	 * @param min the minimal price
+	 * @param indexOfMin the index of the minimal price
+	 * @param max the maximal price
+	 * @param indexOfMax the index of the maximal price
+	 */
+	public MinMaxState(double min, int indexOfMin, double max, int indexOfMax) {
+		this.min = min;
+		this.indexOfMin = indexOfMin;
+		this.max = max;
+		this.indexOfMax = indexOfMax;
+	}
+
+	/**
+	 * Scans a block of a column sequentially, with the reductions of PriceKernels
+	 * @param values the column of prices
+	 * @param from the first index of the block
+	 * @param to the index following the block
+	 * @return the state of the block
+	 */
+	public static MinMaxState of(double[] values, int from, int to) {
+		if(from >= to)
+			return EMPTY;
+		PriceKernels kernels = PriceKernels.getInstance();
+		int minIdx = kernels.indexOfMin(values, from, to);
+		int maxIdx = kernels.indexOfMax(values, from, to);
+		return new MinMaxState(values[minIdx], minIdx, values[maxIdx], maxIdx);
+	}
+
+	/**
+	 * Merges the state of the following block into this one
+	 * @param later the state of a block following this one in the column
+	 * @return the state of both blocks
+	 */
+	public MinMaxState merge(MinMaxState later) {
+		if(later.isEmpty())
+			return this;
+		if(isEmpty())
+			return later;
+		boolean laterMin = later.min < min;
+		boolean laterMax = later.max > max;
+		if(!laterMin && !laterMax)
+			return this;
+		if(laterMin && laterMax)
+			return later;
+		return new MinMaxState(laterMin ? later.min : min, laterMin ? later.indexOfMin : indexOfMin,
+				laterMax ? later.max : max, laterMax ? later.indexOfMax : indexOfMax);
+	}
+
+	/**
+	 * Checks whether the state is the state of an empty block
+	 * @return true if no prices have been scanned
+	 */
+	public boolean isEmpty() {
+		return indexOfMin < 0;
+	}
+
+	/**
+	 * Retrieves the minimal price
+	 * @return the minimal price
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Retrieves the index of the minimal price
+	 * @return the index into the column, -1 for an empty block
+	 */
+	public int getIndexOfMin() {
+		return indexOfMin;
+	}
+
+	/**
+	 * Retrieves the maximal price
+	 * @return the maximal price
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Retrieves the index of the maximal price
+	 * @return the index into the column, -1 for an empty block
+	 */
+	public int getIndexOfMax() {
+		return indexOfMax;
+	}
+
+	/**
+	 * Retrieves the amplitude of the prices
+	 * @return the difference between the maximal and the minimal price
+	 */
+	public double getAmplitude() {
+		return max - min;
+	}
+
+}
@@ -1,5 +1,9 @@
 package webapi;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The first extension to the abstract data source class, represents a particular Web API data source,
@@ -24,9 +28,10 @@ public class NBPDataSource extends AbstractDataSource {
 	private static NBPDataSource firstInstance = null;
 	
 	/**
-	 * Private constructor because we only allow to create this object be using the getInstance method
+	 * Protected constructor because we only allow to create this object be using the getInstance method,
+	 * the createMirror method or a subclass
 	 */
-	private NBPDataSource() {
+	protected NBPDataSource() {
 		
 		this.urlStart = ("http://api.nbp.pl/api/");
 		this.urlEnd = ("/?format=json");
@@ -53,6 +58,20 @@ public class NBPDataSource extends AbstractDataSource {
 		return firstInstance;
 	}
 
+	/**
+	 * Creates a data source of a mirror of the Web API, with the same limits of a single query as the original one
+	 * but with its own rate and concurrency limiters. Used as the secondary endpoints of a failover
+	 * @param urlStart the beginning of the URL of the mirror, for example "http://mirror.example.com/api/"
+	 * @return a new data source, independent of the singleton one
+	 */
+	public static NBPDataSource createMirror(String urlStart) {
+		
+		NBPDataSource mirror = new NBPDataSource();
+		mirror.setUrlStart(urlStart);
+		return mirror;
+		
+	}
+
 	/**
 	 * Retrieves the current value of the maxPeriodPerQuery2 field
 	 * @return the maxPeriodPerQuery2 The current value of the field
@@ -85,4 +104,46 @@ public class NBPDataSource extends AbstractDataSource {
 		this.currenciesInTableA = currenciesInTableA;
 	}
 
+	/**
+	 * Plans the queries fetching the mid rates of a list of currencies from table A in a given period. Either the series
+	 * of every currency is fetched on its own (exchangerates/rates/A/{code}, longer chunks), or all of them are answered
+	 * by a single pass over the whole tables (exchangerates/tables/A, shorter chunks), whichever needs fewer queries,
+	 * so the cost of many currencies does not grow past the cost of the tables
+	 * @param codes the codes of the currencies
+	 * @param start the start of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the inner URLs of the queries, one element arrays, the queries of every currency in chronological order
+	 */
+	public List<String[]> planMidRateQueries(List<String> codes, String start, String end) {
+		List<String[]> seriesChunks = splitPeriod(start, end, getMaxPeriodPerQuery());
+		List<String[]> tableChunks = splitPeriod(start, end, getMaxPeriodPerQuery2());
+		List<String[]> queries = new ArrayList<>();
+		if(codes.size() > 1 && tableChunks.size() < seriesChunks.size() * codes.size()) {
+			for(String[] chunk : tableChunks)
+				queries.add(new String[] {"exchangerates/tables/A/" + chunk[0] + "/" + chunk[1]});
+		} else {
+			for(String code : codes)
+				for(String[] chunk : seriesChunks)
+					queries.add(new String[] {"exchangerates/rates/A/" + code + "/" + chunk[0] + "/" + chunk[1]});
+		}
+		return queries;
+	}
+
+	/**
+	 * Fetches the mid rates of all the currencies from table A in a given period, by a single pass over the tables
+	 * split into chunks. The chunks without any table are skipped
+	 * @param start the start of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @return the future of the columns of the prices, by the codes of the currencies
+	 */
+	public CompletableFuture<Map<String, PriceColumn>> getMidColumnsAsync(String start, String end) {
+		List<String[]> chunks = splitPeriod(start, end, getMaxPeriodPerQuery2());
+		return foldChunks(chunks, chunk -> {
+					PriceColumns partial = new PriceColumns();
+					//the chunks without any data are skipped
+					return AsyncUtils.skipMissingData(streamRecordsAsync("exchangerates/tables/A/" + chunk[0] + "/" + chunk[1], RateRecordReader.forMidRates(), partial), partial);
+				}, new PriceColumns(), PriceColumns::merge)
+				.thenApply(PriceColumns::getColumns);
+	}
+
 }
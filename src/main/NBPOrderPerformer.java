@@ -3,6 +3,8 @@ package webapi;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
@@ -20,11 +22,12 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 	/**
 	 * Represents the data source of the API, in this case its the API provided by Narodoway Bank Polski
 	 */
-	private NBPDataSource dataSource;
+	private volatile NBPDataSource dataSource;
 	/**
-	 * List of all observers of this subjects, element of the Observer design pattern
+	 * List of all observers of this subjects, element of the Observer design pattern, the orders may be registered
+	 * and unregistered while the ingested data is being fed to them
 	 */
-	private ArrayList<Observer> observers;
+	private List<Observer> observers;
 	/**
 	 * The list of all orders created by this OrderPerformer
 	 */
@@ -39,7 +42,7 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 	public NBPOrderPerformer(CommandLine configs, AbstractDataSource dataSource) {
 		this.configs = configs;
 		this.dataSource = (NBPDataSource) dataSource;
-		observers = new ArrayList<Observer>();
+		observers = new CopyOnWriteArrayList<Observer>();
 		orders = new ArrayList<>();
 	}
 
@@ -49,45 +52,11 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 	@Override
 	public void performOrders() throws MalformedURLException, IOException, WebApiException {
 		
-		String parameter;
-		String parameters[];
 		IOrderExecutable order;
 		
 		for(Option arg : configs.getOptions()) {
 			if(configs.hasOption(arg.getLongOpt())) {
-				switch(arg.getLongOpt()) {
-					case "date-price":
-						parameters = configs.getOptionValues("date-price");
-						order = new GivenDateGoldCurrencyOrder(parameters, dataSource, this);
-						break;
-					case "gold-average":
-						parameters = configs.getOptionValues("gold-average");
-						order = new AverageGoldPriceOrder(parameters, dataSource, this);
-						break;
-					case "highest-amplitude":
-						parameter = configs.getOptionValue("highest-amplitude");
-						order = new HighestAmplitudeOrder(parameter, dataSource, this);
-						break;
-					case "lowest-price":
-						parameter = configs.getOptionValue("lowest-price");
-						order = new LowestPriceCurrencyOrder(parameter, dataSource, this);
-						break;
-					case "sort-by-difference":
-						parameters = configs.getOptionValues("sort-by-difference");
-						order = new SortedByDifferenceOrder(parameters, dataSource, this);
-						break;
-					case "lowest-highest":
-						parameter = configs.getOptionValue("lowest-highest");
-						order = new WhenLowestHighestOrder(parameter, dataSource, this);
-						break;
-					case "week-graph":
-						parameters = configs.getOptionValues("week-graph");
-						order = new WeeklyBarGraphOrder(parameters, dataSource, this);
-						break;
-					default:
-						order = null;
-						break;
-				}
+				order = createOrder(arg.getLongOpt(), configs.getOptionValues(arg.getLongOpt()));
 				if(order != null) {
 					System.out.print("Executing order - ");
 					order.execute();
@@ -100,6 +69,51 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 		}
 	}
 
+	/**
+	 * Creates the order of a given option, the order is registered as an observer of this performer. It cannot
+	 * interleave with a swap of the data source, so the order never misses the notification about a swap
+	 * @param option the long name of the option
+	 * @param parameters the values of the option, null if it takes none
+	 * @return the order, null if the option does not represent an order
+	 */
+	public synchronized IOrderExecutable createOrder(String option, String[] parameters) {
+		String parameter = (parameters == null || parameters.length == 0) ? null : parameters[0];
+		switch(option) {
+			case "date-price":
+				return new GivenDateGoldCurrencyOrder(parameters, dataSource, this);
+			case "gold-average":
+				return new AverageGoldPriceOrder(parameters, dataSource, this);
+			case "highest-amplitude":
+				return new HighestAmplitudeOrder(parameter, dataSource, this);
+			case "lowest-price":
+				return new LowestPriceCurrencyOrder(parameter, dataSource, this);
+			case "sort-by-difference":
+				return new SortedByDifferenceOrder(parameters, dataSource, this);
+			case "lowest-highest":
+				return new WhenLowestHighestOrder(parameters, dataSource, this);
+			case "week-graph":
+				return new WeeklyBarGraphOrder(parameters, dataSource, this);
+			case "rollup":
+				return new RollupOrder(parameters, dataSource, this);
+			case "rolling-stats":
+				return new RollingStatsOrder(parameters, dataSource, this);
+			case "quantiles":
+				return new QuantileOrder(parameters, dataSource, this);
+			case "correlation":
+				return new CorrelationMatrixOrder(parameters, dataSource, this);
+			case "cross-rates":
+				return new CrossRateOrder(parameters, dataSource, this);
+			case "gold-in":
+				return new GoldInCurrencyOrder(parameters, dataSource, this);
+			case "spread-history":
+				return new SpreadHistoryOrder(parameters, dataSource, this);
+			case "drawdown":
+				return new DrawdownOrder(parameters, dataSource, this);
+			default:
+				return null;
+		}
+	}
+
 	/**
 	 * Retrieves the dataSource field value
 	 * @return the current dataSource field value
@@ -110,10 +124,11 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 
 	/**
 	 * Sets the dataSource field to a new value, also notifies all the observers of this subject about the change
-	 * as a part of the Observer Design Pattern
+	 * as a part of the Observer Design Pattern. The swaps are serialized, so the observers always end up with
+	 * the data source which has been set last, and it may happen while the orders are being executed
 	 * @param dataSource the dataSource to set
 	 */
-	public void setDataSource(NBPDataSource dataSource) {
+	public synchronized void setDataSource(NBPDataSource dataSource) {
 		this.dataSource = dataSource;
 		notifyObserver();
 	}
@@ -127,13 +142,30 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 		
 	}
 
+	/**
+	 * Unregisters the orders performed by performOrders, so that they are not notified about the swaps of the data
+	 * source and the ingested prices once they have been executed, for example while the server mode is running
+	 */
+	public void releaseOrders() {
+		for(IOrderExecutable order : this.orders)
+			if(order instanceof Observer)
+				unregister((Observer) order);
+	}
+
+	/**
+	 * Retrieves the number of the registered observers
+	 * @return the size of the observers list
+	 */
+	public int getObserverCount() {
+		return observers.size();
+	}
+
 	/* (non-Javadoc)
 	 * @see webapi.Subject#unregister(webapi.Observer)
 	 */
 	@Override
 	public void unregister(Observer removeObserver) {
-		int observerIndex = observers.indexOf(removeObserver);
-		observers.remove(observerIndex);
+		observers.remove(removeObserver);
 		
 	}
 
@@ -151,6 +183,20 @@ public class NBPOrderPerformer implements IOrderPerformer,Subject {
 		
 	}
 
+	/* (non-Javadoc)
+	 * @see webapi.Subject#notifyDataArrived(java.lang.String, int, double)
+	 */
+	@Override
+	public void notifyDataArrived(String key, int day, double value) {
+
+		for(Observer observer : observers) {
+			
+			observer.dataArrived(key, day, value);
+			
+		}
+		
+	}
+
 	/**
 	 * Retrieves the current value of the orders field
 	 * @return the current value of orders field
@@ -0,0 +1,76 @@
+package webapi;
+
+/**
+ * The provider of the Web API of Narodowy Bank Polski (or one of its mirrors) for the federated data source
+ * @author Patryk Wegrzyn
+ */
+public class NBPRateProvider implements IRateProvider {
+
+	/**
+	 * The name of the provider
+	 */
+	private final String name;
+	/**
+	 * The data source of the Web API
+	 */
+	private final AbstractDataSource dataSource;
+
+	/**
+	 * Typical constructor
+	 * @param name the name of the provider
+	 * @param dataSource the data source of the Web API or of one of its mirrors
+	 */
+	public NBPRateProvider(String name, AbstractDataSource dataSource) {
+		this.name = name;
+		this.dataSource = dataSource;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IRateProvider#getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IRateProvider#getDataSource()
+	 */
+	@Override
+	public AbstractDataSource getDataSource() {
+		return dataSource;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IRateProvider#getMidRatesURL(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String getMidRatesURL(String code, String start, String end) {
+		return "exchangerates/rates/A/" + code + "/" + start + "/" + end;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IRateProvider#getMidRatesReader(java.lang.String)
+	 */
+	@Override
+	public RateRecordReader getMidRatesReader(String code) {
+		return RateRecordReader.forMidRates();
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IRateProvider#getGoldPricesURL(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String getGoldPricesURL(String start, String end) {
+		return "cenyzlota/" + start + "/" + end;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IRateProvider#getGoldPricesReader()
+	 */
+	@Override
+	public RateRecordReader getGoldPricesReader() {
+		return RateRecordReader.forGoldPrices(SeriesStore.GOLD);
+	}
+
+}
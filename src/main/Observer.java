@@ -3,6 +3,7 @@ package webapi;
 
 /**
  * Interface, which is the observer part of the observer design pattern, which itself is used to dynamically update DataSources of Orders
+ * and to feed the orders with the data which has just been ingested
  * @author Patryk Wegrzyn
  *
  */
@@ -13,5 +14,14 @@ public interface Observer {
 	 * @param dataSource the new data source
 	 */
 	public void update(AbstractDataSource dataSource);
+
+	/**
+	 * Receives a single price which has just been ingested, the observers which keep their results up to date
+	 * incrementally override it, the others ignore it. The prices of a series arrive in chronological order
+	 * @param key the key of the series of the price, for example "A/USD/mid" or "gold"
+	 * @param day the date of the price as the number of days since 1970-01-01
+	 * @param value the price
+	 */
+	public default void dataArrived(String key, int day, double value) {}
 	
 }
@@ -0,0 +1,115 @@
+package webapi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the direct (off-heap) buffers of the server mode caches and accounts for their size, so that the cached
+ * history does not add to the live set the garbage collector has to trace. The arena has a fixed capacity, an allocation
+ * exceeding it fails instead of growing the process. A released buffer is no longer accounted for, its memory is given
+ * back to the system by the JVM once the buffer becomes unreachable, so a reader still holding it is never left with
+ * freed memory
+ * @author Patryk Wegrzyn
+ */
+public class OffHeapArena implements AutoCloseable {
+
+	/**
+	 * Maximal number of bytes allocated at the same time
+	 */
+	private final long capacity;
+	/**
+	 * Number of bytes currently allocated
+	 */
+	private final AtomicLong allocated = new AtomicLong();
+	/**
+	 * Number of buffers currently allocated
+	 */
+	private final AtomicInteger buffers = new AtomicInteger();
+	/**
+	 * Set when the arena has been closed
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Typical constructor
+	 * @param capacity the maximal number of bytes allocated at the same time
+	 */
+	public OffHeapArena(long capacity) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("The capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Allocates a direct buffer in the native byte order
+	 * @param bytes the size of the buffer
+	 * @return the buffer
+	 * @throws IllegalStateException thrown when the arena has been closed or its capacity would be exceeded
+	 */
+	public ByteBuffer allocate(int bytes) {
+		if(closed)
+			throw new IllegalStateException("The off-heap arena has been closed");
+		long total = allocated.addAndGet(bytes);
+		if(total > capacity) {
+			allocated.addAndGet(-bytes);
+			throw new IllegalStateException("The off-heap arena is full: " + (total - bytes) + " of " + capacity + " bytes allocated, " + bytes + " requested");
+		}
+		buffers.incrementAndGet();
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Releases a buffer allocated by this arena, it must not be released twice
+	 * @param buffer the buffer
+	 */
+	public void release(ByteBuffer buffer) {
+		if(closed) return;
+		allocated.addAndGet(-buffer.capacity());
+		buffers.decrementAndGet();
+	}
+
+	/**
+	 * Closes the arena, all its buffers are released and no more buffers can be allocated
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		allocated.set(0);
+		buffers.set(0);
+	}
+
+	/**
+	 * Checks whether the arena has been closed
+	 * @return the closed field value
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Retrieves the capacity of the arena
+	 * @return the maximal number of bytes allocated at the same time
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Retrieves the size of the allocated buffers
+	 * @return the number of bytes currently allocated
+	 */
+	public long getAllocatedBytes() {
+		return allocated.get();
+	}
+
+	/**
+	 * Retrieves the number of the allocated buffers
+	 * @return the number of buffers currently allocated
+	 */
+	public int getBufferCount() {
+		return buffers.get();
+	}
+
+}
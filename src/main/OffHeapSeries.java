@@ -0,0 +1,300 @@
+package webapi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The decoded form of a price series together with its indexes, stored in a single direct buffer of an OffHeapArena:
+ * the column of dates, the column of prices, the prefix sums of the prices (any range sum in constant time) and the
+ * positions of the minimal and maximal price of every block of INDEX_BLOCK points (range minimum and maximum without
+ * scanning the covered blocks). The series is immutable, a longer version of it is built when new points arrive
+ * @author Patryk Wegrzyn
+ */
+public class OffHeapSeries {
+
+	/**
+	 * Number of points covered by a single entry of the min/max index
+	 */
+	public static final int INDEX_BLOCK = 64;
+
+	/**
+	 * The arena the buffer has been allocated from
+	 */
+	private final OffHeapArena arena;
+	/**
+	 * The buffer holding the columns and the indexes
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * Number of points
+	 */
+	private final int size;
+	/**
+	 * Offset of the column of prices
+	 */
+	private final int valuesOffset;
+	/**
+	 * Offset of the prefix sums
+	 */
+	private final int prefixOffset;
+	/**
+	 * Offset of the positions of the block minimums
+	 */
+	private final int minIndexOffset;
+	/**
+	 * Offset of the positions of the block maximums
+	 */
+	private final int maxIndexOffset;
+	/**
+	 * Set when the series has been released
+	 */
+	private volatile boolean released = false;
+
+	/**
+	 * Allocates the buffer of a series, the columns and the indexes are filled by the factory methods
+	 * @param size the number of points
+	 * @param arena the arena the buffer is allocated from
+	 */
+	private OffHeapSeries(int size, OffHeapArena arena) {
+		this(size, arena.allocate(getLayoutBytes(size)), arena);
+	}
+
+	/**
+	 * Creates a series over a buffer which already holds its columns and indexes
+	 * @param size the number of points
+	 * @param buffer the buffer, in the layout described by getLayoutBytes
+	 * @param arena the arena the buffer has been allocated from, null if it is not accounted for (for example a mapped file)
+	 */
+	private OffHeapSeries(int size, ByteBuffer buffer, OffHeapArena arena) {
+		int blocks = (size + INDEX_BLOCK - 1) / INDEX_BLOCK;
+		this.size = size;
+		this.arena = arena;
+		this.valuesOffset = align(4 * size);
+		this.prefixOffset = valuesOffset + 8 * size;
+		this.minIndexOffset = prefixOffset + 8 * (size + 1);
+		this.maxIndexOffset = minIndexOffset + 4 * blocks;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Wraps a buffer which already holds the columns and the indexes of a series, for example a region of a memory-mapped
+	 * snapshot, nothing is copied or recomputed
+	 * @param buffer the buffer, positioned at the start of the series, in the native byte order
+	 * @param size the number of points
+	 * @return the series
+	 * @throws IllegalArgumentException thrown when the buffer does not have the size of the layout
+	 */
+	static OffHeapSeries wrap(ByteBuffer buffer, int size) {
+		if(size < 0 || buffer.remaining() != getLayoutBytes(size))
+			throw new IllegalArgumentException("The buffer does not hold a series of " + size + " points");
+		return new OffHeapSeries(size, buffer.slice().order(buffer.order()), null);
+	}
+
+	/**
+	 * Computes the size of the layout of a series: the dates (4 bytes per point, aligned to 8 bytes), the prices and
+	 * the prefix sums (8 bytes per point, plus one sum), and the positions of the minimum and the maximum of every block
+	 * @param size the number of points
+	 * @return the size in bytes
+	 */
+	static int getLayoutBytes(int size) {
+		int blocks = (size + INDEX_BLOCK - 1) / INDEX_BLOCK;
+		return align(4 * size) + 8 * size + 8 * (size + 1) + 8 * blocks;
+	}
+
+	/**
+	 * Retrieves a read-only view of the whole layout, used to write the series to a snapshot
+	 * @return the view, positioned at the start of the series
+	 */
+	ByteBuffer getLayout() {
+		return buffer.asReadOnlyBuffer().order(buffer.order()).position(0).limit(buffer.capacity());
+	}
+
+	/**
+	 * Decodes a compressed series into the arena
+	 * @param series the compressed series
+	 * @param arena the arena the buffer is allocated from
+	 * @return the decoded series, with the points the compressed one had at the moment of the call
+	 */
+	public static OffHeapSeries of(CompressedSeries series, OffHeapArena arena) {
+		OffHeapSeries result = new OffHeapSeries(series.size(), arena);
+		CompressedSeries.Cursor cursor = series.cursor();
+		for(int i=0; i<result.size && cursor.next(); i++) {
+			result.buffer.putInt(4 * i, cursor.getDay());
+			result.buffer.putDouble(result.valuesOffset + 8 * i, cursor.getValue());
+		}
+		result.buildIndexes();
+		return result;
+	}
+
+	/**
+	 * Copies the columns of a series into the arena
+	 * @param days the dates of the points, as the numbers of days since 1970-01-01, in chronological order
+	 * @param values the prices
+	 * @param size the number of points
+	 * @param arena the arena the buffer is allocated from
+	 * @return the series
+	 */
+	public static OffHeapSeries of(int[] days, double[] values, int size, OffHeapArena arena) {
+		OffHeapSeries result = new OffHeapSeries(size, arena);
+		for(int i=0; i<size; i++) {
+			result.buffer.putInt(4 * i, days[i]);
+			result.buffer.putDouble(result.valuesOffset + 8 * i, values[i]);
+		}
+		result.buildIndexes();
+		return result;
+	}
+
+	/**
+	 * Helper method, computes the prefix sums and the block minimums and maximums
+	 */
+	private void buildIndexes() {
+		double sum = 0;
+		buffer.putDouble(prefixOffset, 0);
+		for(int i=0; i<size; i++) {
+			sum += getValue(i);
+			buffer.putDouble(prefixOffset + 8 * (i + 1), sum);
+		}
+		for(int block=0; block * INDEX_BLOCK < size; block++) {
+			int from = block * INDEX_BLOCK;
+			int to = Math.min(size, from + INDEX_BLOCK);
+			int min = from, max = from;
+			for(int i=from + 1; i<to; i++) {
+				if(getValue(i) < getValue(min)) min = i;
+				if(getValue(i) > getValue(max)) max = i;
+			}
+			buffer.putInt(minIndexOffset + 4 * block, min);
+			buffer.putInt(maxIndexOffset + 4 * block, max);
+		}
+	}
+
+	/**
+	 * Helper method, rounds an offset up to a multiple of 8 bytes
+	 * @param offset the offset
+	 * @return the aligned offset
+	 */
+	private static int align(int offset) {
+		return (offset + 7) & ~7;
+	}
+
+	/**
+	 * Retrieves the number of points
+	 * @return the size field value
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Retrieves the date of a point
+	 * @param index the index of the point
+	 * @return the number of days since 1970-01-01
+	 */
+	public int getDay(int index) {
+		return buffer.getInt(4 * index);
+	}
+
+	/**
+	 * Retrieves the price of a point
+	 * @param index the index of the point
+	 * @return the price
+	 */
+	public double getValue(int index) {
+		return buffer.getDouble(valuesOffset + 8 * index);
+	}
+
+	/**
+	 * Finds the first point not earlier than a given date
+	 * @param day the date, as the number of days since 1970-01-01
+	 * @return the index of the point, size() if all the points are earlier
+	 */
+	public int lowerBound(int day) {
+		int low = 0, high = size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(getDay(middle) < day) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Computes the sum of the prices of a range of points in constant time
+	 * @param from the index of the first point (inclusive)
+	 * @param to the index of the last point (exclusive)
+	 * @return the sum of the prices
+	 */
+	public double sum(int from, int to) {
+		return buffer.getDouble(prefixOffset + 8 * to) - buffer.getDouble(prefixOffset + 8 * from);
+	}
+
+	/**
+	 * Finds the minimal price of a range of points, of equal prices the earliest one is chosen
+	 * @param from the index of the first point (inclusive)
+	 * @param to the index of the last point (exclusive)
+	 * @return the index of the point, -1 if the range is empty
+	 */
+	public int indexOfMin(int from, int to) {
+		int best = -1;
+		for(int i=from; i<to;) {
+			int candidate = i;
+			if(i % INDEX_BLOCK == 0 && i + INDEX_BLOCK <= to) {
+				candidate = buffer.getInt(minIndexOffset + 4 * (i / INDEX_BLOCK));
+				i += INDEX_BLOCK;
+			} else {
+				i++;
+			}
+			if(best < 0 || getValue(candidate) < getValue(best))
+				best = candidate;
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the maximal price of a range of points, of equal prices the earliest one is chosen
+	 * @param from the index of the first point (inclusive)
+	 * @param to the index of the last point (exclusive)
+	 * @return the index of the point, -1 if the range is empty
+	 */
+	public int indexOfMax(int from, int to) {
+		int best = -1;
+		for(int i=from; i<to;) {
+			int candidate = i;
+			if(i % INDEX_BLOCK == 0 && i + INDEX_BLOCK <= to) {
+				candidate = buffer.getInt(maxIndexOffset + 4 * (i / INDEX_BLOCK));
+				i += INDEX_BLOCK;
+			} else {
+				i++;
+			}
+			if(best < 0 || getValue(candidate) > getValue(best))
+				best = candidate;
+		}
+		return best;
+	}
+
+	/**
+	 * Retrieves the size of the buffer
+	 * @return the number of bytes allocated for the series
+	 */
+	public long getBytes() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Gives the buffer back to the arena, it may be released only once. Readers which still hold the series
+	 * can finish their work, the memory is freed when the series becomes unreachable
+	 */
+	public synchronized void release() {
+		if(released) return;
+		released = true;
+		if(arena != null)
+			arena.release(buffer);
+	}
+
+	/**
+	 * Checks whether the series has been released
+	 * @return the released field value
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+
+}
@@ -0,0 +1,180 @@
+package webapi;
+
+/**
+ * The open, high, low and close prices and the mean price of a bucket of days (a week, a month or a year)
+ * @author Patryk Wegrzyn
+ */
+public class OhlcBar {
+
+	/**
+	 * The first day of the bucket, as the number of days since 1970-01-01
+	 */
+	private final int bucket;
+	/**
+	 * The day of the first price of the bar
+	 */
+	private int firstDay;
+	/**
+	 * The day of the last price of the bar
+	 */
+	private int lastDay;
+	/**
+	 * The first price
+	 */
+	private double open;
+	/**
+	 * The highest price
+	 */
+	private double high;
+	/**
+	 * The lowest price
+	 */
+	private double low;
+	/**
+	 * The last price
+	 */
+	private double close;
+	/**
+	 * The sum of the prices
+	 */
+	private double sum;
+	/**
+	 * The number of the prices
+	 */
+	private int count;
+
+	/**
+	 * Creates a bar of a single price
+	 * @param bucket the first day of the bucket
+	 * @param day the day of the price
+	 * @param value the price
+	 */
+	OhlcBar(int bucket, int day, double value) {
+		this.bucket = bucket;
+		this.firstDay = day;
+		this.lastDay = day;
+		this.open = value;
+		this.high = value;
+		this.low = value;
+		this.close = value;
+		this.sum = value;
+		this.count = 1;
+	}
+
+	/**
+	 * Copy constructor, the bars handed out by a RollupSeries are copies, so they do not change when the prices
+	 * of the last bucket arrive
+	 * @param other the copied bar
+	 */
+	OhlcBar(OhlcBar other) {
+		this.bucket = other.bucket;
+		this.firstDay = other.firstDay;
+		this.lastDay = other.lastDay;
+		this.open = other.open;
+		this.high = other.high;
+		this.low = other.low;
+		this.close = other.close;
+		this.sum = other.sum;
+		this.count = other.count;
+	}
+
+	/**
+	 * Adds a price following all the prices of the bar
+	 * @param day the day of the price, in the bucket of the bar
+	 * @param value the price
+	 */
+	void add(int day, double value) {
+		lastDay = day;
+		high = Math.max(high, value);
+		low = Math.min(low, value);
+		close = value;
+		sum += value;
+		count++;
+	}
+
+	/**
+	 * Merges the bar of the same bucket made of the following prices into this one
+	 * @param later the bar of the prices following all the prices of this bar
+	 */
+	void merge(OhlcBar later) {
+		lastDay = later.lastDay;
+		high = Math.max(high, later.high);
+		low = Math.min(low, later.low);
+		close = later.close;
+		sum += later.sum;
+		count += later.count;
+	}
+
+	/**
+	 * Retrieves the first day of the bucket
+	 * @return the number of days since 1970-01-01
+	 */
+	public int getBucket() {
+		return bucket;
+	}
+
+	/**
+	 * Retrieves the day of the first price
+	 * @return the number of days since 1970-01-01
+	 */
+	public int getFirstDay() {
+		return firstDay;
+	}
+
+	/**
+	 * Retrieves the day of the last price
+	 * @return the number of days since 1970-01-01
+	 */
+	public int getLastDay() {
+		return lastDay;
+	}
+
+	/**
+	 * Retrieves the first price
+	 * @return the open price
+	 */
+	public double getOpen() {
+		return open;
+	}
+
+	/**
+	 * Retrieves the highest price
+	 * @return the high price
+	 */
+	public double getHigh() {
+		return high;
+	}
+
+	/**
+	 * Retrieves the lowest price
+	 * @return the low price
+	 */
+	public double getLow() {
+		return low;
+	}
+
+	/**
+	 * Retrieves the last price
+	 * @return the close price
+	 */
+	public double getClose() {
+		return close;
+	}
+
+	/**
+	 * Retrieves the mean price
+	 * @return the average of the prices, rounded to four decimal places
+	 */
+	public double getMean() {
+		return Math.round(sum / count * FixedPoint.SCALE) / (double) FixedPoint.SCALE;
+	}
+
+	/**
+	 * Retrieves the number of prices
+	 * @return the number of days with a price
+	 */
+	public int getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,289 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Scans the columns of prices of many currencies on all the cores, with a ForkJoinPool. The work is split by currency
+ * first, and then the column of every currency is split into blocks of time. Every block is scanned sequentially
+ * into a MinMaxState (or a DrawdownState), and the states are merged back in the chronological order of the blocks
+ * @author Patryk Wegrzyn
+ */
+public class ParallelAnalytics {
+
+	/**
+	 * The number of prices below which a column is not split any further
+	 */
+	public static final int BLOCK_SIZE = 2048;
+
+	/**
+	 * Static field, which holds the instance running on the common pool
+	 */
+	private static ParallelAnalytics firstInstance = null;
+
+	/**
+	 * The pool running the scans
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates the analytics running on a given pool, for example one limited to a number of cores
+	 * @param pool the pool running the scans
+	 */
+	public ParallelAnalytics(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Static method used as a factory for this class, returns the analytics running on the common pool
+	 * @return The shared instance of this class
+	 */
+	public static synchronized ParallelAnalytics getInstance() {
+		if(firstInstance == null) {
+			firstInstance = new ParallelAnalytics(ForkJoinPool.commonPool());
+		}
+		return firstInstance;
+	}
+
+	/**
+	 * Retrieves the number of threads scanning in parallel
+	 * @return the parallelism of the pool
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Scans a single column, split into blocks of time
+	 * @param column the column of prices
+	 * @return the state of the whole column
+	 */
+	public MinMaxState scan(PriceColumn column) {
+		return pool.invoke(new BlockTask(column.getValues(), 0, column.getSize()));
+	}
+
+	/**
+	 * Scans the columns of many currencies, split by currency and by blocks of time
+	 * @param columns the columns, by the codes of the currencies
+	 * @return the states of the columns, in the order of the given map
+	 */
+	public Map<String, MinMaxState> scanAll(Map<String, PriceColumn> columns) {
+		return scanAll(columns, column -> new BlockTask(column.getValues(), 0, column.getSize()).compute());
+	}
+
+	/**
+	 * Scans the columns of many currencies for their largest drawdowns and rises, split by currency and by blocks of time
+	 * @param columns the columns, by the codes of the currencies
+	 * @return the states of the columns, in the order of the given map
+	 */
+	public Map<String, DrawdownState> drawdowns(Map<String, PriceColumn> columns) {
+		return scanAll(columns, column -> new DrawdownTask(column.getValues(), 0, column.getSize()).compute());
+	}
+
+	/**
+	 * Helper method, scans the columns of many currencies in parallel, one task per currency
+	 * @param columns the columns, by the codes of the currencies
+	 * @param scan scans a single column, within a task of the pool
+	 * @return the states of the columns, in the order of the given map
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Map<String, T> scanAll(Map<String, PriceColumn> columns, Function<PriceColumn, T> scan) {
+		List<PriceColumn> list = new ArrayList<>(columns.values());
+		Object[] states = new Object[list.size()];
+		if(!list.isEmpty())
+			pool.invoke(new CurrencyTask(list, states, scan, 0, list.size()));
+		Map<String, T> result = new LinkedHashMap<>();
+		int i = 0;
+		for(String code : columns.keySet())
+			result.put(code, (T) states[i++]);
+		return result;
+	}
+
+	/**
+	 * Scans the columns of many currencies into a fold of their peaks, so that the scans of consecutive chunks of
+	 * a period can be merged with MinMaxFold.merge
+	 * @param columns the columns, by the codes of the currencies
+	 * @return the fold of the peaks, the currencies with empty columns are left out
+	 */
+	public MinMaxFold fold(Map<String, PriceColumn> columns) {
+		MinMaxFold fold = new MinMaxFold();
+		for(Map.Entry<String, MinMaxState> entry : scanAll(columns).entrySet()) {
+			MinMaxState state = entry.getValue();
+			if(state.isEmpty())
+				continue;
+			PriceColumn column = columns.get(entry.getKey());
+			fold.accept(entry.getKey(), state.getMin(), column.getDate(state.getIndexOfMin()),
+					state.getMax(), column.getDate(state.getIndexOfMax()));
+		}
+		return fold;
+	}
+
+	/**
+	 * Scans a range of currencies, halving the range until a single currency is left
+	 */
+	private static class CurrencyTask extends RecursiveAction {
+
+		/**
+		 * Serial version, the tasks are never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The columns of all the currencies
+		 */
+		private final List<PriceColumn> columns;
+		/**
+		 * The states of the columns, filled by the tasks
+		 */
+		private final Object[] states;
+		/**
+		 * Scans a single column
+		 */
+		private final Function<PriceColumn, ?> scan;
+		/**
+		 * The first currency of the range
+		 */
+		private final int from;
+		/**
+		 * The currency following the range
+		 */
+		private final int to;
+
+		/**
+		 * Typical constructor
+		 * @param columns the columns of all the currencies
+		 * @param states the states of the columns, filled by the tasks
+		 * @param scan scans a single column
+		 * @param from the first currency of the range
+		 * @param to the currency following the range
+		 */
+		private CurrencyTask(List<PriceColumn> columns, Object[] states, Function<PriceColumn, ?> scan, int from, int to) {
+			this.columns = columns;
+			this.states = states;
+			this.scan = scan;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if(to - from == 1) {
+				states[from] = scan.apply(columns.get(from));
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new CurrencyTask(columns, states, scan, from, middle), new CurrencyTask(columns, states, scan, middle, to));
+		}
+
+	}
+
+	/**
+	 * Scans a block of time of a single column, halving the block until it is at most BLOCK_SIZE prices long
+	 */
+	private static class BlockTask extends RecursiveTask<MinMaxState> {
+
+		/**
+		 * Serial version, the tasks are never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The column of prices
+		 */
+		private final double[] values;
+		/**
+		 * The first index of the block
+		 */
+		private final int from;
+		/**
+		 * The index following the block
+		 */
+		private final int to;
+
+		/**
+		 * Typical constructor
+		 * @param values the column of prices
+		 * @param from the first index of the block
+		 * @param to the index following the block
+		 */
+		private BlockTask(double[] values, int from, int to) {
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected MinMaxState compute() {
+			if(to - from <= BLOCK_SIZE)
+				return MinMaxState.of(values, from, to);
+			int middle = (from + to) >>> 1;
+			BlockTask later = new BlockTask(values, middle, to);
+			later.fork();
+			MinMaxState earlier = new BlockTask(values, from, middle).compute();
+			return earlier.merge(later.join());
+		}
+
+	}
+
+	/**
+	 * Scans a block of time of a single column for its largest drawdown and rise, halving the block until it is
+	 * at most BLOCK_SIZE prices long
+	 */
+	private static class DrawdownTask extends RecursiveTask<DrawdownState> {
+
+		/**
+		 * Serial version, the tasks are never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The column of prices
+		 */
+		private final double[] values;
+		/**
+		 * The first index of the block
+		 */
+		private final int from;
+		/**
+		 * The index following the block
+		 */
+		private final int to;
+
+		/**
+		 * Typical constructor
+		 * @param values the column of prices
+		 * @param from the first index of the block
+		 * @param to the index following the block
+		 */
+		private DrawdownTask(double[] values, int from, int to) {
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected DrawdownState compute() {
+			if(to - from <= BLOCK_SIZE)
+				return DrawdownState.of(values, from, to);
+			int middle = (from + to) >>> 1;
+			DrawdownTask later = new DrawdownTask(values, middle, to);
+			later.fork();
+			DrawdownState earlier = new DrawdownTask(values, from, middle).compute();
+			return earlier.merge(later.join());
+		}
+
+	}
+
+}
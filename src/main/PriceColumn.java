@@ -0,0 +1,158 @@
+package webapi;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+/**
+ * A column of prices stored in a primitive array, alongside with the column of the dates of the prices. The reductions
+ * of PriceKernels run over the columns, and the indices they return are the indices into the column of the dates
+ * @author Patryk Wegrzyn
+ */
+public class PriceColumn {
+
+	/**
+	 * The initial capacity of a column built by appending
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * The dates of the prices, null when the dates are not needed
+	 */
+	private String[] dates;
+	/**
+	 * The prices
+	 */
+	private double[] values;
+	/**
+	 * The number of prices in the column
+	 */
+	private int size = 0;
+
+	/**
+	 * Creates an empty column
+	 * @param capacity the initial capacity
+	 * @param withDates whether the column keeps the dates of the prices
+	 */
+	public PriceColumn(int capacity, boolean withDates) {
+		this.values = new double[Math.max(1, capacity)];
+		this.dates = withDates ? new String[values.length] : null;
+	}
+
+	/**
+	 * Reads a numeric field of every object of a Json Array into a column
+	 * @param array the Json Array
+	 * @param valueField name of the numeric field
+	 * @param dateField name of the field with the date, null when the dates are not needed
+	 * @return the column, the indices of the column are the indices of the array
+	 */
+	public static PriceColumn of(JsonArray array, String valueField, String dateField) {
+		PriceColumn column = new PriceColumn(array.size(), dateField != null);
+		for(int i=0; i<array.size(); i++) {
+			JsonObject object = array.getJsonObject(i);
+			column.append(dateField == null ? null : object.getString(dateField), object.getJsonNumber(valueField).doubleValue());
+		}
+		return column;
+	}
+
+	/**
+	 * Splits an array of tables (for example the tables of the NBP API) into a column for every object of the tables,
+	 * is parametric in the same way as JsonNumericOperations.findMaxAmpOfArr. Only the objects present in the first
+	 * table are read
+	 * @param outerArray the array of the tables
+	 * @param field1 name of the array of the objects of a table
+	 * @param field2 name of the field identifying an object (for example the code of a currency)
+	 * @param field3 name of the numeric field
+	 * @param field4 name of the field with the date of a table
+	 * @return the columns of the objects, in the order of the first table
+	 */
+	public static Map<String, PriceColumn> ofTables(JsonArray outerArray, String field1, String field2, String field3, String field4) {
+		Map<String, PriceColumn> columns = new LinkedHashMap<>();
+		if(outerArray.isEmpty())
+			return columns;
+		JsonArray innerArray = outerArray.getJsonObject(0).getJsonArray(field1);
+		for(int i=0; i<innerArray.size(); i++)
+			columns.put(innerArray.getJsonObject(i).getString(field2), new PriceColumn(outerArray.size(), true));
+		for(int i=0; i<outerArray.size(); i++) {
+			JsonObject table = outerArray.getJsonObject(i);
+			String date = table.getString(field4);
+			innerArray = table.getJsonArray(field1);
+			for(int j=0; j<innerArray.size(); j++) {
+				JsonObject object = innerArray.getJsonObject(j);
+				PriceColumn column = columns.get(object.getString(field2));
+				if(column != null)
+					column.append(date, object.getJsonNumber(field3).doubleValue());
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Appends a price to the column
+	 * @param date the date of the price, ignored when the column does not keep the dates
+	 * @param value the price
+	 */
+	public void append(String date, double value) {
+		if(size == values.length) {
+			values = Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, size * 2));
+			if(dates != null)
+				dates = Arrays.copyOf(dates, values.length);
+		}
+		if(dates != null)
+			dates[size] = date;
+		values[size++] = value;
+	}
+
+	/**
+	 * Retrieves the prices, the array may be longer than the column
+	 * @return the prices, valid up to getSize()
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Retrieves the date of a price
+	 * @param index index of the price
+	 * @return the date, null when the column does not keep the dates
+	 */
+	public String getDate(int index) {
+		return dates == null ? null : dates[index];
+	}
+
+	/**
+	 * Retrieves the number of prices in the column
+	 * @return the number of prices
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Sums the column
+	 * @return the sum of the prices
+	 */
+	public double sum() {
+		return PriceKernels.getInstance().sum(values, 0, size);
+	}
+
+	/**
+	 * Finds the minimal price of the column
+	 * @return the index of the first minimal price, -1 when the column is empty
+	 */
+	public int indexOfMin() {
+		return PriceKernels.getInstance().indexOfMin(values, 0, size);
+	}
+
+	/**
+	 * Finds the maximal price of the column
+	 * @return the index of the first maximal price, -1 when the column is empty
+	 */
+	public int indexOfMax() {
+		return PriceKernels.getInstance().indexOfMax(values, 0, size);
+	}
+
+}
@@ -0,0 +1,74 @@
+package webapi;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the decoded rate records into a PriceColumn of every currency, so that they can be scanned by
+ * ParallelAnalytics. The columns can be limited to a set of currencies, then the records of the others are skipped
+ * @author Patryk Wegrzyn
+ */
+public class PriceColumns implements RateRecordSink {
+
+	/**
+	 * The columns, by the codes of the currencies, in the order of their first record
+	 */
+	private final Map<String, PriceColumn> columns = new LinkedHashMap<>();
+	/**
+	 * The codes of the collected currencies, upper case, null when all of them are collected
+	 */
+	private final Set<String> codes;
+
+	/**
+	 * Creates a collector of all the currencies
+	 */
+	public PriceColumns() {
+		this.codes = null;
+	}
+
+	/**
+	 * Creates a collector of a set of currencies
+	 * @param codes the codes of the currencies, case insensitive
+	 */
+	public PriceColumns(Collection<String> codes) {
+		this.codes = new HashSet<>();
+		for(String code : codes)
+			this.codes.add(code.toUpperCase());
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.RateRecordSink#accept(java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public void accept(String date, String code, double value) {
+		if(codes != null && !codes.contains(code.toUpperCase()))
+			return;
+		columns.computeIfAbsent(code, c -> new PriceColumn(0, true)).append(date, value);
+	}
+
+	/**
+	 * Joins the columns of the following chunk to these ones
+	 * @param later the columns of the prices following all the prices of these ones
+	 * @return these columns
+	 */
+	public PriceColumns merge(PriceColumns later) {
+		for(Map.Entry<String, PriceColumn> entry : later.getColumns().entrySet()) {
+			PriceColumn column = entry.getValue();
+			for(int i=0; i<column.getSize(); i++)
+				accept(column.getDate(i), entry.getKey(), column.getValues()[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Retrieves the collected columns
+	 * @return the columns, by the codes of the currencies
+	 */
+	public Map<String, PriceColumn> getColumns() {
+		return columns;
+	}
+
+}
@@ -0,0 +1,109 @@
+package webapi;
+
+/**
+ * The reductions over the columns of prices (sums, dot products, scaling, minima and maxima) behind the numeric operations. There are two
+ * implementations: a vectorized one, built on the Vector API of the jdk.incubator.vector module, and a scalar one used
+ * when the vectorized one has not been built (it lives in the optional src/vector unit), when the module is not available
+ * at run time (it has to be added with --add-modules jdk.incubator.vector) or when the system property webapi.kernels
+ * is set to "scalar". Uses the singleton design pattern
+ * @author Patryk Wegrzyn
+ */
+public abstract class PriceKernels {
+
+	//Singleton Design Pattern
+	/**
+	 * Static field, which holds the only instance of this class during the lifetime of an application run
+	 */
+	private static PriceKernels firstInstance = null;
+
+	/**
+	 * Static method used as a factory for this class, the vectorized implementation is loaded reflectively, so that
+	 * this class does not depend on the incubator module, and the scalar one is used if it cannot be loaded
+	 * @return The only available instance of this class
+	 */
+	public static synchronized PriceKernels getInstance() {
+		if(firstInstance == null) {
+			firstInstance = "scalar".equals(System.getProperty("webapi.kernels")) ? new ScalarPriceKernels() : loadVectorized();
+		}
+		return firstInstance;
+	}
+
+	/**
+	 * Helper method, loads the vectorized implementation
+	 * @return the vectorized implementation, or the scalar one if the Vector API is not available
+	 */
+	private static PriceKernels loadVectorized() {
+		try {
+			return (PriceKernels) Class.forName("webapi.VectorPriceKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new ScalarPriceKernels();
+		}
+	}
+
+	/**
+	 * Retrieves the name of the implementation
+	 * @return the name, for example "scalar"
+	 */
+	public abstract String getName();
+
+	/**
+	 * Sums a range of prices, the order of the additions depends on the implementation, so the sums of the
+	 * implementations may differ in the last bits
+	 * @param values the column of prices
+	 * @param from the first index of the range
+	 * @param to the index following the range
+	 * @return the sum, 0 for an empty range
+	 */
+	public abstract double sum(double[] values, int from, int to);
+
+	/**
+	 * Sums a range of fixed-point prices, the sum is exact
+	 * @param values the column of prices in ten thousandths, see FixedPoint
+	 * @param from the first index of the range
+	 * @param to the index following the range
+	 * @return the sum, 0 for an empty range
+	 */
+	public abstract long sum(long[] values, int from, int to);
+
+	/**
+	 * Multiplies two ranges element by element and sums the products, the order of the additions depends on the
+	 * implementation
+	 * @param values the first column
+	 * @param from the first index of the range of the first column
+	 * @param other the second column, it may be the first one
+	 * @param otherFrom the first index of the range of the second column
+	 * @param length the length of the ranges
+	 * @return the dot product, 0 for empty ranges
+	 */
+	public abstract double dot(double[] values, int from, double[] other, int otherFrom, int length);
+
+	/**
+	 * Multiplies a range by a factor into another array
+	 * @param values the column of prices
+	 * @param from the first index of the range
+	 * @param length the length of the range
+	 * @param factor the factor
+	 * @param target the array of the products, it may be the column itself
+	 * @param targetFrom the index of the first product
+	 */
+	public abstract void scale(double[] values, int from, int length, double factor, double[] target, int targetFrom);
+
+	/**
+	 * Finds the minimal price of a range, of equal prices the first one is chosen
+	 * @param values the column of prices
+	 * @param from the first index of the range
+	 * @param to the index following the range
+	 * @return the index of the minimal price (the index into the column of the dates as well), -1 for an empty range
+	 */
+	public abstract int indexOfMin(double[] values, int from, int to);
+
+	/**
+	 * Finds the maximal price of a range, of equal prices the first one is chosen
+	 * @param values the column of prices
+	 * @param from the first index of the range
+	 * @param to the index following the range
+	 * @return the index of the maximal price (the index into the column of the dates as well), -1 for an empty range
+	 */
+	public abstract int indexOfMax(double[] values, int from, int to);
+
+}
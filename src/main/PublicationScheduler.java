@@ -0,0 +1,422 @@
+package webapi;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the resident history of a SeriesStore up to date in the background. NBP publishes its tables on business days
+ * at known times (table C between 7:45 and 8:15, table A and the prices of gold between 11:45 and 12:15, Warsaw time),
+ * so every publication is fetched just after its window opens, and retried with an exponential backoff until the data
+ * of the day appears (or the deadline of the day passes, for example on a holiday). Every refresh extends the history
+ * from the last resident day, so missed days are caught up as well.
+ * The clock and the executor are injectable, so the scheduler can be tested without waiting for the real publications
+ * @author Patryk Wegrzyn
+ */
+public class PublicationScheduler implements AutoCloseable {
+
+	/**
+	 * The time zone of the publications
+	 */
+	public static final ZoneId WARSAW = ZoneId.of("Europe/Warsaw");
+
+	/**
+	 * The regular publications of the NBP Web API
+	 */
+	public enum Publication {
+		/**
+		 * The bid and ask prices of table C
+		 */
+		TABLE_C(LocalTime.of(7, 45), "C/", LocalDate.of(2002, 1, 2), 93),
+		/**
+		 * The mid prices of table A
+		 */
+		TABLE_A(LocalTime.of(11, 45), "A/", LocalDate.of(2002, 1, 2), 93),
+		/**
+		 * The prices of gold
+		 */
+		GOLD(LocalTime.of(11, 45), SeriesStore.GOLD, LocalDate.of(2013, 1, 2), 367);
+
+		/**
+		 * The time the publication window opens
+		 */
+		private final LocalTime expected;
+		/**
+		 * The prefix of the keys of the series of this publication in the store
+		 */
+		private final String keyPrefix;
+		/**
+		 * The first day of the history available from the Web API
+		 */
+		private final LocalDate firstDay;
+		/**
+		 * The maximal number of days of a single query
+		 */
+		private final int maxPeriod;
+
+		/**
+		 * Typical constructor
+		 * @param expected the time the publication window opens
+		 * @param keyPrefix the prefix of the keys of the series of this publication in the store
+		 * @param firstDay the first day of the history available from the Web API
+		 * @param maxPeriod the maximal number of days of a single query
+		 */
+		private Publication(LocalTime expected, String keyPrefix, LocalDate firstDay, int maxPeriod) {
+			this.expected = expected;
+			this.keyPrefix = keyPrefix;
+			this.firstDay = firstDay;
+			this.maxPeriod = maxPeriod;
+		}
+
+		/**
+		 * Retrieves the time the publication window opens
+		 * @return the expected field value
+		 */
+		public LocalTime getExpected() {
+			return expected;
+		}
+
+	}
+
+	/**
+	 * The data source the publications are fetched from
+	 */
+	private final AbstractDataSource dataSource;
+	/**
+	 * The store holding the history
+	 */
+	private final SeriesStore store;
+	/**
+	 * The source of the current time
+	 */
+	private final Clock clock;
+	/**
+	 * Runs the refreshes
+	 */
+	private final ScheduledExecutorService executor;
+	/**
+	 * Set when the executor has been created by the scheduler and has to be shut down with it
+	 */
+	private final boolean ownsExecutor;
+	/**
+	 * The next scheduled refresh of every publication
+	 */
+	private final Map<Publication, ScheduledFuture<?>> scheduled = new EnumMap<>(Publication.class);
+	/**
+	 * The day the history starts with when nothing is resident yet, per publication
+	 */
+	private final Map<Publication, LocalDate> historyStart = new EnumMap<>(Publication.class);
+	/**
+	 * The refreshes which have not completed yet, per publication
+	 */
+	private final Map<Publication, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+	/**
+	 * The delay of the first retry
+	 */
+	private volatile Duration initialBackoff = Duration.ofMinutes(1);
+	/**
+	 * The maximal delay between two retries
+	 */
+	private volatile Duration maxBackoff = Duration.ofMinutes(15);
+	/**
+	 * The time of the day after which a missing publication is not retried anymore
+	 */
+	private volatile LocalTime deadline = LocalTime.of(18, 0);
+	/**
+	 * Number of refreshes run so far
+	 */
+	private final AtomicInteger refreshes = new AtomicInteger();
+	/**
+	 * Number of refreshes failed so far
+	 */
+	private final AtomicInteger failures = new AtomicInteger();
+	/**
+	 * The error of the latest refresh, per publication whose latest refresh has failed
+	 */
+	private final Map<Publication, Throwable> lastErrors = new ConcurrentHashMap<>();
+	/**
+	 * Set when the scheduler has been closed
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates the scheduler with the system clock and a background thread of its own
+	 * @param dataSource the data source the publications are fetched from
+	 * @param store the store holding the history
+	 */
+	public PublicationScheduler(AbstractDataSource dataSource, SeriesStore store) {
+		this(dataSource, store, Clock.system(WARSAW), Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "publication-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Creates the scheduler with a given clock and executor, the executor is not shut down by the scheduler
+	 * @param dataSource the data source the publications are fetched from
+	 * @param store the store holding the history
+	 * @param clock the source of the current time
+	 * @param executor runs the refreshes
+	 */
+	public PublicationScheduler(AbstractDataSource dataSource, SeriesStore store, Clock clock, ScheduledExecutorService executor) {
+		this(dataSource, store, clock, executor, false);
+	}
+
+	/**
+	 * Common constructor
+	 * @param dataSource the data source the publications are fetched from
+	 * @param store the store holding the history
+	 * @param clock the source of the current time
+	 * @param executor runs the refreshes
+	 * @param ownsExecutor true if the executor has to be shut down with the scheduler
+	 */
+	private PublicationScheduler(AbstractDataSource dataSource, SeriesStore store, Clock clock, ScheduledExecutorService executor, boolean ownsExecutor) {
+		this.dataSource = dataSource;
+		this.store = store;
+		this.clock = clock;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		for(Publication publication : Publication.values())
+			historyStart.put(publication, publication.firstDay);
+	}
+
+	/**
+	 * Schedules the refreshes of all the publications
+	 */
+	public void start() {
+		for(Publication publication : Publication.values())
+			start(publication);
+	}
+
+	/**
+	 * Schedules the refreshes of a single publication
+	 * @param publication the publication
+	 */
+	public void start(Publication publication) {
+		ZonedDateTime now = ZonedDateTime.now(clock.withZone(WARSAW));
+		ZonedDateTime next = now.toLocalDate().atTime(publication.expected).atZone(WARSAW);
+		if(!isBusinessDay(now.toLocalDate()) || now.toLocalTime().isAfter(deadline) || isPublished(publication, now.toLocalDate()))
+			next = nextPublication(publication, now);
+		schedule(publication, 0, Duration.between(now, next));
+	}
+
+	/**
+	 * Extends the history of a publication from its last resident day to today. A refresh requested while another one
+	 * of the same publication is running joins it, so the same period is never downloaded twice
+	 * @param publication the publication
+	 * @return the future completed with true if the data of today is resident afterwards
+	 */
+	public CompletableFuture<Boolean> refresh(Publication publication) {
+		CompletableFuture<Boolean> refresh = new CompletableFuture<>();
+		CompletableFuture<Boolean> running = inFlight.putIfAbsent(publication, refresh);
+		if(running != null)
+			return running;
+		refreshes.incrementAndGet();
+		load(publication).whenComplete((published, error) -> {
+			inFlight.remove(publication, refresh);
+			if(error != null) {
+				failures.incrementAndGet();
+				lastErrors.put(publication, AsyncUtils.unwrap(error));
+				refresh.completeExceptionally(AsyncUtils.unwrap(error));
+			} else {
+				lastErrors.remove(publication);
+				refresh.complete(published);
+			}
+		});
+		return refresh;
+	}
+
+	/**
+	 * Helper method, loads the history of a publication from its last resident day to today
+	 * @param publication the publication
+	 * @return the future completed with true if the data of today is resident afterwards
+	 */
+	private CompletableFuture<Boolean> load(Publication publication) {
+		LocalDate today = LocalDate.now(clock.withZone(WARSAW));
+		int lastDay = store.getLastDay(publication.keyPrefix);
+		LocalDate from = (lastDay < 0) ? historyStart.get(publication) : LocalDate.ofEpochDay(lastDay + 1);
+		if(from.isAfter(today))
+			return CompletableFuture.completedFuture(true);
+		String start = from.toString();
+		String end = today.toString();
+		CompletableFuture<Void> loaded;
+		switch(publication) {
+		case TABLE_A:
+			loaded = store.loadTableA(dataSource, start, end, publication.maxPeriod);
+			break;
+		case TABLE_C:
+			loaded = store.loadTableC(dataSource, start, end, publication.maxPeriod);
+			break;
+		default:
+			loaded = store.loadGold(dataSource, start, end, publication.maxPeriod);
+			break;
+		}
+		return loaded.thenApply(v -> isPublished(publication, today));
+	}
+
+	/**
+	 * Helper method, runs a refresh and schedules the next one: a retry after the backoff if the publication has not
+	 * appeared yet and the deadline has not passed, otherwise the publication of the next business day
+	 * @param publication the publication
+	 * @param attempt the number of the previous attempts of the day
+	 */
+	private void run(Publication publication, int attempt) {
+		//a failed refresh has been recorded by refresh, it is retried like a missing publication
+		refresh(publication).whenComplete((published, error) -> {
+			ZonedDateTime now = ZonedDateTime.now(clock.withZone(WARSAW));
+			Duration backoff = getBackoff(attempt);
+			if(!Boolean.TRUE.equals(published) && now.plus(backoff).toLocalTime().isBefore(deadline)
+					&& now.plus(backoff).toLocalDate().equals(now.toLocalDate()))
+				schedule(publication, attempt + 1, backoff);
+			else
+				schedule(publication, 0, Duration.between(now, nextPublication(publication, now)));
+		});
+	}
+
+	/**
+	 * Helper method, schedules a refresh
+	 * @param publication the publication
+	 * @param attempt the number of the previous attempts of the day
+	 * @param delay the delay of the refresh
+	 */
+	private synchronized void schedule(Publication publication, int attempt, Duration delay) {
+		if(closed)
+			return;
+		long millis = Math.max(0, delay.toMillis());
+		scheduled.put(publication, executor.schedule(() -> run(publication, attempt), millis, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Helper method, computes the delay of a retry
+	 * @param attempt the number of the previous attempts of the day
+	 * @return the delay, doubled with every attempt up to the maximal backoff
+	 */
+	private Duration getBackoff(int attempt) {
+		Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempt, 20));
+		return (backoff.compareTo(maxBackoff) > 0) ? maxBackoff : backoff;
+	}
+
+	/**
+	 * Helper method, checks whether the data of a day is resident
+	 * @param publication the publication
+	 * @param day the day
+	 * @return true if the history of the publication reaches the day
+	 */
+	private boolean isPublished(Publication publication, LocalDate day) {
+		return store.getLastDay(publication.keyPrefix) >= day.toEpochDay();
+	}
+
+	/**
+	 * Helper method, finds the opening of the next publication window after the current day
+	 * @param publication the publication
+	 * @param now the current time
+	 * @return the time of the next publication
+	 */
+	private ZonedDateTime nextPublication(Publication publication, ZonedDateTime now) {
+		LocalDate day = now.toLocalDate().plusDays(1);
+		while(!isBusinessDay(day))
+			day = day.plusDays(1);
+		return day.atTime(publication.expected).atZone(WARSAW);
+	}
+
+	/**
+	 * Helper method, checks whether NBP publishes its tables on a given day (the holidays are not known in advance,
+	 * on a holiday the publication is simply retried until the deadline)
+	 * @param day the day
+	 * @return true for the days from Monday to Friday
+	 */
+	private static boolean isBusinessDay(LocalDate day) {
+		return day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY;
+	}
+
+	/**
+	 * Cancels all the scheduled refreshes
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		for(ScheduledFuture<?> future : scheduled.values())
+			future.cancel(false);
+		scheduled.clear();
+		if(ownsExecutor)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * Retrieves the delay of the next scheduled refresh of a publication
+	 * @param publication the publication
+	 * @param unit the unit of the result
+	 * @return the delay, -1 if no refresh is scheduled
+	 */
+	public synchronized long getDelay(Publication publication, TimeUnit unit) {
+		ScheduledFuture<?> future = scheduled.get(publication);
+		return (future == null) ? -1 : future.getDelay(unit);
+	}
+
+	/**
+	 * Retrieves the number of refreshes run so far
+	 * @return the refreshes field value
+	 */
+	public int getRefreshes() {
+		return refreshes.get();
+	}
+
+	/**
+	 * Retrieves the number of refreshes failed so far
+	 * @return the failures field value
+	 */
+	public int getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Retrieves the error of the latest refresh of a publication
+	 * @param publication the publication
+	 * @return the error, null if the latest refresh has succeeded or there has been none
+	 */
+	public Throwable getLastError(Publication publication) {
+		return lastErrors.get(publication);
+	}
+
+	/**
+	 * Sets the day the history of a publication starts with when nothing of it is resident yet, has to be called before start
+	 * @param publication the publication
+	 * @param day the first day of the history
+	 */
+	public void setHistoryStart(Publication publication, LocalDate day) {
+		historyStart.put(publication, day);
+	}
+
+	/**
+	 * Sets the backoff of the retries
+	 * @param initialBackoff the delay of the first retry
+	 * @param maxBackoff the maximal delay between two retries
+	 */
+	public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	/**
+	 * Sets the time of the day after which a missing publication is not retried anymore
+	 * @param deadline the deadline
+	 */
+	public void setDeadline(LocalTime deadline) {
+		this.deadline = deadline;
+	}
+
+}
@@ -0,0 +1,221 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the 5th, 50th and 95th percentiles of the daily changes of the price of a currency from table A or of gold,
+ * or of the spreads between the ask and bid prices of a currency from table C, in a given period. The trees of sketches
+ * kept by the series store are queried when the period is resident, otherwise the period is fetched and sketched chunk
+ * by chunk. In the exact mode all the values of the period are sorted, and the answers of the sketches are printed
+ * next to the exact ones for comparison
+ * @author Patryk Wegrzyn
+ */
+public class QuantileOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The percentiles which are printed
+	 */
+	private static final int[] PERCENTILES = {5, 50, 95};
+	/**
+	 * The number of days fetched before the period, so that the change on its first day is known
+	 */
+	private static final int LEAD_DAYS = 10;
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The currency in question, or gold
+	 */
+	private String instrument;
+	/**
+	 * The derived series in question, change or spread
+	 */
+	private String metric;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Set when the percentiles are to be computed exactly as well
+	 */
+	private boolean exact = false;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the currency (or gold), the derived series (change or spread,
+	 * the spreads are known for the currencies of table C only), the start and optionally the end of the period,
+	 * optionally followed by the word exact
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public QuantileOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		int dates = (parameters == null) ? 0 : parameters.length - 2;
+		if(parameters != null && parameters.length > 0 && parameters[parameters.length - 1].equalsIgnoreCase("exact")) {
+			this.exact = true;
+			dates--;
+		}
+		if(parameters == null || (dates != 1 && dates != 2) || !parameters[0].matches("[\\w]{3}|gold")
+				|| !parameters[1].matches("change|spread") || (parameters[0].equals("gold") && parameters[1].equals("spread"))
+				|| !parameters[2].matches("[\\d]{4}-\\d\\d-\\d\\d") || (dates == 2 && !parameters[3].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.instrument = parameters[0];
+			this.metric = parameters[1];
+			this.start = parameters[2];
+			if(dates == 2) {
+				this.end = parameters[3];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the percentiles of the daily changes or of the spreads of a given currency or gold in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		SeriesStore store = SeriesStore.getInstance();
+		if(store.covers(getPriceKey(), startDay, endDay)) {
+			print(store.getSketches(getDerivedKey()), startDay, endDay);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		//the prices of every chunk are collected on their own and derived in chronological order when they are joined
+		boolean gold = this.instrument.equals("gold");
+		boolean spread = this.metric.equals("spread");
+		RateRecordReader reader = gold ? RateRecordReader.forGoldPrices(SeriesStore.GOLD)
+				: spread ? RateRecordReader.forBidAskRates() : RateRecordReader.forMidRates();
+		String path = gold ? "cenyzlota/" : "exchangerates/rates/" + (spread ? "C/" : "A/") + this.instrument + "/";
+		String lead = LocalDate.ofEpochDay(startDay - LEAD_DAYS).toString();
+		List<String[]> chunks = dataSource.splitPeriod(spread ? this.start : lead, this.end, dataSource.getMaxPeriodPerQuery());
+		return dataSource.foldChunks(chunks, chunk -> {
+					Map<String, CompressedSeries> partial = new HashMap<>();
+					FieldRecordSink sink = (date, code, field, value) -> {
+						String key = gold ? SeriesStore.GOLD : SeriesStore.key(spread ? "C" : "A", code.toUpperCase(), field);
+						partial.computeIfAbsent(key, k -> new CompressedSeries()).append(date, value);
+					};
+					//the chunks without any data are skipped
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(path + chunk[0] + "/" + chunk[1], reader, sink), partial);
+				}, new SketchIndex(key -> null), (index, partial) -> {
+					for(Map.Entry<String, CompressedSeries> entry : partial.entrySet()) {
+						CompressedSeries.Cursor cursor = entry.getValue().cursor();
+						while(cursor.next())
+							index.append(entry.getKey(), cursor.getDay(), cursor.getValue());
+					}
+					return index;
+				})
+				.handle((index, error) -> {
+					if(error != null)
+						reportError(error);
+					else
+						print(index.get(getDerivedKey()), startDay, endDay);
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, finds the key of the series of prices the values are derived from
+	 * @return the key of the series of the mid prices, of the bid prices or of gold
+	 */
+	private String getPriceKey() {
+		if(this.instrument.equals("gold"))
+			return SeriesStore.GOLD;
+		return this.metric.equals("spread") ? SeriesStore.key("C", this.instrument.toUpperCase(), "bid")
+				: SeriesStore.key("A", this.instrument.toUpperCase(), "mid");
+	}
+
+	/**
+	 * Helper method, finds the key of the derived series
+	 * @return the key of the series of the changes or of the spreads
+	 */
+	private String getDerivedKey() {
+		return SketchIndex.derivedKey(getPriceKey());
+	}
+
+	/**
+	 * Helper method, prints the percentiles of the period
+	 * @param series the derived series
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 */
+	private void print(SketchSeries series, int startDay, int endDay) {
+		QuantileSketch sketch = (series == null) ? new QuantileSketch() : series.sketch(startDay, endDay);
+		if(sketch.getCount() == 0) {
+			reportError(new WebApiException("Not Found - Brak danych"));
+			return;
+		}
+		double sorted[] = this.exact ? series.sorted(startDay, endDay) : null;
+		String values = this.metric.equals("spread") ? "spreads" : "daily changes (in percent)";
+		System.out.println("The percentiles of the " + values + " of " + this.instrument + " from " + this.start + " to " + this.end
+				+ " (" + sketch.getCount() + " days):");
+		for(int percentile : PERCENTILES) {
+			double estimate = round(sketch.getQuantile(percentile / 100.0));
+			if(this.exact)
+				System.out.println("p" + percentile + ": " + round(QuantileSketch.quantileOf(sorted, percentile / 100.0)) + " (sketch " + estimate + ")");
+			else
+				System.out.println("p" + percentile + ": " + estimate);
+		}
+	}
+
+	/**
+	 * Helper method, rounds a value for printing
+	 * @param value the value
+	 * @return the value rounded to 4 decimal places
+	 */
+	private static double round(double value) {
+		return Math.round(value * 10000) / 10000.0;
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the percentiles could not be found, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The percentiles of " + this.instrument + " from " + this.start + " to " + this.end + " could not be found: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The percentiles of " + this.instrument + " from " + this.start + " to " + this.end + " could not be found: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
@@ -0,0 +1,249 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A mergeable sketch of the distribution of a stream of values (the KLL sketch of Karnin, Lang and Liberty), which
+ * answers the quantiles of the stream in memory of the order of k, however long the stream is. The values are kept in
+ * levels, a value of the level h stands for 2^h values of the stream. A full level is sorted and every other of its
+ * values (starting randomly with the first or the second) is promoted to the next level. The capacities of the levels
+ * decrease geometrically from the top, so the rank of a returned quantile is off by about 1.7 / k of the count
+ * @author Patryk Wegrzyn
+ */
+public class QuantileSketch {
+
+	/**
+	 * The default accuracy parameter, the rank error is below 1% of the count
+	 */
+	public static final int DEFAULT_K = 200;
+	/**
+	 * The ratio of the capacities of consecutive levels
+	 */
+	private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+	/**
+	 * The accuracy parameter, the capacity of the top level
+	 */
+	private final int k;
+	/**
+	 * The values of every level
+	 */
+	private final List<double[]> levels = new ArrayList<>();
+	/**
+	 * The number of values of every level
+	 */
+	private int[] sizes = new int[0];
+	/**
+	 * The number of values of the stream
+	 */
+	private long count = 0;
+	/**
+	 * The lowest value of the stream
+	 */
+	private double min = Double.NaN;
+	/**
+	 * The highest value of the stream
+	 */
+	private double max = Double.NaN;
+	/**
+	 * Chooses the values promoted by a compaction, seeded, so that the answers are reproducible
+	 */
+	private final Random random = new Random(45);
+
+	/**
+	 * Creates a sketch with the default accuracy
+	 */
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Creates a sketch with a given accuracy
+	 * @param k the accuracy parameter, at least 8, the memory and the accuracy grow linearly with it
+	 */
+	public QuantileSketch(int k) {
+		if(k < 8)
+			throw new IllegalArgumentException("The accuracy parameter has to be at least 8");
+		this.k = k;
+		addLevel();
+	}
+
+	/**
+	 * Adds a value of the stream
+	 * @param value the value, not NaN
+	 */
+	public void update(double value) {
+		insert(0, value);
+		count++;
+		min = (count == 1) ? value : Math.min(min, value);
+		max = (count == 1) ? value : Math.max(max, value);
+		compress();
+	}
+
+	/**
+	 * Merges the sketch of another stream into this one, the result is the sketch of both streams
+	 * @param other the sketch of the other stream, it is not modified
+	 * @return this sketch
+	 */
+	public QuantileSketch merge(QuantileSketch other) {
+		if(other.count == 0)
+			return this;
+		for(int h=0; h<other.levels.size(); h++)
+			for(int i=0; i<other.sizes[h]; i++)
+				insert(h, other.levels.get(h)[i]);
+		min = (count == 0) ? other.min : Math.min(min, other.min);
+		max = (count == 0) ? other.max : Math.max(max, other.max);
+		count += other.count;
+		compress();
+		return this;
+	}
+
+	/**
+	 * Finds the quantile of the stream
+	 * @param fraction the fraction of the values lower than the quantile, from 0 to 1, for example 0.95 for p95
+	 * @return the value whose rank is the closest to the fraction of the count, NaN if the stream is empty
+	 */
+	public double getQuantile(double fraction) {
+		if(count == 0)
+			return Double.NaN;
+		if(fraction <= 0)
+			return min;
+		if(fraction >= 1)
+			return max;
+		int total = 0;
+		for(int size : sizes)
+			total += size;
+		double values[] = new double[total];
+		long weights[] = new long[total];
+		Integer order[] = new Integer[total];
+		int n = 0;
+		for(int h=0; h<levels.size(); h++) {
+			for(int i=0; i<sizes[h]; i++) {
+				values[n] = levels.get(h)[i];
+				weights[n] = 1L << h;
+				order[n] = n;
+				n++;
+			}
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+		double target = fraction * count;
+		long cumulative = 0;
+		for(int index : order) {
+			cumulative += weights[index];
+			if(cumulative >= target)
+				return values[index];
+		}
+		return max;
+	}
+
+	/**
+	 * Finds the quantile of sorted values exactly, with the same definition of the rank as getQuantile
+	 * @param sorted the values, in ascending order
+	 * @param fraction the fraction of the values lower than the quantile, from 0 to 1
+	 * @return the lowest value preceded by at least the fraction of the values, NaN if there are no values
+	 */
+	public static double quantileOf(double[] sorted, double fraction) {
+		if(sorted.length == 0)
+			return Double.NaN;
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/**
+	 * Retrieves the number of values of the stream
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Retrieves the number of values kept by the sketch
+	 * @return the number of kept values, of the order of k
+	 */
+	public int getRetained() {
+		int total = 0;
+		for(int size : sizes)
+			total += size;
+		return total;
+	}
+
+	/**
+	 * Helper method, adds a value to a level
+	 * @param level the level
+	 * @param value the value
+	 */
+	private void insert(int level, double value) {
+		while(level >= levels.size())
+			addLevel();
+		double items[] = levels.get(level);
+		if(sizes[level] == items.length) {
+			items = Arrays.copyOf(items, items.length * 2);
+			levels.set(level, items);
+		}
+		items[sizes[level]++] = value;
+	}
+
+	/**
+	 * Helper method, adds an empty level on the top
+	 */
+	private void addLevel() {
+		levels.add(new double[8]);
+		sizes = Arrays.copyOf(sizes, sizes.length + 1);
+	}
+
+	/**
+	 * Helper method, retrieves the capacity of a level, the top level holds k values
+	 * @param level the level
+	 * @return the capacity, at least 2
+	 */
+	private int capacity(int level) {
+		int depth = levels.size() - level - 1;
+		return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+	}
+
+	/**
+	 * Helper method, compacts the lowest full levels until the sketch fits into its total capacity
+	 */
+	private void compress() {
+		while(true) {
+			int total = 0, capacity = 0;
+			for(int h=0; h<levels.size(); h++) {
+				total += sizes[h];
+				capacity += capacity(h);
+			}
+			if(total < capacity)
+				return;
+			for(int h=0; h<levels.size(); h++) {
+				if(sizes[h] >= capacity(h)) {
+					compact(h);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method, sorts a level and promotes every other of its values to the next level, one value is kept
+	 * when the level has an odd number of them
+	 * @param level the level
+	 */
+	private void compact(int level) {
+		double items[] = levels.get(level);
+		int size = sizes[level];
+		Arrays.sort(items, 0, size);
+		int paired = size - (size % 2);
+		int offset = random.nextBoolean() ? 1 : 0;
+		for(int i=offset; i<paired; i+=2)
+			insert(level + 1, items[i]);
+		//insert might have replaced the array of the next level only, the level itself keeps its array
+		items = levels.get(level);
+		if(size % 2 == 1)
+			items[0] = items[size - 1];
+		sizes[level] = size % 2;
+	}
+
+}
@@ -0,0 +1,255 @@
+package webapi;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+
+/**
+ * Decodes the rate records of a JSON response with the streaming JsonParser, without building the JsonArray / JsonObject
+ * tree of the whole response. A record is an object which has the value field, its date and code are taken from the
+ * object itself or, if it does not have them, from the nearest enclosing object which does: this covers the gold prices
+ * [{"data":..,"cena":..}], the tables [{"effectiveDate":..,"rates":[{"code":..,"mid":..}]}] and the rates of a single
+ * currency {"code":..,"rates":[{"effectiveDate":..,"mid":..}]} with the same reader. An object may have more than one
+ * value field (the bid and ask prices of table C), each of them is passed to the sink separately. The prices with at most
+ * four decimal places (all the NBP prices) are parsed straight into the fixed-point representation and passed to the
+ * acceptFixed method of the sink, the other ones are passed as doubles
+ * @author Patryk Wegrzyn
+ */
+public class RateRecordReader {
+
+	/**
+	 * Name of the field holding the date
+	 */
+	private final String dateField;
+	/**
+	 * Name of the field holding the code of the currency, null when the response has no codes
+	 */
+	private final String codeField;
+	/**
+	 * Names of the fields holding the prices
+	 */
+	private final String[] valueFields;
+	/**
+	 * The code passed to the sink when the record has no code
+	 */
+	private final String defaultCode;
+
+	/**
+	 * Typical constructor
+	 * @param dateField the name of the field holding the date, for example "effectiveDate"
+	 * @param codeField the name of the field holding the code of the currency, for example "code", or null
+	 * @param valueField the name of the field holding the price, for example "mid"
+	 * @param defaultCode the code passed to the sink when the record has no code
+	 */
+	public RateRecordReader(String dateField, String codeField, String valueField, String defaultCode) {
+		this(dateField, codeField, new String[] {valueField}, defaultCode);
+	}
+
+	/**
+	 * Creates the reader of the objects with more than one price field, every field is passed to the sink as a record of its own
+	 * @param dateField the name of the field holding the date, for example "effectiveDate"
+	 * @param codeField the name of the field holding the code of the currency, for example "code", or null
+	 * @param valueFields the names of the fields holding the prices, for example "bid" and "ask"
+	 * @param defaultCode the code passed to the sink when the record has no code
+	 */
+	public RateRecordReader(String dateField, String codeField, String[] valueFields, String defaultCode) {
+		this.dateField = dateField;
+		this.codeField = codeField;
+		this.valueFields = valueFields.clone();
+		this.defaultCode = defaultCode;
+	}
+
+	/**
+	 * Creates the reader of the responses of the exchangerates endpoints (both the tables and the rates of a single currency)
+	 * @return the reader of the mid prices
+	 */
+	public static RateRecordReader forMidRates() {
+		return new RateRecordReader("effectiveDate", "code", "mid", null);
+	}
+
+	/**
+	 * Creates the reader of the responses of the exchangerates endpoints of table C, which have the bid and ask prices
+	 * @return the reader of the bid and ask prices
+	 */
+	public static RateRecordReader forBidAskRates() {
+		return new RateRecordReader("effectiveDate", "code", new String[] {"bid", "ask"}, null);
+	}
+
+	/**
+	 * Creates the reader of the responses of the cenyzlota endpoint
+	 * @param code the code under which the gold prices are passed to the sink
+	 * @return the reader of the gold prices
+	 */
+	public static RateRecordReader forGoldPrices(String code) {
+		return new RateRecordReader("data", null, "cena", code);
+	}
+
+	/**
+	 * Decodes all the records of the stream and passes them to the sink in the order of the response, the stream is closed afterwards
+	 * @param stream the body of the response
+	 * @param sink the consumer of the records
+	 * @throws javax.json.stream.JsonParsingException thrown when the stream is not a valid JSON document
+	 */
+	public void read(InputStream stream, RateRecordSink sink) {
+		//one scope per currently open object, reused when the parser goes back to the same depth
+		List<Scope> scopes = new ArrayList<>();
+		int depth = -1;
+		String key = null;
+		try (JsonParser parser = Json.createParser(stream)) {
+			while(parser.hasNext()) {
+				switch(parser.next()) {
+				case START_OBJECT:
+					depth++;
+					if(depth == scopes.size())
+						scopes.add(new Scope(valueFields.length));
+					scopes.get(depth).clear();
+					key = null;
+					break;
+				case END_OBJECT:
+					Scope scope = scopes.get(depth);
+					for(int i=0; i<valueFields.length; i++) {
+						if(!scope.hasValue[i])
+							continue;
+						if(scope.fixed[i] != FixedPoint.INEXACT)
+							sink.acceptFixed(findDate(scopes, depth), findCode(scopes, depth), valueFields[i], scope.fixed[i]);
+						else
+							sink.accept(findDate(scopes, depth), findCode(scopes, depth), valueFields[i], scope.values[i]);
+					}
+					depth--;
+					key = null;
+					break;
+				case KEY_NAME:
+					key = parser.getString();
+					break;
+				case VALUE_STRING:
+					if(depth >= 0 && key != null) {
+						if(key.equals(dateField))
+							scopes.get(depth).date = parser.getString();
+						else if(key.equals(codeField))
+							scopes.get(depth).code = parser.getString();
+					}
+					key = null;
+					break;
+				case VALUE_NUMBER:
+					if(depth >= 0 && key != null) {
+						for(int i=0; i<valueFields.length; i++) {
+							if(key.equals(valueFields[i])) {
+								Scope current = scopes.get(depth);
+								String text = parser.getString();
+								current.hasValue[i] = true;
+								current.fixed[i] = FixedPoint.parseExact(text);
+								current.values[i] = (current.fixed[i] != FixedPoint.INEXACT) ? FixedPoint.toDouble(current.fixed[i]) : Double.parseDouble(text);
+							}
+						}
+					}
+					key = null;
+					break;
+				default:
+					key = null;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Passes the points of a series to the sink as the records this reader would decode from a response with the same
+	 * prices, for example the prices of a currency retrieved from a federated data source
+	 * @param series the prices
+	 * @param code the code of the currency of the response, used when the reader takes the codes from the records
+	 * @param sink the consumer of the records
+	 */
+	public void replay(CompressedSeries series, String code, RateRecordSink sink) {
+		String recordCode = (codeField != null) ? code : defaultCode;
+		CompressedSeries.Cursor cursor = series.cursor();
+		while(cursor.next()) {
+			String date = LocalDate.ofEpochDay(cursor.getDay()).toString();
+			long fixed = FixedPoint.fromDouble(cursor.getValue());
+			//the prices with at most four decimal places are passed in the fixed-point representation, as they are decoded
+			if(FixedPoint.toDouble(fixed) == cursor.getValue())
+				sink.acceptFixed(date, recordCode, valueFields[0], fixed);
+			else
+				sink.accept(date, recordCode, valueFields[0], cursor.getValue());
+		}
+	}
+
+	/**
+	 * Helper method, finds the date of a record in its own object or the enclosing ones
+	 * @param scopes the currently open objects
+	 * @param depth the depth of the record
+	 * @return the date, or null if there is none
+	 */
+	private String findDate(List<Scope> scopes, int depth) {
+		for(int i=depth; i>=0; i--)
+			if(scopes.get(i).date != null)
+				return scopes.get(i).date;
+		return null;
+	}
+
+	/**
+	 * Helper method, finds the code of a record in its own object or the enclosing ones
+	 * @param scopes the currently open objects
+	 * @param depth the depth of the record
+	 * @return the code, or the default code if there is none
+	 */
+	private String findCode(List<Scope> scopes, int depth) {
+		for(int i=depth; i>=0; i--)
+			if(scopes.get(i).code != null)
+				return scopes.get(i).code;
+		return defaultCode;
+	}
+
+	/**
+	 * The fields of a single open object which are relevant to the records
+	 */
+	private static class Scope {
+
+		/**
+		 * The date found in the object
+		 */
+		private String date;
+		/**
+		 * The code found in the object
+		 */
+		private String code;
+		/**
+		 * Set for every value field the object has
+		 */
+		private final boolean[] hasValue;
+		/**
+		 * The values found in the object
+		 */
+		private final double[] values;
+		/**
+		 * The values found in the object in the fixed-point representation, FixedPoint.INEXACT for the values
+		 * which cannot be represented exactly
+		 */
+		private final long[] fixed;
+
+		/**
+		 * Typical constructor
+		 * @param fields the number of value fields
+		 */
+		private Scope(int fields) {
+			this.hasValue = new boolean[fields];
+			this.values = new double[fields];
+			this.fixed = new long[fields];
+		}
+
+		/**
+		 * Prepares the scope for a new object
+		 */
+		private void clear() {
+			date = null;
+			code = null;
+			Arrays.fill(hasValue, false);
+		}
+
+	}
+
+}
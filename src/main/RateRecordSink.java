@@ -0,0 +1,45 @@
+package webapi;
+
+
+/**
+ * Receives the rate records decoded from a response of the Web API one by one, so that an order can fold them
+ * into its result without keeping the whole response in memory
+ * @author Patryk Wegrzyn
+ *
+ */
+@FunctionalInterface
+public interface RateRecordSink {
+
+	/**
+	 * Consumes a single decoded record
+	 * @param date the date of the record, format yyyy-MM-dd
+	 * @param code the code of the currency (or the default code of the reader, for example for the gold prices)
+	 * @param value the price
+	 */
+	public void accept(String date, String code, double value);
+
+	/**
+	 * Consumes a single decoded record of a response with more than one price field (for example the bid and ask
+	 * prices of table C), the sinks which do not distinguish the fields consume all of them as plain records
+	 * @param date the date of the record, format yyyy-MM-dd
+	 * @param code the code of the currency (or the default code of the reader)
+	 * @param field the name of the price field
+	 * @param value the price
+	 */
+	public default void accept(String date, String code, String field, double value) {
+		accept(date, code, value);
+	}
+
+	/**
+	 * Consumes a single decoded record whose price has been parsed exactly into the fixed-point representation,
+	 * the sinks which sum or compare the prices exactly override it, the others consume the price as a double
+	 * @param date the date of the record, format yyyy-MM-dd
+	 * @param code the code of the currency (or the default code of the reader)
+	 * @param field the name of the price field
+	 * @param value the price in ten thousandths, see FixedPoint
+	 */
+	public default void acceptFixed(String date, String code, String field, long value) {
+		accept(date, code, field, FixedPoint.toDouble(value));
+	}
+	
+}
@@ -0,0 +1,125 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The daily logarithmic returns of many currencies over a common calendar, as a dense days x currencies matrix in
+ * column-major order: the returns of a currency are contiguous, so the kernels stream whole columns from memory.
+ * The return of a day is ln(price / price of the previous day of the calendar), a currency missing from a table
+ * keeps its previous price, which makes its return 0 on that day
+ * @author Patryk Wegrzyn
+ */
+public class ReturnMatrix {
+
+	/**
+	 * The codes of the currencies, one per column
+	 */
+	private final String[] codes;
+	/**
+	 * The dates of the returns, one per row
+	 */
+	private final String[] dates;
+	/**
+	 * The returns, the return of the currency c on the day d is at c * days + d
+	 */
+	private final double[] returns;
+
+	/**
+	 * Typical constructor, for example for the synthetic series of the benchmarks
+	 * @param codes the codes of the currencies, one per column
+	 * @param dates the dates of the returns, one per row
+	 * @param returns the returns in column-major order, codes.length * dates.length of them
+	 */
+	public ReturnMatrix(String[] codes, String[] dates, double[] returns) {
+		if(returns.length != codes.length * dates.length)
+			throw new IllegalArgumentException("The matrix has to have a return for every currency and every day");
+		this.codes = codes;
+		this.dates = dates;
+		this.returns = returns;
+	}
+
+	/**
+	 * Aligns the columns of the prices of many currencies to the dates of all of them and computes their returns.
+	 * Every column is walked once, in step with the calendar, so no price is looked up by its date
+	 * @param columns the columns of the prices in chronological order, by the codes of the currencies, the empty ones are left out
+	 * @return the matrix of the returns, with one row less than the calendar has dates
+	 */
+	public static ReturnMatrix of(Map<String, PriceColumn> columns) {
+		TreeSet<String> calendar = new TreeSet<>();
+		List<String> codes = new ArrayList<>();
+		for(Map.Entry<String, PriceColumn> entry : columns.entrySet()) {
+			PriceColumn column = entry.getValue();
+			if(column.getSize() == 0)
+				continue;
+			codes.add(entry.getKey());
+			for(int i=0; i<column.getSize(); i++)
+				calendar.add(column.getDate(i));
+		}
+		String[] dates = calendar.toArray(new String[0]);
+		int days = Math.max(0, dates.length - 1);
+		double[] returns = new double[codes.size() * days];
+		for(int c=0; c<codes.size(); c++) {
+			PriceColumn column = columns.get(codes.get(c));
+			double[] prices = column.getValues();
+			//the days before the first price of a currency have its first price
+			int next = 0;
+			double previous = prices[0];
+			for(int d=0; d<dates.length; d++) {
+				double price = previous;
+				if(next < column.getSize() && column.getDate(next).equals(dates[d]))
+					price = prices[next++];
+				if(d > 0)
+					returns[c * days + d - 1] = Math.log(price / previous);
+				previous = price;
+			}
+		}
+		String[] returnDates = new String[days];
+		System.arraycopy(dates, Math.min(1, dates.length), returnDates, 0, days);
+		return new ReturnMatrix(codes.toArray(new String[0]), returnDates, returns);
+	}
+
+	/**
+	 * Retrieves the codes of the currencies
+	 * @return the codes, one per column
+	 */
+	public String[] getCodes() {
+		return codes;
+	}
+
+	/**
+	 * Retrieves the date of a row
+	 * @param day the index of the row
+	 * @return the date, format yyyy-MM-dd
+	 */
+	public String getDate(int day) {
+		return dates[day];
+	}
+
+	/**
+	 * Retrieves the number of rows
+	 * @return the number of days with returns
+	 */
+	public int getDays() {
+		return dates.length;
+	}
+
+	/**
+	 * Retrieves the number of columns
+	 * @return the number of currencies
+	 */
+	public int getCurrencies() {
+		return codes.length;
+	}
+
+	/**
+	 * Retrieves the returns
+	 * @return the returns in column-major order, the return of the currency c on the day d is at c * getDays() + d
+	 */
+	public double[] getReturns() {
+		return returns;
+	}
+
+}
@@ -0,0 +1,211 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the moving averages, the rolling volatility and the rolling minimum and maximum of the price of a currency
+ * from table A or of gold over given windows of trading days, for every day of a given period. Every window is a
+ * RollingWindow, so a step costs the same whatever the size of the window, and the lines of every chunk of the
+ * period are printed as soon as it has been folded, while the next chunks are being downloaded
+ * @author Patryk Wegrzyn
+ */
+public class RollingStatsOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The currency in question, or gold
+	 */
+	private String instrument;
+	/**
+	 * The sizes of the windows, in trading days
+	 */
+	private int[] sizes;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the currency (or gold), the comma separated sizes of the windows,
+	 * the start and optionally the end of the period
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public RollingStatsOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		if(parameters == null || (parameters.length != 3 && parameters.length != 4) || !parameters[0].matches("[\\w]{3}|gold")
+				|| !parameters[1].matches("\\d{1,4}(,\\d{1,4})*") || !parameters[2].matches("[\\d]{4}-\\d\\d-\\d\\d")
+				|| (parameters.length == 4 && !parameters[3].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.instrument = parameters[0];
+			String windows[] = parameters[1].split(",");
+			this.sizes = new int[windows.length];
+			for(int i=0; i<windows.length; i++) {
+				this.sizes[i] = Integer.parseInt(windows[i]);
+				if(this.sizes[i] < 2)
+					this.wrongArgFormat = true;
+			}
+			this.start = parameters[2];
+			if(parameters.length == 4) {
+				this.end = parameters[3];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the rolling statistics of the price of a given currency or gold in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		List<RollingWindow> windows = new ArrayList<>();
+		for(int size : this.sizes)
+			windows.add(new RollingWindow(size));
+		//the windows are filled with the prices preceding the period first: about 5 trading days per 7 calendar days,
+		//the holidays (about 13 trading days a year, so the allowance grows with the window) and a margin of two weeks
+		int maxSize = 0;
+		for(int size : this.sizes)
+			maxSize = Math.max(maxSize, size);
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		int warmUpDay = startDay - (maxSize * 7 / 5 + maxSize / 10 + 14);
+		String name = isGold() ? "gold" : this.instrument;
+		System.out.println("The rolling statistics of " + name + " from " + this.start + " to " + this.end + ":");
+
+		SeriesStore store = SeriesStore.getInstance();
+		String key = isGold() ? SeriesStore.GOLD : SeriesStore.key("A", this.instrument.toUpperCase(), "mid");
+		if(store.covers(key, warmUpDay, endDay)) {
+			PriceColumn column = new PriceColumn(0, true);
+			CompressedSeries.Cursor cursor = store.getSeries(key).cursor(warmUpDay, endDay);
+			while(cursor.next())
+				column.append(LocalDate.ofEpochDay(cursor.getDay()).toString(), cursor.getValue());
+			System.out.print(step(windows, column));
+			return CompletableFuture.completedFuture(null);
+		}
+
+		//the chunks are folded in chronological order, every folded chunk is printed right away
+		RateRecordReader reader = isGold() ? RateRecordReader.forGoldPrices(SeriesStore.GOLD) : RateRecordReader.forMidRates();
+		String path = isGold() ? "cenyzlota/" : "exchangerates/rates/A/" + this.instrument + "/";
+		List<String[]> chunks = dataSource.splitPeriod(LocalDate.ofEpochDay(warmUpDay).toString(), this.end, dataSource.getMaxPeriodPerQuery());
+		return dataSource.foldChunks(chunks, chunk -> {
+					PriceColumns partial = new PriceColumns();
+					//the chunks without any data are skipped
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(path + chunk[0] + "/" + chunk[1], reader, partial), partial);
+				}, 0, (printed, partial) -> {
+					for(PriceColumn column : partial.getColumns().values()) {
+						String lines = step(windows, column);
+						System.out.print(lines);
+						printed += lines.isEmpty() ? 0 : 1;
+					}
+					return printed;
+				})
+				.handle((printed, error) -> {
+					if(error != null)
+						reportError(error);
+					else if(printed == 0)
+						reportError(new WebApiException("Not Found - Brak danych"));
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, feeds the prices of a column to the windows and formats the statistics of the days of the period
+	 * @param windows the windows, one per requested size
+	 * @param column the prices following all the prices fed so far
+	 * @return the lines of the days of the column which belong to the period
+	 */
+	private String step(List<RollingWindow> windows, PriceColumn column) {
+		StringBuilder lines = new StringBuilder();
+		for(int i=0; i<column.getSize(); i++) {
+			String date = column.getDate(i);
+			double value = column.getValues()[i];
+			for(RollingWindow window : windows)
+				window.add(date, value);
+			if(date.compareTo(this.start) < 0 || date.compareTo(this.end) > 0)
+				continue;
+			lines.append(date).append(' ').append(value);
+			for(RollingWindow window : windows)
+				appendWindow(lines, window);
+			lines.append(System.lineSeparator());
+		}
+		return lines.toString();
+	}
+
+	/**
+	 * Helper method, formats the statistics of a single window
+	 * @param line the builder of the line of a day
+	 * @param window the window
+	 */
+	private void appendWindow(StringBuilder line, RollingWindow window) {
+		line.append(" | ").append(window.getSize()).append("d ");
+		if(!window.isFull()) {
+			line.append("n/a (" + window.getCount() + "/" + window.getSize() + ")");
+			return;
+		}
+		line.append("mean ").append(FixedPoint.toDouble(FixedPoint.fromDouble(window.getMean())))
+				.append(" min ").append(window.getMin())
+				.append(" max ").append(window.getMax())
+				.append(" vol ").append(String.format(Locale.ROOT, "%.4f%%", window.getVolatility() * 100));
+	}
+
+	/**
+	 * Helper method, checks whether the order is about gold
+	 * @return true if the prices of gold are in question
+	 */
+	private boolean isGold() {
+		return this.instrument.equals("gold");
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the statistics could not be computed, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The rolling statistics of " + this.instrument + " from " + this.start + " to " + this.end + " could not be computed: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The rolling statistics of " + this.instrument + " from " + this.start + " to " + this.end + " could not be computed: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
@@ -0,0 +1,208 @@
+package webapi;
+
+/**
+ * The statistics of the last N prices of a series (mean, minimum, maximum and the volatility of the daily returns),
+ * updated in amortized constant time per price whatever the size of the window. The sums are kept running, the
+ * minimum and the maximum are kept by monotonic deques of the indices of the prices. The running sums are recomputed
+ * once per N prices, so the floating point error does not accumulate over a long history
+ * @author Patryk Wegrzyn
+ */
+public class RollingWindow {
+
+	/**
+	 * The number of prices in a full window
+	 */
+	private final int size;
+	/**
+	 * The last prices, indexed by their sequence number modulo the size
+	 */
+	private final double[] values;
+	/**
+	 * The dates of the last prices, indexed the same way
+	 */
+	private final String[] dates;
+	/**
+	 * The logarithmic returns of the last prices, the return of a price relative to the previous one
+	 */
+	private final double[] returns;
+	/**
+	 * The sequence numbers of the candidates for the minimum, their prices increase from the head to the tail
+	 */
+	private final long[] minDeque;
+	/**
+	 * The sequence numbers of the candidates for the maximum, their prices decrease from the head to the tail
+	 */
+	private final long[] maxDeque;
+	/**
+	 * The head and the tail of the deque of the minimum, the tail is exclusive, both grow without bound
+	 */
+	private int minHead = 0, minTail = 0;
+	/**
+	 * The head and the tail of the deque of the maximum
+	 */
+	private int maxHead = 0, maxTail = 0;
+	/**
+	 * The number of prices added so far
+	 */
+	private long count = 0;
+	/**
+	 * The running sum of the prices of the window
+	 */
+	private double sum = 0;
+	/**
+	 * The running sum of the returns of the window
+	 */
+	private double returnSum = 0;
+	/**
+	 * The running sum of the squares of the returns of the window
+	 */
+	private double returnSquares = 0;
+
+	/**
+	 * Typical constructor
+	 * @param size the number of prices in a full window, at least 2
+	 */
+	public RollingWindow(int size) {
+		if(size < 2)
+			throw new IllegalArgumentException("A window has to hold at least two prices");
+		this.size = size;
+		this.values = new double[size];
+		this.dates = new String[size];
+		this.returns = new double[size];
+		this.minDeque = new long[size];
+		this.maxDeque = new long[size];
+	}
+
+	/**
+	 * Adds the next price of the series, the oldest one leaves the full window
+	 * @param date the date of the price, format yyyy-MM-dd
+	 * @param value the price, positive
+	 */
+	public void add(String date, double value) {
+		int slot = (int) (count % size);
+		if(count >= size) {
+			sum -= values[slot];
+			//the return of the oldest price relative to a price outside of the window leaves the window
+			long first = count - size + 1;
+			double leaving = returns[(int) (first % size)];
+			returnSum -= leaving;
+			returnSquares -= leaving * leaving;
+		}
+		double change = (count == 0) ? 0 : Math.log(value / values[(int) ((count - 1) % size)]);
+		values[slot] = value;
+		dates[slot] = date;
+		returns[slot] = change;
+		sum += value;
+		if(count > 0) {
+			returnSum += change;
+			returnSquares += change * change;
+		}
+
+		//the candidates which left the window are dropped from the heads, the dominated ones from the tails
+		while(minTail > minHead && minDeque[minHead % size] <= count - size) minHead++;
+		while(maxTail > maxHead && maxDeque[maxHead % size] <= count - size) maxHead++;
+		while(minTail > minHead && values[(int) (minDeque[(minTail - 1) % size] % size)] > value) minTail--;
+		while(maxTail > maxHead && values[(int) (maxDeque[(maxTail - 1) % size] % size)] < value) maxTail--;
+		minDeque[minTail++ % size] = count;
+		maxDeque[maxTail++ % size] = count;
+		count++;
+		if(count % size == 0)
+			recomputeSums();
+	}
+
+	/**
+	 * Helper method, recomputes the running sums of the full window exactly
+	 */
+	private void recomputeSums() {
+		sum = 0;
+		returnSum = 0;
+		returnSquares = 0;
+		long first = count - size;
+		for(long i=first; i<count; i++) {
+			sum += values[(int) (i % size)];
+			if(i > first) {
+				double change = returns[(int) (i % size)];
+				returnSum += change;
+				returnSquares += change * change;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the window is full
+	 * @return true if at least N prices have been added
+	 */
+	public boolean isFull() {
+		return count >= size;
+	}
+
+	/**
+	 * Retrieves the number of prices in the window
+	 * @return the number of prices, at most N
+	 */
+	public int getCount() {
+		return (int) Math.min(count, size);
+	}
+
+	/**
+	 * Retrieves the size of the window
+	 * @return the number of prices in a full window
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Retrieves the moving average of the prices of the window
+	 * @return the mean price, NaN if the window is empty
+	 */
+	public double getMean() {
+		return sum / getCount();
+	}
+
+	/**
+	 * Retrieves the lowest price of the window, of equal prices the earliest one
+	 * @return the minimal price, NaN if the window is empty
+	 */
+	public double getMin() {
+		return (count == 0) ? Double.NaN : values[(int) (minDeque[minHead % size] % size)];
+	}
+
+	/**
+	 * Retrieves the date of the lowest price of the window
+	 * @return the date, null if the window is empty
+	 */
+	public String getWhenMin() {
+		return (count == 0) ? null : dates[(int) (minDeque[minHead % size] % size)];
+	}
+
+	/**
+	 * Retrieves the highest price of the window, of equal prices the earliest one
+	 * @return the maximal price, NaN if the window is empty
+	 */
+	public double getMax() {
+		return (count == 0) ? Double.NaN : values[(int) (maxDeque[maxHead % size] % size)];
+	}
+
+	/**
+	 * Retrieves the date of the highest price of the window
+	 * @return the date, null if the window is empty
+	 */
+	public String getWhenMax() {
+		return (count == 0) ? null : dates[(int) (maxDeque[maxHead % size] % size)];
+	}
+
+	/**
+	 * Retrieves the volatility of the window: the sample standard deviation of the daily logarithmic returns
+	 * between its prices
+	 * @return the volatility, NaN if the window holds less than three prices
+	 */
+	public double getVolatility() {
+		int n = getCount() - 1;
+		if(n < 2)
+			return Double.NaN;
+		double variance = (returnSquares - returnSum * returnSum / n) / (n - 1);
+		return Math.sqrt(Math.max(0, variance));
+	}
+
+}
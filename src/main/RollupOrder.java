@@ -0,0 +1,197 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the weekly, monthly or yearly open, high, low, close and mean prices of a currency from table A or of gold
+ * in a given period. The rollups materialized by the series store are read when the period is resident, otherwise
+ * the period is fetched and rolled up chunk by chunk. Either way the bars at the edges of the period contain only
+ * the prices of the period
+ * @author Patryk Wegrzyn
+ */
+public class RollupOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The currency in question, or gold
+	 */
+	private String instrument;
+	/**
+	 * The granularity of the rollup
+	 */
+	private Granularity granularity;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the currency (or gold), the granularity (week, month or year),
+	 * the start and optionally the end of the period
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public RollupOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		if(parameters == null || (parameters.length != 3 && parameters.length != 4) || !parameters[0].matches("[\\w]{3}|gold")
+				|| Granularity.parse(parameters[1]) == null || !parameters[2].matches("[\\d]{4}-\\d\\d-\\d\\d")
+				|| (parameters.length == 4 && !parameters[3].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.instrument = parameters[0];
+			this.granularity = Granularity.parse(parameters[1]);
+			this.start = parameters[2];
+			if(parameters.length == 4) {
+				this.end = parameters[3];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the open, high, low, close and mean prices of a given currency or gold in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		List<OhlcBar> resident = findResident(startDay, endDay);
+		if(resident != null) {
+			print(resident);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		//every chunk is rolled up on its own, the bar of a bucket split by two chunks is merged when they are joined
+		boolean gold = isGold();
+		RateRecordReader reader = gold ? RateRecordReader.forGoldPrices(SeriesStore.GOLD) : RateRecordReader.forMidRates();
+		String path = gold ? "cenyzlota/" : "exchangerates/rates/A/" + this.instrument + "/";
+		List<String[]> chunks = dataSource.splitPeriod(this.start, this.end, dataSource.getMaxPeriodPerQuery());
+		return dataSource.foldChunks(chunks, chunk -> {
+					RollupSeries partial = new RollupSeries(this.granularity);
+					//the chunks without any data are skipped
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(path + chunk[0] + "/" + chunk[1], reader, partial), partial);
+				}, new RollupSeries(this.granularity), RollupSeries::merge)
+				.handle((rollup, error) -> {
+					if(error != null)
+						reportError(error);
+					else
+						print(rollup.getBars(startDay, endDay));
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, reads the bars of the period from the rollup materialized by the series store, if the store
+	 * holds the whole period. The bars at the edges of the period are rolled up again from the resident prices
+	 * of the period, so they match the bars rolled up from the fetched chunks
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the bars, null if the period is not resident
+	 */
+	private List<OhlcBar> findResident(int startDay, int endDay) {
+		SeriesStore store = SeriesStore.getInstance();
+		String key = isGold() ? SeriesStore.GOLD : SeriesStore.key("A", this.instrument.toUpperCase(), "mid");
+		if(!store.covers(key, startDay, endDay))
+			return null;
+		List<OhlcBar> bars = store.getRollup(key, this.granularity).getBars(startDay, endDay);
+		if(bars.isEmpty())
+			return bars;
+		CompressedSeries series = store.getSeries(key);
+		OhlcBar first = bars.get(0);
+		if(first.getFirstDay() < startDay || first.getLastDay() > endDay)
+			bars.set(0, rollUp(series, startDay, Math.min(first.getLastDay(), endDay)));
+		OhlcBar last = bars.get(bars.size() - 1);
+		if(last.getFirstDay() < startDay || last.getLastDay() > endDay)
+			bars.set(bars.size() - 1, rollUp(series, Math.max(last.getFirstDay(), startDay), endDay));
+		return bars;
+	}
+
+	/**
+	 * Helper method, rolls up the resident prices of a part of a single bucket
+	 * @param series the resident prices
+	 * @param fromDay the first day of the part, as the number of days since 1970-01-01
+	 * @param toDay the last day of the part
+	 * @return the bar of the part
+	 */
+	private OhlcBar rollUp(CompressedSeries series, int fromDay, int toDay) {
+		RollupSeries part = new RollupSeries(this.granularity);
+		CompressedSeries.Cursor cursor = series.cursor(fromDay, toDay);
+		while(cursor.next())
+			part.append(cursor.getDay(), cursor.getValue());
+		return part.getBars(fromDay, toDay).get(0);
+	}
+
+	/**
+	 * Helper method, checks whether the order is about gold
+	 * @return true if the prices of gold are in question
+	 */
+	private boolean isGold() {
+		return this.instrument.equals("gold");
+	}
+
+	/**
+	 * Helper method, prints the bars of the period
+	 * @param bars the bars of the period, in chronological order
+	 */
+	private void print(List<OhlcBar> bars) {
+		if(bars.isEmpty()) {
+			reportError(new WebApiException("Not Found - Brak danych"));
+			return;
+		}
+		String name = isGold() ? "gold" : this.instrument;
+		System.out.println("The " + this.granularity.name().toLowerCase() + "ly prices of " + name + " from " + this.start + " to " + this.end + ":");
+		for(OhlcBar bar : bars)
+			System.out.println(this.granularity.label(bar.getBucket()) + ": open " + bar.getOpen() + ", high " + bar.getHigh()
+					+ ", low " + bar.getLow() + ", close " + bar.getClose() + ", mean " + bar.getMean() + " (" + bar.getCount() + " days)");
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the rollup could not be created, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The prices of " + this.instrument + " from " + this.start + " to " + this.end + " could not be rolled up: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The prices of " + this.instrument + " from " + this.start + " to " + this.end + " could not be rolled up: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
@@ -0,0 +1,138 @@
+package webapi;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The OHLC bars of a series of prices at a single granularity, maintained incrementally: a price either extends
+ * the last bar or opens the next one, so a long report reads one bar per bucket instead of every daily price.
+ * The prices have to arrive in chronological order, the rollups of consecutive chunks are joined with merge
+ * @author Patryk Wegrzyn
+ */
+public class RollupSeries implements RateRecordSink {
+
+	/**
+	 * The granularity of the bars
+	 */
+	private final Granularity granularity;
+	/**
+	 * The bars, in chronological order
+	 */
+	private final List<OhlcBar> bars = new ArrayList<>();
+
+	/**
+	 * Typical constructor
+	 * @param granularity the granularity of the bars
+	 */
+	public RollupSeries(Granularity granularity) {
+		this.granularity = granularity;
+	}
+
+	/**
+	 * Adds a price following all the prices of the series
+	 * @param day the day of the price, as the number of days since 1970-01-01
+	 * @param value the price
+	 */
+	public synchronized void append(int day, double value) {
+		int bucket = granularity.bucketOf(day);
+		OhlcBar last = bars.isEmpty() ? null : bars.get(bars.size() - 1);
+		if(last != null && last.getBucket() == bucket)
+			last.add(day, value);
+		else
+			bars.add(new OhlcBar(bucket, day, value));
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.RateRecordSink#accept(java.lang.String, java.lang.String, double)
+	 */
+	@Override
+	public void accept(String date, String code, double value) {
+		append((int) LocalDate.parse(date).toEpochDay(), value);
+	}
+
+	/**
+	 * Joins the rollup of the following chunk to this one, the bar of a bucket split by the chunks is merged
+	 * @param later the rollup of the prices following all the prices of this one, at the same granularity
+	 * @return this rollup
+	 */
+	public synchronized RollupSeries merge(RollupSeries later) {
+		for(OhlcBar bar : later.getBars(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+			OhlcBar last = bars.isEmpty() ? null : bars.get(bars.size() - 1);
+			if(last != null && last.getBucket() == bar.getBucket())
+				last.merge(bar);
+			else
+				bars.add(bar);
+		}
+		return this;
+	}
+
+	/**
+	 * Retrieves the bars of the buckets overlapping a period
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return copies of the bars, in chronological order
+	 */
+	public synchronized List<OhlcBar> getBars(int startDay, int endDay) {
+		List<OhlcBar> result = new ArrayList<>();
+		for(int i=lowerBound(startDay); i<bars.size() && bars.get(i).getFirstDay() <= endDay; i++)
+			result.add(new OhlcBar(bars.get(i)));
+		return result;
+	}
+
+	/**
+	 * Finds the lowest and the highest price of a period from the bars, which is possible only when the period
+	 * consists of whole bars: none of the bars overlapping the period has a price outside of it
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the lowest and the highest price, in this order, null if the period does not consist of whole bars
+	 * or has no prices
+	 */
+	public synchronized double[] getRange(int startDay, int endDay) {
+		double range[] = null;
+		for(int i=lowerBound(startDay); i<bars.size() && bars.get(i).getFirstDay() <= endDay; i++) {
+			OhlcBar bar = bars.get(i);
+			if(bar.getFirstDay() < startDay || bar.getLastDay() > endDay)
+				return null;
+			if(range == null)
+				range = new double[] {bar.getLow(), bar.getHigh()};
+			range[0] = Math.min(range[0], bar.getLow());
+			range[1] = Math.max(range[1], bar.getHigh());
+		}
+		return range;
+	}
+
+	/**
+	 * Helper method, finds the first bar whose last price is not earlier than a day
+	 * @param day the day, as the number of days since 1970-01-01
+	 * @return the index of the bar, the number of bars if there is none
+	 */
+	private int lowerBound(int day) {
+		int low = 0, high = bars.size();
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(bars.get(middle).getLastDay() < day)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Retrieves the granularity of the bars
+	 * @return the granularity field value
+	 */
+	public Granularity getGranularity() {
+		return granularity;
+	}
+
+	/**
+	 * Retrieves the number of bars
+	 * @return the number of buckets with at least one price
+	 */
+	public synchronized int size() {
+		return bars.size();
+	}
+
+}
@@ -0,0 +1,83 @@
+package webapi;
+
+/**
+ * The implementation of the reductions over the columns of prices with plain loops, used when the Vector API is not available
+ * @author Patryk Wegrzyn
+ */
+public class ScalarPriceKernels extends PriceKernels {
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#getName()
+	 */
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#sum(double[], int, int)
+	 */
+	@Override
+	public double sum(double[] values, int from, int to) {
+		double sum = 0;
+		for(int i=from; i<to; i++)
+			sum += values[i];
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#sum(long[], int, int)
+	 */
+	@Override
+	public long sum(long[] values, int from, int to) {
+		long sum = 0;
+		for(int i=from; i<to; i++)
+			sum += values[i];
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#dot(double[], int, double[], int, int)
+	 */
+	@Override
+	public double dot(double[] values, int from, double[] other, int otherFrom, int length) {
+		double sum = 0;
+		for(int i=0; i<length; i++)
+			sum += values[from + i] * other[otherFrom + i];
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#scale(double[], int, int, double, double[], int)
+	 */
+	@Override
+	public void scale(double[] values, int from, int length, double factor, double[] target, int targetFrom) {
+		for(int i=0; i<length; i++)
+			target[targetFrom + i] = values[from + i] * factor;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#indexOfMin(double[], int, int)
+	 */
+	@Override
+	public int indexOfMin(double[] values, int from, int to) {
+		int found = -1;
+		for(int i=from; i<to; i++)
+			if(found < 0 || values[i] < values[found])
+				found = i;
+		return found;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#indexOfMax(double[], int, int)
+	 */
+	@Override
+	public int indexOfMax(double[] values, int from, int to) {
+		int found = -1;
+		for(int i=from; i<to; i++)
+			if(found < 0 || values[i] > values[found])
+				found = i;
+		return found;
+	}
+
+}
@@ -0,0 +1,273 @@
+package webapi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Writes the series of a SeriesStore to a versioned binary snapshot file, and restores them from it after a restart.
+ * The snapshot holds every series in the layout of OffHeapSeries (the dates, the prices, the prefix sums and the min/max
+ * index), so restoring it only memory-maps the file and checks its checksums, nothing is parsed or recomputed.
+ * File format (in the native byte order, recorded in the header):
+ * <ul>
+ * <li>header: magic "NBPS", version, byte order, number of series, creation time in milliseconds, CRC32 of the preceding fields, padding</li>
+ * <li>for every series: length of the key, number of points, length of the layout, CRC32 of the key and the layout,
+ * the key in UTF-8 padded to 8 bytes, the layout</li>
+ * </ul>
+ * A snapshot which has another version or byte order, is older than allowed, is truncated or does not match its checksums is ignored
+ * @author Patryk Wegrzyn
+ */
+public class SeriesSnapshot implements AutoCloseable {
+
+	/**
+	 * The first four bytes of a snapshot, "NBPS"
+	 */
+	public static final int MAGIC = 0x4E425053;
+	/**
+	 * The version of the file format
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Size of the header in bytes
+	 */
+	private static final int HEADER_BYTES = 32;
+	/**
+	 * Size of the fixed part of a series entry in bytes
+	 */
+	private static final int ENTRY_HEADER_BYTES = 16;
+
+	/**
+	 * The snapshot file
+	 */
+	private final Path file;
+	/**
+	 * The store whose series are saved and restored
+	 */
+	private final SeriesStore store;
+	/**
+	 * Saves the snapshot periodically, null until start is called
+	 */
+	private ScheduledExecutorService scheduler;
+	/**
+	 * Saves the snapshot when the process exits, null until start is called
+	 */
+	private Thread shutdownHook;
+
+	/**
+	 * Typical constructor
+	 * @param file the snapshot file
+	 * @param store the store whose series are saved and restored
+	 */
+	public SeriesSnapshot(Path file, SeriesStore store) {
+		this.file = file;
+		this.store = store;
+	}
+
+	/**
+	 * Writes all the series of the store to the snapshot file, the previous snapshot is replaced atomically,
+	 * so a crash during the write never leaves a partial snapshot behind
+	 * @throws IOException thrown when the file could not be written
+	 */
+	public synchronized void save() throws IOException {
+		List<String> keys = new ArrayList<>();
+		List<OffHeapSeries> saved = new ArrayList<>();
+		for(String key : store.getKeys()) {
+			OffHeapSeries series = store.getOffHeapSeries(key);
+			if(series != null) {
+				keys.add(key);
+				saved.add(series);
+			}
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+			header.putInt(MAGIC).putInt(VERSION).putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1)
+					.putInt(keys.size()).putLong(System.currentTimeMillis());
+			header.putInt(checksum(header.duplicate().flip(), null)).putInt(0).flip();
+			writeFully(channel, header);
+			for(int i=0; i<keys.size(); i++) {
+				byte[] key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+				ByteBuffer layout = saved.get(i).getLayout();
+				ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_BYTES + align(key.length)).order(ByteOrder.nativeOrder());
+				entry.putInt(key.length).putInt(saved.get(i).size()).putInt(layout.remaining())
+						.putInt(checksum(ByteBuffer.wrap(key), layout.duplicate())).put(key).position(entry.capacity()).flip();
+				writeFully(channel, entry);
+				writeFully(channel, layout);
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Restores the series from the snapshot file by memory-mapping it, the series which have already been loaded
+	 * into the store are left as they are. A missing, stale or corrupt snapshot is ignored
+	 * @param maxAge the maximal age of a snapshot which is still restored
+	 * @return the number of restored series, -1 if the snapshot has been ignored
+	 */
+	public int restore(Duration maxAge) {
+		if(!Files.isRegularFile(file))
+			return -1;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("the snapshot is too large");
+			//the mapping stays valid after the channel has been closed
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.nativeOrder());
+			int entries = readHeader(mapped, maxAge);
+			List<String> keys = new ArrayList<>();
+			List<OffHeapSeries> restored = new ArrayList<>();
+			int position = HEADER_BYTES;
+			for(int i=0; i<entries; i++) {
+				if(position + ENTRY_HEADER_BYTES > mapped.capacity())
+					throw new IOException("the snapshot is truncated");
+				int keyLength = mapped.getInt(position);
+				int size = mapped.getInt(position + 4);
+				int layoutLength = mapped.getInt(position + 8);
+				int crc = mapped.getInt(position + 12);
+				int keyStart = position + ENTRY_HEADER_BYTES;
+				int layoutStart = keyStart + align(keyLength);
+				if(keyLength < 0 || size < 0 || layoutLength != OffHeapSeries.getLayoutBytes(size)
+						|| layoutStart < keyStart || (long) layoutStart + layoutLength > mapped.capacity())
+					throw new IOException("the snapshot is truncated or its entry " + i + " is damaged");
+				ByteBuffer key = mapped.duplicate().position(keyStart).limit(keyStart + keyLength);
+				ByteBuffer layout = mapped.duplicate().order(ByteOrder.nativeOrder()).position(layoutStart).limit(layoutStart + layoutLength);
+				if(checksum(key.duplicate(), layout.duplicate()) != crc)
+					throw new IOException("the checksum of the entry " + i + " does not match");
+				keys.add(StandardCharsets.UTF_8.decode(key).toString());
+				restored.add(OffHeapSeries.wrap(layout, size));
+				position = layoutStart + layoutLength;
+			}
+			int count = 0;
+			for(int i=0; i<keys.size(); i++)
+				if(store.restoreOffHeapSeries(keys.get(i), restored.get(i)))
+					count++;
+			return count;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Ignoring the snapshot " + file + ": " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Helper method, validates the header of a snapshot
+	 * @param mapped the mapped snapshot
+	 * @param maxAge the maximal age of a snapshot which is still restored
+	 * @return the number of series in the snapshot
+	 * @throws IOException thrown when the snapshot can not be restored
+	 */
+	private int readHeader(ByteBuffer mapped, Duration maxAge) throws IOException {
+		if(mapped.capacity() < HEADER_BYTES)
+			throw new IOException("the snapshot is truncated");
+		if(mapped.getInt(0) != MAGIC)
+			throw new IOException("not a snapshot file, or written with another byte order");
+		if(mapped.getInt(4) != VERSION)
+			throw new IOException("version " + mapped.getInt(4) + " is not supported");
+		if(mapped.getInt(8) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1))
+			throw new IOException("written with another byte order");
+		if(checksum(mapped.duplicate().position(0).limit(24), null) != mapped.getInt(24))
+			throw new IOException("the checksum of the header does not match");
+		long age = System.currentTimeMillis() - mapped.getLong(16);
+		if(age > maxAge.toMillis())
+			throw new IOException("the snapshot is stale, written " + age / 1000 + " s ago");
+		int entries = mapped.getInt(12);
+		if(entries < 0)
+			throw new IOException("the header is damaged");
+		return entries;
+	}
+
+	/**
+	 * Saves the snapshot periodically and when the process exits
+	 * @param interval the time between two saves
+	 * @param unit the unit of the interval
+	 */
+	public synchronized void start(long interval, TimeUnit unit) {
+		if(scheduler != null)
+			return;
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "series-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::saveQuietly, interval, interval, unit);
+		shutdownHook = new Thread(this::saveQuietly, "series-snapshot-on-exit");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Stops saving the snapshot periodically and when the process exits
+	 */
+	@Override
+	public synchronized void close() {
+		if(scheduler == null)
+			return;
+		scheduler.shutdownNow();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			//the process is already exiting, the hook saves the snapshot
+		}
+		scheduler = null;
+		shutdownHook = null;
+	}
+
+	/**
+	 * Helper method, saves the snapshot and reports the failure instead of throwing it
+	 */
+	private void saveQuietly() {
+		try {
+			save();
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Could not save the snapshot " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Helper method, computes the CRC32 of one or two buffers
+	 * @param first the first buffer, read from its position to its limit
+	 * @param second the second buffer, or null
+	 * @return the checksum
+	 */
+	private static int checksum(ByteBuffer first, ByteBuffer second) {
+		CRC32 crc = new CRC32();
+		crc.update(first);
+		if(second != null)
+			crc.update(second);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Helper method, writes the whole buffer
+	 * @param channel the file
+	 * @param buffer the buffer, from its position to its limit
+	 * @throws IOException thrown when the file could not be written
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Helper method, rounds a length up to a multiple of 8 bytes
+	 * @param length the length
+	 * @return the aligned length
+	 */
+	private static int align(int length) {
+		return (length + 7) & ~7;
+	}
+
+}
@@ -0,0 +1,533 @@
+package webapi;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the full history of the prices resident in memory as compressed series, one series per instrument and price
+ * field, for example "A/USD/mid" for the mid prices of the US dollar from table A, or "gold" for the prices of gold.
+ * The whole table A since 2002 (about 35 currencies times 6000 trading days) takes a few megabytes this way.
+ * Every point appended by the store is fed to the subjects added to it, so the observers of these subjects can keep
+ * their results up to date as the new data arrives. The series of table A and of gold are also rolled up into weekly,
+ * monthly and yearly OHLC bars as the points are appended, see getRollup, and the daily changes of their prices and
+ * the spreads of table C are kept as dyadic trees of quantile sketches, see getSketches.
+ * Uses the singleton design pattern.
+ * @author Patryk Wegrzyn
+ */
+public class SeriesStore {
+
+	//Singleton Design Pattern
+	/**
+	 * Static field, which holds the only instance of this class during the lifetime of an application run
+	 */
+	private static SeriesStore firstInstance = null;
+	/**
+	 * The key of the series of the prices of gold
+	 */
+	public static final String GOLD = "gold";
+
+	/**
+	 * The series, by their keys
+	 */
+	private final Map<String, CompressedSeries> series = new ConcurrentHashMap<>();
+	/**
+	 * The off-heap memory of the decoded series
+	 */
+	private final OffHeapArena arena = new OffHeapArena(OFF_HEAP_CAPACITY);
+	/**
+	 * The decoded series and their indexes, kept off the heap, by their keys
+	 */
+	private final Map<String, OffHeapSeries> decoded = new ConcurrentHashMap<>();
+	/**
+	 * The maximal size of the decoded series in bytes
+	 */
+	public static final long OFF_HEAP_CAPACITY = 64L * 1024 * 1024;
+	/**
+	 * The rollups of the series of table A and of gold at every granularity, by the keys of the series
+	 */
+	private final Map<String, Map<Granularity, RollupSeries>> rollups = new ConcurrentHashMap<>();
+	/**
+	 * The daily changes of the prices and the spreads of table C, kept as quantile sketches
+	 */
+	private final SketchIndex sketches = new SketchIndex(this::getSeries);
+	/**
+	 * The calendars of the tables, by the prefixes of the keys of their series, built on the first check of coverage
+	 */
+	private final Map<String, TableCalendar> calendars = new ConcurrentHashMap<>();
+	/**
+	 * The subjects which are fed with the appended points
+	 */
+	private final List<Subject> subjects = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Private constructor because we only allow to create this object be using the getInstance method
+	 */
+	private SeriesStore() {}
+
+	/**
+	 * Static method used as a factory for this class, if an object of this class already exists - it returns it,
+	 * otherwise it returns a newly created object and saves it for further requests
+	 * @return The only available instance of this class
+	 */
+	public static synchronized SeriesStore getInstance() {
+		if(firstInstance == null) {
+			firstInstance = new SeriesStore();
+		}
+		return firstInstance;
+	}
+
+	/**
+	 * Creates the key of a series of exchange rates
+	 * @param table the table of the NBP Web API, A or C
+	 * @param code the code of the currency
+	 * @param field the price field, mid for table A, bid or ask for table C
+	 * @return the key of the series
+	 */
+	public static String key(String table, String code, String field) {
+		return table + "/" + code + "/" + field;
+	}
+
+	/**
+	 * Retrieves a series
+	 * @param key the key of the series
+	 * @return the series, null if it has not been loaded
+	 */
+	public CompressedSeries getSeries(String key) {
+		CompressedSeries result = series.get(key);
+		if(result == null && decoded.containsKey(key))
+			result = getOrCreateSeries(key);
+		return result;
+	}
+
+	/**
+	 * Retrieves a series, an empty one is created if it has not been loaded. A series restored from a snapshot
+	 * is compressed again from its decoded form on the first call
+	 * @param key the key of the series
+	 * @return the series
+	 */
+	public CompressedSeries getOrCreateSeries(String key) {
+		return series.computeIfAbsent(key, k -> {
+			CompressedSeries created = new CompressedSeries();
+			OffHeapSeries restored = decoded.get(k);
+			if(restored != null)
+				for(int i=0; i<restored.size(); i++)
+					created.append(restored.getDay(i), restored.getValue(i));
+			return created;
+		});
+	}
+
+	/**
+	 * Appends a point to a series and feeds it to all the subjects of the store. The points are fed while the store
+	 * is locked, so a subscription can never miss a point nor receive it twice
+	 * @param key the key of the series
+	 * @param day the date of the point as the number of days since 1970-01-01
+	 * @param value the value of the point
+	 * @return true if the point has been appended, false if the series already reaches the day
+	 */
+	public synchronized boolean append(String key, int day, double value) {
+		Map<Granularity, RollupSeries> keyRollups = isRolledUp(key) ? getRollups(key) : null;
+		sketches.prepare(key);
+		if(!getOrCreateSeries(key).append(day, value))
+			return false;
+		if(keyRollups != null)
+			for(RollupSeries rollup : keyRollups.values())
+				rollup.append(day, value);
+		TableCalendar calendar = calendars.get(prefixOf(key));
+		if(calendar != null && !calendar.add(day))
+			calendars.remove(prefixOf(key));
+		sketches.append(key, day, value);
+		for(Subject subject : subjects)
+			subject.notifyDataArrived(key, day, value);
+		return true;
+	}
+
+	/**
+	 * Retrieves the rollup of a series, the rollups of a series restored from a snapshot are built on the first call
+	 * and then maintained as the points are appended
+	 * @param key the key of the series, the series of table A and of gold are rolled up
+	 * @param granularity the granularity of the bars
+	 * @return the rollup, null if the series is not rolled up or has not been loaded
+	 */
+	public synchronized RollupSeries getRollup(String key, Granularity granularity) {
+		if(!isRolledUp(key) || getSeries(key) == null)
+			return null;
+		return getRollups(key).get(granularity);
+	}
+
+	/**
+	 * Retrieves the sketches of a series derived from the prices, they are built from the resident prices on the
+	 * first call and then maintained as the points are appended
+	 * @param derivedKey the key of the derived series, the daily changes of a series of table A or of gold
+	 * ("A/USD/change", "gold/change") or the spreads of a currency of table C ("C/USD/spread")
+	 * @return the derived series, null if the key does not name one
+	 */
+	public synchronized SketchSeries getSketches(String derivedKey) {
+		return sketches.get(derivedKey);
+	}
+
+	/**
+	 * Checks whether the store holds the whole period of a series, so that an order can read it instead of fetching it.
+	 * The store is as fresh as the latest publication it has loaded, so the end of the period may be later. The history
+	 * of the table of the series must not have any break in the period, see TableCalendar
+	 * @param key the key of the series
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return true if the series starts before the period and ends with it or with the latest loaded publication
+	 */
+	public synchronized boolean covers(String key, int startDay, int endDay) {
+		CompressedSeries resident = getSeries(key);
+		if(resident == null || resident.size() == 0)
+			return false;
+		TableCalendar calendar = getCalendar(prefixOf(key));
+		return resident.getFirstDay() <= startDay && resident.getLastDay() >= Math.min(endDay, calendar.getLastDay())
+				&& calendar.covers(startDay, endDay);
+	}
+
+	/**
+	 * Retrieves the calendar of a table, it is built from the resident points on the first call and then maintained
+	 * as the points are appended
+	 * @param prefix the prefix of the keys of the series of the table, for example "A/", or "gold"
+	 * @return the calendar, empty if the table has not been loaded
+	 */
+	public synchronized TableCalendar getCalendar(String prefix) {
+		TableCalendar calendar = calendars.get(prefix);
+		if(calendar != null)
+			return calendar;
+		List<CompressedSeries> tableSeries = new ArrayList<>();
+		int base = Integer.MAX_VALUE;
+		for(String key : getKeys()) {
+			CompressedSeries resident = key.startsWith(prefix) ? getSeries(key) : null;
+			if(resident == null || resident.size() == 0) continue;
+			tableSeries.add(resident);
+			base = Math.min(base, resident.getFirstDay());
+		}
+		//the union of the days of all the series, in chronological order
+		BitSet days = new BitSet();
+		for(CompressedSeries resident : tableSeries) {
+			CompressedSeries.Cursor cursor = resident.cursor();
+			while(cursor.next())
+				days.set(cursor.getDay() - base);
+		}
+		calendar = new TableCalendar();
+		for(int day=days.nextSetBit(0); day>=0; day=days.nextSetBit(day + 1))
+			calendar.add(base + day);
+		calendars.put(prefix, calendar);
+		return calendar;
+	}
+
+	/**
+	 * Helper method, finds the table of a series
+	 * @param key the key of the series
+	 * @return the prefix of the keys of the series of its table, for example "A/", or "gold"
+	 */
+	private static String prefixOf(String key) {
+		return key.equals(GOLD) ? GOLD : key.substring(0, key.indexOf('/') + 1);
+	}
+
+	/**
+	 * Reads a period of all the series of a price field of a table, if the store holds the whole period of the table.
+	 * The coverage is decided for the table rather than for its series, so the currencies which have left the table
+	 * or joined it during the period do not keep the period from being read, see TableCalendar
+	 * @param table the table of the NBP Web API, A or C
+	 * @param field the price field, mid for table A, bid or ask for table C
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the columns of the prices of the currencies with any price in the period, by their codes in alphabetical
+	 * order, null if the period is not resident
+	 */
+	public synchronized Map<String, PriceColumn> readTable(String table, String field, int startDay, int endDay) {
+		if(!getCalendar(table + "/").covers(startDay, endDay))
+			return null;
+		Map<String, PriceColumn> columns = new LinkedHashMap<>();
+		for(String key : getKeys()) {
+			if(!key.startsWith(table + "/") || !key.endsWith("/" + field))
+				continue;
+			PriceColumn column = new PriceColumn(0, true);
+			CompressedSeries.Cursor cursor = getSeries(key).cursor(startDay, endDay);
+			while(cursor.next())
+				column.append(LocalDate.ofEpochDay(cursor.getDay()).toString(), cursor.getValue());
+			if(column.getSize() > 0)
+				columns.put(key.split("/")[1], column);
+		}
+		return columns;
+	}
+
+	/**
+	 * Helper method, retrieves the rollups of a series at every granularity, they are built from the resident
+	 * points if they do not exist yet
+	 * @param key the key of the series
+	 * @return the rollups by their granularities
+	 */
+	private Map<Granularity, RollupSeries> getRollups(String key) {
+		return rollups.computeIfAbsent(key, k -> {
+			Map<Granularity, RollupSeries> created = new EnumMap<>(Granularity.class);
+			for(Granularity granularity : Granularity.values())
+				created.put(granularity, new RollupSeries(granularity));
+			CompressedSeries resident = getSeries(k);
+			if(resident != null) {
+				CompressedSeries.Cursor cursor = resident.cursor();
+				while(cursor.next())
+					for(RollupSeries rollup : created.values())
+						rollup.append(cursor.getDay(), cursor.getValue());
+			}
+			return created;
+		});
+	}
+
+	/**
+	 * Helper method, checks whether a series is rolled up
+	 * @param key the key of the series
+	 * @return true for the series of table A and of gold
+	 */
+	private static boolean isRolledUp(String key) {
+		return key.startsWith("A/") || key.equals(GOLD);
+	}
+
+	/**
+	 * Adds a subject which is fed with every point appended from now on
+	 * @param subject the subject, usually the order performer
+	 */
+	public void addSubject(Subject subject) {
+		subjects.add(subject);
+	}
+
+	/**
+	 * Removes a subject, it is not fed anymore
+	 * @param subject the subject
+	 */
+	public void removeSubject(Subject subject) {
+		subjects.remove(subject);
+	}
+
+	/**
+	 * Creates an observer (usually an order, which registers itself with a subject of the store) and replays the whole
+	 * resident history to it. No point can be appended in the meantime, so the observer receives every point exactly
+	 * once: either from the replay or from its subject
+	 * @param factory creates the observer, it may return null
+	 * @return the created observer
+	 */
+	public synchronized <T extends Observer> T subscribe(Supplier<T> factory) {
+		T observer = factory.get();
+		if(observer == null)
+			return null;
+		for(String key : getKeys()) {
+			CompressedSeries.Cursor cursor = getSeries(key).cursor();
+			while(cursor.next())
+				observer.dataArrived(key, cursor.getDay(), cursor.getValue());
+		}
+		return observer;
+	}
+
+	/**
+	 * Retrieves the decoded form of a series, stored off the heap together with its indexes. It is decoded on
+	 * the first call, and decoded again when new points have been appended to the series since
+	 * @param key the key of the series
+	 * @return the decoded series, null if the series has neither been loaded nor restored
+	 */
+	public OffHeapSeries getOffHeapSeries(String key) {
+		CompressedSeries compressed = series.get(key);
+		if(compressed == null)
+			return decoded.get(key);
+		return decoded.compute(key, (k, cached) -> {
+			if(cached != null && cached.size() == compressed.size())
+				return cached;
+			OffHeapSeries fresh = OffHeapSeries.of(compressed, arena);
+			if(cached != null)
+				cached.release();
+			return fresh;
+		});
+	}
+
+	/**
+	 * Retrieves the decoded forms of all the series of a table
+	 * @param table the table of the NBP Web API, A or C
+	 * @param field the price field, mid for table A, bid or ask for table C
+	 * @return the decoded series by the codes of their currencies, in alphabetical order
+	 */
+	public Map<String, OffHeapSeries> getOffHeapTable(String table, String field) {
+		Map<String, OffHeapSeries> result = new LinkedHashMap<>();
+		for(String key : getKeys()) {
+			String[] parts = key.split("/");
+			if(parts.length == 3 && parts[0].equals(table) && parts[2].equals(field))
+				result.put(parts[1], getOffHeapSeries(key));
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieves the arena of the decoded series, for its size accounting
+	 * @return the arena field value
+	 */
+	public OffHeapArena getArena() {
+		return arena;
+	}
+
+	/**
+	 * Retrieves the keys of all the series
+	 * @return the sorted keys
+	 */
+	public List<String> getKeys() {
+		Set<String> unique = new HashSet<>(series.keySet());
+		unique.addAll(decoded.keySet());
+		List<String> keys = new ArrayList<>(unique);
+		Collections.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * Finds the date of the latest point of the series whose keys start with a given prefix
+	 * @param prefix the prefix of the keys, for example "A/" for all the series of table A
+	 * @return the number of days since 1970-01-01, -1 if there are no such series
+	 */
+	public int getLastDay(String prefix) {
+		int last = -1;
+		for(String key : getKeys()) {
+			if(!key.startsWith(prefix)) continue;
+			CompressedSeries compressed = series.get(key);
+			OffHeapSeries restored = decoded.get(key);
+			if(compressed != null)
+				last = Math.max(last, compressed.getLastDay());
+			else if(restored != null && restored.size() > 0)
+				last = Math.max(last, restored.getDay(restored.size() - 1));
+		}
+		return last;
+	}
+
+	/**
+	 * Retrieves the number of points of all the series
+	 * @return the number of points
+	 */
+	public long getPointCount() {
+		long points = 0;
+		for(String key : getKeys()) {
+			CompressedSeries compressed = series.get(key);
+			OffHeapSeries restored = decoded.get(key);
+			if(compressed != null)
+				points += compressed.size();
+			else if(restored != null)
+				points += restored.size();
+		}
+		return points;
+	}
+
+	/**
+	 * Retrieves the memory used by all the series
+	 * @return the size in bytes
+	 */
+	public long getCompressedBytes() {
+		long bytes = 0;
+		for(CompressedSeries single : series.values())
+			bytes += single.getCompressedBytes();
+		return bytes;
+	}
+
+	/**
+	 * Puts a decoded series restored from a snapshot into the store, unless the series has already been loaded
+	 * @param key the key of the series
+	 * @param restored the decoded series, usually a region of a memory-mapped snapshot
+	 * @return true if the series has been put into the store
+	 */
+	boolean restoreOffHeapSeries(String key, OffHeapSeries restored) {
+		if(series.containsKey(key) || decoded.putIfAbsent(key, restored) != null)
+			return false;
+		calendars.remove(prefixOf(key));
+		return true;
+	}
+
+	/**
+	 * Removes all the series
+	 */
+	public synchronized void clear() {
+		series.clear();
+		rollups.clear();
+		sketches.clear();
+		calendars.clear();
+		for(OffHeapSeries single : decoded.values())
+			single.release();
+		decoded.clear();
+	}
+
+	/**
+	 * Loads the mid prices of all the currencies of table A in a given period, the points which are already
+	 * resident are skipped, so the period may overlap the loaded one
+	 * @param dataSource the data source of the prices
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @param maxPeriod the maximal number of days of a single query to the tables endpoint
+	 * @return the future completed when the whole period has been loaded
+	 */
+	public CompletableFuture<Void> loadTableA(AbstractDataSource dataSource, String start, String end, int maxPeriod) {
+		return load(dataSource, "exchangerates/tables/A/", RateRecordReader.forMidRates(), (code, field) -> key("A", code, field), start, end, maxPeriod);
+	}
+
+	/**
+	 * Loads the bid and ask prices of all the currencies of table C in a given period, the points which are already
+	 * resident are skipped
+	 * @param dataSource the data source of the prices
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @param maxPeriod the maximal number of days of a single query to the tables endpoint
+	 * @return the future completed when the whole period has been loaded
+	 */
+	public CompletableFuture<Void> loadTableC(AbstractDataSource dataSource, String start, String end, int maxPeriod) {
+		return load(dataSource, "exchangerates/tables/C/", RateRecordReader.forBidAskRates(), (code, field) -> key("C", code, field), start, end, maxPeriod);
+	}
+
+	/**
+	 * Loads the prices of gold in a given period, the points which are already resident are skipped
+	 * @param dataSource the data source of the prices
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @param maxPeriod the maximal number of days of a single query to the gold prices endpoint
+	 * @return the future completed when the whole period has been loaded
+	 */
+	public CompletableFuture<Void> loadGold(AbstractDataSource dataSource, String start, String end, int maxPeriod) {
+		return load(dataSource, "cenyzlota/", RateRecordReader.forGoldPrices(GOLD), (code, field) -> GOLD, start, end, maxPeriod);
+	}
+
+	/**
+	 * Helper method, streams the chunks of a period into compressed series of their own, whose points are appended to
+	 * the resident series in chronological order, the chunks without any data are skipped
+	 * @param dataSource the data source of the prices
+	 * @param path the path of the endpoint, followed by the period of a chunk
+	 * @param reader decodes the records of the responses
+	 * @param keys maps the code and the price field of a record to the key of its series
+	 * @param start the beginning of the period, format yyyy-MM-dd
+	 * @param end the end of the period, format yyyy-MM-dd
+	 * @param maxPeriod the maximal number of days of a single query
+	 * @return the future completed when the whole period has been loaded
+	 */
+	private CompletableFuture<Void> load(AbstractDataSource dataSource, String path, RateRecordReader reader,
+			BiFunction<String, String, String> keys, String start, String end, int maxPeriod) {
+		List<String[]> chunks = dataSource.splitPeriod(start, end, maxPeriod);
+		return dataSource.foldChunks(chunks, chunk -> {
+					Map<String, CompressedSeries> partial = new HashMap<>();
+					FieldRecordSink sink = (date, code, field, value) ->
+							partial.computeIfAbsent(keys.apply(code, field), k -> new CompressedSeries()).append(date, value);
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(path + chunk[0] + "/" + chunk[1], reader, sink), partial);
+				}, this, (store, partial) -> {
+					for(Map.Entry<String, CompressedSeries> entry : partial.entrySet()) {
+						CompressedSeries.Cursor cursor = entry.getValue().cursor();
+						while(cursor.next())
+							store.append(entry.getKey(), cursor.getDay(), cursor.getValue());
+					}
+					return store;
+				})
+				.thenApply(store -> null);
+	}
+
+}
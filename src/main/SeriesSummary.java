@@ -0,0 +1,130 @@
+package webapi;
+
+/**
+ * Aggregates of a range of a price series: the number of points, their sum and the minimal and maximal price together
+ * with their dates. Every block of a CompressedSeries keeps one of these, so that the aggregates of a range covering
+ * whole blocks can be computed without decoding them. Of equal prices the earliest one is kept, so the points (and the
+ * summaries merged into this one) have to come in chronological order
+ * @author Patryk Wegrzyn
+ */
+public class SeriesSummary {
+
+	/**
+	 * Number of points
+	 */
+	private int count = 0;
+	/**
+	 * Sum of the prices
+	 */
+	private double sum = 0;
+	/**
+	 * Minimal price
+	 */
+	private double min = Double.POSITIVE_INFINITY;
+	/**
+	 * Maximal price
+	 */
+	private double max = Double.NEGATIVE_INFINITY;
+	/**
+	 * Date of the minimal price, as the number of days since 1970-01-01
+	 */
+	private int minDay = -1;
+	/**
+	 * Date of the maximal price, as the number of days since 1970-01-01
+	 */
+	private int maxDay = -1;
+
+	/**
+	 * Adds a single point to the summary
+	 * @param day the date of the point, as the number of days since 1970-01-01
+	 * @param value the price
+	 */
+	public void add(int day, double value) {
+		count++;
+		sum += value;
+		if(value < min) {
+			min = value;
+			minDay = day;
+		}
+		if(value > max) {
+			max = value;
+			maxDay = day;
+		}
+	}
+
+	/**
+	 * Merges the summary of the following range into this one
+	 * @param next the summary of a range following all the points summarized so far
+	 * @return this summary
+	 */
+	public SeriesSummary merge(SeriesSummary next) {
+		count += next.count;
+		sum += next.sum;
+		if(next.min < min) {
+			min = next.min;
+			minDay = next.minDay;
+		}
+		if(next.max > max) {
+			max = next.max;
+			maxDay = next.maxDay;
+		}
+		return this;
+	}
+
+	/**
+	 * Retrieves the number of points
+	 * @return the count field value
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Retrieves the sum of the prices
+	 * @return the sum field value
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Retrieves the average price
+	 * @return the average price, NaN if the summary is empty
+	 */
+	public double getAverage() {
+		return (count == 0) ? Double.NaN : sum / count;
+	}
+
+	/**
+	 * Retrieves the minimal price
+	 * @return the min field value, positive infinity if the summary is empty
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Retrieves the maximal price
+	 * @return the max field value, negative infinity if the summary is empty
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Retrieves the date of the minimal price
+	 * @return the number of days since 1970-01-01, -1 if the summary is empty
+	 */
+	public int getMinDay() {
+		return minDay;
+	}
+
+	/**
+	 * Retrieves the date of the maximal price
+	 * @return the number of days since 1970-01-01, -1 if the summary is empty
+	 */
+	public int getMaxDay() {
+		return maxDay;
+	}
+
+}
@@ -0,0 +1,89 @@
+package webapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical calls which are made at the same time: the first caller of a given key performs the call,
+ * while everyone else asking for the same key in the meantime waits for it and receives the very same result
+ * (or the very same exception). A key is forgotten as soon as its call finishes, so a failure is never
+ * handed out to the callers which come later
+ * @author Patryk Wegrzyn
+ * @param <K> the type of the keys identifying the calls
+ * @param <V> the type of the results of the calls
+ */
+public class SingleFlight<K, V> {
+
+	/**
+	 * The calls which are in progress right now
+	 */
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	/**
+	 * Number of calls which have really been performed
+	 */
+	private final AtomicLong performed = new AtomicLong();
+	/**
+	 * Number of callers which have received a result of someone else's call
+	 */
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * Starts the call for the given key, unless the same key is already being processed, in which case
+	 * the running call is joined. Every caller receives its own copy of the shared future, so cancelling
+	 * it does not affect the other callers
+	 * @param key the key identifying the call
+	 * @param call starts the call and returns its future, invoked only by the first caller of a key
+	 * @return the future of the result of the call
+	 */
+	public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+		if(running != null) {
+			shared.incrementAndGet();
+			return running.copy();
+		}
+		performed.incrementAndGet();
+		CompletableFuture<V> result;
+		try {
+			result = call.get();
+		} catch (Throwable e) {
+			result = CompletableFuture.failedFuture(e);
+		}
+		result.whenComplete((value, error) -> {
+			//the key is forgotten before anyone is notified, so nobody can join a finished call
+			inFlight.remove(key, flight);
+			if(error != null)
+				flight.completeExceptionally(error);
+			else
+				flight.complete(value);
+		});
+		return flight.copy();
+	}
+
+	/**
+	 * Retrieves the number of calls which have really been performed
+	 * @return the performed counter value
+	 */
+	public long getPerformed() {
+		return performed.get();
+	}
+
+	/**
+	 * Retrieves the number of callers which have been served with a result of a call made by another caller
+	 * @return the shared counter value
+	 */
+	public long getShared() {
+		return shared.get();
+	}
+
+	/**
+	 * Retrieves the number of calls which are in progress right now
+	 * @return the number of distinct keys being processed
+	 */
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+}
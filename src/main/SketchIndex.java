@@ -0,0 +1,213 @@
+package webapi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Derives the daily series whose distributions are queried from the series of prices and keeps them as sketch series:
+ * the daily changes of the mid prices of table A and of the prices of gold (in percent, under the keys "A/USD/change"
+ * and "gold/change"), and the spreads between the ask and bid prices of table C (under the keys "C/USD/spread").
+ * The prices are appended one by one in the chronological order of every series, the bid and ask prices of a day
+ * may arrive in any order and are paired when both of them have arrived
+ * @author Patryk Wegrzyn
+ */
+public class SketchIndex {
+
+	/**
+	 * Finds the resident series of prices, the derived series are built from them on the first use
+	 */
+	private final Function<String, CompressedSeries> resident;
+	/**
+	 * The derived series, by their keys
+	 */
+	private final Map<String, SketchSeries> derived = new HashMap<>();
+	/**
+	 * The last prices of the series whose changes are derived, by the keys of the derived series
+	 */
+	private final Map<String, Double> lastPrices = new HashMap<>();
+	/**
+	 * The bid or ask prices waiting for their counterparts, by the keys of their series
+	 */
+	private final Map<String, TreeMap<Integer, Double>> unpaired = new HashMap<>();
+
+	/**
+	 * Typical constructor
+	 * @param resident finds the resident series of prices by their keys, returns null for the series which have not been loaded
+	 */
+	public SketchIndex(Function<String, CompressedSeries> resident) {
+		this.resident = resident;
+	}
+
+	/**
+	 * Finds the key of the derived series fed by a series of prices
+	 * @param key the key of the series of prices
+	 * @return the key of the derived series, null if the prices are not used by any
+	 */
+	public static String derivedKey(String key) {
+		if(key.equals(SeriesStore.GOLD))
+			return SeriesStore.GOLD + "/change";
+		String[] parts = key.split("/");
+		if(parts.length != 3)
+			return null;
+		if(parts[0].equals("A") && parts[2].equals("mid"))
+			return SeriesStore.key("A", parts[1], "change");
+		if(parts[0].equals("C") && (parts[2].equals("bid") || parts[2].equals("ask")))
+			return SeriesStore.key("C", parts[1], "spread");
+		return null;
+	}
+
+	/**
+	 * Builds the derived series fed by a series of prices from the resident prices, unless it exists already.
+	 * The store prepares the series before appending a price, so that the price is not derived twice
+	 * @param key the key of the series of prices
+	 */
+	public synchronized void prepare(String key) {
+		String derivedKey = derivedKey(key);
+		if(derivedKey != null)
+			get(derivedKey);
+	}
+
+	/**
+	 * Derives the values following a price appended to a series of prices
+	 * @param key the key of the series of prices
+	 * @param day the day of the price, as the number of days since 1970-01-01
+	 * @param value the price
+	 */
+	public synchronized void append(String key, int day, double value) {
+		String derivedKey = derivedKey(key);
+		if(derivedKey == null)
+			return;
+		SketchSeries target = get(derivedKey);
+		if(derivedKey.endsWith("/change")) {
+			Double last = lastPrices.put(derivedKey, value);
+			if(last != null)
+				target.append(day, change(last, value));
+		} else {
+			boolean bid = key.endsWith("/bid");
+			TreeMap<Integer, Double> counterparts = getUnpaired(counterpartKey(key));
+			Double counterpart = counterparts.get(day);
+			if(counterpart == null) {
+				getUnpaired(key).put(day, value);
+				return;
+			}
+			//the prices of the earlier days will never be paired, every series arrives in chronological order
+			counterparts.headMap(day, true).clear();
+			getUnpaired(key).headMap(day).clear();
+			target.append(day, bid ? counterpart - value : value - counterpart);
+		}
+	}
+
+	/**
+	 * Retrieves a derived series, it is built from the resident prices if it does not exist yet
+	 * @param derivedKey the key of the derived series, for example "A/USD/change" or "C/USD/spread"
+	 * @return the derived series, null if the key does not name one
+	 */
+	public synchronized SketchSeries get(String derivedKey) {
+		SketchSeries result = derived.get(derivedKey);
+		if(result != null)
+			return result;
+		if(derivedKey.endsWith("/change"))
+			result = buildChanges(derivedKey);
+		else if(derivedKey.startsWith("C/") && derivedKey.endsWith("/spread"))
+			result = buildSpreads(derivedKey);
+		if(result != null)
+			derived.put(derivedKey, result);
+		return result;
+	}
+
+	/**
+	 * Removes all the derived series
+	 */
+	public synchronized void clear() {
+		derived.clear();
+		lastPrices.clear();
+		unpaired.clear();
+	}
+
+	/**
+	 * Helper method, derives the daily change of a price
+	 * @param previous the price on the previous day
+	 * @param current the price
+	 * @return the change in percent
+	 */
+	private static double change(double previous, double current) {
+		return (current / previous - 1) * 100;
+	}
+
+	/**
+	 * Helper method, builds the daily changes of the resident prices
+	 * @param derivedKey the key of the changes
+	 * @return the changes
+	 */
+	private SketchSeries buildChanges(String derivedKey) {
+		String key = derivedKey.equals(SeriesStore.GOLD + "/change") ? SeriesStore.GOLD : derivedKey.replaceFirst("/change$", "/mid");
+		SketchSeries result = new SketchSeries();
+		CompressedSeries prices = resident.apply(key);
+		if(prices == null)
+			return result;
+		CompressedSeries.Cursor cursor = prices.cursor();
+		Double last = null;
+		while(cursor.next()) {
+			if(last != null)
+				result.append(cursor.getDay(), change(last, cursor.getValue()));
+			last = cursor.getValue();
+		}
+		if(last != null)
+			lastPrices.put(derivedKey, last);
+		return result;
+	}
+
+	/**
+	 * Helper method, builds the spreads of the resident bid and ask prices, the prices of the days missing from
+	 * the other series are kept waiting for their counterparts if they are later than all of its prices
+	 * @param derivedKey the key of the spreads
+	 * @return the spreads
+	 */
+	private SketchSeries buildSpreads(String derivedKey) {
+		String bidKey = derivedKey.replaceFirst("/spread$", "/bid");
+		String askKey = derivedKey.replaceFirst("/spread$", "/ask");
+		SketchSeries result = new SketchSeries();
+		CompressedSeries bids = resident.apply(bidKey), asks = resident.apply(askKey);
+		CompressedSeries.Cursor bid = (bids == null) ? null : bids.cursor();
+		CompressedSeries.Cursor ask = (asks == null) ? null : asks.cursor();
+		boolean hasBid = bid != null && bid.next(), hasAsk = ask != null && ask.next();
+		//merge join of the two series by their days
+		while(hasBid && hasAsk) {
+			if(bid.getDay() < ask.getDay()) {
+				hasBid = bid.next();
+			} else if(ask.getDay() < bid.getDay()) {
+				hasAsk = ask.next();
+			} else {
+				result.append(bid.getDay(), ask.getValue() - bid.getValue());
+				hasBid = bid.next();
+				hasAsk = ask.next();
+			}
+		}
+		for(; hasBid; hasBid = bid.next())
+			getUnpaired(bidKey).put(bid.getDay(), bid.getValue());
+		for(; hasAsk; hasAsk = ask.next())
+			getUnpaired(askKey).put(ask.getDay(), ask.getValue());
+		return result;
+	}
+
+	/**
+	 * Helper method, retrieves the prices of a series waiting for their counterparts
+	 * @param key the key of the series of bid or ask prices
+	 * @return the prices by their days
+	 */
+	private TreeMap<Integer, Double> getUnpaired(String key) {
+		return unpaired.computeIfAbsent(key, k -> new TreeMap<>());
+	}
+
+	/**
+	 * Helper method, finds the series of the counterparts of bid or ask prices
+	 * @param key the key of the series of bid prices or of ask prices
+	 * @return the key of the series of the ask prices or of the bid prices respectively
+	 */
+	private static String counterpartKey(String key) {
+		return key.endsWith("/bid") ? key.replaceFirst("/bid$", "/ask") : key.replaceFirst("/ask$", "/bid");
+	}
+
+}
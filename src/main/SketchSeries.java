@@ -0,0 +1,184 @@
+package webapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The distribution of a derived daily series (for example the daily changes of a price, or the spreads of table C)
+ * kept as a dyadic tree of quantile sketches. The values are grouped into leaves of a fixed number of values, large
+ * enough for their sketches to be compacted, and every node of the tree holds the merged sketch of the leaves below it,
+ * so the sketch of a period merges O(log n) pre-merged sketches and adds only the values of the two partial leaves at
+ * its edges one by one. The values themselves are kept once, in primitive arrays, for those edges and for the exact answers
+ * @author Patryk Wegrzyn
+ */
+public class SketchSeries {
+
+	/**
+	 * The default number of values of a leaf, a few times the capacity of a sketch of the default accuracy
+	 */
+	public static final int DEFAULT_LEAF_SIZE = 2048;
+
+	/**
+	 * The number of values of a leaf
+	 */
+	private final int leafSize;
+	/**
+	 * The accuracy parameter of the sketches
+	 */
+	private final int k;
+	/**
+	 * The nodes of the tree by their levels, the node i of the level h holds the sketch of the leaves from i * 2^h
+	 * to (i + 1) * 2^h - 1, a node is created when all of its leaves are complete
+	 */
+	private final List<List<QuantileSketch>> levels = new ArrayList<>();
+	/**
+	 * The days of the values, in chronological order
+	 */
+	private int[] days = new int[64];
+	/**
+	 * The values
+	 */
+	private double[] values = new double[64];
+	/**
+	 * The number of values
+	 */
+	private int size = 0;
+
+	/**
+	 * Creates a series with leaves of the default size and sketches of the default accuracy
+	 */
+	public SketchSeries() {
+		this(DEFAULT_LEAF_SIZE, QuantileSketch.DEFAULT_K);
+	}
+
+	/**
+	 * Typical constructor
+	 * @param leafSize the number of values of a leaf
+	 * @param k the accuracy parameter of the sketches
+	 */
+	public SketchSeries(int leafSize, int k) {
+		if(leafSize < 1)
+			throw new IllegalArgumentException("A leaf has to hold at least one value");
+		this.leafSize = leafSize;
+		this.k = k;
+		levels.add(new ArrayList<>());
+	}
+
+	/**
+	 * Adds a value following all the values of the series, the sketches of the nodes completed by it are built
+	 * @param day the day of the value, as the number of days since 1970-01-01
+	 * @param value the value
+	 */
+	public synchronized void append(int day, double value) {
+		if(size == days.length) {
+			days = Arrays.copyOf(days, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		days[size] = day;
+		values[size++] = value;
+		if(size % leafSize != 0)
+			return;
+		QuantileSketch leaf = new QuantileSketch(k);
+		for(int i=size - leafSize; i<size; i++)
+			leaf.update(values[i]);
+		levels.get(0).add(leaf);
+		//a right child completes its parent
+		for(int h=0; levels.get(h).size() % 2 == 0; h++) {
+			List<QuantileSketch> children = levels.get(h);
+			if(levels.size() == h + 1)
+				levels.add(new ArrayList<>());
+			QuantileSketch parent = new QuantileSketch(k).merge(children.get(children.size() - 2)).merge(children.get(children.size() - 1));
+			levels.get(h + 1).add(parent);
+		}
+	}
+
+	/**
+	 * Creates the sketch of the values of a period, the sketches of the nodes covering the complete leaves inside
+	 * the period are merged and the values outside of them are added one by one
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the sketch, a new one
+	 */
+	public synchronized QuantileSketch sketch(int startDay, int endDay) {
+		QuantileSketch result = new QuantileSketch(k);
+		int from = indexOf(startDay), to = indexAfter(endDay);
+		int firstLeaf = (from + leafSize - 1) / leafSize, endLeaf = Math.min(to / leafSize, levels.get(0).size());
+		if(firstLeaf >= endLeaf) {
+			for(int i=from; i<to; i++)
+				result.update(values[i]);
+			return result;
+		}
+		for(int i=from; i<firstLeaf * leafSize; i++)
+			result.update(values[i]);
+		for(int i=endLeaf * leafSize; i<to; i++)
+			result.update(values[i]);
+		//the canonical nodes of the range of the leaves, at most two per level
+		for(int h=0, low=firstLeaf, high=endLeaf; low<high; h++, low>>=1, high>>=1) {
+			if((low & 1) == 1)
+				result.merge(levels.get(h).get(low++));
+			if((high & 1) == 1)
+				result.merge(levels.get(h).get(--high));
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieves all the values of a period, for the exact answers
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the values, in ascending order
+	 */
+	public synchronized double[] sorted(int startDay, int endDay) {
+		double result[] = Arrays.copyOfRange(values, indexOf(startDay), indexAfter(endDay));
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Retrieves the number of values of the series
+	 * @return the number of values
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Retrieves the number of values retained by all the sketches of the tree
+	 * @return the number of values
+	 */
+	public synchronized int getRetained() {
+		int retained = 0;
+		for(List<QuantileSketch> level : levels)
+			for(QuantileSketch sketch : level)
+				retained += sketch.getRetained();
+		return retained;
+	}
+
+	/**
+	 * Helper method, finds the first value of a day or of a later day
+	 * @param day the day, as the number of days since 1970-01-01
+	 * @return the index of the value, the number of values if all of them are earlier
+	 */
+	private int indexOf(int day) {
+		int low = 0, high = size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(days[middle] < day)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Helper method, finds the first value following a day
+	 * @param day the day, as the number of days since 1970-01-01
+	 * @return the index of the value, the number of values if none of them is later
+	 */
+	private int indexAfter(int day) {
+		return (day == Integer.MAX_VALUE) ? size : indexOf(day + 1);
+	}
+
+}
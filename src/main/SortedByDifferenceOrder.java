@@ -18,7 +18,7 @@ public class SortedByDifferenceOrder implements IOrderExecutable, Observer {
 	/**
 	 * The NBP API data source
 	 */
-	private NBPDataSource dataSource;
+	private volatile NBPDataSource dataSource;
 	/**
 	 * Includes helper methods for numeric and statistical operations on Json objects
 	 */
@@ -89,7 +89,7 @@ public class SortedByDifferenceOrder implements IOrderExecutable, Observer {
 			List<JsonObject> myList = operations.getNsortedByDiff(innerArray, numberOfCurrencies, "ask", "bid");
 			System.out.println("The " + this.numberOfCurrencies + " first currencies for the date " + this.date + " are:");
 			for(int i=0; i<myList.size(); i++) {
-				System.out.println((i + 1) + ". " + myList.get(i).getString("code") + " (Difference: " + (myList.get(i).getJsonNumber("ask").doubleValue() - myList.get(i).getJsonNumber("bid").doubleValue()) + ")");
+				System.out.println((i + 1) + ". " + myList.get(i).getString("code") + " (Difference: " + FixedPoint.format(operations.getFixedDiff(myList.get(i), "ask", "bid")) + ")");
 			}
 			
 		} catch (WebApiException e) {
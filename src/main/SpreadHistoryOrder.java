@@ -0,0 +1,201 @@
+package webapi;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prints the spread statistics of the currencies of table C in a given period: the currency which was the cheapest
+ * to buy on every day, the average spread of every currency and the days with the widest spreads. The bid and ask
+ * prices are read from the series store when it holds the whole period (it is kept up to date by the publication
+ * scheduler of the server mode), otherwise the tables of the period are fetched chunk by chunk. The statistics
+ * are collected by a single scan of the columns of the prices
+ * @author Patryk Wegrzyn
+ */
+public class SpreadHistoryOrder implements IAsyncOrderExecutable, Observer {
+
+	/**
+	 * The number of the widest spreads printed when none is given
+	 */
+	private static final int DEFAULT_WIDEST = 5;
+
+	/**
+	 * The NBP Web API data source
+	 */
+	private volatile NBPDataSource dataSource;
+	/**
+	 * The start of the time period
+	 */
+	private String start;
+	/**
+	 * The end of the time period, the current date is assumed if none is provided
+	 */
+	private String end;
+	/**
+	 * The number of the widest spreads to be printed
+	 */
+	private int widest = DEFAULT_WIDEST;
+	/**
+	 * Flag set when the passed arguments have an invalid format
+	 */
+	private boolean wrongArgFormat = false;
+
+	/**
+	 * Typical constructor
+	 * @param parameters User input CLI parameters: the start and optionally the end of the period, optionally
+	 * followed by the number of the widest spreads
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public SpreadHistoryOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		int dates = (parameters == null) ? 0 : parameters.length;
+		if(dates > 1 && parameters[dates - 1].matches("[\\d]{1,3}")) {
+			this.widest = Integer.parseInt(parameters[dates - 1]);
+			dates--;
+		}
+		if(parameters == null || (dates != 1 && dates != 2) || !parameters[0].matches("[\\d]{4}-\\d\\d-\\d\\d")
+				|| (dates == 2 && !parameters[1].matches("[\\d]{4}-\\d\\d-\\d\\d")))
+			this.wrongArgFormat = true;
+		if(!wrongArgFormat) {
+			this.start = parameters[0];
+			if(dates == 2) {
+				this.end = parameters[1];
+			} else {
+				Date now = new Date(System.currentTimeMillis());
+				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+				this.end = formatter.format(now);
+			}
+		}
+		this.dataSource = dataSource;
+		orderPerformer.register(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Printing the cheapest currencies, the average spreads and the widest spreads of table C in a given period...");
+		if(wrongArgFormat) {
+			System.out.println("Error! The format of passed arguments is invalid");
+			return CompletableFuture.completedFuture(null);
+		}
+		int startDay = (int) LocalDate.parse(this.start).toEpochDay();
+		int endDay = (int) LocalDate.parse(this.end).toEpochDay();
+		BidAskHistory resident = findResident(startDay, endDay);
+		if(resident != null) {
+			print(resident);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		List<String[]> chunks = dataSource.splitPeriod(this.start, this.end, dataSource.getMaxPeriodPerQuery2());
+		return dataSource.foldChunks(chunks, chunk -> {
+					BidAskHistory partial = new BidAskHistory();
+					//the chunks without any data are skipped
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync("exchangerates/tables/C/" + chunk[0] + "/" + chunk[1], RateRecordReader.forBidAskRates(), partial), partial);
+				}, new BidAskHistory(), BidAskHistory::append)
+				.handle((history, error) -> {
+					if(error != null)
+						reportError(error);
+					else
+						print(history);
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, reads the prices of the period from the series store, if it holds the whole period of table C
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period
+	 * @return the history of the period, null if it is not resident
+	 */
+	private BidAskHistory findResident(int startDay, int endDay) {
+		Map<String, Map<String, PriceColumn>> fields = new LinkedHashMap<>();
+		for(String field : new String[] {"bid", "ask"}) {
+			Map<String, PriceColumn> columns = SeriesStore.getInstance().readTable("C", field, startDay, endDay);
+			if(columns == null)
+				return null;
+			fields.put(field, columns);
+		}
+		//the rows of all the days first, so that the prices of every series can be put into them
+		TreeSet<Integer> calendar = new TreeSet<>();
+		for(Map<String, PriceColumn> columns : fields.values())
+			for(PriceColumn column : columns.values())
+				for(int i=0; i<column.getSize(); i++)
+					calendar.add((int) LocalDate.parse(column.getDate(i)).toEpochDay());
+		BidAskHistory history = new BidAskHistory();
+		for(int day : calendar)
+			history.addDay(day);
+		for(Map.Entry<String, Map<String, PriceColumn>> field : fields.entrySet())
+			for(Map.Entry<String, PriceColumn> entry : field.getValue().entrySet()) {
+				PriceColumn column = entry.getValue();
+				for(int i=0; i<column.getSize(); i++)
+					history.put((int) LocalDate.parse(column.getDate(i)).toEpochDay(), entry.getKey(), field.getKey(), column.getValues()[i]);
+			}
+		return history;
+	}
+
+	/**
+	 * Helper method, scans the history and prints the statistics
+	 * @param history the bid and ask prices of the period
+	 */
+	private void print(BidAskHistory history) {
+		if(history.getDays() == 0) {
+			reportError(new WebApiException("Not Found - Brak danych"));
+			return;
+		}
+		SpreadScan scan = history.scan(this.widest);
+		System.out.println("The spreads of table C from " + this.start + " to " + this.end + " (" + scan.getDays() + " days, "
+				+ scan.getCodes().length + " currencies)");
+		System.out.println("The cheapest currencies to buy:");
+		for(int r=0; r<scan.getDays(); r++)
+			if(scan.getCheapest(r) != null)
+				System.out.println(LocalDate.ofEpochDay(scan.getDay(r)) + ": " + scan.getCheapest(r) + " (bid price " + scan.getLowestBid(r) + ")");
+		System.out.println("The average spreads:");
+		for(int c=0; c<scan.getCodes().length; c++)
+			if(scan.getSpreadCount(c) > 0)
+				System.out.println(scan.getCodes()[c] + ": " + round(scan.getAverageSpread(c)) + " (" + scan.getSpreadCount(c) + " days)");
+		System.out.println("The " + scan.getWidestCount() + " widest spreads:");
+		for(int i=0; i<scan.getWidestCount(); i++)
+			System.out.println((i + 1) + ". " + scan.getWidestCode(i) + " on " + LocalDate.ofEpochDay(scan.getWidestDay(i)) + " (Difference: " + round(scan.getWidestSpread(i)) + ")");
+	}
+
+	/**
+	 * Helper method, rounds a spread for printing
+	 * @param value the spread
+	 * @return the spread rounded to 4 decimal places
+	 */
+	private static double round(double value) {
+		return Math.round(value * 10000) / 10000.0;
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the statistics could not be collected, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 */
+	private void reportError(Throwable error) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The spreads of table C from " + this.start + " to " + this.end + " could not be retrieved: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The spreads of table C from " + this.start + " to " + this.end + " could not be retrieved: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.Observer#update(webapi.AbstractDataSource)
+	 */
+	@Override
+	public void update(AbstractDataSource dataSource) {
+		this.dataSource = (NBPDataSource) dataSource;
+		
+	}
+
+}
@@ -0,0 +1,167 @@
+package webapi;
+
+/**
+ * The answers of the range queries of the spreads of table C, collected by a single scan of a bid and ask history
+ * @author Patryk Wegrzyn
+ */
+public class SpreadScan {
+
+	/**
+	 * The days of the history, as the number of days since 1970-01-01
+	 */
+	private final int[] days;
+	/**
+	 * The code of the currency with the lowest bid price of every day, null for a day without any
+	 */
+	private final String[] cheapest;
+	/**
+	 * The lowest bid price of every day
+	 */
+	private final double[] lowestBids;
+	/**
+	 * The codes of the currencies
+	 */
+	private final String[] codes;
+	/**
+	 * The average spread of every currency, NaN for a currency without any
+	 */
+	private final double[] averageSpreads;
+	/**
+	 * The number of the days with a spread of every currency
+	 */
+	private final int[] spreadCounts;
+	/**
+	 * The days of the widest spreads, the widest first
+	 */
+	private final int[] widestDays;
+	/**
+	 * The currencies of the widest spreads
+	 */
+	private final String[] widestCodes;
+	/**
+	 * The widest spreads
+	 */
+	private final double[] widestSpreads;
+
+	/**
+	 * Typical constructor
+	 * @param days the days of the history
+	 * @param cheapest the code of the currency with the lowest bid price of every day
+	 * @param lowestBids the lowest bid price of every day
+	 * @param codes the codes of the currencies
+	 * @param averageSpreads the average spread of every currency
+	 * @param spreadCounts the number of the days with a spread of every currency
+	 * @param widestDays the days of the widest spreads, the widest first
+	 * @param widestCodes the currencies of the widest spreads
+	 * @param widestSpreads the widest spreads
+	 */
+	public SpreadScan(int[] days, String[] cheapest, double[] lowestBids, String[] codes, double[] averageSpreads, int[] spreadCounts,
+			int[] widestDays, String[] widestCodes, double[] widestSpreads) {
+		this.days = days;
+		this.cheapest = cheapest;
+		this.lowestBids = lowestBids;
+		this.codes = codes;
+		this.averageSpreads = averageSpreads;
+		this.spreadCounts = spreadCounts;
+		this.widestDays = widestDays;
+		this.widestCodes = widestCodes;
+		this.widestSpreads = widestSpreads;
+	}
+
+	/**
+	 * Retrieves the number of the days of the history
+	 * @return the number of days
+	 */
+	public int getDays() {
+		return days.length;
+	}
+
+	/**
+	 * Retrieves a day of the history
+	 * @param row the index of the day
+	 * @return the day, as the number of days since 1970-01-01
+	 */
+	public int getDay(int row) {
+		return days[row];
+	}
+
+	/**
+	 * Retrieves the currency with the lowest bid price of a day
+	 * @param row the index of the day
+	 * @return the code of the currency, null if the day has no prices
+	 */
+	public String getCheapest(int row) {
+		return cheapest[row];
+	}
+
+	/**
+	 * Retrieves the lowest bid price of a day
+	 * @param row the index of the day
+	 * @return the bid price of the cheapest currency
+	 */
+	public double getLowestBid(int row) {
+		return lowestBids[row];
+	}
+
+	/**
+	 * Retrieves the codes of the currencies
+	 * @return the codes, in the order of the averages
+	 */
+	public String[] getCodes() {
+		return codes;
+	}
+
+	/**
+	 * Retrieves the average spread of a currency
+	 * @param currency the index of the currency
+	 * @return the average difference of its ask and bid prices, NaN if it has no spreads
+	 */
+	public double getAverageSpread(int currency) {
+		return averageSpreads[currency];
+	}
+
+	/**
+	 * Retrieves the number of the days with a spread of a currency
+	 * @param currency the index of the currency
+	 * @return the number of days
+	 */
+	public int getSpreadCount(int currency) {
+		return spreadCounts[currency];
+	}
+
+	/**
+	 * Retrieves the number of the widest spreads
+	 * @return the number of the spreads found
+	 */
+	public int getWidestCount() {
+		return widestSpreads.length;
+	}
+
+	/**
+	 * Retrieves the day of one of the widest spreads
+	 * @param rank the rank of the spread, 0 for the widest
+	 * @return the day, as the number of days since 1970-01-01
+	 */
+	public int getWidestDay(int rank) {
+		return widestDays[rank];
+	}
+
+	/**
+	 * Retrieves the currency of one of the widest spreads
+	 * @param rank the rank of the spread, 0 for the widest
+	 * @return the code of the currency
+	 */
+	public String getWidestCode(int rank) {
+		return widestCodes[rank];
+	}
+
+	/**
+	 * Retrieves one of the widest spreads
+	 * @param rank the rank of the spread, 0 for the widest
+	 * @return the difference of the ask and bid prices
+	 */
+	public double getWidestSpread(int rank) {
+		return widestSpreads[rank];
+	}
+
+}
@@ -2,6 +2,7 @@ package webapi;
 
 /**
  * Interface, which is the subject part of the observer design pattern, which itself is used to dynamically update DataSources for orders
+ * and to feed them with the data which has just been ingested
  * @author Patryk Wegrzyn
  *
  */
@@ -21,5 +22,12 @@ public interface Subject {
 	 * Notifies all the registered observers about a new event.
 	 */
 	public void notifyObserver();
+	/**
+	 * Notifies all the registered observers about a price which has just been ingested.
+	 * @param key the key of the series of the price, for example "A/USD/mid" or "gold"
+	 * @param day the date of the price as the number of days since 1970-01-01
+	 * @param value the price
+	 */
+	public void notifyDataArrived(String key, int day, double value);
 
 }
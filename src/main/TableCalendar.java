@@ -0,0 +1,106 @@
+package webapi;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The calendar of a table held by the series store: the first and the last day of any of its series and the breaks
+ * of its history. NBP does not publish its tables on weekends and holidays, which never keep it silent for longer
+ * than MAX_SILENT_DAYS in a row (Christmas), so a longer period without a single point of the table is a period
+ * which has never been loaded, and the store cannot serve a query overlapping it
+ * @author Patryk Wegrzyn
+ */
+public class TableCalendar {
+
+	/**
+	 * The longest period without any publication of the NBP tables, in days
+	 */
+	public static final int MAX_SILENT_DAYS = 6;
+
+	/**
+	 * The first day of the table, as the number of days since 1970-01-01
+	 */
+	private int firstDay;
+	/**
+	 * The last day of the table
+	 */
+	private int lastDay;
+	/**
+	 * Set when the calendar has no days yet
+	 */
+	private boolean empty = true;
+	/**
+	 * The breaks of the history, the last day before a break mapped to the first day after it
+	 */
+	private final TreeMap<Integer, Integer> breaks = new TreeMap<>();
+
+	/**
+	 * Adds a day with a point of the table, the days are expected in chronological order. A day preceding the last
+	 * one does not change the calendar, unless it falls before its first day or into one of its breaks
+	 * @param day the day, as the number of days since 1970-01-01
+	 * @return true if the calendar is still valid, false if it has to be built again from all the points of the table
+	 */
+	public boolean add(int day) {
+		if(empty) {
+			firstDay = lastDay = day;
+			empty = false;
+			return true;
+		}
+		if(day > lastDay) {
+			if(day - lastDay > MAX_SILENT_DAYS + 1)
+				breaks.put(lastDay, day);
+			lastDay = day;
+			return true;
+		}
+		return day >= firstDay && !isInBreak(day);
+	}
+
+	/**
+	 * Checks whether the table has no break in a given period, and starts before it
+	 * @param startDay the first day of the period, as the number of days since 1970-01-01
+	 * @param endDay the last day of the period, the days following the last day of the table are not checked
+	 * @return true if the store holds every publication of the table in the period
+	 */
+	public boolean covers(int startDay, int endDay) {
+		if(empty || firstDay > startDay)
+			return false;
+		//the breaks are disjoint, so only the latest one starting in the period can reach into it
+		Map.Entry<Integer, Integer> latest = breaks.lowerEntry(Math.min(endDay, lastDay));
+		return latest == null || latest.getValue() <= startDay;
+	}
+
+	/**
+	 * Helper method, checks whether a day falls into one of the breaks
+	 * @param day the day
+	 * @return true if the day lies strictly between the ends of a break
+	 */
+	private boolean isInBreak(int day) {
+		Map.Entry<Integer, Integer> latest = breaks.lowerEntry(day);
+		return latest != null && day < latest.getValue();
+	}
+
+	/**
+	 * Retrieves the first day of the table
+	 * @return the number of days since 1970-01-01, Integer.MAX_VALUE if the table is empty
+	 */
+	public int getFirstDay() {
+		return empty ? Integer.MAX_VALUE : firstDay;
+	}
+
+	/**
+	 * Retrieves the last day of the table
+	 * @return the number of days since 1970-01-01, -1 if the table is empty
+	 */
+	public int getLastDay() {
+		return empty ? -1 : lastDay;
+	}
+
+	/**
+	 * Retrieves the number of breaks of the history
+	 * @return the number of breaks
+	 */
+	public int getBreakCount() {
+		return breaks.size();
+	}
+
+}
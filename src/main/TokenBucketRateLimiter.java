@@ -0,0 +1,159 @@
+package webapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side token bucket, used by the data sources to cap the rate of requests sent to a Web API.
+ * The bucket is refilled continuously at a given rate and can hold at most a given number of tokens,
+ * which allows short bursts while keeping the long term rate under the limit
+ * @author Patryk Wegrzyn
+ */
+public class TokenBucketRateLimiter {
+
+	/**
+	 * Maximal number of tokens the bucket can hold (the size of a burst)
+	 */
+	private final double capacity;
+	/**
+	 * Number of tokens added to the bucket every second
+	 */
+	private double permitsPerSecond;
+	/**
+	 * Number of tokens currently available, can become negative after a penalty
+	 */
+	private double tokens;
+	/**
+	 * Time of the last refill, in nanoseconds
+	 */
+	private long lastRefill;
+
+	/**
+	 * Creates a full bucket
+	 * @param permitsPerSecond the rate at which the bucket is refilled
+	 * @param burst the maximal number of requests which can be sent at once
+	 */
+	public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+		if(permitsPerSecond <= 0 || burst <= 0)
+			throw new IllegalArgumentException("The rate and the burst of a rate limiter must be positive");
+		this.permitsPerSecond = permitsPerSecond;
+		this.capacity = burst;
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a single token from the bucket, waits when none is available
+	 * @throws InterruptedException thrown when the waiting thread has been interrupted
+	 */
+	public void acquire() throws InterruptedException {
+		long waitNanos;
+		while((waitNanos = tryAcquire()) > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Non-blocking version of acquire, the returned future is completed once a token has been taken,
+	 * no thread is blocked in the meantime
+	 * @return the future completed when the token has been taken
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+		CompletableFuture<Void> token = new CompletableFuture<>();
+		acquireAsync(token);
+		return token;
+	}
+
+	/**
+	 * Helper method, tries to take a token for a waiting request, and tries again when the next token will be
+	 * available. A request cancelled in the meantime does not take any token
+	 * @param token the future of the request, completed when the token has been taken
+	 */
+	private void acquireAsync(CompletableFuture<Void> token) {
+		if(token.isDone())
+			return;
+		long waitNanos = tryAcquire();
+		if(waitNanos > 0)
+			CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> acquireAsync(token));
+		else if(!token.complete(null))
+			giveBack();
+	}
+
+	/**
+	 * Helper method, puts back the token taken by a request which has been cancelled at the same time
+	 */
+	private synchronized void giveBack() {
+		tokens = Math.min(capacity, tokens + 1);
+	}
+
+	/**
+	 * Takes a single token from the bucket if one is available
+	 * @return 0 if the token has been taken, otherwise the number of nanoseconds after which the next token will be available
+	 */
+	public synchronized long tryAcquire() {
+		refill();
+		if(tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		return (long) Math.ceil((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+	}
+
+	/**
+	 * Empties the bucket so that no request is sent for the given time, used when the server
+	 * explicitly asks the client to slow down (for example with a Retry-After header)
+	 * @param delay the time for which no tokens will be available
+	 * @param unit the unit of the delay
+	 */
+	public synchronized void penalize(long delay, TimeUnit unit) {
+		refill();
+		double debt = permitsPerSecond * unit.toNanos(delay) / TimeUnit.SECONDS.toNanos(1);
+		tokens = Math.min(tokens, 0) - debt;
+	}
+
+	/**
+	 * Refills the bucket according to the time which has passed since the last refill
+	 */
+	private void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+		lastRefill = now;
+	}
+
+	/**
+	 * Retrieves the current rate of the bucket
+	 * @return the number of permits issued per second
+	 */
+	public synchronized double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * Sets a new rate of the bucket, the tokens already in the bucket are kept
+	 * @param permitsPerSecond the new number of permits issued per second
+	 */
+	public synchronized void setPermitsPerSecond(double permitsPerSecond) {
+		if(permitsPerSecond <= 0)
+			throw new IllegalArgumentException("The rate of a rate limiter must be positive");
+		refill();
+		this.permitsPerSecond = permitsPerSecond;
+	}
+
+	/**
+	 * Retrieves the size of the bucket
+	 * @return the maximal number of tokens in the bucket
+	 */
+	public int getCapacity() {
+		return (int) capacity;
+	}
+
+	/**
+	 * Retrieves the number of currently available tokens
+	 * @return the number of tokens in the bucket
+	 */
+	public synchronized double getAvailableTokens() {
+		refill();
+		return tokens;
+	}
+
+}
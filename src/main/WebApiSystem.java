@@ -1,6 +1,10 @@
 package webapi;
 
 
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
 
@@ -39,9 +43,36 @@ public class WebApiSystem {
 			//because having only one object will be always enough and we can save memory be possibly sharing it
 			AbstractDataSource dataSource = NBPDataSource.getInstance();
 			
+			//the queries which can be answered by the mirrors are raced between them and the NBP Web API
+			NBPDataSource mirrors[] = new NBPDataSource[0];
+			if(configs.hasOption("mirrors")) {
+				mirrors = createMirrors(configs.getOptionValues("mirrors"));
+				dataSource = createFederation(mirrors);
+			}
+			
 			//this object will perform all the desired orders on the desired dataSource
-			IOrderPerformer orderPerformer = new NBPOrderPerformer(configs, dataSource);
+			NBPOrderPerformer orderPerformer = new NBPOrderPerformer(configs, dataSource);
+			
+			//all the other queries are moved to a healthy mirror while the NBP Web API is degraded
+			DataSourceFailover failover = null;
+			if(mirrors.length > 0) {
+				failover = new DataSourceFailover(orderPerformer, (NBPDataSource) dataSource, mirrors);
+				failover.start(DataSourceFailover.DEFAULT_CHECK_INTERVAL, TimeUnit.SECONDS);
+			}
 			orderPerformer.performOrders();
+			orderPerformer.releaseOrders();
+			
+			//the current limits of the data source are a part of its metrics
+			if(configs.hasOption("metrics")) {
+				System.out.println("Data source metrics:");
+				System.out.println(dataSource.getMetrics());
+			}
+			
+			//the server mode runs until the program is killed, with the failover still watching the data sources
+			if(configs.hasOption("serve"))
+				serve(configs, dataSource, orderPerformer);
+			else if(failover != null)
+				failover.close();
 		
 		} catch (ParseException e) {
 			System.out.println("Parse error!");
@@ -54,4 +85,62 @@ public class WebApiSystem {
 		}
 		
 	}
+	
+	/**
+	 * Creates the data sources of the mirrors of the NBP Web API
+	 * @param urls the beginnings of the URLs of the mirrors
+	 * @return the data sources, in the order of the URLs
+	 */
+	private static NBPDataSource[] createMirrors(String[] urls) {
+		NBPDataSource mirrors[] = new NBPDataSource[urls.length];
+		for(int i=0; i<urls.length; i++)
+			mirrors[i] = NBPDataSource.createMirror(urls[i]);
+		return mirrors;
+	}
+	
+	/**
+	 * Creates the data source which races the NBP Web API and its mirrors
+	 * @param mirrors the data sources of the mirrors
+	 * @return the data source of the orders
+	 */
+	private static NBPDataSource createFederation(NBPDataSource[] mirrors) {
+		NBPDataSource primary = NBPDataSource.getInstance();
+		IRateProvider providers[] = new IRateProvider[mirrors.length + 1];
+		providers[0] = new NBPRateProvider("NBP", primary);
+		for(int i=0; i<mirrors.length; i++)
+			providers[i + 1] = new NBPRateProvider(mirrors[i].getUrlStart(), mirrors[i]);
+		return new FederatedNBPDataSource(primary, new FederatedDataSource(providers));
+	}
+	
+	/**
+	 * Runs the server mode: the history of the prices is restored from the snapshot (if one is given), brought up to
+	 * date and then refreshed whenever a new publication appears, every ingested price is fed to the live orders
+	 * of the clients of the server
+	 * @param configs the parsed arguments
+	 * @param dataSource the data source of the publications
+	 * @param orderPerformer creates the live orders and feeds them with the ingested prices
+	 * @throws Exception thrown when the server could not be started
+	 */
+	private static void serve(CommandLine configs, AbstractDataSource dataSource, NBPOrderPerformer orderPerformer) throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.addSubject(orderPerformer);
+		if(configs.hasOption("snapshot")) {
+			SeriesSnapshot snapshot = new SeriesSnapshot(Paths.get(configs.getOptionValue("snapshot")), store);
+			int restored = snapshot.restore(Duration.ofDays(7));
+			if(restored >= 0)
+				System.out.println("Restored " + restored + " series from the snapshot");
+			snapshot.start(10, TimeUnit.MINUTES);
+		}
+		
+		PublicationScheduler scheduler = new PublicationScheduler(dataSource, store);
+		LiveOrderServer server = new LiveOrderServer(Integer.parseInt(configs.getOptionValue("serve")), orderPerformer, store);
+		server.start();
+		System.out.println("Serving the live orders on port " + server.getPort() + ", for example: /subscribe?order=lowest-highest&args=USD");
+		
+		//catch up with the publications missed so far, then follow the publication windows, the failures are recorded
+		//by the scheduler
+		for(PublicationScheduler.Publication publication : PublicationScheduler.Publication.values())
+			scheduler.refresh(publication).whenComplete((published, error) -> scheduler.start(publication));
+		Thread.currentThread().join();
+	}
 }
\ No newline at end of file
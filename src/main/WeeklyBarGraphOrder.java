@@ -1,28 +1,30 @@
 package webapi;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.Date;
-import java.util.HashMap;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-
-import javax.json.JsonArray;
-import javax.json.JsonObject;
+import java.util.function.Consumer;
 
 /**
- * Prints the week based histogram of the change of price of a given currency in a given period of time
+ * Prints the week based histogram of the change of price of given currencies in a given period of time, all the
+ * currencies are filled from the same pass over the data, see NBPDataSource.planMidRateQueries. When the
+ * ingested prices are fed to it, every price of the period fills its row of the histogram. When the series store holds
+ * the period, the prices are read from it, and the scale of the bars from its weekly rollups
  * @author Patryk Wegrzyn
  */
-public class WeeklyBarGraphOrder implements IOrderExecutable, Observer {
+public class WeeklyBarGraphOrder implements IAsyncOrderExecutable, ILiveOrder {
 
 	/**
 	 * The NBP Web API data source
 	 */
-	private NBPDataSource dataSource;
+	private volatile NBPDataSource dataSource;
 	/**
 	 * The start of the time period in question
 	 */
@@ -40,9 +42,9 @@ public class WeeklyBarGraphOrder implements IOrderExecutable, Observer {
 	 */
 	private LocalDate endLD;
 	/**
-	 * The currency in question
+	 * The currencies in question, in the order they have been given
 	 */
-	private String currency;
+	private List<String> currencies = new ArrayList<>();
 	/**
 	 * Flag set when the passed arguments have an invalid format
 	 */
@@ -51,6 +53,15 @@ public class WeeklyBarGraphOrder implements IOrderExecutable, Observer {
 	 * Duration of the time period in days
 	 */
 	private int dayDifference;
+	/**
+	 * The columns of the fed prices of every currency (by its upper case code), one per working day of the week,
+	 * null if the arguments are invalid
+	 */
+	private Map<String, double[][]> liveColumns;
+	/**
+	 * The listener of the new rows of the histogram
+	 */
+	private volatile Consumer<String> resultListener;
 
 	/**
 	 * Provides basic constructor functionality
@@ -59,9 +70,11 @@ public class WeeklyBarGraphOrder implements IOrderExecutable, Observer {
 	 * @param orderPerformer The subject to be observed
 	 */
 	public WeeklyBarGraphOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
-		if(parameters.length != 3 || !parameters[0].matches("[\\w]{3}") || !parameters[1].matches("[\\d]{4},\\d\\d,\\d") || !parameters[2].matches("[\\d]{4},\\d\\d,\\d"))
+		if(parameters.length != 3 || !parameters[0].matches("[\\w]{3}(,[\\w]{3})*") || !parameters[1].matches("[\\d]{4},\\d\\d,\\d") || !parameters[2].matches("[\\d]{4},\\d\\d,\\d"))
 			this.wrongArgFormat = true;
-		this.currency = parameters[0];
+		for(String currency : parameters[0].split(","))
+			if(!this.currencies.contains(currency))
+				this.currencies.add(currency);
 		this.dataSource = dataSource;
 		if (!wrongArgFormat) {
 			this.startLD = LocalDate.parse(parameters[1] + ",1", DateTimeFormatter.ofPattern("yyyy,MM,W,e"));
@@ -69,188 +82,216 @@ public class WeeklyBarGraphOrder implements IOrderExecutable, Observer {
 			this.endLD = LocalDate.parse(parameters[2] + ",5", DateTimeFormatter.ofPattern("yyyy,MM,W,e"));
 			this.end = this.endLD.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
 			this.dayDifference = ((int) dataSource.getDateDiff(this.start, this.end, TimeUnit.DAYS)) + 1;
+			this.liveColumns = createAllColumns();
 		}
 		orderPerformer.register(this);
 	}
 
 	/* (non-Javadoc)
-	 * @see webapi.IOrderExecutable#execute()
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
 	 */
-	public void execute() throws MalformedURLException, IOException, WebApiException {
-		System.out.println("Print a week-based ASCII graph presenting the relative change of value of a given currency during a given period...");
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		System.out.println("Print a week-based ASCII graph presenting the relative change of value of given currencies during a given period...");
 		if(wrongArgFormat) {
 			System.out.println("Error! The format of passed arguments is invalid");
-			return;
+			return CompletableFuture.completedFuture(null);
 		}
 		
-		double values[] = new double[this.dayDifference];
-		
-		if(this.dayDifference < this.dataSource.getMaxPeriodPerQuery()) {
-			try {
-				values = fetchPricesForSinglePeriod(this.start, this.end, this.currency);
-				printHistogram(values, this.start, this.end, this.currency);
-			} catch (WebApiException e) {
-				System.out.println("The histogram for the period from " + this.start + " to " + this.end + " could not be created: " + e.getMessage());
-			} catch(ArrayIndexOutOfBoundsException | javax.json.stream.JsonParsingException e) {
-				System.out.println("The histogram for the period from " + this.start + " to " + this.end + " could not be created: an unidentified JavaScript source has been found during the parsing process");
-			}
-		} else {
-			
-			String originalStart = this.start;
-			String originalEnd = this.end;
-			double temp[] = new double[dataSource.getMaxPeriodPerQuery()];
-			int dayIter = 0;
-			try {
-				
-				while((int) dataSource.getDateDiff(this.start, originalEnd, TimeUnit.DAYS) >= dataSource.getMaxPeriodPerQuery()) {
-					Date endDate = this.dataSource.addDays(this.start, this.dataSource.getMaxPeriodPerQuery() - 1);
-					Date endDateNext = this.dataSource.addDays(this.start, this.dataSource.getMaxPeriodPerQuery());
-					SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-					this.end = formatter.format(endDate);
-					String nextEnd = formatter.format(endDateNext);
-					try {
-						temp = fetchPricesForSinglePeriod(this.start, this.end, this.currency);
-						for(int i=0; i<temp.length; dayIter++, i++) {
-							values[dayIter] = temp[i];
-						}
-					} catch (WebApiException e) {
-						if(!e.getMessage().equals("Not Found - Brak danych"))
-							throw new WebApiException(e.getMessage());
-						else {
-							for(int i=0; i<temp.length; dayIter++, i++) {
-								values[dayIter] = -1;
-							}
-						}
-					}
-					this.start = nextEnd;
-				}
-				double []temp2 = new double[((int) dataSource.getDateDiff(this.start, originalEnd, TimeUnit.DAYS)) + 1];
-				try {
-					temp2 = fetchPricesForSinglePeriod(this.start, originalEnd, this.currency);
-					for(int i=0; i<temp2.length; dayIter++, i++) {
-						values[dayIter] = temp2[i];
+		if(printResident())
+			return CompletableFuture.completedFuture(null);
+
+		//one column of prices per working day of the week for every currency, -1 when no data has been found for a date,
+		//the records are streamed straight into their cells (the chunks never write to the same cells)
+		Map<String, double[][]> columns = createAllColumns();
+		long startDay = this.startLD.toEpochDay();
+		RateRecordSink sink = (date, code, value) -> {
+			double currencyColumns[][] = columns.get(code.toUpperCase());
+			int day = (int) (LocalDate.parse(date).toEpochDay() - startDay);
+			if(currencyColumns != null && day >= 0 && day < this.dayDifference && day % 7 < 5 && value > 0)
+				currencyColumns[day % 7][day / 7] = value;
+		};
+		RateRecordReader reader = RateRecordReader.forMidRates();
+		List<String[]> queries = dataSource.planMidRateQueries(this.currencies, this.start, this.end);
+		//the chunks without any data are left empty
+		return dataSource.foldChunks(queries, query -> AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(query[0], reader, sink), columns),
+						columns, (folded, chunk) -> folded)
+				.handle((folded, error) -> {
+					if(error != null) {
+						reportError(error, String.join(", ", this.currencies));
+						return null;
 					}
-				} catch (WebApiException e) {
-					if(!e.getMessage().equals("Not Found - Brak danych"))
-						throw new WebApiException(e.getMessage());
-					else {
-						for(int i=0; i<temp2.length; dayIter++, i++) {
-							values[dayIter] = -1;
-						}
+					for(String currency : this.currencies) {
+						double currencyColumns[][] = folded.get(currency.toUpperCase());
+						if(!hasData(currencyColumns))
+							reportError(new WebApiException("Not Found - Brak danych"), currency);
+						else
+							System.out.print(formatHistogram(currencyColumns, findRange(currencyColumns), this.start, this.end, currency));
 					}
-				}
-				if(values[0] < 0 && values[1] < 0 && values[2] < 0 && values[3] < 0)
-					throw new WebApiException("Not Found - Brak danych");
-				
-				printHistogram(values, originalStart, originalEnd, this.currency);
-				
-			} catch(WebApiException e) {
-				System.out.println("The histogram for the period from " + originalStart + " to " + originalEnd + " could not be created: " + e.getMessage());
-			} catch(ArrayIndexOutOfBoundsException | javax.json.stream.JsonParsingException e) {
-				System.out.println("The histogram for the period from " + originalStart + " to " + originalEnd + " could not be created: an unidentified JavaScript source has been found during the parsing process");
+					return null;
+				});
+	}
+
+	/**
+	 * Helper method, prints the histograms from the series store, if it holds the whole period of all the currencies
+	 * @return true if the histograms have been printed
+	 */
+	private boolean printResident() {
+		SeriesStore store = SeriesStore.getInstance();
+		int startDay = (int) this.startLD.toEpochDay();
+		int endDay = (int) this.endLD.toEpochDay();
+		for(String currency : this.currencies)
+			if(!store.covers(SeriesStore.key("A", currency.toUpperCase(), "mid"), startDay, endDay))
+				return false;
+		for(String currency : this.currencies) {
+			double columns[][] = createColumns();
+			CompressedSeries.Cursor cursor = store.getSeries(SeriesStore.key("A", currency.toUpperCase(), "mid")).cursor(startDay, endDay);
+			while(cursor.next()) {
+				int day = cursor.getDay() - startDay;
+				if(day % 7 < 5 && cursor.getValue() > 0)
+					columns[day % 7][day / 7] = cursor.getValue();
 			}
+			if(!hasData(columns))
+				reportError(new WebApiException("Not Found - Brak danych"), currency);
+			else
+				System.out.print(formatHistogram(columns, rangeOf(currency, columns), this.start, this.end, currency));
 		}
+		return true;
+	}
+
+	/**
+	 * Helper method, finds the lowest and the highest price of the histogram of a currency whose prices come from
+	 * the series store, from its weekly rollup when the period consists of whole weeks of it
+	 * @param currency the currency in question
+	 * @param columns The columns of prices, one per working day of the week
+	 * @return the lowest and the highest price, in this order
+	 */
+	private double[] rangeOf(String currency, double columns[][]) {
+		RollupSeries weekly = SeriesStore.getInstance().getRollup(SeriesStore.key("A", currency.toUpperCase(), "mid"), Granularity.WEEK);
+		double range[] = (weekly == null) ? null : weekly.getRange((int) this.startLD.toEpochDay(), (int) this.endLD.toEpochDay());
+		return (range != null) ? range : findRange(columns);
 	}
 	
 	/**
-	 * Helper method, basically provides the same functionality as the main execute() methods, only this one works for a single period of time
-	 * @param start The start of the time period, format yyyy-MM-dd
-	 * @param end The end of the time period, format yyyy-MM-dd
-	 * @param currency The currency in question code
-	 * @return The found tables of prices in the given period, -1 when to data has been found for a date
-	 * @throws WebApiException thrown when no data has been found for this query, or the query was invalid (wrong format or exceeded limit)
-	 * @throws MalformedURLException thrown when an invalid URL was encountered
-	 * @throws IOException thrown when an IO error was encountered during the process of fetching data from the server
+	 * Helper method, creates the empty columns of prices of the period
+	 * @return one column per working day of the week, filled with -1
 	 */
-	private double[] fetchPricesForSinglePeriod(String start, String end, String currency) throws WebApiException, MalformedURLException, IOException {
-		
-		int dayDifferenceLocal = ((int) dataSource.getDateDiff(start, end, TimeUnit.DAYS)) + 1;
-		double values[] = new double[dayDifferenceLocal];
-		JsonObject object;
-		JsonArray array;
-		String dateIter;
-		int dayIter = 0;
-		int JsonArrIter = 0;
-		
-		object = this.dataSource.getJsonObjFromURL("exchangerates/rates/A/" + currency + "/" + start + "/" + end);
-		array = object.getJsonArray("rates");
-		int temp = dataSource.getDateDiffDays(start, array.getJsonObject(JsonArrIter).getString("effectiveDate"));
-		for(; dayIter < temp; dayIter++) {
-			values[dayIter] = -1;
+	private double[][] createColumns() {
+		double columns[][] = new double[5][];
+		for(int i=0; i<5; i++) {
+			columns[i] = new double[(this.dayDifference - i + 6) / 7];
+			Arrays.fill(columns[i], -1);
 		}
-		dateIter =  array.getJsonObject(JsonArrIter).getString("effectiveDate");
-		while(dataSource.getDateDiffDays(dateIter, end) > 0) {
-			while(JsonArrIter < array.size() && dataSource.getDateDiffDays(dateIter, array.getJsonObject(JsonArrIter).getString("effectiveDate")) == 0) {
-				dateIter = dataSource.addDaysStr(dateIter, 1);
-				values[dayIter++] = array.getJsonObject(JsonArrIter++).getJsonNumber("mid").doubleValue();
-			}
-			while(JsonArrIter < array.size() - 1  && dataSource.getDateDiffDays(dateIter, array.getJsonObject(JsonArrIter).getString("effectiveDate")) > 0) {
-				values[dayIter++] = -1;
-				dateIter = dataSource.addDaysStr(dateIter, 1);
-			}
-		}
-		for(int i=0; i<values.length; i++) {
-			if(values[i] == 0) values[i] = -1;
-		}
-		return values;
+		return columns;
+	}
+
+	/**
+	 * Helper method, creates the empty columns of prices of the period for every currency
+	 * @return the columns, by the upper case codes of the currencies
+	 */
+	private Map<String, double[][]> createAllColumns() {
+		Map<String, double[][]> columns = new LinkedHashMap<>();
+		for(String currency : this.currencies)
+			columns.putIfAbsent(currency.toUpperCase(), createColumns());
+		return columns;
+	}
+
+	/**
+	 * Helper method, checks whether any price has been found
+	 * @param columns The columns of prices, one per working day of the week
+	 * @return true if at least one price has been found
+	 */
+	private boolean hasData(double columns[][]) {
+		for(double column[] : columns)
+			for(double value : column)
+				if(value >= 0) return true;
+		return false;
 	}
 	
 	/**
-	 * Helper method, prints the histogram to std.out according to the passed parameters
-	 * @param values The table of prices
+	 * Helper method, prints the message explaining why the histogram could not be created, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 * @param currency the currency (or the list of the currencies) in question
+	 */
+	private void reportError(Throwable error, String currency) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The histogram of " + currency + " for the period from " + this.start + " to " + this.end + " could not be created: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException || cause instanceof DateTimeParseException)
+			System.out.println("The histogram of " + currency + " for the period from " + this.start + " to " + this.end + " could not be created: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
+	}
+	
+	/**
+	 * Helper method, formats the histogram according to the passed parameters
+	 * @param columns The columns of prices, one per working day of the week
+	 * @param range The lowest and the highest price of the histogram
 	 * @param start The start of the time period
 	 * @param end The end of the time period
 	 * @param currency The currency in question code
+	 * @return the lines of the histogram
 	 */
-	private void printHistogram(double values[], String start, String end, String currency) {
-		System.out.println("Printing the week-based histogram of the price of " + currency + " during the period " + start + " - " + end + ":");
-		Map<Integer, Double> maxs = new HashMap<>();
-		for(int i=0; i<5; i++)
-			maxs.put(i, Double.MIN_VALUE);
-		for(int i=0; i<values.length;) {
-			for(int j=0; j<7; j++, i++) {
-				if(j == 5 || j == 6) continue;
-				if(values[i] >= 0 && values[i] > maxs.get(j))
-					maxs.put(j, values[i]);
-			}
+	private String formatHistogram(double columns[][], double range[], String start, String end, String currency) {
+		StringBuilder histogram = new StringBuilder();
+		String newLine = System.lineSeparator();
+		histogram.append("Printing the week-based histogram of the price of " + currency + " during the period " + start + " - " + end + ":").append(newLine);
+		for(int i=0; i<5; i++) {
+			for(int j=0; j<columns[i].length; j++)
+				appendRow(histogram, columns, i, j, range).append(newLine);
+			histogram.append(newLine).append(newLine);
 		}
+		return histogram.toString();
+	}
+
+	/**
+	 * Helper method, finds the lowest and the highest price of the histogram
+	 * @param columns The columns of prices, one per working day of the week
+	 * @return the lowest and the highest price, in this order
+	 */
+	private double[] findRange(double columns[][]) {
 		double globalMax = Double.MIN_VALUE;
 		double globalMin = Double.MAX_VALUE;
-		for(int i=0; i<values.length; i++) {
-			if(values[i] <= 0) continue;
-			if(values[i] > globalMax)
-				globalMax = values[i];
-			if(values[i] < globalMin)
-				globalMin = values[i];
-		}
-		String days[] = {"Mon", "Tue", "Wed", "Thu", "Fri"};
-		int week = 0;
-		for(int i=0; i<7; i++) {
-			week = 0;
-			if(i == 5 || i == 6) continue;
-			for(int j=i; j<values.length; j+=7) {
-				week++;
-				System.out.printf("[%s%03d]", days[i], week);
-				if(values[j] < 0) System.out.println("-- No data --");
-				else { 
-					printBar((int)(((values[j] - globalMin) / (globalMax - globalMin))*20), '#');
-					System.out.print(" (" + values[j] + ")");
-					System.out.println();
-				}
+		for(double column[] : columns) {
+			for(double value : column) {
+				if(value <= 0) continue;
+				if(value > globalMax)
+					globalMax = value;
+				if(value < globalMin)
+					globalMin = value;
 			}
-			System.out.println();
-			System.out.println();
 		}
+		return new double[] {globalMin, globalMax};
+	}
+
+	/**
+	 * Helper method, formats a single row of the histogram, its bar is scaled to the range of all the prices
+	 * @param row the builder the row is appended to
+	 * @param columns The columns of prices, one per working day of the week
+	 * @param i the working day of the week of the row
+	 * @param j the week of the row
+	 * @param range the lowest and the highest price of the histogram
+	 * @return the builder
+	 */
+	private StringBuilder appendRow(StringBuilder row, double columns[][], int i, int j, double range[]) {
+		String days[] = {"Mon", "Tue", "Wed", "Thu", "Fri"};
+		row.append(String.format("[%s%03d]", days[i], j + 1));
+		if(columns[i][j] < 0)
+			return row.append("-- No data --");
+		appendBar(row, (int)(((columns[i][j] - range[0]) / (range[1] - range[0]))*20), '#');
+		return row.append(" (" + columns[i][j] + ")");
 	}
 	
 	/**
-	 * Helper methods used for printing the histogram bars
+	 * Helper methods used for creating the histogram bars
+	 * @param bar The builder the bar is appended to
 	 * @param counter The length of the bar
 	 * @param character The character used for creating the bar
 	 */
-	private void printBar(int counter, char character) {
+	private void appendBar(StringBuilder bar, int counter, char character) {
 		for(int i=0; i<counter; i++) {
-			System.out.print(character);
+			bar.append(character);
 		}
 	}
 
@@ -263,4 +304,61 @@ public class WeeklyBarGraphOrder implements IOrderExecutable, Observer {
 		
 	}
 
+	/* (non-Javadoc)
+	 * @see webapi.Observer#dataArrived(java.lang.String, int, double)
+	 */
+	@Override
+	public void dataArrived(String key, int day, double value) {
+		if(wrongArgFormat)
+			return;
+		String currency = null;
+		for(String requested : this.currencies)
+			if(key.equals(SeriesStore.key("A", requested.toUpperCase(), "mid")))
+				currency = requested;
+		if(currency == null)
+			return;
+		int offset = (int) (day - this.startLD.toEpochDay());
+		if(offset < 0 || offset >= this.dayDifference || offset % 7 >= 5 || value <= 0)
+			return;
+		String update;
+		synchronized(liveColumns) {
+			double columns[][] = liveColumns.get(currency.toUpperCase());
+			columns[offset % 7][offset / 7] = value;
+			//the rows of a single currency are not prefixed, the same as in its histogram
+			StringBuilder row = new StringBuilder(this.currencies.size() > 1 ? currency + " " : "");
+			update = appendRow(row, columns, offset % 7, offset / 7, rangeOf(currency, columns)).toString();
+		}
+		Consumer<String> listener = resultListener;
+		if(listener != null)
+			listener.accept(update);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.ILiveOrder#getResult()
+	 */
+	@Override
+	public String getResult() {
+		if(wrongArgFormat)
+			return "Error! The format of passed arguments is invalid";
+		StringBuilder result = new StringBuilder();
+		synchronized(liveColumns) {
+			for(String currency : this.currencies) {
+				double columns[][] = liveColumns.get(currency.toUpperCase());
+				if(!hasData(columns))
+					result.append("No prices of " + currency + " from " + this.start + " to " + this.end + " have been ingested yet").append(System.lineSeparator());
+				else
+					result.append(formatHistogram(columns, rangeOf(currency, columns), this.start, this.end, currency));
+			}
+		}
+		return result.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.ILiveOrder#setResultListener(java.util.function.Consumer)
+	 */
+	@Override
+	public void setResultListener(Consumer<String> listener) {
+		this.resultListener = listener;
+	}
+
 }
@@ -1,32 +1,29 @@
 package webapi;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.concurrent.TimeUnit;
-
-import javax.json.JsonArray;
-import javax.json.JsonObject;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
- * Finds the peak values of a given currency in the whole available time period
+ * Finds the peak values of given currencies in the whole available time period. All the currencies are answered
+ * from the same pass over the data, see NBPDataSource.planMidRateQueries. When the ingested prices are fed to it,
+ * it keeps running peaks of the prices fed so far
  * @author Patryk Wegrzyn
  */
-public class WhenLowestHighestOrder implements IOrderExecutable, Observer {
+public class WhenLowestHighestOrder implements IAsyncOrderExecutable, ILiveOrder {
 
 	/**
 	 * The NBP Web API data source
 	 */
-	private NBPDataSource dataSource;
-	/**
-	 * Provides basic numeric and statistical operations on Json Objects
-	 */
-	private JsonNumericOperations operations;
+	private volatile NBPDataSource dataSource;
 	/**
-	 * The currency in question
+	 * The currencies in question, in the order they have been given
 	 */
-	private String currency;
+	private List<String> currencies = new ArrayList<>();
 	/**
 	 * The start of the time period - 2002-01-02
 	 */
@@ -39,20 +36,33 @@ public class WhenLowestHighestOrder implements IOrderExecutable, Observer {
 	 * Flag set when passed arguments have an invalid format
 	 */
 	private boolean wrongArgFormat = false;
+	/**
+	 * The running peaks of the fed prices
+	 */
+	private final MinMaxFold live = new MinMaxFold();
+	/**
+	 * The listener of the updates of the running peaks
+	 */
+	private volatile Consumer<String> resultListener;
 	
 	/**
 	 * Provides basic constructor functionality
-	 * @param parameter User input CLI parameter
+	 * @param parameters User input CLI parameters, the codes of the currencies
 	 * @param dataSource The NBP Web API data source
 	 * @param orderPerformer The subject to be observed
 	 */
-	public WhenLowestHighestOrder(String parameter, NBPDataSource dataSource, Subject orderPerformer) {
-		if(parameter == null || !parameter.matches("[\\w]{3}"))
+	public WhenLowestHighestOrder(String[] parameters, NBPDataSource dataSource, Subject orderPerformer) {
+		if(parameters == null || parameters.length == 0)
 			this.wrongArgFormat = true;
+		else
+			for(String parameter : parameters)
+				if(parameter == null || !parameter.matches("[\\w]{3}"))
+					this.wrongArgFormat = true;
 		if (!wrongArgFormat) {
 			this.dataSource = dataSource;
-			this.currency = parameter;
-			this.operations = JsonNumericOperations.getInstance();
+			for(String parameter : parameters)
+				if(indexOf(parameter) < 0)
+					this.currencies.add(parameter);
 			this.start = "2002-01-02";
 			Date now = new Date(System.currentTimeMillis());
 			SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
@@ -61,81 +71,93 @@ public class WhenLowestHighestOrder implements IOrderExecutable, Observer {
 		orderPerformer.register(this);
 	}
 
+	/**
+	 * Constructor of the order of a single currency
+	 * @param parameter User input CLI parameter, the code of the currency
+	 * @param dataSource The NBP Web API data source
+	 * @param orderPerformer The subject to be observed
+	 */
+	public WhenLowestHighestOrder(String parameter, NBPDataSource dataSource, Subject orderPerformer) {
+		this(parameter == null ? null : new String[] {parameter}, dataSource, orderPerformer);
+	}
+
 	/* (non-Javadoc)
-	 * @see webapi.IOrderExecutable#execute()
+	 * @see webapi.IAsyncOrderExecutable#executeAsync()
 	 */
-	public void execute() throws MalformedURLException, IOException, WebApiException {
-		System.out.println("Finding the dates on which the currency " + this.currency + " was the cheapest and the most expensive...");
+	@Override
+	public CompletableFuture<Void> executeAsync() {
+		if(this.currencies.size() > 1)
+			System.out.println("Finding the dates on which the currencies " + String.join(", ", this.currencies) + " were the cheapest and the most expensive...");
+		else
+			System.out.println("Finding the dates on which the currency " + String.join(", ", this.currencies) + " was the cheapest and the most expensive...");
 		if(wrongArgFormat) {
 			System.out.println("Error! The format of passed arguments is invalid");
-			return;
-		}
-		if(this.currency.equals("") || this.currency.length() != 3) {
-			System.out.println("The provided currency code is invalid!");
-			return;
+			return CompletableFuture.completedFuture(null);
 		}
 		
-		String originalEnd = this.end;
-		JsonObject min, max;
-		JsonArray array;
-		JsonObject object;
-		double globalMin = Double.MAX_VALUE;
-		double globalMax = Double.MIN_VALUE;
-		String whenGlobalMin = "";
-		String whenGlobalMax = "";
-		try {
-			while((int) dataSource.getDateDiff(this.start, originalEnd, TimeUnit.DAYS) >= dataSource.getMaxPeriodPerQuery()) {
-				Date endDate = this.dataSource.addDays(this.start, this.dataSource.getMaxPeriodPerQuery() - 1);
-				Date endDateNext = this.dataSource.addDays(this.start, this.dataSource.getMaxPeriodPerQuery());
-				SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-				this.end = formatter.format(endDate);
-				String nextEnd = formatter.format(endDateNext);
-				try {
-					object = dataSource.getJsonObjFromURL("exchangerates/rates/A/" + this.currency + "/" + this.start + "/" + this.end);
-					array = object.getJsonArray("rates");
-					min = operations.getMinOfArrJsonObj(array, "mid");
-					max = operations.getMaxOfArrJsonObj(array, "mid");
-					if(min.getJsonNumber("mid").doubleValue() < globalMin) {
-						globalMin = min.getJsonNumber("mid").doubleValue();
-						whenGlobalMin = min.getString("effectiveDate");
+		//the records of every chunk are streamed into columns of the requested currencies, which are scanned in parallel
+		//into a fold of their peaks, only the peaks are kept in memory
+		RateRecordReader reader = RateRecordReader.forMidRates();
+		List<String[]> queries = dataSource.planMidRateQueries(this.currencies, this.start, this.end);
+		return dataSource.foldChunks(queries, query -> {
+					PriceColumns partial = new PriceColumns(this.currencies);
+					//the currency might not have been quoted during the whole period
+					return AsyncUtils.skipMissingData(dataSource.streamRecordsAsync(query[0], reader, partial), partial)
+							.thenApply(columns -> ParallelAnalytics.getInstance().fold(columns.getColumns()));
+				}, new MinMaxFold(), MinMaxFold::merge)
+				.handle((global, error) -> {
+					if(error != null) {
+						reportError(error, String.join(", ", this.currencies));
+						return null;
 					}
-					if(max.getJsonNumber("mid").doubleValue() > globalMax) {
-						globalMax = max.getJsonNumber("mid").doubleValue();
-						whenGlobalMax = max.getString("effectiveDate");
+					for(String currency : this.currencies) {
+						if(global.indexOf(currency.toUpperCase()) < 0)
+							reportError(new WebApiException("Not Found - Brak danych"), currency);
+						else
+							System.out.println(formatPeaks(global, currency));
 					}
-				} catch (WebApiException e) {
-					if(!e.getMessage().equals("Not Found - Brak danych"))
-						throw new WebApiException(e.getMessage());
-				}
-				this.start = nextEnd;
-			}
-			try {
-				object = dataSource.getJsonObjFromURL("exchangerates/rates/A/" + this.currency + "/" + this.start + "/" + originalEnd);
-				array = object.getJsonArray("rates");
-				min = operations.getMinOfArrJsonObj(array, "mid");
-				max = operations.getMaxOfArrJsonObj(array, "mid");
-				if(min.getJsonNumber("mid").doubleValue() < globalMin) {
-					globalMin = min.getJsonNumber("mid").doubleValue();
-					whenGlobalMin = min.getString("effectiveDate");
-				}
-				if(max.getJsonNumber("mid").doubleValue() > globalMax) {
-					globalMax = max.getJsonNumber("mid").doubleValue();
-					whenGlobalMax = max.getString("effectiveDate");
-				}
-			} catch (WebApiException e) {
-				if(!e.getMessage().equals("Not Found - Brak danych"))
-					throw new WebApiException(e.getMessage());
-			}
-			if(whenGlobalMin.equals("") || whenGlobalMax.equals(""))
-				throw new WebApiException("Not Found - Brak danych");
-			System.out.println("Minimum price of " + this.currency + " was " + globalMin + " on " + whenGlobalMin);
-			System.out.println("Maximum price of " + this.currency + " was " + globalMax + " on " + whenGlobalMax);
-		} catch (WebApiException e) {
-			System.out.println("The peaks of the price of " + this.currency + " could not be found: " + e.getMessage());
-		} catch (javax.json.stream.JsonParsingException e) {
-			System.out.println("The peaks of the price of " + this.currency + " could not be found: an unidentified JavaScript source has been found during the parsing process");
-		}
+					return null;
+				});
+	}
 
+	/**
+	 * Helper method, finds a currency in the list of the requested ones
+	 * @param code the code of the currency, case insensitive
+	 * @return the index of the currency, -1 if it has not been requested
+	 */
+	private int indexOf(String code) {
+		for(int i=0; i<this.currencies.size(); i++)
+			if(this.currencies.get(i).equalsIgnoreCase(code))
+				return i;
+		return -1;
+	}
+	
+	/**
+	 * Helper method, formats the peaks of a currency
+	 * @param fold the fold of the prices of the currencies, containing the given one
+	 * @param currency the currency, as it has been requested
+	 * @return the dates and prices of the minimum and the maximum, in two lines
+	 */
+	private String formatPeaks(MinMaxFold fold, String currency) {
+		int index = fold.indexOf(currency.toUpperCase());
+		return "Minimum price of " + currency + " was " + fold.getMin(index) + " on " + fold.getWhenMin(index) + System.lineSeparator()
+				+ "Maximum price of " + currency + " was " + fold.getMax(index) + " on " + fold.getWhenMax(index);
+	}
+
+	/**
+	 * Helper method, prints the message explaining why the peaks could not be found, the errors which are
+	 * not caused by the data itself are passed further
+	 * @param error the exception which has been thrown by the query
+	 * @param currency the currency (or the list of the currencies) in question
+	 */
+	private void reportError(Throwable error, String currency) {
+		Throwable cause = AsyncUtils.unwrap(error);
+		if(cause instanceof WebApiException)
+			System.out.println("The peaks of the price of " + currency + " could not be found: " + cause.getMessage());
+		else if(cause instanceof javax.json.stream.JsonParsingException)
+			System.out.println("The peaks of the price of " + currency + " could not be found: an unidentified JavaScript source has been found during the parsing process");
+		else
+			throw AsyncUtils.wrap(cause);
 	}
 
 	/* (non-Javadoc)
@@ -147,4 +169,60 @@ public class WhenLowestHighestOrder implements IOrderExecutable, Observer {
 		
 	}
 
+	/* (non-Javadoc)
+	 * @see webapi.Observer#dataArrived(java.lang.String, int, double)
+	 */
+	@Override
+	public void dataArrived(String key, int day, double value) {
+		if(wrongArgFormat)
+			return;
+		String currency = null;
+		for(String requested : this.currencies)
+			if(key.equals(SeriesStore.key("A", requested.toUpperCase(), "mid")))
+				currency = requested;
+		if(currency == null)
+			return;
+		String code = currency.toUpperCase();
+		String update;
+		synchronized(live) {
+			int index = live.indexOf(code);
+			double min = (index < 0) ? 0 : live.getMin(index);
+			double max = (index < 0) ? 0 : live.getMax(index);
+			live.accept(LocalDate.ofEpochDay(day).toString(), code, value);
+			if(index >= 0 && live.getMin(index) == min && live.getMax(index) == max)
+				return;
+			update = formatPeaks(live, currency);
+		}
+		Consumer<String> listener = resultListener;
+		if(listener != null)
+			listener.accept(update);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.ILiveOrder#getResult()
+	 */
+	@Override
+	public String getResult() {
+		if(wrongArgFormat)
+			return "Error! The format of passed arguments is invalid";
+		List<String> lines = new ArrayList<>();
+		synchronized(live) {
+			for(String currency : this.currencies) {
+				if(live.indexOf(currency.toUpperCase()) < 0)
+					lines.add("No prices of " + currency + " have been ingested yet");
+				else
+					lines.add(formatPeaks(live, currency));
+			}
+		}
+		return String.join(System.lineSeparator(), lines);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.ILiveOrder#setResultListener(java.util.function.Consumer)
+	 */
+	@Override
+	public void setResultListener(Consumer<String> listener) {
+		this.resultListener = listener;
+	}
+
 }
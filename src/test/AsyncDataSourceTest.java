@@ -0,0 +1,69 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.json.JsonArray;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.AsyncUtils;
+import webapi.TokenBucketRateLimiter;
+import webapi.WebApiException;
+
+class AsyncDataSourceTest {
+
+	private AbstractDataSource createDataSource(LocalNBPStub stub) {
+		AbstractDataSource dataSource = new AbstractDataSource() {};
+		dataSource.setUrlStart(stub.getUrlStart());
+		dataSource.setUrlEnd("/?format=json");
+		dataSource.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(16, 1, 16));
+		return dataSource;
+	}
+
+	@Test
+	void chunkReductionTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("cenyzlota/") ? "[{\"data\":\"" + LocalNBPStub.period(path)[0] + "\",\"cena\":100.5},{\"data\":\"x\",\"cena\":99.5}]" : null);
+			stub.setLatencyMillis(100);
+			AbstractDataSource dataSource = createDataSource(stub);
+
+			List<String[]> chunks = dataSource.splitPeriod("2013-01-01", "2017-12-31", 367);
+			assertEquals(5, chunks.size());
+			assertEquals("2013-01-01", chunks.get(0)[0]);
+			assertEquals("2014-01-02", chunks.get(0)[1]);
+			assertEquals("2014-01-03", chunks.get(1)[0]);
+			assertEquals("2017-12-31", chunks.get(4)[1]);
+
+			//all chunks are in flight at the same time, without a thread waiting for each of them
+			long start = System.nanoTime();
+			List<CompletableFuture<Double>> partials = new ArrayList<>();
+			for(String[] chunk : chunks)
+				partials.add(dataSource.getJsonArrFromURLAsync("cenyzlota/" + chunk[0] + "/" + chunk[1]).thenApply(array -> (double) array.size()));
+			double days = AsyncUtils.await(AsyncUtils.reduce(partials, 0.0, Double::sum));
+			assertEquals(10.0, days);
+			assertTrue(System.nanoTime() - start < 5 * 100_000_000L);
+			assertEquals(5, stub.getHits());
+		}
+	}
+
+	@Test
+	void errorTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			AbstractDataSource dataSource = createDataSource(stub);
+			CompletableFuture<JsonArray> missing = dataSource.getJsonArrFromURLAsync("cenyzlota/2018-01-06");
+			WebApiException e = assertThrows(WebApiException.class, () -> AsyncUtils.await(missing));
+			assertEquals("Not Found - Brak danych", e.getMessage());
+			assertThrows(WebApiException.class, () -> dataSource.getJsonObjFromURL("exchangerates/rates/A/XYZ"));
+
+			stub.route("exchangerates/rates/A/USD", "{\"table\":\"A\",\"code\":\"USD\",\"rates\":[{\"effectiveDate\":\"2018-01-08\",\"mid\":3.4731}]}");
+			assertEquals("USD", dataSource.getJsonObjFromURL("exchangerates/rates/A/USD").getString("code"));
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.ChunkFoldSubscriber;
+import webapi.ChunkPublisher;
+import webapi.WebApiException;
+
+class ChunkPipelineTest {
+
+	private static final int CHUNKS = 20;
+	private static final long FETCH_MILLIS = 30;
+	private static final long FOLD_MILLIS = 30;
+
+	private List<String[]> createChunks() {
+		List<String[]> chunks = new ArrayList<>();
+		for(int i=0; i<CHUNKS; i++)
+			chunks.add(new String[] {String.valueOf(i), String.valueOf(i)});
+		return chunks;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	void boundedPrefetchTest() {
+		ExecutorService network = Executors.newCachedThreadPool();
+		AtomicInteger unfolded = new AtomicInteger();
+		AtomicInteger maxUnfolded = new AtomicInteger();
+		AtomicInteger downloading = new AtomicInteger();
+		AtomicInteger overlapped = new AtomicInteger();
+		ChunkPublisher<Integer> publisher = new ChunkPublisher<>(createChunks(), chunk -> {
+			maxUnfolded.accumulateAndGet(unfolded.incrementAndGet(), Math::max);
+			downloading.incrementAndGet();
+			return CompletableFuture.supplyAsync(() -> {
+				sleep(FETCH_MILLIS);
+				downloading.decrementAndGet();
+				return Integer.parseInt(chunk[0]);
+			}, network);
+		});
+		ChunkFoldSubscriber<Integer, List<Integer>> subscriber = new ChunkFoldSubscriber<>(2, new ArrayList<>(), (folded, chunk) -> {
+			//a later chunk is still being downloaded while this one is folded
+			if(downloading.get() > 0)
+				overlapped.incrementAndGet();
+			sleep(FOLD_MILLIS);
+			folded.add(chunk);
+			unfolded.decrementAndGet();
+			return folded;
+		});
+
+		publisher.subscribe(subscriber);
+		List<Integer> result = subscriber.getResult().join();
+		network.shutdown();
+
+		for(int i=0; i<CHUNKS; i++)
+			assertEquals(i, result.get(i));
+		//one chunk being folded, at most two more downloaded ahead of it
+		assertTrue(maxUnfolded.get() <= 3);
+		//downloads overlap with folding, a sequential loop would never fold while a download is pending
+		assertTrue(overlapped.get() > 0);
+	}
+
+	@Test
+	void errorTest() {
+		AtomicInteger fetched = new AtomicInteger();
+		ChunkPublisher<Integer> publisher = new ChunkPublisher<>(createChunks(), chunk -> {
+			fetched.incrementAndGet();
+			if(chunk[0].equals("3"))
+				return CompletableFuture.failedFuture(new WebApiException("Not Found - Brak danych"));
+			return CompletableFuture.completedFuture(1);
+		});
+		ChunkFoldSubscriber<Integer, Integer> subscriber = new ChunkFoldSubscriber<>(2, 0, Integer::sum);
+		publisher.subscribe(subscriber);
+		CompletionException e = assertThrows(CompletionException.class, () -> subscriber.getResult().join());
+		assertTrue(e.getCause() instanceof WebApiException);
+		assertTrue(fetched.get() < CHUNKS);
+	}
+
+}
@@ -0,0 +1,163 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.AsyncUtils;
+import webapi.CompressedSeries;
+import webapi.SeriesStore;
+import webapi.SeriesSummary;
+import webapi.TokenBucketRateLimiter;
+
+class CompressedSeriesTest {
+
+	private static final int POINTS = 6000;
+
+	private int[] days = new int[POINTS];
+	private double[] values = new double[POINTS];
+
+	/**
+	 * A random walk of prices with 4 decimal places on the trading days since 2002, with a few holidays
+	 */
+	private CompressedSeries createSeries(long seed) {
+		Random random = new Random(seed);
+		CompressedSeries series = new CompressedSeries();
+		LocalDate day = LocalDate.of(2002, 1, 2);
+		double price = 1 + random.nextInt(5);
+		for(int i=0; i<POINTS; day = day.plusDays(1)) {
+			if(day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY || random.nextInt(50) == 0)
+				continue;
+			price = Math.max(0.0001, Math.round((price + random.nextGaussian() * 0.01) * 10000) / 10000.0);
+			days[i] = (int) day.toEpochDay();
+			values[i] = price;
+			assertTrue(series.append(days[i], values[i]));
+			i++;
+		}
+		return series;
+	}
+
+	@Test
+	void roundTripTest() {
+		CompressedSeries series = createSeries(7);
+		assertEquals(POINTS, series.size());
+		assertFalse(series.append(days[POINTS - 1], 1.0));
+		assertEquals(days[0], series.getFirstDay());
+		assertEquals(days[POINTS - 1], series.getLastDay());
+
+		CompressedSeries.Cursor cursor = series.cursor();
+		for(int i=0; i<POINTS; i++) {
+			assertTrue(cursor.next());
+			assertEquals(days[i], cursor.getDay());
+			assertEquals(values[i], cursor.getValue());
+		}
+		assertFalse(cursor.next());
+
+		Random random = new Random(11);
+		for(int test=0; test<200; test++) {
+			int from = days[0] - 5 + random.nextInt(days[POINTS - 1] - days[0] + 10);
+			int to = from + random.nextInt(3000);
+			SeriesSummary expected = new SeriesSummary();
+			for(int i=0; i<POINTS; i++)
+				if(days[i] >= from && days[i] <= to)
+					expected.add(days[i], values[i]);
+			SeriesSummary summary = series.summarize(from, to);
+			assertEquals(expected.getCount(), summary.getCount());
+			assertEquals(expected.getSum(), summary.getSum(), 1e-6);
+			assertEquals(expected.getMin(), summary.getMin());
+			assertEquals(expected.getMinDay(), summary.getMinDay());
+			assertEquals(expected.getMax(), summary.getMax());
+			assertEquals(expected.getMaxDay(), summary.getMaxDay());
+
+			int count = 0;
+			CompressedSeries.Cursor range = series.cursor(from, to);
+			while(range.next()) {
+				assertTrue(range.getDay() >= from && range.getDay() <= to);
+				count++;
+			}
+			assertEquals(expected.getCount(), count);
+		}
+	}
+
+	@Test
+	void compressionTest() {
+		int currencies = 35;
+		CompressedSeries[] series = new CompressedSeries[currencies];
+		double[][] plain = new double[currencies][];
+		long bytes = 0;
+		for(int i=0; i<currencies; i++) {
+			series[i] = createSeries(i);
+			plain[i] = values.clone();
+			bytes += series[i].getCompressedBytes();
+		}
+		double bytesPerPoint = (double) bytes / (currencies * POINTS);
+		//a date and a price take 12 bytes as a plain int and double
+		assertTrue(bytesPerPoint < 12);
+
+		double plainSum = 0, decodedSum = 0, summarySum = 0;
+		for(double[] column : plain)
+			for(double value : column)
+				plainSum += value;
+		for(CompressedSeries single : series) {
+			CompressedSeries.Cursor cursor = single.cursor();
+			while(cursor.next())
+				decodedSum += cursor.getValue();
+		}
+		for(CompressedSeries single : series)
+			summarySum += single.summarize(Integer.MIN_VALUE, Integer.MAX_VALUE).getSum();
+		assertEquals(plainSum, decodedSum, 1e-6);
+		assertEquals(plainSum, summarySum, 1e-6);
+	}
+
+	private static int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	@Test
+	void storeTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> {
+				if(!path.startsWith("exchangerates/tables/A/")) return null;
+				return LocalNBPStub.workingDays(path, day -> "{\"effectiveDate\":\"" + day + "\",\"rates\":[{\"code\":\"USD\",\"mid\":" + (3 + day.getDayOfMonth() / 100.0)
+						+ "},{\"code\":\"EUR\",\"mid\":" + (4 + day.getDayOfMonth() / 100.0) + "}]}");
+			});
+			AbstractDataSource dataSource = new AbstractDataSource() {};
+			dataSource.setUrlStart(stub.getUrlStart());
+			dataSource.setUrlEnd("/?format=json");
+			dataSource.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+
+			SeriesStore store = SeriesStore.getInstance();
+			store.clear();
+			AsyncUtils.await(store.loadTableA(dataSource, "2018-01-01", "2018-06-30", 93));
+			//an overlapping period, and a weekend without any data
+			AsyncUtils.await(store.loadTableA(dataSource, "2018-06-01", "2018-07-31", 93));
+			AsyncUtils.await(store.loadTableA(dataSource, "2018-08-04", "2018-08-05", 93));
+
+			assertEquals(2, store.getKeys().size());
+			CompressedSeries usd = store.getSeries(SeriesStore.key("A", "USD", "mid"));
+			assertEquals(152, usd.size());
+			SeriesSummary july = usd.summarize((int) LocalDate.of(2018, 7, 1).toEpochDay(), (int) LocalDate.of(2018, 7, 31).toEpochDay());
+			assertEquals(22, july.getCount());
+			assertEquals(3.31, july.getMax());
+			assertEquals(LocalDate.of(2018, 7, 31).toEpochDay(), july.getMaxDay());
+			assertEquals(2 * 152, store.getPointCount());
+			assertTrue(store.covers(SeriesStore.key("A", "USD", "mid"), day("2018-01-02"), day("2018-07-31")));
+
+			//a period loaded after a gap: the store cannot serve the queries overlapping the gap
+			AsyncUtils.await(store.loadTableA(dataSource, "2018-10-01", "2018-10-31", 93));
+			assertEquals(1, store.getCalendar("A/").getBreakCount());
+			assertFalse(store.covers(SeriesStore.key("A", "USD", "mid"), day("2018-01-02"), day("2018-10-31")));
+			assertFalse(store.covers(SeriesStore.key("A", "EUR", "mid"), day("2018-08-15"), day("2018-10-15")));
+			assertTrue(store.covers(SeriesStore.key("A", "USD", "mid"), day("2018-01-02"), day("2018-07-31")));
+			assertTrue(store.covers(SeriesStore.key("A", "USD", "mid"), day("2018-10-01"), day("2018-12-31")));
+			store.clear();
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.CovarianceMatrix;
+import webapi.MatrixAnalytics;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.PriceColumn;
+import webapi.PriceKernels;
+import webapi.ReturnMatrix;
+import webapi.ScalarPriceKernels;
+import webapi.SeriesStore;
+import webapi.TokenBucketRateLimiter;
+
+class CorrelationMatrixTest {
+
+	@Test
+	void kernelTest() {
+		//hundreds of synthetic series driven by a few common factors
+		int days = 2500, size = 300;
+		Random random = new Random(46);
+		double[][] factors = new double[3][days];
+		for(double[] factor : factors)
+			for(int d=0; d<days; d++)
+				factor[d] = random.nextGaussian() * 0.01;
+		double[] returns = new double[days * size];
+		String[] codes = new String[size];
+		String[] dates = new String[days];
+		for(int d=0; d<days; d++)
+			dates[d] = LocalDate.ofEpochDay(d).toString();
+		for(int c=0; c<size; c++) {
+			codes[c] = "S" + c;
+			for(int d=0; d<days; d++)
+				returns[c * days + d] = factors[c % 3][d] * (1 + c % 7) + random.nextGaussian() * 0.005;
+		}
+		ReturnMatrix matrix = new ReturnMatrix(codes, dates, returns);
+
+		CovarianceMatrix blocked = MatrixAnalytics.getInstance().covariance(matrix);
+
+		double[] means = new double[size];
+		for(int c=0; c<size; c++) {
+			for(int d=0; d<days; d++)
+				means[c] += returns[c * days + d];
+			means[c] /= days;
+		}
+		double[] naive = new double[size * size];
+		for(int i=0; i<size; i++)
+			for(int j=0; j<size; j++) {
+				double sum = 0;
+				for(int d=0; d<days; d++)
+					sum += (returns[i * days + d] - means[i]) * (returns[j * days + d] - means[j]);
+				naive[i * size + j] = sum / (days - 1);
+			}
+
+		assertEquals(size, blocked.getSize());
+		for(int i=0; i<size; i++) {
+			assertEquals(1.0, blocked.getCorrelation(i, i), 1e-12);
+			for(int j=0; j<size; j++) {
+				assertEquals(naive[i * size + j], blocked.getCovariance(i, j), 1e-12);
+				assertEquals(blocked.getCovariance(i, j), blocked.getCovariance(j, i));
+			}
+		}
+		//the series of the same factor are strongly correlated, the others are not
+		assertTrue(blocked.getCorrelation(0, 3) > 0.8);
+		assertTrue(Math.abs(blocked.getCorrelation(0, 1)) < 0.1);
+	}
+
+	@Test
+	void dotTest() {
+		Random random = new Random(47);
+		double[] a = new double[1003], b = new double[1003];
+		for(int i=0; i<a.length; i++) {
+			a[i] = random.nextDouble();
+			b[i] = random.nextDouble();
+		}
+		double expected = new ScalarPriceKernels().dot(a, 3, b, 0, 1000);
+		assertEquals(expected, PriceKernels.getInstance().dot(a, 3, b, 0, 1000), 1e-9);
+		assertEquals(0, PriceKernels.getInstance().dot(a, 0, b, 0, 0));
+	}
+
+	@Test
+	void alignTest() {
+		Map<String, PriceColumn> columns = new LinkedHashMap<>();
+		PriceColumn usd = new PriceColumn(0, true), eur = new PriceColumn(0, true);
+		usd.append("2018-01-02", 3.0);
+		usd.append("2018-01-03", 3.3);
+		usd.append("2018-01-04", 3.0);
+		//the euro is missing from the first and the last table
+		eur.append("2018-01-03", 4.0);
+		columns.put("USD", usd);
+		columns.put("EUR", eur);
+		columns.put("XYZ", new PriceColumn(0, true));
+		ReturnMatrix matrix = ReturnMatrix.of(columns);
+		assertArrayEquals(new String[] {"USD", "EUR"}, matrix.getCodes());
+		assertEquals(2, matrix.getDays());
+		assertEquals("2018-01-03", matrix.getDate(0));
+		assertArrayEquals(new double[] {Math.log(1.1), Math.log(3.0 / 3.3), 0, 0}, matrix.getReturns(), 1e-12);
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			//every table rises at the start of a chunk and falls at its end, the yen the other way round
+			stub.setFallback(path -> {
+				if(!path.startsWith("exchangerates/tables/A/"))
+					return null;
+				LocalDate[] period = LocalNBPStub.period(path);
+				return "[" + LocalNBPStub.tableA(period[0].toString(), 3.0, 4.0, 0.04) + "," + LocalNBPStub.tableA(period[1].toString(), 3.3, 4.4, 0.036) + "]";
+			});
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery2(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			String output = LocalNBPStub.run(performer, "correlation", new String[] {"2018-01-01", "2018-01-30"});
+			assertEquals(3, stub.getHits());
+			assertTrue(output.contains("The correlation matrix of the daily returns of 3 currencies from 2018-01-01 to 2018-01-30 (5 days, 3 x 3, computed in "), output);
+			assertTrue(output.contains("USD   1.00   1.00  -1.00"), output);
+			assertTrue(output.contains("JPY  -1.00  -1.00   1.00"), output);
+
+			//resident: the prices are read from the store
+			for(int day=(int) LocalDate.parse("2018-01-01").toEpochDay(); day<=LocalDate.parse("2018-03-01").toEpochDay(); day++) {
+				store.append(SeriesStore.key("A", "CHF", "mid"), day, 3.5 + (day % 2) * 0.1);
+				store.append(SeriesStore.key("A", "GBP", "mid"), day, 4.5 + (day % 2) * 0.1);
+			}
+			output = LocalNBPStub.run(performer, "correlation", new String[] {"2018-01-01", "2018-01-31", "covariance"});
+			assertEquals(3, stub.getHits());
+			assertTrue(output.contains("The covariance matrix of the daily returns of 2 currencies from 2018-01-01 to 2018-01-31 (30 days, 2 x 2"), output);
+			assertTrue(output.contains("        CHF        GBP"), output);
+		} finally {
+			store.clear();
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.CrossRateEngine;
+import webapi.CrossRateTable;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.TokenBucketRateLimiter;
+
+class CrossRateTest {
+
+	//a table on every working day of the period, the dollar costs 3 zloty plus a tenth for every day of the month
+	private static String tables(String path) {
+		return LocalNBPStub.workingDays(path, date -> "{\"table\":\"A\",\"no\":\"1/A/NBP/2018\",\"effectiveDate\":\"" + date
+				+ "\",\"rates\":[{\"currency\":\"dolar\",\"code\":\"USD\",\"mid\":" + (3 + date.getDayOfMonth() / 10.0)
+				+ "},{\"currency\":\"euro\",\"code\":\"EUR\",\"mid\":4.2},{\"currency\":\"jen\",\"code\":\"JPY\",\"mid\":0.032}]}");
+	}
+
+	@Test
+	void tableTest() {
+		CrossRateTable table = new CrossRateTable("2018-01-02", new String[] {"USD", "EUR", "JPY"}, new double[] {3.5, 4.2, 0.032, 9}, 3);
+		assertArrayEquals(new String[] {"PLN", "USD", "EUR", "JPY"}, table.getCodes());
+		assertEquals(1.2, table.getRate("eur", "usd"), 1e-12);
+		assertEquals(3.5, table.getRate("USD", "PLN"), 1e-12);
+		assertTrue(Double.isNaN(table.getRate("USD", "GBP")));
+		double[] matrix = table.getMatrix();
+		String[] codes = table.getCodes();
+		for(int i=0; i<codes.length; i++)
+			for(int j=0; j<codes.length; j++)
+				assertEquals(table.getRate(codes[i], codes[j]), matrix[i * codes.length + j], 1e-12);
+		double[] subset = table.getMatrix(new String[] {"JPY", "GBP"});
+		assertEquals(1.0, subset[0], 1e-12);
+		assertTrue(Double.isNaN(subset[1]) && Double.isNaN(subset[2]) && Double.isNaN(subset[3]));
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		CrossRateEngine engine = CrossRateEngine.getInstance();
+		engine.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("exchangerates/tables/A/") ? tables(path) : null);
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery2(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			String output = LocalNBPStub.run(performer, "cross-rates", new String[] {"EUR/USD,USD/JPY", "2018-01-01", "2018-01-14"});
+			assertEquals(2, stub.getHits());
+			assertTrue(output.contains("The cross rates of EUR/USD, USD/JPY from 2018-01-01 to 2018-01-14:"), output);
+			assertTrue(output.contains("2018-01-02: EUR/USD 1.3125, USD/JPY 100.0"), output);
+			assertFalse(output.contains("2018-01-06"), output);
+			assertEquals(10, engine.getCachedTables());
+
+			//any pairs of the cached period need no queries, only the missing days are fetched
+			output = LocalNBPStub.run(performer, "cross-rates", new String[] {"usd,eur", "2018-01-03", "2018-01-03"});
+			assertEquals(2, stub.getHits());
+			assertTrue(output.contains("USD      1.000000      0.785714"), output);
+			LocalNBPStub.run(performer, "cross-rates", new String[] {"PLN/EUR", "2018-01-08", "2018-01-20"});
+			assertEquals(3, stub.getHits());
+			assertEquals(1, stub.getHits("exchangerates/tables/A/2018-01-15/2018-01-20"));
+			//the weekends are known to have no tables
+			LocalNBPStub.run(performer, "cross-rates", new String[] {"all", "2018-01-06", "2018-01-07"});
+			assertTrue(LocalNBPStub.run(performer, "cross-rates", new String[] {"all", "2018-01-06", "2018-01-07"}).contains("could not be computed: Not Found - Brak danych"));
+			assertEquals(3, stub.getHits());
+			assertTrue(LocalNBPStub.run(performer, "cross-rates", new String[] {"EUR/USD/JPY", "2018-01-01"}).contains("Error! The format of passed arguments is invalid"));
+		} finally {
+			engine.clear();
+		}
+	}
+
+}
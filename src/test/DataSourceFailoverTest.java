@@ -0,0 +1,133 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.DataSourceFailover;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.TokenBucketRateLimiter;
+
+class DataSourceFailoverTest {
+
+	private static NBPDataSource createMirror(LocalNBPStub stub) {
+		NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+		mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+		mirror.setMaxPeriodPerQuery(10);
+		return mirror;
+	}
+
+	private static String goldPrices(String path) {
+		if(path.equals("cenyzlota"))
+			return "[{\"data\":\"2018-01-02\",\"cena\":100.0}]";
+		if(!path.startsWith("cenyzlota/"))
+			return null;
+		return "[{\"data\":\"" + LocalNBPStub.period(path)[0] + "\",\"cena\":100.0}]";
+	}
+
+	@Test
+	void failoverMidRunTest() throws Exception {
+		try (LocalNBPStub primaryStub = new LocalNBPStub(); LocalNBPStub secondaryStub = new LocalNBPStub()) {
+			primaryStub.setLatencyMillis(2);
+			secondaryStub.setLatencyMillis(2);
+			//the primary mirror slows down in the middle of the order
+			primaryStub.setFallback(path -> {
+				if(primaryStub.getHits() >= 40)
+					primaryStub.setLatencyMillis(400);
+				return goldPrices(path);
+			});
+			secondaryStub.setFallback(DataSourceFailoverTest::goldPrices);
+			NBPDataSource primary = createMirror(primaryStub);
+			NBPDataSource secondary = createMirror(secondaryStub);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+
+			try (DataSourceFailover failover = new DataSourceFailover(performer, primary, secondary)) {
+				assertSame(primary, performer.getDataSource());
+				failover.setLatencyThreshold(150);
+				failover.setThresholds(2, 2);
+				failover.start(30, TimeUnit.MILLISECONDS);
+
+				String output = LocalNBPStub.run(performer, "gold-average", new String[] {"2013-01-02", "2018-12-31"});
+
+				//the whole period has been summed, partly from each mirror
+				assertTrue(output.contains("The average price of gold from 2013-01-02 to 2018-12-31 was 100.0"), output);
+				assertEquals(1, failover.getSwitches());
+				assertSame(secondary, failover.getActive());
+				assertSame(secondary, performer.getDataSource());
+				assertFalse(failover.isHealthy(primary));
+				assertTrue(secondaryStub.getHits() > 50);
+
+				//the queries sent to the primary mirror before the swap are left to finish
+				CompletableFuture<Void> drained = failover.drain(primary);
+				drained.get(5, TimeUnit.SECONDS);
+				assertEquals(0, primary.getMetrics().getInFlight());
+
+				//the primary mirror is switched back to once it has recovered
+				primaryStub.setLatencyMillis(2);
+				primaryStub.setFallback(DataSourceFailoverTest::goldPrices);
+				for(int i=0; i<250 && failover.getActive() != primary; i++)
+					Thread.sleep(20);
+				assertSame(primary, performer.getDataSource());
+				assertEquals(2, failover.getSwitches());
+			}
+		}
+	}
+
+	@Test
+	void manualSwitchTest() throws Exception {
+		try (LocalNBPStub primaryStub = new LocalNBPStub(); LocalNBPStub secondaryStub = new LocalNBPStub()) {
+			NBPDataSource primary = createMirror(primaryStub);
+			NBPDataSource secondary = createMirror(secondaryStub);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+			try (DataSourceFailover failover = new DataSourceFailover(performer, primary, secondary)) {
+				//every probe of the primary mirror times out
+				primaryStub.setLatencyMillis(300);
+				failover.setLatencyThreshold(100);
+				failover.setThresholds(1, 1);
+				secondaryStub.setFallback(DataSourceFailoverTest::goldPrices);
+				failover.checkHealth().get(5, TimeUnit.SECONDS);
+				assertSame(secondary, performer.getDataSource());
+				assertTrue(failover.getLatency(secondary) >= 0);
+				assertThrows(IllegalArgumentException.class, () -> failover.switchTo(NBPDataSource.getInstance()));
+				failover.switchTo(primary).get(5, TimeUnit.SECONDS);
+				assertSame(primary, performer.getDataSource());
+				assertEquals(2, failover.getSwitches());
+				assertEquals(1, primary.getMetrics().getActivations());
+				assertEquals(1, secondary.getMetrics().getActivations());
+			}
+		}
+	}
+
+	@Test
+	void busyEndpointTest() throws Exception {
+		try (LocalNBPStub primaryStub = new LocalNBPStub(); LocalNBPStub secondaryStub = new LocalNBPStub()) {
+			primaryStub.setFallback(DataSourceFailoverTest::goldPrices);
+			secondaryStub.setFallback(DataSourceFailoverTest::goldPrices);
+			NBPDataSource primary = createMirror(primaryStub);
+			NBPDataSource secondary = createMirror(secondaryStub);
+			//the primary mirror has used up its rate limit, its queries wait for seconds
+			TokenBucketRateLimiter tokens = new TokenBucketRateLimiter(0.2, 1);
+			primary.setLimiters(tokens, new AdaptiveConcurrencyLimiter(4, 1, 16));
+			tokens.tryAcquire();
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+			try (DataSourceFailover failover = new DataSourceFailover(performer, primary, secondary)) {
+				failover.setLatencyThreshold(500);
+				failover.setThresholds(1, 1);
+				//the probes are not queued behind the orders, so the server itself is found healthy
+				failover.checkHealth().get(5, TimeUnit.SECONDS);
+				assertTrue(failover.isHealthy(primary));
+				assertSame(primary, performer.getDataSource());
+				assertEquals(0, failover.getSwitches());
+				assertEquals(1, primary.getMetrics().getProbes());
+				assertEquals(0, primary.getMetrics().getRequests());
+				assertTrue(tokens.getAvailableTokens() < 1);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.DrawdownState;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.ParallelAnalytics;
+import webapi.PriceColumn;
+import webapi.SeriesStore;
+import webapi.TokenBucketRateLimiter;
+
+class DrawdownTest {
+
+	private static double[] randomWalk(Random random, int size) {
+		double[] values = new double[size];
+		values[0] = 3 + random.nextDouble();
+		for(int i=1; i<size; i++)
+			values[i] = values[i - 1] * (1 + random.nextGaussian() * 0.01);
+		return values;
+	}
+
+	@Test
+	void bruteForceTest() {
+		Random random = new Random(50);
+		for(int round=0; round<200; round++) {
+			double[] values = randomWalk(random, 1 + random.nextInt(60));
+			double drawdown = 0, rise = 0;
+			for(int i=0; i<values.length; i++)
+				for(int j=i + 1; j<values.length; j++) {
+					drawdown = Math.max(drawdown, 1 - values[j] / values[i]);
+					rise = Math.max(rise, values[j] / values[i] - 1);
+				}
+			DrawdownState state = DrawdownState.of(values, 0, values.length);
+			assertEquals(drawdown, state.getDrawdown(), 1e-12);
+			assertEquals(rise, state.getRise(), 1e-12);
+			if(state.getDrawdownPeak() >= 0) {
+				assertTrue(state.getDrawdownPeak() < state.getDrawdownTrough());
+				assertEquals(drawdown, 1 - values[state.getDrawdownTrough()] / values[state.getDrawdownPeak()], 1e-12);
+			}
+			if(state.getRiseTrough() >= 0) {
+				assertTrue(state.getRiseTrough() < state.getRisePeak());
+				assertEquals(rise, values[state.getRisePeak()] / values[state.getRiseTrough()] - 1, 1e-12);
+			}
+
+			//any split of the column gives the same state as the sequential scan
+			int split = random.nextInt(values.length + 1);
+			DrawdownState merged = DrawdownState.of(values, 0, split).merge(DrawdownState.of(values, split, values.length));
+			assertEquals(state.getDrawdown(), merged.getDrawdown());
+			assertEquals(state.getDrawdownPeak(), merged.getDrawdownPeak());
+			assertEquals(state.getDrawdownTrough(), merged.getDrawdownTrough());
+			assertEquals(state.getRise(), merged.getRise());
+			assertEquals(state.getRiseTrough(), merged.getRiseTrough());
+			assertEquals(state.getRisePeak(), merged.getRisePeak());
+		}
+		assertTrue(DrawdownState.of(new double[] {1}, 0, 0).isEmpty());
+		assertEquals(-1, DrawdownState.of(new double[] {1, 2, 3}, 0, 3).getDrawdownPeak());
+	}
+
+	@Test
+	void fullHistoryTest() {
+		//the whole history of table A: about 35 currencies published on about 6000 days since 2002
+		Random random = new Random(51);
+		Map<String, PriceColumn> columns = new LinkedHashMap<>();
+		for(int c=0; c<35; c++) {
+			double[] values = randomWalk(random, 6000);
+			PriceColumn column = new PriceColumn(values.length, false);
+			for(double value : values)
+				column.append(null, value);
+			columns.put("C" + c, column);
+		}
+		Map<String, DrawdownState> states = ParallelAnalytics.getInstance().drawdowns(columns);
+		assertEquals(columns.keySet(), states.keySet());
+		for(Map.Entry<String, PriceColumn> entry : columns.entrySet()) {
+			PriceColumn column = entry.getValue();
+			DrawdownState expected = DrawdownState.of(column.getValues(), 0, column.getSize());
+			DrawdownState actual = states.get(entry.getKey());
+			assertEquals(expected.getDrawdown(), actual.getDrawdown());
+			assertEquals(expected.getDrawdownPeak(), actual.getDrawdownPeak());
+			assertEquals(expected.getRise(), actual.getRise());
+			assertEquals(expected.getRisePeak(), actual.getRisePeak());
+		}
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			//every table rises at the start of a chunk and falls at its end, the yen the other way round
+			stub.setFallback(path -> {
+				if(!path.startsWith("exchangerates/tables/A/"))
+					return null;
+				LocalDate[] period = LocalNBPStub.period(path);
+				return "[" + LocalNBPStub.tableA(period[0].toString(), 3.0, 4.0, 0.04) + "," + LocalNBPStub.tableA(period[1].toString(), 3.3, 4.4, 0.036) + "]";
+			});
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery2(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			String output = LocalNBPStub.run(performer, "drawdown", new String[] {"2018-01-01", "2018-01-30"});
+			assertEquals(3, stub.getHits());
+			assertTrue(output.contains("The largest drawdowns and rises of 3 currencies from 2018-01-01 to 2018-01-30 (computed in "), output);
+			assertTrue(output.contains("JPY: drawdown 10.0% (0.04 on 2018-01-01 to 0.036 on 2018-01-10), rise 11.11% (0.036 on 2018-01-10 to 0.04 on 2018-01-11)"), output);
+			assertTrue(output.contains("USD: drawdown 9.09% (3.3 on 2018-01-10 to 3.0 on 2018-01-11), rise 10.0% (3.0 on 2018-01-01 to 3.3 on 2018-01-10)"), output);
+			assertTrue(output.indexOf("JPY:") < output.indexOf("USD:"), output);
+
+			//resident: the prices are read from the store, also of the currencies which leave or join the table in the period
+			int first = (int) LocalDate.parse("2018-01-01").toEpochDay();
+			for(int day=first; day<=LocalDate.parse("2018-03-01").toEpochDay(); day++) {
+				store.append(SeriesStore.key("A", "CHF", "mid"), day, 3.5 + (day - first) * 0.01);
+				if(day < first + 10)
+					store.append(SeriesStore.key("A", "LTL", "mid"), day, 1.2);
+				if(day >= first + 20)
+					store.append(SeriesStore.key("A", "GBP", "mid"), day, 4.5);
+			}
+			output = LocalNBPStub.run(performer, "drawdown", new String[] {"2018-01-01", "2018-01-31"});
+			assertEquals(3, stub.getHits());
+			assertTrue(output.contains("The largest drawdowns and rises of 3 currencies from 2018-01-01 to 2018-01-31"), output);
+			assertTrue(output.contains("LTL: no drawdown, no rise"), output);
+			assertTrue(output.contains("CHF: no drawdown, rise 8.57% (3.5 on 2018-01-01 to 3.8 on 2018-01-31)"), output);
+
+			output = LocalNBPStub.run(performer, "drawdown", new String[] {"2018-01"});
+			assertTrue(output.contains("Error! The format of passed arguments is invalid"), output);
+		} finally {
+			store.clear();
+		}
+	}
+
+}
@@ -0,0 +1,256 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.CompressedSeries;
+import webapi.FederatedDataSource;
+import webapi.FederatedNBPDataSource;
+import webapi.IRateProvider;
+import webapi.NBPDataSource;
+import webapi.NBPRateProvider;
+import webapi.RateRecordReader;
+import webapi.TokenBucketRateLimiter;
+import webapi.WebApiException;
+
+class FederatedDataSourceTest {
+
+	/**
+	 * A provider with a URL scheme and a response format of its own: fx/{code}/{start}/{end} answered with
+	 * [{"date":..,"rate":..}], and no gold prices
+	 */
+	private static class AlternativeProvider implements IRateProvider {
+
+		private final AbstractDataSource dataSource;
+
+		private AlternativeProvider(AbstractDataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		@Override
+		public String getName() {
+			return "alternative";
+		}
+
+		@Override
+		public AbstractDataSource getDataSource() {
+			return dataSource;
+		}
+
+		@Override
+		public String getMidRatesURL(String code, String start, String end) {
+			return "fx/" + code.toLowerCase() + "/" + start + "/" + end;
+		}
+
+		@Override
+		public RateRecordReader getMidRatesReader(String code) {
+			return new RateRecordReader("date", null, "rate", code);
+		}
+
+		@Override
+		public String getGoldPricesURL(String start, String end) {
+			return null;
+		}
+
+		@Override
+		public RateRecordReader getGoldPricesReader() {
+			return null;
+		}
+
+	}
+
+	private static AbstractDataSource createDataSource(LocalNBPStub stub) {
+		AbstractDataSource dataSource = new AbstractDataSource() {};
+		dataSource.setUrlStart(stub.getUrlStart());
+		dataSource.setUrlEnd("/?format=json");
+		dataSource.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(8, 1, 16));
+		return dataSource;
+	}
+
+	private static double price(String date) {
+		return 3 + (LocalDate.parse(date).toEpochDay() % 100) / 100.0;
+	}
+
+	//the same prices in the two formats, one record per day of the period
+	private static String nbpRates(String path) {
+		if(!path.startsWith("exchangerates/rates/A/USD/")) return null;
+		LocalDate[] period = LocalNBPStub.period(path);
+		StringBuilder body = new StringBuilder("{\"code\":\"USD\",\"rates\":[");
+		for(LocalDate day = period[0]; !day.isAfter(period[1]); day = day.plusDays(1))
+			body.append(day.equals(period[0]) ? "" : ",").append("{\"effectiveDate\":\"" + day + "\",\"mid\":" + price(day.toString()) + "}");
+		return body.append("]}").toString();
+	}
+
+	private static String alternativeRates(String path) {
+		if(!path.startsWith("fx/usd/")) return null;
+		LocalDate[] period = LocalNBPStub.period(path);
+		StringBuilder body = new StringBuilder("[");
+		for(LocalDate day = period[0]; !day.isAfter(period[1]); day = day.plusDays(1))
+			body.append(day.equals(period[0]) ? "" : ",").append("{\"date\":\"" + day + "\",\"rate\":" + price(day.toString()) + "}");
+		return body.append("]").toString();
+	}
+
+	private static void assertSeries(CompressedSeries series, String start, String end) {
+		CompressedSeries.Cursor cursor = series.cursor();
+		for(LocalDate day = LocalDate.parse(start); !day.isAfter(LocalDate.parse(end)); day = day.plusDays(1)) {
+			assertTrue(cursor.next());
+			assertEquals(day.toEpochDay(), cursor.getDay());
+			assertEquals(price(day.toString()), cursor.getValue());
+		}
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	void fastestProviderWinsTest() throws Exception {
+		try (LocalNBPStub slow = new LocalNBPStub(); LocalNBPStub medium = new LocalNBPStub(); LocalNBPStub fast = new LocalNBPStub()) {
+			slow.setLatencyMillis(600);
+			slow.setFallback(FederatedDataSourceTest::nbpRates);
+			medium.setLatencyMillis(300);
+			medium.setFallback(FederatedDataSourceTest::nbpRates);
+			fast.setLatencyMillis(20);
+			fast.setFallback(FederatedDataSourceTest::alternativeRates);
+			IRateProvider slowProvider = new NBPRateProvider("slow", createDataSource(slow));
+			IRateProvider mediumProvider = new NBPRateProvider("medium", createDataSource(medium));
+			IRateProvider fastProvider = new AlternativeProvider(createDataSource(fast));
+			FederatedDataSource federated = new FederatedDataSource(slowProvider, mediumProvider, fastProvider);
+
+			//nothing is known at first, the query is hedged with every provider until one answers
+			assertSeries(federated.getMidRatesAsync("USD", "2018-01-01", "2018-01-31").get(10, TimeUnit.SECONDS), "2018-01-01", "2018-01-31");
+			assertEquals(1, federated.getWins(fastProvider));
+
+			//the losers are measured once their answers arrive, afterwards the fastest provider is asked first,
+			//and it answers before the hedge is sent
+			Thread.sleep(1000);
+			assertSame(fastProvider, federated.getRanking().get(0));
+			assertTrue(federated.getLatency(mediumProvider) >= 300);
+			int slowHits = slow.getHits();
+			int mediumHits = medium.getHits();
+			for(int i=0; i<10; i++)
+				assertSeries(federated.getMidRatesAsync("USD", "2018-02-01", "2018-02-10").get(10, TimeUnit.SECONDS), "2018-02-01", "2018-02-10");
+			assertEquals(11, federated.getWins(fastProvider));
+			assertTrue(slow.getHits() + medium.getHits() - slowHits - mediumHits <= 2);
+			assertTrue(federated.getLatency(fastProvider) < federated.getLatency(mediumProvider));
+		}
+	}
+
+	@Test
+	void fallThroughTest() throws Exception {
+		try (LocalNBPStub broken = new LocalNBPStub(); LocalNBPStub empty = new LocalNBPStub(); LocalNBPStub valid = new LocalNBPStub();
+				LocalNBPStub spare = new LocalNBPStub()) {
+			broken.setFallback(path -> "<html>maintenance</html>");
+			empty.setFallback(path -> "{\"code\":\"USD\",\"rates\":[]}");
+			valid.setLatencyMillis(50);
+			valid.setFallback(FederatedDataSourceTest::nbpRates);
+			spare.setFallback(FederatedDataSourceTest::nbpRates);
+			IRateProvider validProvider = new NBPRateProvider("valid", createDataSource(valid));
+			FederatedDataSource federated = new FederatedDataSource(new NBPRateProvider("broken", createDataSource(broken)),
+					new NBPRateProvider("empty", createDataSource(empty)), validProvider, new NBPRateProvider("spare", createDataSource(spare)));
+			//the hedges are never due during the test, so only the invalid answers can send the query to the next provider
+			federated.setHedgeDelay(TimeUnit.HOURS.toMillis(1));
+
+			assertSeries(federated.getMidRatesAsync("USD", "2018-01-01", "2018-01-05").get(10, TimeUnit.SECONDS), "2018-01-01", "2018-01-05");
+			assertEquals(1, broken.getHits());
+			assertEquals(1, empty.getHits());
+			assertEquals(1, valid.getHits());
+			assertEquals(1, federated.getWins(validProvider));
+			//the race is over once the valid answer has arrived, the provider after it is never asked
+			assertEquals(0, spare.getHits());
+
+			//no provider has the gold prices
+			CompletableFuture<CompressedSeries> gold = federated.getGoldPricesAsync("2018-01-01", "2018-01-05");
+			ExecutionException e = assertThrows(ExecutionException.class, () -> gold.get(10, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof WebApiException || e.getCause() instanceof javax.json.stream.JsonParsingException);
+		}
+	}
+
+	@Test
+	void cancelQueuedLosersTest() throws Exception {
+		try (LocalNBPStub starved = new LocalNBPStub(); LocalNBPStub busy = new LocalNBPStub(); LocalNBPStub fast = new LocalNBPStub()) {
+			starved.setLatencyMillis(1500);
+			starved.setFallback(FederatedDataSourceTest::nbpRates);
+			busy.setLatencyMillis(1500);
+			busy.setFallback(FederatedDataSourceTest::nbpRates);
+			fast.setFallback(FederatedDataSourceTest::nbpRates);
+			//the only token of the first loser and the only slot of the second one are taken by the queries sent before the race
+			AbstractDataSource starvedSource = createDataSource(starved);
+			TokenBucketRateLimiter tokens = new TokenBucketRateLimiter(0.5, 1);
+			starvedSource.setLimiters(tokens, new AdaptiveConcurrencyLimiter(8, 1, 16));
+			AbstractDataSource busySource = createDataSource(busy);
+			AdaptiveConcurrencyLimiter slots = new AdaptiveConcurrencyLimiter(1, 1, 1);
+			busySource.setLimiters(new TokenBucketRateLimiter(1000, 100), slots);
+			CompletableFuture<Void> starving = starvedSource.streamRecordsAsync("exchangerates/rates/A/USD/2018-01-01/2018-01-01", RateRecordReader.forMidRates(), (date, code, value) -> {});
+			CompletableFuture<Void> blocking = busySource.streamRecordsAsync("exchangerates/rates/A/USD/2018-01-01/2018-01-01", RateRecordReader.forMidRates(), (date, code, value) -> {});
+
+			FederatedDataSource federated = new FederatedDataSource(new NBPRateProvider("starved", starvedSource),
+					new NBPRateProvider("busy", busySource), new NBPRateProvider("fast", createDataSource(fast)));
+			federated.setHedgeDelay(0);
+			assertSeries(federated.getMidRatesAsync("USD", "2018-01-01", "2018-01-05").get(10, TimeUnit.SECONDS), "2018-01-01", "2018-01-05");
+
+			//the losers have left the queues of their limiters, so they are never sent and their token and slot are free
+			starving.get(10, TimeUnit.SECONDS);
+			blocking.get(10, TimeUnit.SECONDS);
+			Thread.sleep(1000);
+			assertEquals(1, starved.getHits());
+			assertEquals(1, busy.getHits());
+			assertEquals(1, tokens.getAvailableTokens(), 0.01);
+			assertEquals(0, slots.getInFlight());
+		}
+	}
+
+	@Test
+	void adapterTest() throws Exception {
+		try (LocalNBPStub primaryStub = new LocalNBPStub(); LocalNBPStub mirrorStub = new LocalNBPStub()) {
+			primaryStub.setLatencyMillis(1000);
+			primaryStub.setFallback(FederatedDataSourceTest::nbpRates);
+			primaryStub.route("exchangerates/tables/A/2018-01-02/2018-01-02", "[{\"effectiveDate\":\"2018-01-02\",\"rates\":[{\"code\":\"EUR\",\"mid\":4.1}]}]");
+			mirrorStub.setFallback(FederatedDataSourceTest::nbpRates);
+			NBPDataSource primary = NBPDataSource.createMirror(primaryStub.getUrlStart());
+			primary.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			NBPDataSource mirror = NBPDataSource.createMirror(mirrorStub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			FederatedDataSource federated = new FederatedDataSource(new NBPRateProvider("NBP", primary), new NBPRateProvider("mirror", mirror));
+			federated.setHedgeDelay(0);
+			FederatedNBPDataSource dataSource = new FederatedNBPDataSource(primary, federated);
+
+			//the orders receive the records of the fastest answer as if the NBP Web API had sent them
+			List<String> records = new ArrayList<>();
+			dataSource.streamRecordsAsync("exchangerates/rates/A/usd/2018-01-01/2018-01-03", RateRecordReader.forMidRates(),
+					(date, code, value) -> records.add(date + " " + code + " " + value)).get(10, TimeUnit.SECONDS);
+			assertEquals(List.of("2018-01-01 USD " + price("2018-01-01"), "2018-01-02 USD " + price("2018-01-02"),
+					"2018-01-03 USD " + price("2018-01-03")), records);
+			assertEquals(1, mirrorStub.getHits());
+
+			//the tables are not federated, they are sent to the primary data source only
+			records.clear();
+			dataSource.streamRecordsAsync("exchangerates/tables/A/2018-01-02/2018-01-02", RateRecordReader.forMidRates(),
+					(date, code, value) -> records.add(date + " " + code + " " + value)).get(10, TimeUnit.SECONDS);
+			assertEquals(List.of("2018-01-02 EUR 4.1"), records);
+			assertEquals(1, mirrorStub.getHits());
+			assertEquals(1, primaryStub.getHits("exchangerates/tables/A/2018-01-02/2018-01-02"));
+		}
+	}
+
+	@Test
+	void missingEverywhereTest() throws Exception {
+		try (LocalNBPStub first = new LocalNBPStub(); LocalNBPStub second = new LocalNBPStub()) {
+			FederatedDataSource federated = new FederatedDataSource(new NBPRateProvider("first", createDataSource(first)),
+					new AlternativeProvider(createDataSource(second)));
+			ExecutionException e = assertThrows(ExecutionException.class, () -> federated.getMidRatesAsync("USD", "2018-01-06", "2018-01-07").get(10, TimeUnit.SECONDS));
+			assertEquals("Not Found - Brak danych", e.getCause().getMessage());
+			//only the NBP provider has the gold prices
+			assertThrows(ExecutionException.class, () -> federated.getGoldPricesAsync("2018-01-06", "2018-01-07").get(10, TimeUnit.SECONDS));
+			assertEquals(1, first.getHits("cenyzlota/2018-01-06/2018-01-07"));
+		}
+	}
+
+}
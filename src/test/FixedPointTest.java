@@ -0,0 +1,106 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.FixedPoint;
+import webapi.RateRecordReader;
+import webapi.RateRecordSink;
+
+class FixedPointTest {
+
+	@Test
+	void parseFormatTest() {
+		assertEquals(1542300, FixedPoint.parseExact("154.23"));
+		assertEquals(-15000, FixedPoint.parseExact("-1.5"));
+		assertEquals(31234, FixedPoint.parseExact("3.12340"));
+		assertEquals(1500000, FixedPoint.parseExact("150"));
+		assertEquals(FixedPoint.INEXACT, FixedPoint.parseExact("3.12345"));
+		assertEquals(FixedPoint.INEXACT, FixedPoint.parseExact("1.5E-3"));
+		assertEquals(FixedPoint.INEXACT, FixedPoint.parseExact("1."));
+		assertEquals(FixedPoint.INEXACT, FixedPoint.parseExact("-"));
+		assertEquals(FixedPoint.INEXACT, FixedPoint.parseExact("123456789012"));
+		assertEquals(15, FixedPoint.parse("1.5E-3"));
+		assertEquals(31235, FixedPoint.parse("3.12345"));
+		assertThrows(NumberFormatException.class, () -> FixedPoint.parse("abc"));
+
+		assertEquals("154.23", FixedPoint.format(1542300));
+		assertEquals("150.0", FixedPoint.format(1500000));
+		assertEquals("0.0005", FixedPoint.format(5));
+		assertEquals("-0.05", FixedPoint.format(-500));
+		assertEquals("3.1234", FixedPoint.format(31234));
+
+		//the exact values convert to the same doubles their text parses to
+		for(String text : new String[] {"154.23", "3.1234", "0.0001", "4.2543", "99999.9999"})
+			assertEquals(Double.parseDouble(text), FixedPoint.toDouble(FixedPoint.parseExact(text)));
+
+		assertEquals(5, FixedPoint.average(14, 3));
+		assertEquals(5, FixedPoint.average(15, 3));
+		assertEquals(6, FixedPoint.average(17, 3));
+		assertEquals(-6, FixedPoint.average(-17, 3));
+	}
+
+	@Test
+	void noDriftTest() {
+		//ten years of daily gold prices, every one of them with the same two decimal places
+		String price = "154.23";
+		int days = 3650;
+		double doubleSum = 0;
+		long fixedSum = 0;
+		for(int i=0; i<days; i++) {
+			doubleSum += Double.parseDouble(price);
+			fixedSum += FixedPoint.parseExact(price);
+		}
+		assertEquals("154.23", FixedPoint.format(FixedPoint.average(fixedSum, days)));
+		assertNotEquals(154.23 * days, doubleSum);
+	}
+
+	@Test
+	void allocationFreeTest() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		String[] prices = new String[1000];
+		for(int i=0; i<prices.length; i++)
+			prices[i] = (100 + i) + "." + (i % 100);
+		long sum = 0;
+		//warm up, so that the measured loop is compiled
+		for(int round=0; round<200; round++)
+			for(String price : prices)
+				sum += FixedPoint.parseExact(price);
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for(int round=0; round<100; round++)
+			for(String price : prices)
+				sum += FixedPoint.parseExact(price);
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		assertTrue(sum > 0);
+		//parsing 100000 prices through BigDecimal would allocate several megabytes
+		assertTrue(allocated < 100_000, "Allocated " + allocated + " bytes");
+	}
+
+	@Test
+	void readerTest() {
+		String body = "[{\"data\":\"2018-01-02\",\"cena\":154.23},{\"data\":\"2018-01-03\",\"cena\":1.5E2},{\"data\":\"2018-01-04\",\"cena\":150.123456}]";
+		List<String> records = new ArrayList<>();
+		RateRecordReader.forGoldPrices("gold").read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), new RateRecordSink() {
+			@Override
+			public void accept(String date, String code, double value) {
+				records.add(date + " double " + value);
+			}
+
+			@Override
+			public void acceptFixed(String date, String code, String field, long value) {
+				records.add(date + " fixed " + value);
+			}
+		});
+		assertEquals("2018-01-02 fixed 1542300", records.get(0));
+		assertEquals("2018-01-03 double 150.0", records.get(1));
+		assertEquals("2018-01-04 double 150.123456", records.get(2));
+	}
+
+}
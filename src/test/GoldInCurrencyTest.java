@@ -0,0 +1,64 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.SeriesStore;
+import webapi.TokenBucketRateLimiter;
+
+class GoldInCurrencyTest {
+
+	//the prices of every working day of the period, except the days skipped
+	private static String prices(String path, String dateField, String valueField, double value, String skipped) {
+		return LocalNBPStub.workingDays(path, date -> date.toString().equals(skipped) ? null
+				: "{\"" + dateField + "\":\"" + date + "\",\"" + valueField + "\":" + value + "}");
+	}
+
+	@Test
+	void joinTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> {
+				if(path.startsWith("cenyzlota/"))
+					return prices(path, "data", "cena", 140.0, "2018-01-09");
+				if(path.startsWith("exchangerates/rates/A/USD/"))
+					return "{\"table\":\"A\",\"currency\":\"dolar\",\"code\":\"USD\",\"rates\":"
+							+ prices(path, "effectiveDate", "mid", 3.5, "2018-01-10") + "}";
+				return null;
+			});
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			//both series of every chunk are fetched, only the days present in both of them are printed
+			String output = LocalNBPStub.run(performer, "gold-in", new String[] {"usd", "2018-01-01", "2018-01-19"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("The price of a gram of gold in USD from 2018-01-01 to 2018-01-19:"), output);
+			assertTrue(output.contains("2018-01-08: 40.0 USD\n2018-01-11: 40.0 USD"), output);
+			assertEquals(13, output.split("USD\n", -1).length - 1, output);
+
+			//resident: the series of the store are joined
+			for(int day=(int) LocalDate.parse("2018-01-01").toEpochDay(); day<=LocalDate.parse("2018-03-01").toEpochDay(); day++) {
+				store.append(SeriesStore.GOLD, day, 150);
+				if(day % 7 != 0)
+					store.append(SeriesStore.key("A", "EUR", "mid"), day, 4);
+			}
+			output = LocalNBPStub.run(performer, "gold-in", new String[] {"EUR", "2018-01-01", "2018-01-31"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("2018-01-01: 37.5 EUR"), output);
+			assertEquals(27, output.split("EUR\n", -1).length - 1, output);
+			assertTrue(LocalNBPStub.run(performer, "gold-in", new String[] {"EUR", "01-01-2018"}).contains("Error! The format of passed arguments is invalid"));
+		} finally {
+			store.clear();
+		}
+	}
+
+}
@@ -14,6 +14,7 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.json.JsonValue;
 
 import org.junit.jupiter.api.Test;
 
@@ -147,4 +148,11 @@ class JsonNumericOperationsTest {
 		}
 	}
 
+	@Test
+	void getAvgOfEmptyArrTest() {
+		JsonNumericOperations ops = JsonNumericOperations.getInstance();
+		assertTrue(Double.isNaN(ops.getAvgOfArr(JsonValue.EMPTY_JSON_ARRAY, "cena")));
+		assertEquals(0.0, ops.getSumOfArr(JsonValue.EMPTY_JSON_ARRAY, "cena"));
+	}
+
 }
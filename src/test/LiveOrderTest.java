@@ -0,0 +1,171 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.jupiter.api.Test;
+
+import webapi.ArgumentParser;
+import webapi.AverageGoldPriceOrder;
+import webapi.ILiveOrder;
+import webapi.LiveOrderServer;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.SeriesStore;
+import webapi.WhenLowestHighestOrder;
+
+class LiveOrderTest {
+
+	private static final String USD = SeriesStore.key("A", "USD", "mid");
+
+	private static int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	@Test
+	void incrementalPeaksTest() {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+		store.addSubject(performer);
+		try {
+			Random random = new Random(7);
+			double prices[] = new double[400];
+			for(int i=0; i<200; i++) {
+				prices[i] = 3 + random.nextDouble();
+				store.append(USD, day("2018-01-01") + i, prices[i]);
+			}
+			//the history is replayed to the new order, the later prices are fed to it through the performer
+			WhenLowestHighestOrder order = store.subscribe(() -> new WhenLowestHighestOrder("usd", NBPDataSource.getInstance(), performer));
+			List<String> updates = new ArrayList<>();
+			order.setResultListener(updates::add);
+			for(int i=200; i<400; i++) {
+				prices[i] = 3 + random.nextDouble() * (1 + i / 200.0);
+				store.append(USD, day("2018-01-01") + i, prices[i]);
+				store.append(SeriesStore.key("A", "EUR", "mid"), day("2018-01-01") + i, 100);
+			}
+
+			int min = 0, max = 0;
+			for(int i=1; i<prices.length; i++) {
+				if(prices[i] < prices[min]) min = i;
+				if(prices[i] > prices[max]) max = i;
+			}
+			String expected = "Minimum price of usd was " + prices[min] + " on " + LocalDate.ofEpochDay(day("2018-01-01") + min) + System.lineSeparator()
+					+ "Maximum price of usd was " + prices[max] + " on " + LocalDate.ofEpochDay(day("2018-01-01") + max);
+			assertEquals(expected, order.getResult());
+			//only the prices which moved a peak are published
+			assertFalse(updates.isEmpty());
+			assertTrue(updates.size() < 200);
+			assertEquals(expected, updates.get(updates.size() - 1));
+		} finally {
+			store.removeSubject(performer);
+			store.clear();
+		}
+	}
+
+	@Test
+	void runningAverageTest() {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+		store.addSubject(performer);
+		try {
+			ILiveOrder open = store.subscribe(() -> new AverageGoldPriceOrder(new String[] {"2018-01-03"}, NBPDataSource.getInstance(), performer));
+			ILiveOrder closed = store.subscribe(() -> new AverageGoldPriceOrder(new String[] {"2018-01-03", "2018-01-04"}, NBPDataSource.getInstance(), performer));
+			store.append(SeriesStore.GOLD, day("2018-01-02"), 1000);
+			store.append(SeriesStore.GOLD, day("2018-01-03"), 140);
+			store.append(SeriesStore.GOLD, day("2018-01-04"), 150);
+			store.append(SeriesStore.GOLD, day("2018-01-05"), 160);
+			assertEquals("The average price of gold from 2018-01-03 to 2018-01-05 was 150.0", open.getResult());
+			assertEquals("The average price of gold from 2018-01-03 to 2018-01-04 was 145.0", closed.getResult());
+		} finally {
+			store.removeSubject(performer);
+			store.clear();
+		}
+	}
+
+	@Test
+	void weekGraphRowTest() {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+		store.addSubject(performer);
+		try {
+			ILiveOrder order = (ILiveOrder) performer.createOrder("week-graph", new String[] {"USD", "2018,01,1", "2018,01,2"});
+			List<String> updates = new ArrayList<>();
+			order.setResultListener(updates::add);
+			store.append(USD, day("2018-01-02"), 3.0);
+			store.append(USD, day("2018-01-10"), 4.0);
+			//the highest price fills the whole bar of its row, the first day of the week depends on the locale
+			assertEquals(2, updates.size());
+			assertTrue(updates.get(1).matches("\\[\\w{3}002\\]#{20} \\(4.0\\)"));
+			assertTrue(order.getResult().contains("001] (3.0)"));
+			assertTrue(order.getResult().contains("-- No data --"));
+		} finally {
+			store.removeSubject(performer);
+			store.clear();
+		}
+	}
+
+	@Test
+	void releaseOrdersTest() throws Exception {
+		CommandLine configs = new ArgumentParser(new String[] {"--rollup", "gold"}).parse();
+		NBPOrderPerformer performer = new NBPOrderPerformer(configs, NBPDataSource.getInstance());
+		performer.performOrders();
+		assertEquals(1, performer.getOrders().size());
+		assertEquals(1, performer.getObserverCount());
+		//the executed orders of the command line are not kept by the server mode
+		performer.releaseOrders();
+		assertEquals(0, performer.getObserverCount());
+	}
+
+	@Test
+	void serverSentEventsTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		NBPOrderPerformer performer = new NBPOrderPerformer(null, NBPDataSource.getInstance());
+		store.addSubject(performer);
+		try (LiveOrderServer server = new LiveOrderServer(0, performer, store)) {
+			server.start();
+			store.append(USD, day("2018-01-02"), 3.5);
+			HttpClient client = HttpClient.newHttpClient();
+			HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/subscribe?order=lowest-highest&args=USD")).build(),
+					HttpResponse.BodyHandlers.ofInputStream());
+			assertEquals(200, response.statusCode());
+			assertEquals("text/event-stream; charset=utf-8", response.headers().firstValue("Content-Type").orElse(""));
+			try (BufferedReader events = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+				assertEquals("event: result", events.readLine());
+				assertEquals("data: Minimum price of USD was 3.5 on 2018-01-02", events.readLine());
+				assertEquals("data: Maximum price of USD was 3.5 on 2018-01-02", events.readLine());
+				assertEquals("", events.readLine());
+
+				//the update is pushed as soon as the new price is appended
+				store.append(USD, day("2018-01-03"), 3.7);
+				assertEquals("event: update", events.readLine());
+				assertEquals("data: Minimum price of USD was 3.5 on 2018-01-02", events.readLine());
+				assertEquals("data: Maximum price of USD was 3.7 on 2018-01-03", events.readLine());
+			}
+
+			HttpResponse<String> unknown = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/subscribe?order=lowest-price")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(400, unknown.statusCode());
+		} finally {
+			store.removeSubject(performer);
+			store.clear();
+		}
+	}
+
+}
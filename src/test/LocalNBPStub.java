@@ -0,0 +1,184 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import webapi.IAsyncOrderExecutable;
+import webapi.NBPOrderPerformer;
+
+/**
+ * A local stand-in for the NBP Web API used by the tests, serves JSON documents under http://localhost:port/api/
+ * and can simulate the latency and the throttling of the real server
+ */
+class LocalNBPStub implements AutoCloseable {
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, String> routes = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> hitsPerPath = new ConcurrentHashMap<>();
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger throttled = new AtomicInteger();
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final AtomicInteger maxObservedConcurrent = new AtomicInteger();
+	private volatile Function<String, String> fallback = path -> null;
+	private volatile long latencyMillis = 0;
+	private volatile int maxConcurrent = Integer.MAX_VALUE;
+
+	LocalNBPStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/api/", this::handle);
+		server.start();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath().substring("/api/".length());
+		if(path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+		hits.incrementAndGet();
+		hitsPerPath.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+		int now = concurrent.incrementAndGet();
+		maxObservedConcurrent.accumulateAndGet(now, Math::max);
+		try {
+			if(now > maxConcurrent) {
+				throttled.incrementAndGet();
+				respond(exchange, 429, "Too Many Requests");
+				return;
+			}
+			if(latencyMillis > 0)
+				Thread.sleep(latencyMillis);
+			String body = routes.get(path);
+			if(body == null)
+				body = fallback.apply(path);
+			if(body == null)
+				respond(exchange, 404, "404 NotFound - Not Found - Brak danych");
+			else
+				respond(exchange, 200, body);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			concurrent.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	private void respond(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	String getUrlStart() {
+		return "http://localhost:" + server.getAddress().getPort() + "/api/";
+	}
+
+	void route(String path, String body) {
+		routes.put(path, body);
+	}
+
+	void setFallback(Function<String, String> fallback) {
+		this.fallback = fallback;
+	}
+
+	void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	void setMaxConcurrent(int maxConcurrent) {
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	int getHits() {
+		return hits.get();
+	}
+
+	int getHits(String path) {
+		AtomicInteger counter = hitsPerPath.get(path);
+		return counter == null ? 0 : counter.get();
+	}
+
+	int getThrottled() {
+		return throttled.get();
+	}
+
+	int getMaxObservedConcurrent() {
+		return maxObservedConcurrent.get();
+	}
+
+	//runs an order of the performer and returns everything it has printed
+	static String run(NBPOrderPerformer performer, String option, String[] parameters) throws Exception {
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(captured, true, "UTF-8"));
+		try {
+			((IAsyncOrderExecutable) performer.createOrder(option, parameters)).executeAsync().get(60, TimeUnit.SECONDS);
+		} finally {
+			System.setOut(stdout);
+		}
+		return captured.toString(StandardCharsets.UTF_8);
+	}
+
+	//the period of a path, from the dates among its segments: exchangerates/tables/A/2018-01-01/2018-01-31 gives
+	//both of them, a path with a single date gives it twice, a path without any date gives null
+	static LocalDate[] period(String path) {
+		List<LocalDate> dates = new ArrayList<>();
+		for(String segment : path.split("/"))
+			if(segment.matches("\\d{4}-\\d{2}-\\d{2}"))
+				dates.add(LocalDate.parse(segment));
+		if(dates.isEmpty())
+			return null;
+		return new LocalDate[] {dates.get(0), dates.get(dates.size() - 1)};
+	}
+
+	//a JSON array with one element per working day of the period of a path (the days for which the element is null
+	//are skipped), null if there are none
+	static String workingDays(String path, Function<LocalDate, String> element) {
+		LocalDate[] period = period(path);
+		StringBuilder body = new StringBuilder("[");
+		for(LocalDate date=period[0]; !date.isAfter(period[1]); date=date.plusDays(1)) {
+			if(date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY)
+				continue;
+			String value = element.apply(date);
+			if(value != null)
+				body.append(body.length() > 1 ? "," : "").append(value);
+		}
+		return body.length() == 1 ? null : body.append("]").toString();
+	}
+
+	//a table A of a day with the mid rates of the dollar, the euro and the yen
+	static String tableA(String date, double usd, double eur, double jpy) {
+		return "{\"table\":\"A\",\"no\":\"1/A/NBP/2018\",\"effectiveDate\":\"" + date + "\",\"rates\":["
+				+ "{\"currency\":\"dolar\",\"code\":\"USD\",\"mid\":" + usd + "},"
+				+ "{\"currency\":\"euro\",\"code\":\"EUR\",\"mid\":" + eur + "},"
+				+ "{\"currency\":\"jen\",\"code\":\"JPY\",\"mid\":" + jpy + "}]}";
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,163 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.CompressedSeries;
+import webapi.OffHeapArena;
+import webapi.OffHeapSeries;
+
+class OffHeapSeriesTest {
+
+	private static final int CURRENCIES = 35;
+	private static final int POINTS = 6000;
+	private static final int FIRST_DAY = (int) LocalDate.of(2002, 1, 2).toEpochDay();
+
+	private static double price(int currency, int point) {
+		return Math.round((1 + currency + Math.sin(point / 50.0 + currency) / 2) * 10000) / 10000.0;
+	}
+
+	@Test
+	void layoutTest() {
+		try (OffHeapArena arena = new OffHeapArena(1024 * 1024)) {
+			CompressedSeries compressed = new CompressedSeries();
+			Random random = new Random(3);
+			int[] days = new int[1000];
+			double[] values = new double[1000];
+			for(int i=0; i<1000; i++) {
+				days[i] = FIRST_DAY + 2 * i;
+				values[i] = random.nextInt(1000) / 100.0;
+				compressed.append(days[i], values[i]);
+			}
+			OffHeapSeries series = OffHeapSeries.of(compressed, arena);
+			assertEquals(1000, series.size());
+			assertEquals(series.getBytes(), arena.getAllocatedBytes());
+			for(int test=0; test<500; test++) {
+				int from = random.nextInt(1000);
+				int to = from + random.nextInt(1001 - from);
+				double sum = 0;
+				int min = -1, max = -1;
+				for(int i=from; i<to; i++) {
+					sum += values[i];
+					if(min < 0 || values[i] < values[min]) min = i;
+					if(max < 0 || values[i] > values[max]) max = i;
+				}
+				assertEquals(sum, series.sum(from, to), 1e-6);
+				assertEquals(min, series.indexOfMin(from, to));
+				assertEquals(max, series.indexOfMax(from, to));
+			}
+			assertEquals(10, series.lowerBound(FIRST_DAY + 19));
+			assertEquals(10, series.lowerBound(FIRST_DAY + 20));
+			assertEquals(1000, series.lowerBound(FIRST_DAY + 5000));
+
+			//the points of a period of days
+			int from = series.lowerBound(FIRST_DAY + 100);
+			int to = series.lowerBound(FIRST_DAY + 200);
+			assertEquals(Arrays.stream(values, 50, 100).sum(), series.sum(from, to), 1e-6);
+			assertEquals(Arrays.stream(values, 50, 100).min().getAsDouble(), series.getValue(series.indexOfMin(from, to)));
+			assertEquals(Arrays.stream(values, 50, 100).max().getAsDouble(), series.getValue(series.indexOfMax(from, to)));
+
+			assertThrows(IllegalStateException.class, () -> OffHeapSeries.of(days, values, 100000, arena));
+			series.release();
+			series.release();
+			assertEquals(0, arena.getAllocatedBytes());
+			assertEquals(0, arena.getBufferCount());
+		}
+	}
+
+	private static long collectionCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+			count += bean.getCollectionCount();
+		return count;
+	}
+
+	private static long collectionMillis() {
+		long millis = 0;
+		for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += bean.getCollectionTime();
+		return millis;
+	}
+
+	/**
+	 * Allocates short-lived garbage, the way a busy endpoint does, and returns the average pause of the collections
+	 * that happened meanwhile, together with the median time of a full collection
+	 */
+	private static double[] measurePauses(Object resident) {
+		long count = collectionCount();
+		long millis = collectionMillis();
+		List<byte[]> window = new ArrayList<>();
+		for(int i=0; i<200_000; i++) {
+			window.add(new byte[1024]);
+			if(window.size() > 2000) window.clear();
+		}
+		double averageYoung = (double) (collectionMillis() - millis) / Math.max(1, collectionCount() - count);
+		long[] full = new long[5];
+		for(int i=0; i<full.length; i++) {
+			long start = System.nanoTime();
+			System.gc();
+			full[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(full);
+		assertNotNull(resident);
+		return new double[] {averageYoung, full[full.length / 2] / 1e6};
+	}
+
+	@Test
+	void gcPauseComparison() {
+		//the on-heap layout: the history as the JSON objects it has been fetched as
+		JsonArrayBuilder builder = Json.createArrayBuilder();
+		for(int point=0; point<POINTS; point++) {
+			JsonArrayBuilder rates = Json.createArrayBuilder();
+			for(int currency=0; currency<CURRENCIES; currency++)
+				rates.add(Json.createObjectBuilder().add("code", "C" + currency).add("mid", price(currency, point)));
+			builder.add(Json.createObjectBuilder().add("effectiveDate", LocalDate.ofEpochDay(FIRST_DAY + point).toString()).add("rates", rates));
+		}
+		JsonArray onHeap = builder.build();
+		double[] onHeapPauses = measurePauses(onHeap);
+		onHeap = null;
+
+		Map<String, OffHeapSeries> offHeap = new LinkedHashMap<>();
+		try (OffHeapArena arena = new OffHeapArena(64L * 1024 * 1024)) {
+			int[] days = new int[POINTS];
+			double[] values = new double[POINTS];
+			for(int currency=0; currency<CURRENCIES; currency++) {
+				for(int point=0; point<POINTS; point++) {
+					days[point] = FIRST_DAY + point;
+					values[point] = price(currency, point);
+				}
+				offHeap.put("C" + currency, OffHeapSeries.of(days, values, POINTS, arena));
+			}
+			double[] offHeapPauses = measurePauses(offHeap);
+			assertTrue(offHeapPauses[1] < onHeapPauses[1]);
+
+			String widest = null;
+			double maxAmp = -1;
+			for(Map.Entry<String, OffHeapSeries> entry : offHeap.entrySet()) {
+				OffHeapSeries series = entry.getValue();
+				double amp = series.getValue(series.indexOfMax(0, series.size())) - series.getValue(series.indexOfMin(0, series.size()));
+				if(amp > maxAmp) {
+					maxAmp = amp;
+					widest = entry.getKey();
+				}
+			}
+			assertEquals("C0", widest);
+		}
+	}
+
+}
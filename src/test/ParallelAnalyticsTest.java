@@ -0,0 +1,93 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.MinMaxFold;
+import webapi.MinMaxState;
+import webapi.ParallelAnalytics;
+import webapi.PriceColumn;
+import webapi.ScalarPriceKernels;
+
+class ParallelAnalyticsTest {
+
+	private static final int CURRENCIES = 35;
+	private static final int DAYS = 20 * 250;
+
+	private Map<String, PriceColumn> createColumns(long seed, int days) {
+		Random random = new Random(seed);
+		Map<String, PriceColumn> columns = new LinkedHashMap<>();
+		for(int c=0; c<CURRENCIES; c++) {
+			PriceColumn column = new PriceColumn(days, true);
+			for(int i=0; i<days; i++)
+				//few distinct prices, so that equal peaks fall into different blocks
+				column.append("day" + i, 1 + random.nextInt(50) * 0.01);
+			columns.put("C" + c, column);
+		}
+		return columns;
+	}
+
+	@Test
+	void mergeTest() {
+		MinMaxState earlier = new MinMaxState(1.0, 3, 5.0, 7);
+		MinMaxState later = new MinMaxState(1.0, 12, 6.0, 10);
+		MinMaxState merged = earlier.merge(later);
+		assertEquals(3, merged.getIndexOfMin());
+		assertEquals(10, merged.getIndexOfMax());
+		assertSame(earlier, earlier.merge(MinMaxState.EMPTY));
+		assertSame(later, MinMaxState.EMPTY.merge(later));
+		assertTrue(MinMaxState.EMPTY.isEmpty());
+	}
+
+	@Test
+	void agreementTest() {
+		ScalarPriceKernels scalar = new ScalarPriceKernels();
+		Map<String, PriceColumn> columns = createColumns(40, DAYS);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelAnalytics analytics = new ParallelAnalytics(pool);
+			Map<String, MinMaxState> states = analytics.scanAll(columns);
+			MinMaxFold fold = analytics.fold(columns);
+			assertEquals(CURRENCIES, states.size());
+			for(Map.Entry<String, PriceColumn> entry : columns.entrySet()) {
+				PriceColumn column = entry.getValue();
+				MinMaxState state = states.get(entry.getKey());
+				assertEquals(scalar.indexOfMin(column.getValues(), 0, column.getSize()), state.getIndexOfMin());
+				assertEquals(scalar.indexOfMax(column.getValues(), 0, column.getSize()), state.getIndexOfMax());
+				int index = fold.indexOf(entry.getKey());
+				assertEquals(column.getDate(state.getIndexOfMin()), fold.getWhenMin(index));
+				assertEquals(column.getDate(state.getIndexOfMax()), fold.getWhenMax(index));
+			}
+			assertTrue(analytics.scan(new PriceColumn(0, false)).isEmpty());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void parallelismTest() {
+		//the split into blocks must not depend on the number of threads, so the first of equal peaks is found on any pool
+		ScalarPriceKernels scalar = new ScalarPriceKernels();
+		Map<String, PriceColumn> columns = createColumns(20, DAYS);
+		for(int parallelism : new int[] {1, 2, 3, 8}) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				Map<String, MinMaxState> states = new ParallelAnalytics(pool).scanAll(columns);
+				for(Map.Entry<String, PriceColumn> entry : columns.entrySet()) {
+					PriceColumn column = entry.getValue();
+					assertEquals(scalar.indexOfMin(column.getValues(), 0, column.getSize()), states.get(entry.getKey()).getIndexOfMin());
+					assertEquals(scalar.indexOfMax(column.getValues(), 0, column.getSize()), states.get(entry.getKey()).getIndexOfMax());
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+}
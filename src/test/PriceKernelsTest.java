@@ -0,0 +1,104 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.Random;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonArray;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import webapi.JsonNumericOperations;
+import webapi.PriceKernels;
+import webapi.ScalarPriceKernels;
+
+class PriceKernelsTest {
+
+	private final PriceKernels scalar = new ScalarPriceKernels();
+	private final PriceKernels kernels = PriceKernels.getInstance();
+
+	//the vectorized kernels (package-private, so the constructor is opened), null when src/vector has not been built
+	//or the module is not available
+	private static PriceKernels vectorized() {
+		try {
+			Constructor<?> constructor = Class.forName("webapi.VectorPriceKernels").getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return (PriceKernels) constructor.newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	@Test
+	void vectorAgreementTest() {
+		PriceKernels vector = vectorized();
+		Assumptions.assumeTrue(vector != null, "src/vector has not been built");
+		Random random = new Random(40);
+		for(int n=0; n<140; n++) {
+			double[] values = new double[n];
+			double[] other = new double[n];
+			long[] fixed = new long[n];
+			for(int i=0; i<n; i++) {
+				//few distinct values, so that the first of equal extremes has to be chosen
+				values[i] = 3 + random.nextInt(5) * 0.25;
+				other[i] = random.nextGaussian();
+				fixed[i] = random.nextInt(2000000);
+			}
+			for(int from=0; from<=Math.min(n, 5); from++) {
+				assertEquals(scalar.indexOfMin(values, from, n), vector.indexOfMin(values, from, n));
+				assertEquals(scalar.indexOfMax(values, from, n), vector.indexOfMax(values, from, n));
+				assertEquals(scalar.sum(fixed, from, n), vector.sum(fixed, from, n));
+				assertEquals(scalar.sum(values, from, n), vector.sum(values, from, n), 1e-9);
+				assertEquals(scalar.dot(values, from, other, 0, n - from), vector.dot(values, from, other, 0, n - from), 1e-9);
+				double[] expected = new double[n];
+				double[] actual = new double[n];
+				scalar.scale(values, from, n - from, 1.5, expected, 0);
+				vector.scale(values, from, n - from, 1.5, actual, 0);
+				assertArrayEquals(expected, actual);
+			}
+		}
+		assertEquals(-1, vector.indexOfMin(new double[0], 0, 0));
+		assertEquals(-1, vector.indexOfMax(new double[4], 2, 2));
+	}
+
+	@Test
+	void instanceTest() {
+		//the vectorized kernels are used whenever they can be loaded
+		PriceKernels vector = vectorized();
+		assertEquals(vector == null ? scalar.getName() : vector.getName(), kernels.getName());
+	}
+
+	@Test
+	void findMaxAmpTest() {
+		JsonArrayBuilder tables = Json.createArrayBuilder();
+		double[][] mids = {{4.0, 1.0, 2.0}, {3.5, 3.5, 3.0}, {4.5, 5.0, 1.0}};
+		for(int day=0; day<mids.length; day++) {
+			JsonArrayBuilder rates = Json.createArrayBuilder()
+					.add(Json.createObjectBuilder().add("code", "USD").add("mid", mids[day][0]))
+					.add(Json.createObjectBuilder().add("code", "EUR").add("mid", mids[day][1]))
+					.add(Json.createObjectBuilder().add("code", "CHF").add("mid", mids[day][2]));
+			tables.add(Json.createObjectBuilder().add("effectiveDate", "2018-01-0" + (day + 1)).add("rates", rates));
+		}
+		Map<String, Object> result = JsonNumericOperations.getInstance().findMaxAmpOfArr(tables.build(), "rates", "code", "mid", "effectiveDate");
+		assertEquals("EUR", result.get("object"));
+		assertEquals(4.0, (double) result.get("amplitude"), 1e-9);
+		assertEquals("2018-01-01", result.get("whenMin"));
+		assertEquals("2018-01-03", result.get("whenMax"));
+
+		double[] values = {2.0, 1.0, 3.0, 1.0, 3.0};
+		JsonArrayBuilder array = Json.createArrayBuilder();
+		for(int i=0; i<values.length; i++)
+			array.add(Json.createObjectBuilder().add("mid", values[i]).add("id", i));
+		JsonArray built = array.build();
+		assertEquals(1, JsonNumericOperations.getInstance().getMinOfArrJsonObj(built, "mid").getInt("id"));
+		assertEquals(2, JsonNumericOperations.getInstance().getMaxOfArrJsonObj(built, "mid").getInt("id"));
+		assertNull(JsonNumericOperations.getInstance().getMinOfArrJsonObj(JsonValue.EMPTY_JSON_ARRAY, "mid"));
+	}
+
+}
@@ -0,0 +1,200 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.PublicationScheduler;
+import webapi.PublicationScheduler.Publication;
+import webapi.SeriesStore;
+import webapi.TokenBucketRateLimiter;
+
+class PublicationSchedulerTest {
+
+	/**
+	 * A clock which stands still until it is moved
+	 */
+	private static class TestClock extends Clock {
+
+		private volatile Instant now;
+
+		private TestClock(LocalDateTime now) {
+			this.now = now.atZone(PublicationScheduler.WARSAW).toInstant();
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return PublicationScheduler.WARSAW;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		for(int i=0; i<250 && !condition.getAsBoolean(); i++)
+			Thread.sleep(20);
+		assertTrue(condition.getAsBoolean());
+	}
+
+	private static AbstractDataSource createDataSource(LocalNBPStub stub) {
+		AbstractDataSource dataSource = new AbstractDataSource() {};
+		dataSource.setUrlStart(stub.getUrlStart());
+		dataSource.setUrlEnd("/?format=json");
+		dataSource.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+		return dataSource;
+	}
+
+	@Test
+	void retryUntilPublishedTest() throws Exception {
+		AtomicReference<LocalDate> publishedUntil = new AtomicReference<>(LocalDate.of(2018, 6, 12));
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> {
+				if(!path.startsWith("exchangerates/tables/A/")) return null;
+				return LocalNBPStub.workingDays(path, day -> day.isAfter(publishedUntil.get()) ? null
+						: "{\"effectiveDate\":\"" + day + "\",\"rates\":[{\"code\":\"USD\",\"mid\":" + (3 + day.getDayOfMonth() / 100.0) + "}]}");
+			});
+			SeriesStore store = SeriesStore.getInstance();
+			store.clear();
+			//a Wednesday, just before the window of table A opens
+			TestClock clock = new TestClock(LocalDateTime.of(2018, 6, 13, 11, 44, 59, 800_000_000));
+			PublicationScheduler scheduler = new PublicationScheduler(createDataSource(stub), store, clock, executor);
+			scheduler.setHistoryStart(Publication.TABLE_A, LocalDate.of(2018, 6, 1));
+			scheduler.setBackoff(Duration.ofMillis(50), Duration.ofMillis(100));
+			scheduler.start(Publication.TABLE_A);
+			assertTrue(scheduler.getDelay(Publication.TABLE_A, TimeUnit.MILLISECONDS) <= 200);
+
+			//the history up to yesterday is loaded, today's table is retried until it appears
+			waitFor(() -> store.getLastDay("A/") == LocalDate.of(2018, 6, 12).toEpochDay());
+			waitFor(() -> stub.getHits("exchangerates/tables/A/2018-06-13/2018-06-13") >= 3);
+			assertEquals(1, stub.getHits("exchangerates/tables/A/2018-06-01/2018-06-13"));
+			publishedUntil.set(LocalDate.of(2018, 6, 13));
+			waitFor(() -> store.getLastDay("A/") == LocalDate.of(2018, 6, 13).toEpochDay());
+			assertEquals(9, store.getSeries(SeriesStore.key("A", "USD", "mid")).size());
+
+			//the next refresh waits for tomorrow's window
+			waitFor(() -> scheduler.getDelay(Publication.TABLE_A, TimeUnit.HOURS) >= 23);
+			int refreshes = scheduler.getRefreshes();
+			Thread.sleep(200);
+			assertEquals(refreshes, scheduler.getRefreshes());
+			scheduler.close();
+			store.clear();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void joinRefreshTest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> {
+				if(!path.startsWith("cenyzlota/")) return null;
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "[{\"data\":\"2018-06-13\",\"cena\":150.0}]";
+			});
+			SeriesStore store = SeriesStore.getInstance();
+			store.clear();
+			TestClock clock = new TestClock(LocalDateTime.of(2018, 6, 13, 12, 0));
+			PublicationScheduler scheduler = new PublicationScheduler(createDataSource(stub), store, clock, executor);
+			scheduler.setHistoryStart(Publication.GOLD, LocalDate.of(2018, 6, 13));
+			//the catch-up of the server mode and a scheduled refresh at the same time
+			CompletableFuture<Boolean> first = scheduler.refresh(Publication.GOLD);
+			CompletableFuture<Boolean> second = scheduler.refresh(Publication.GOLD);
+			assertSame(first, second);
+			release.countDown();
+			assertTrue(first.get(5, TimeUnit.SECONDS));
+			assertEquals(1, stub.getHits());
+			assertEquals(1, scheduler.getRefreshes());
+			assertTrue(scheduler.refresh(Publication.GOLD).get(5, TimeUnit.SECONDS));
+			assertEquals(2, scheduler.getRefreshes());
+			scheduler.close();
+			store.clear();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void failureTest() throws Exception {
+		AtomicReference<String> answer = new AtomicReference<>("<html>maintenance</html>");
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("cenyzlota/") ? answer.get() : null);
+			SeriesStore store = SeriesStore.getInstance();
+			store.clear();
+			TestClock clock = new TestClock(LocalDateTime.of(2018, 6, 13, 12, 0));
+			PublicationScheduler scheduler = new PublicationScheduler(createDataSource(stub), store, clock, executor);
+			scheduler.setHistoryStart(Publication.GOLD, LocalDate.of(2018, 6, 13));
+
+			//the failure is kept by the scheduler until the next refresh of the publication succeeds
+			assertThrows(Exception.class, () -> scheduler.refresh(Publication.GOLD).get(5, TimeUnit.SECONDS));
+			assertEquals(1, scheduler.getFailures());
+			assertNotNull(scheduler.getLastError(Publication.GOLD));
+			assertNull(scheduler.getLastError(Publication.TABLE_A));
+			answer.set("[{\"data\":\"2018-06-13\",\"cena\":150.0}]");
+			assertTrue(scheduler.refresh(Publication.GOLD).get(5, TimeUnit.SECONDS));
+			assertEquals(1, scheduler.getFailures());
+			assertNull(scheduler.getLastError(Publication.GOLD));
+			scheduler.close();
+			store.clear();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void businessDaysTest() throws Exception {
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			//a Saturday morning: table C is expected on Monday at 7:45
+			TestClock clock = new TestClock(LocalDateTime.of(2018, 6, 16, 10, 0));
+			PublicationScheduler scheduler = new PublicationScheduler(createDataSource(stub), SeriesStore.getInstance(), clock, executor);
+			scheduler.start(Publication.TABLE_C);
+			long expected = Duration.between(LocalTime.of(10, 0), LocalTime.of(7, 45)).plusDays(2).toMinutes();
+			assertTrue(Math.abs(expected - scheduler.getDelay(Publication.TABLE_C, TimeUnit.MINUTES)) <= 1);
+
+			//a Friday evening, after the deadline: gold is expected on Monday
+			clock.now = LocalDateTime.of(2018, 6, 15, 19, 0).atZone(PublicationScheduler.WARSAW).toInstant();
+			scheduler.start(Publication.GOLD);
+			expected = Duration.between(LocalTime.of(19, 0), LocalTime.of(11, 45)).plusDays(3).toMinutes();
+			assertTrue(Math.abs(expected - scheduler.getDelay(Publication.GOLD, TimeUnit.MINUTES)) <= 1);
+			scheduler.close();
+			assertEquals(0, stub.getHits());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.QuantileSketch;
+import webapi.SeriesStore;
+import webapi.SketchSeries;
+import webapi.TokenBucketRateLimiter;
+
+class QuantileSketchTest {
+
+	private static final double[] FRACTIONS = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+
+	private static int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	//the fraction of the values not greater than the estimate, compared with the requested fraction
+	private static double rankError(double[] sorted, double estimate, double fraction) {
+		int rank = 0;
+		while(rank < sorted.length && sorted[rank] <= estimate)
+			rank++;
+		return Math.abs((double) rank / sorted.length - fraction);
+	}
+
+	@Test
+	void accuracyTest() {
+		Random random = new Random(45);
+		QuantileSketch sketch = new QuantileSketch();
+		double values[] = new double[200000];
+		for(int i=0; i<values.length; i++) {
+			values[i] = random.nextGaussian();
+			sketch.update(values[i]);
+		}
+		Arrays.sort(values);
+		assertEquals(values.length, sketch.getCount());
+		assertTrue(sketch.getRetained() < 1000, "retained " + sketch.getRetained());
+		for(double fraction : FRACTIONS)
+			assertTrue(rankError(values, sketch.getQuantile(fraction), fraction) < 0.02, "p" + fraction);
+		assertEquals(values[0], sketch.getQuantile(0));
+		assertEquals(values[values.length - 1], sketch.getQuantile(1));
+		assertEquals(values[99999], QuantileSketch.quantileOf(values, 0.5));
+		assertTrue(Double.isNaN(new QuantileSketch().getQuantile(0.5)));
+	}
+
+	@Test
+	void mergeTest() {
+		Random random = new Random(46);
+		QuantileSketch merged = new QuantileSketch();
+		double values[] = new double[100 * 2000];
+		int n = 0;
+		for(int part=0; part<100; part++) {
+			QuantileSketch single = new QuantileSketch();
+			//every part has a distribution of its own
+			for(int i=0; i<2000; i++) {
+				values[n] = part + random.nextDouble() * 50;
+				single.update(values[n++]);
+			}
+			merged.merge(single);
+		}
+		Arrays.sort(values);
+		assertEquals(values.length, merged.getCount());
+		for(double fraction : FRACTIONS)
+			assertTrue(rankError(values, merged.getQuantile(fraction), fraction) < 0.02, "p" + fraction);
+	}
+
+	@Test
+	void treeTest() {
+		Random random = new Random(47);
+		SketchSeries series = new SketchSeries();
+		double values[] = new double[100000];
+		for(int i=0; i<values.length; i++) {
+			//the distribution drifts, so that every period has a distribution of its own
+			values[i] = i / 1000.0 + random.nextGaussian();
+			series.append(i, values[i]);
+		}
+		assertEquals(values.length, series.size());
+		//the sketches compact, the tree retains a fraction of the values
+		assertTrue(series.getRetained() < values.length / 2, "retained " + series.getRetained());
+		for(int[] period : new int[][] {{0, 99999}, {1500, 70123}, {30000, 30999}, {99000, 200000}}) {
+			double sorted[] = series.sorted(period[0], period[1]);
+			QuantileSketch sketch = series.sketch(period[0], period[1]);
+			assertEquals(sorted.length, sketch.getCount());
+			for(double fraction : FRACTIONS)
+				assertTrue(rankError(sorted, sketch.getQuantile(fraction), fraction) < 0.02, "p" + fraction + " of " + period[0]);
+		}
+		assertEquals(0, series.sketch(200000, 300000).getCount());
+	}
+
+	@Test
+	void storeTest() {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try {
+			String usd = SeriesStore.key("A", "USD", "mid");
+			store.append(usd, day("2018-01-30"), 4.0);
+			store.append(usd, day("2018-01-31"), 4.2);
+			store.append(usd, day("2018-02-01"), 3.99);
+			SketchSeries changes = store.getSketches("A/USD/change");
+			assertEquals(2, changes.size());
+			assertArrayEquals(new double[] {-5, 5}, changes.sorted(day("2018-01-01"), day("2018-12-31")), 1e-9);
+			assertArrayEquals(new double[] {-5}, changes.sorted(day("2018-02-01"), day("2018-02-28")), 1e-9);
+
+			//the bids of a chunk may arrive before its asks, the days missing from one of them are skipped
+			String bid = SeriesStore.key("C", "USD", "bid"), ask = SeriesStore.key("C", "USD", "ask");
+			store.append(bid, day("2018-01-02"), 3.4);
+			store.append(bid, day("2018-01-03"), 3.5);
+			store.append(bid, day("2018-01-04"), 3.6);
+			store.append(ask, day("2018-01-02"), 3.5);
+			store.append(ask, day("2018-01-04"), 3.8);
+			store.append(ask, day("2018-01-05"), 3.9);
+			store.append(bid, day("2018-01-05"), 3.6);
+			assertArrayEquals(new double[] {0.1, 0.2, 0.3}, store.getSketches("C/USD/spread").sorted(day("2018-01-01"), day("2018-01-31")), 1e-9);
+			assertEquals(3, store.getSketches("C/USD/spread").sketch(day("2018-01-01"), day("2018-01-31")).getCount());
+			assertNull(store.getSketches("C/USD/mid"));
+		} finally {
+			store.clear();
+		}
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("exchangerates/rates/C/USD/") ?
+					"{\"table\":\"C\",\"currency\":\"dolar amerykanski\",\"code\":\"USD\",\"rates\":[{\"no\":\"1/C/NBP/2018\",\"effectiveDate\":\""
+					+ LocalNBPStub.period(path)[0] + "\",\"bid\":3.4,\"ask\":3.5},{\"no\":\"2/C/NBP/2018\",\"effectiveDate\":\""
+					+ LocalNBPStub.period(path)[1] + "\",\"bid\":3.5,\"ask\":3.8}]}" : null);
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			//not resident: the period is fetched, every chunk has the spreads 0.1 and 0.3 (the last one has a single day)
+			String output = LocalNBPStub.run(performer, "quantiles", new String[] {"USD", "spread", "2018-01-01", "2018-01-31", "exact"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("The percentiles of the spreads of USD from 2018-01-01 to 2018-01-31 (7 days):"), output);
+			assertTrue(output.contains("p5: 0.1 (sketch 0.1)"), output);
+			assertTrue(output.contains("p95: 0.3 (sketch 0.3)"), output);
+
+			//resident: the sketches of the store are merged
+			String usd = SeriesStore.key("A", "USD", "mid");
+			double price = 4;
+			for(int day=day("2010-01-01"); day<=day("2018-12-31"); day++) {
+				price *= (day % 2 == 0) ? 1.01 : 1 / 1.01;
+				store.append(usd, day, price);
+			}
+			output = LocalNBPStub.run(performer, "quantiles", new String[] {"USD", "change", "2011-01-01", "2017-12-31"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("(2557 days)"), output);
+			assertTrue(output.contains("p5: -0.9901"), output);
+			assertTrue(output.contains("p95: 1.0"), output);
+			assertTrue(LocalNBPStub.run(performer, "quantiles", new String[] {"gold", "spread", "2018-01-01"}).contains("Error! The format of passed arguments is invalid"));
+		} finally {
+			store.clear();
+		}
+	}
+
+}
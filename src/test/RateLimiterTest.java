@@ -0,0 +1,85 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonArray;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.TokenBucketRateLimiter;
+
+class RateLimiterTest {
+
+	@Test
+	void tokenBucketTest() throws InterruptedException {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(50, 5);
+		long start = System.nanoTime();
+		for(int i=0; i<5; i++)
+			limiter.acquire();
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+		for(int i=0; i<10; i++)
+			limiter.acquire();
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180));
+		assertTrue(limiter.tryAcquire() > 0);
+		limiter.penalize(1, TimeUnit.SECONDS);
+		assertTrue(limiter.tryAcquire() > TimeUnit.MILLISECONDS.toNanos(900));
+	}
+
+	@Test
+	void aimdTest() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 16);
+		limiter.acquire();
+		limiter.release(1000000, true);
+		assertEquals(4, limiter.getLimit());
+		for(int i=0; i<100; i++) {
+			limiter.acquire();
+			limiter.release(1000000, false);
+		}
+		assertTrue(limiter.getLimit() > 4);
+		assertTrue(limiter.getLimit() <= 16);
+		limiter.acquire();
+		limiter.release(50000000, false);
+		limiter.acquire();
+		limiter.release(50000000, false);
+		assertTrue(limiter.getLimit() < 8);
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	void throttledStubBenchmark() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> "[{\"data\":\"2018-01-08\",\"cena\":151.47}]");
+			stub.setLatencyMillis(5);
+			stub.setMaxConcurrent(3);
+			AbstractDataSource dataSource = new AbstractDataSource() {};
+			dataSource.setUrlStart(stub.getUrlStart());
+			dataSource.setUrlEnd("");
+			dataSource.setLimiters(new TokenBucketRateLimiter(200, 20), new AdaptiveConcurrencyLimiter(8, 1, 16));
+			dataSource.setMaxRetries(20);
+
+			ExecutorService executor = Executors.newFixedThreadPool(16);
+			List<Future<JsonArray>> results = new ArrayList<>();
+			for(int i=0; i<160; i++) {
+				String innerURL = "cenyzlota/" + i;
+				results.add(executor.submit(() -> dataSource.getJsonArrFromURL(innerURL)));
+			}
+			for(Future<JsonArray> result : results)
+				assertEquals(1, result.get().size());
+			executor.shutdown();
+
+			assertEquals(160 + dataSource.getMetrics().getRetries(), dataSource.getMetrics().getRequests());
+			assertEquals(stub.getThrottled(), dataSource.getMetrics().getThrottled());
+			assertTrue(stub.getThrottled() < 160);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.RollingWindow;
+import webapi.TokenBucketRateLimiter;
+
+class RollingWindowTest {
+
+	@Test
+	void naiveAgreementTest() {
+		Random random = new Random(44);
+		double prices[] = new double[5000];
+		prices[0] = 4;
+		for(int i=1; i<prices.length; i++)
+			//rounded to few distinct values, so that equal extremes occur
+			prices[i] = Math.max(1, Math.round((prices[i - 1] + random.nextGaussian() * 0.01) * 100) / 100.0);
+		for(int size : new int[] {2, 3, 20, 250}) {
+			RollingWindow window = new RollingWindow(size);
+			for(int i=0; i<prices.length; i++) {
+				window.add("day" + i, prices[i]);
+				int from = Math.max(0, i - size + 1);
+				double sum = 0;
+				int min = from, max = from;
+				for(int j=from; j<=i; j++) {
+					sum += prices[j];
+					if(prices[j] < prices[min]) min = j;
+					if(prices[j] > prices[max]) max = j;
+				}
+				assertEquals(i >= size - 1, window.isFull());
+				assertEquals(sum / (i - from + 1), window.getMean(), 1e-9);
+				assertEquals("day" + min, window.getWhenMin());
+				assertEquals("day" + max, window.getWhenMax());
+				if(i - from >= 2) {
+					double mean = 0, squares = 0;
+					for(int j=from+1; j<=i; j++)
+						mean += Math.log(prices[j] / prices[j - 1]);
+					mean /= i - from;
+					for(int j=from+1; j<=i; j++)
+						squares += Math.pow(Math.log(prices[j] / prices[j - 1]) - mean, 2);
+					assertEquals(Math.sqrt(squares / (i - from - 1)), window.getVolatility(), 1e-9);
+				}
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> new RollingWindow(1));
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			//the price of gold grows by one every day
+			stub.setFallback(path -> {
+				if(!path.startsWith("cenyzlota/"))
+					return null;
+				StringBuilder prices = new StringBuilder("[");
+				for(LocalDate day = LocalNBPStub.period(path)[0]; !day.isAfter(LocalNBPStub.period(path)[1]); day = day.plusDays(1))
+					prices.append(prices.length() > 1 ? "," : "").append("{\"data\":\"" + day + "\",\"cena\":" + (100 + day.toEpochDay() % 1000) + "}");
+				return prices.append("]").toString();
+			});
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery(30);
+			String output = LocalNBPStub.run(new NBPOrderPerformer(null, mirror), "rolling-stats", new String[] {"gold", "5,20", "2018-03-01", "2018-03-31"});
+			String lines[] = output.split(System.lineSeparator());
+			//a header, a title and one line per day of the period
+			assertEquals(2 + 31, lines.length, output);
+			long day = LocalDate.parse("2018-03-01").toEpochDay();
+			double price = 100 + day % 1000;
+			assertTrue(lines[2].startsWith("2018-03-01 " + price + " | 5d mean " + (price - 2) + " min " + (price - 4) + " max " + price), lines[2]);
+			assertTrue(lines[2].contains("| 20d mean " + (price - 9.5) + " min " + (price - 19) + " max " + price), lines[2]);
+			assertTrue(lines[32].startsWith("2018-03-31 "), lines[32]);
+		}
+	}
+
+	@Test
+	void longWindowTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			//prices on the working days only, with about 13 holidays a year
+			stub.setFallback(path -> path.startsWith("cenyzlota/") ? LocalNBPStub.workingDays(path, day -> day.toEpochDay() % 20 == 0 ? null
+					: "{\"data\":\"" + day + "\",\"cena\":" + (100 + day.toEpochDay() % 1000) + "}") : null);
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery(367);
+			String output = LocalNBPStub.run(new NBPOrderPerformer(null, mirror), "rolling-stats", new String[] {"gold", "500", "2018-03-01", "2018-03-31"});
+			//the window is full from the first day of the period
+			assertTrue(output.contains("2018-03-01 "), output);
+			assertFalse(output.contains("n/a"), output);
+		}
+	}
+
+}
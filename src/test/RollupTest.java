@@ -0,0 +1,165 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.Granularity;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.OhlcBar;
+import webapi.RollupSeries;
+import webapi.SeriesStore;
+import webapi.TokenBucketRateLimiter;
+
+class RollupTest {
+
+	private static int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	@Test
+	void bucketTest() {
+		assertEquals(day("2018-01-01"), Granularity.WEEK.bucketOf(day("2018-01-07")));
+		assertEquals(day("2018-01-08"), Granularity.WEEK.bucketOf(day("2018-01-08")));
+		assertEquals(day("2018-02-01"), Granularity.MONTH.bucketOf(day("2018-02-28")));
+		assertEquals("2018-02", Granularity.MONTH.label(day("2018-02-01")));
+		assertEquals("2018", Granularity.YEAR.label(Granularity.YEAR.bucketOf(day("2018-07-14"))));
+		assertNull(Granularity.parse("day"));
+	}
+
+	@Test
+	void mergeTest() {
+		Random random = new Random(43);
+		for(Granularity granularity : Granularity.values()) {
+			RollupSeries whole = new RollupSeries(granularity);
+			RollupSeries joined = new RollupSeries(granularity);
+			RollupSeries chunk = new RollupSeries(granularity);
+			for(int day=day("2015-01-01"); day<day("2018-01-01"); day++) {
+				double value = 3 + random.nextDouble();
+				whole.append(day, value);
+				chunk.append(day, value);
+				//chunks of 100 days split the buckets
+				if(day % 100 == 0) {
+					joined.merge(chunk);
+					chunk = new RollupSeries(granularity);
+				}
+			}
+			joined.merge(chunk);
+			List<OhlcBar> expected = whole.getBars(Integer.MIN_VALUE, Integer.MAX_VALUE);
+			List<OhlcBar> actual = joined.getBars(Integer.MIN_VALUE, Integer.MAX_VALUE);
+			assertEquals(expected.size(), actual.size());
+			for(int i=0; i<expected.size(); i++) {
+				assertEquals(expected.get(i).getBucket(), actual.get(i).getBucket());
+				assertEquals(expected.get(i).getOpen(), actual.get(i).getOpen());
+				assertEquals(expected.get(i).getHigh(), actual.get(i).getHigh());
+				assertEquals(expected.get(i).getLow(), actual.get(i).getLow());
+				assertEquals(expected.get(i).getClose(), actual.get(i).getClose());
+				assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+				assertEquals(expected.get(i).getMean(), actual.get(i).getMean(), 1e-4);
+			}
+		}
+		assertEquals(0, new RollupSeries(Granularity.YEAR).merge(new RollupSeries(Granularity.YEAR)).size());
+	}
+
+	@Test
+	void storeTest() {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try {
+			String usd = SeriesStore.key("A", "USD", "mid");
+			store.append(usd, day("2018-01-02"), 3.5);
+			store.append(usd, day("2018-01-31"), 3.4);
+			store.append(usd, day("2018-02-01"), 3.3);
+			store.append(usd, day("2018-02-02"), 3.6);
+			store.append(SeriesStore.key("C", "USD", "bid"), day("2018-01-02"), 3.4);
+			assertNull(store.getRollup(SeriesStore.key("C", "USD", "bid"), Granularity.MONTH));
+			//the rollups are maintained as the points arrive
+			List<OhlcBar> months = store.getRollup(usd, Granularity.MONTH).getBars(day("2018-01-01"), day("2018-12-31"));
+			assertEquals(2, months.size());
+			assertEquals(3.5, months.get(0).getOpen());
+			assertEquals(3.4, months.get(0).getClose());
+			assertEquals(3.45, months.get(0).getMean());
+			assertEquals(3.3, months.get(1).getLow());
+			assertEquals(3.6, months.get(1).getHigh());
+			store.append(usd, day("2018-02-05"), 3.7);
+			assertEquals(3.7, store.getRollup(usd, Granularity.MONTH).getBars(day("2018-02-01"), day("2018-02-28")).get(0).getClose());
+			//the range comes from the weekly bars only when the period consists of whole weeks
+			assertArrayEquals(new double[] {3.3, 3.6}, store.getRollup(usd, Granularity.WEEK).getRange(day("2018-01-29"), day("2018-02-04")));
+			assertNull(store.getRollup(usd, Granularity.WEEK).getRange(day("2018-02-01"), day("2018-02-04")));
+		} finally {
+			store.clear();
+		}
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("cenyzlota/") ?
+					"[{\"data\":\"" + LocalNBPStub.period(path)[0] + "\",\"cena\":140.0},{\"data\":\"" + LocalNBPStub.period(path)[1] + "\",\"cena\":150.0}]" : null);
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			//not resident: the period is fetched and rolled up chunk by chunk
+			String output = LocalNBPStub.run(performer, "rollup", new String[] {"gold", "month", "2018-01-01", "2018-01-31"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("The monthly prices of gold from 2018-01-01 to 2018-01-31:"), output);
+			assertTrue(output.contains("2018-01: open 140.0, high 150.0, low 140.0, close 150.0, mean 145.0 (8 days)"), output);
+
+			//resident: the materialized rollup is read
+			for(int day=day("2017-12-01"); day<=day("2018-02-28"); day++)
+				store.append(SeriesStore.GOLD, day, day < day("2018-01-15") ? 100 : 120);
+			output = LocalNBPStub.run(performer, "rollup", new String[] {"gold", "week", "2018-01-08", "2018-01-21"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("2018-01-08: open 100.0, high 100.0, low 100.0, close 100.0, mean 100.0 (7 days)"), output);
+			assertTrue(output.contains("2018-01-15: open 120.0, high 120.0, low 120.0, close 120.0, mean 120.0 (7 days)"), output);
+			output = LocalNBPStub.run(performer, "rollup", new String[] {"gold", "year", "2018-01-08"});
+			assertTrue(output.contains("2018: open 100.0, high 120.0, low 100.0, close 120.0, mean 117.3077 (52 days)"), output);
+			assertEquals(4, stub.getHits());
+		} finally {
+			store.clear();
+		}
+	}
+
+	@Test
+	void residentMatchesFetchedTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> LocalNBPStub.workingDays(path,
+					date -> "{\"data\":\"" + date + "\",\"cena\":" + (100 + date.toEpochDay() % 17) + ".0}"));
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery(30);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+			//the period starts and ends in the middle of the edge buckets
+			String[][] orders = {{"gold", "week", "2018-01-10", "2018-02-14"}, {"gold", "month", "2018-01-17", "2018-03-09"},
+					{"gold", "year", "2018-03-05", "2018-03-21"}};
+			String[] fetched = new String[orders.length];
+			for(int i=0; i<orders.length; i++) {
+				fetched[i] = LocalNBPStub.run(performer, "rollup", orders[i]);
+				assertTrue(fetched[i].contains(": open "), fetched[i]);
+			}
+
+			for(int day=day("2017-12-01"); day<=day("2018-04-30"); day++)
+				if(LocalDate.ofEpochDay(day).getDayOfWeek().getValue() <= 5)
+					store.append(SeriesStore.GOLD, day, 100 + day % 17);
+			int hits = stub.getHits();
+			for(int i=0; i<orders.length; i++)
+				assertEquals(fetched[i], LocalNBPStub.run(performer, "rollup", orders[i]));
+			assertEquals(hits, stub.getHits());
+		} finally {
+			store.clear();
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import webapi.CompressedSeries;
+import webapi.OffHeapSeries;
+import webapi.SeriesSnapshot;
+import webapi.SeriesStore;
+
+class SeriesSnapshotTest {
+
+	private static final int CURRENCIES = 35;
+	private static final int POINTS = 6000;
+	private static final int FIRST_DAY = (int) LocalDate.of(2002, 1, 2).toEpochDay();
+
+	@TempDir
+	Path directory;
+
+	private static double price(int currency, int point) {
+		return Math.round((1 + currency + Math.sin(point / 50.0 + currency) / 2) * 10000) / 10000.0;
+	}
+
+	private SeriesStore createStore() {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		for(int currency=0; currency<CURRENCIES; currency++) {
+			CompressedSeries series = store.getOrCreateSeries(SeriesStore.key("A", "C" + currency, "mid"));
+			for(int point=0; point<POINTS; point++)
+				series.append(FIRST_DAY + point, price(currency, point));
+		}
+		return store;
+	}
+
+	@Test
+	void warmRestartTest() throws Exception {
+		Path file = directory.resolve("series.snapshot");
+		SeriesStore store = createStore();
+		new SeriesSnapshot(file, store).save();
+		store.clear();
+
+		assertEquals(CURRENCIES, new SeriesSnapshot(file, store).restore(Duration.ofHours(1)));
+		OffHeapSeries usd = store.getOffHeapSeries(SeriesStore.key("A", "C7", "mid"));
+		double sum = usd.sum(0, usd.size());
+
+		double expected = 0;
+		for(int point=0; point<POINTS; point++)
+			expected += price(7, point);
+		assertEquals(expected, sum, 1e-6);
+		assertEquals(CURRENCIES * POINTS, store.getPointCount());
+		assertEquals(0, store.getArena().getAllocatedBytes());
+
+		//a restored series grows again as new points arrive
+		assertTrue(store.getSeries(SeriesStore.key("A", "C7", "mid")).append(FIRST_DAY + POINTS, 100));
+		OffHeapSeries grown = store.getOffHeapSeries(SeriesStore.key("A", "C7", "mid"));
+		assertEquals(POINTS + 1, grown.size());
+		assertEquals(expected + 100, grown.sum(0, grown.size()), 1e-6);
+		store.clear();
+	}
+
+	@Test
+	void invalidSnapshotTest() throws Exception {
+		Path file = directory.resolve("series.snapshot");
+		SeriesStore store = createStore();
+		SeriesSnapshot snapshot = new SeriesSnapshot(file, store);
+		assertEquals(-1, snapshot.restore(Duration.ofHours(1)));
+		snapshot.save();
+		byte[] valid = Files.readAllBytes(file);
+		store.clear();
+
+		//a flipped bit in the middle of a price column
+		byte[] corrupt = valid.clone();
+		corrupt[corrupt.length / 2] ^= 1;
+		Files.write(file, corrupt);
+		assertEquals(-1, snapshot.restore(Duration.ofHours(1)));
+		//truncated
+		Files.write(file, Arrays.copyOf(valid, valid.length - 100));
+		assertEquals(-1, snapshot.restore(Duration.ofHours(1)));
+		//another version of the format
+		byte[] version = valid.clone();
+		version[4] ^= 2;
+		Files.write(file, version);
+		assertEquals(-1, snapshot.restore(Duration.ofHours(1)));
+		//stale
+		Files.write(file, valid);
+		Thread.sleep(20);
+		assertEquals(-1, snapshot.restore(Duration.ofMillis(10)));
+		assertTrue(store.getKeys().isEmpty());
+
+		assertEquals(CURRENCIES, snapshot.restore(Duration.ofHours(1)));
+		store.clear();
+	}
+
+	@Test
+	void periodicSaveTest() throws Exception {
+		Path file = directory.resolve("series.snapshot");
+		SeriesStore store = createStore();
+		try (SeriesSnapshot snapshot = new SeriesSnapshot(file, store)) {
+			snapshot.start(50, TimeUnit.MILLISECONDS);
+			for(int i=0; i<100 && !Files.exists(file); i++)
+				Thread.sleep(20);
+		}
+		assertTrue(Files.exists(file));
+		store.clear();
+		assertEquals(CURRENCIES, new SeriesSnapshot(file, store).restore(Duration.ofHours(1)));
+		store.clear();
+	}
+
+}
@@ -0,0 +1,127 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.TokenBucketRateLimiter;
+
+class SharedScanTest {
+
+	private static final String[] CODES = {"USD", "EUR", "CHF", "GBP", "JPY", "CZK", "NOK", "SEK", "DKK", "HUF"};
+
+	private static double price(int currency, String date) {
+		return 1 + ((date.hashCode() * 31 + currency * 7919) & 0xffff) / 10000.0;
+	}
+
+	private static String table(String date) {
+		StringBuilder rates = new StringBuilder();
+		for(int i=0; i<CODES.length; i++)
+			rates.append(i == 0 ? "" : ",").append("{\"code\":\"" + CODES[i] + "\",\"mid\":" + price(i, date) + "}");
+		return "[{\"table\":\"A\",\"effectiveDate\":\"" + date + "\",\"rates\":[" + rates + "]}]";
+	}
+
+	private static NBPDataSource createMirror(LocalNBPStub stub) {
+		NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+		mirror.setLimiters(new TokenBucketRateLimiter(10000, 1000), new AdaptiveConcurrencyLimiter(8, 1, 16));
+		return mirror;
+	}
+
+	@Test
+	void lowestHighestTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			//one table per chunk, dated with the start of the chunk
+			ConcurrentSkipListSet<String> dates = new ConcurrentSkipListSet<>();
+			stub.setFallback(path -> {
+				if(!path.startsWith("exchangerates/tables/A/"))
+					return null;
+				String date = LocalNBPStub.period(path)[0].toString();
+				dates.add(date);
+				return table(date);
+			});
+			NBPDataSource mirror = createMirror(stub);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+			String output = LocalNBPStub.run(performer, "lowest-highest", CODES);
+
+			//all the currencies have been answered from the same pass over the tables
+			int tableChunks = mirror.splitPeriod("2002-01-02", LocalDate.now().toString(), mirror.getMaxPeriodPerQuery2()).size();
+			assertEquals(tableChunks, stub.getHits());
+			assertEquals(tableChunks, dates.size());
+			for(int i=0; i<CODES.length; i++) {
+				TreeMap<Double, String> byPrice = new TreeMap<>();
+				for(String date : dates)
+					byPrice.putIfAbsent(price(i, date), date);
+				Map.Entry<Double, String> min = byPrice.firstEntry();
+				Map.Entry<Double, String> max = byPrice.lastEntry();
+				assertTrue(output.contains("Minimum price of " + CODES[i] + " was " + min.getKey() + " on " + min.getValue()), output);
+				assertTrue(output.contains("Maximum price of " + CODES[i] + " was " + max.getKey() + " on " + max.getValue()), output);
+			}
+		}
+	}
+
+	@Test
+	void singleCurrencyTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("exchangerates/rates/A/USD/") ?
+					"{\"table\":\"A\",\"code\":\"USD\",\"rates\":[{\"effectiveDate\":\"" + LocalNBPStub.period(path)[0] + "\",\"mid\":3.5}]}" : null);
+			NBPDataSource mirror = createMirror(stub);
+			String output = LocalNBPStub.run(new NBPOrderPerformer(null, mirror), "lowest-highest", new String[] {"USD", "GBP"});
+			//two currencies are cheaper to fetch as series than as whole tables
+			int seriesChunks = mirror.splitPeriod("2002-01-02", LocalDate.now().toString(), mirror.getMaxPeriodPerQuery()).size();
+			assertEquals(2 * seriesChunks, stub.getHits());
+			assertTrue(output.contains("Minimum price of USD was 3.5 on 2002-01-02"), output);
+			assertTrue(output.contains("The peaks of the price of GBP could not be found: Not Found - Brak danych"), output);
+		}
+	}
+
+	@Test
+	void datePriceTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setLatencyMillis(100);
+			stub.route("exchangerates/tables/A/2018-01-02", table("2018-01-02"));
+			stub.route("exchangerates/tables/A/2018-01-03", table("2018-01-03"));
+			stub.route("cenyzlota/2018-01-02", "[{\"data\":\"2018-01-02\",\"cena\":136.35}]");
+			stub.route("cenyzlota/2018-01-03", "[{\"data\":\"2018-01-03\",\"cena\":137.0}]");
+			String parameters[] = new String[CODES.length + 4];
+			parameters[0] = "xyz";
+			System.arraycopy(CODES, 0, parameters, 1, CODES.length);
+			parameters[CODES.length + 1] = "2018-01-02";
+			parameters[CODES.length + 2] = "2018-01-03";
+			parameters[CODES.length + 3] = "2018-01-06";
+			String output = LocalNBPStub.run(new NBPOrderPerformer(null, createMirror(stub)), "date-price", parameters);
+
+			//one table and one price of gold per date, all of them fetched at once
+			assertEquals(6, stub.getHits());
+			assertTrue(stub.getMaxObservedConcurrent() > 1);
+			for(int i=0; i<CODES.length; i++) {
+				assertTrue(output.contains("The price of " + CODES[i] + " on 2018-01-02 was " + price(i, "2018-01-02")), output);
+				assertTrue(output.contains("The price of " + CODES[i] + " on 2018-01-03 was " + price(i, "2018-01-03")), output);
+			}
+			assertTrue(output.contains("The price of gold on 2018-01-03 was 137.0"), output);
+			assertTrue(output.contains("The price of xyz on 2018-01-02 could not be retrieved: Not Found - Brak danych"), output);
+			assertTrue(output.contains("The price of gold on 2018-01-06 could not be retrieved: Not Found - Brak danych"), output);
+			assertTrue(output.indexOf("on 2018-01-02") < output.indexOf("on 2018-01-03"));
+		}
+	}
+
+	@Test
+	void weekGraphTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("exchangerates/tables/A/") ? table(LocalNBPStub.period(path)[0].toString()) : null);
+			String output = LocalNBPStub.run(new NBPOrderPerformer(null, createMirror(stub)), "week-graph", new String[] {"USD,EUR,XXX", "2018,01,2", "2018,01,3"});
+			assertEquals(1, stub.getHits());
+			assertTrue(output.contains("histogram of the price of USD"), output);
+			assertTrue(output.contains("histogram of the price of EUR"), output);
+			assertTrue(output.contains("The histogram of XXX for the period"), output);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.json.JsonArray;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.TokenBucketRateLimiter;
+import webapi.WebApiException;
+
+class SingleFlightTest {
+
+	private static final int CALLERS = 64;
+
+	private AbstractDataSource createDataSource(LocalNBPStub stub) {
+		AbstractDataSource dataSource = new AbstractDataSource() {};
+		dataSource.setUrlStart(stub.getUrlStart());
+		dataSource.setUrlEnd("");
+		dataSource.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(16, 1, 64));
+		return dataSource;
+	}
+
+	private List<Future<JsonArray>> fanIn(AbstractDataSource dataSource, ExecutorService executor, String innerURL) throws InterruptedException {
+		CountDownLatch ready = new CountDownLatch(CALLERS);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Future<JsonArray>> results = new ArrayList<>();
+		for(int i=0; i<CALLERS; i++) {
+			results.add(executor.submit(() -> {
+				ready.countDown();
+				go.await();
+				return dataSource.getJsonArrFromURL(innerURL);
+			}));
+		}
+		ready.await();
+		go.countDown();
+		return results;
+	}
+
+	@Test
+	void contentionBenchmark() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.route("exchangerates/tables/C/2018-01-08", "[{\"table\":\"C\",\"effectiveDate\":\"2018-01-08\",\"rates\":[{\"code\":\"USD\",\"bid\":3.42,\"ask\":3.49}]}]");
+			stub.setLatencyMillis(200);
+			AbstractDataSource dataSource = createDataSource(stub);
+
+			List<Future<JsonArray>> results = fanIn(dataSource, executor, "exchangerates/tables/C/2018-01-08");
+			JsonArray first = results.get(0).get();
+			for(Future<JsonArray> result : results)
+				assertSame(first, result.get());
+			assertTrue(stub.getHits() <= 2);
+			assertEquals(CALLERS - stub.getHits(), dataSource.getMetrics().getCoalesced());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void sharedErrorTest() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setLatencyMillis(200);
+			AbstractDataSource dataSource = createDataSource(stub);
+
+			for(Future<JsonArray> result : fanIn(dataSource, executor, "cenyzlota/2018-01-06")) {
+				ExecutionException e = assertThrows(ExecutionException.class, result::get);
+				assertTrue(e.getCause() instanceof WebApiException);
+			}
+			assertTrue(stub.getHits() <= 2);
+
+			//the failure must not be remembered
+			stub.route("cenyzlota/2018-01-06", "[{\"data\":\"2018-01-06\",\"cena\":151.47}]");
+			assertEquals(1, dataSource.getJsonArrFromURL("cenyzlota/2018-01-06").size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
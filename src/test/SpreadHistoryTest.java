@@ -0,0 +1,92 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.AsyncUtils;
+import webapi.BidAskHistory;
+import webapi.NBPDataSource;
+import webapi.NBPOrderPerformer;
+import webapi.SeriesStore;
+import webapi.SpreadScan;
+import webapi.TokenBucketRateLimiter;
+
+class SpreadHistoryTest {
+
+	//a table on every working day, the spread of the special drawing rights widens on the 10th
+	private static String tables(String path) {
+		return LocalNBPStub.workingDays(path, date -> "{\"table\":\"C\",\"no\":\"1/C/NBP/2018\",\"tradingDate\":\"" + date
+				+ "\",\"effectiveDate\":\"" + date + "\",\"rates\":["
+				+ "{\"currency\":\"dolar\",\"code\":\"USD\",\"bid\":3.4,\"ask\":3.5},"
+				+ "{\"currency\":\"jen\",\"code\":\"JPY\",\"bid\":0.03,\"ask\":0.031},"
+				+ "{\"currency\":\"SDR\",\"code\":\"XDR\",\"bid\":5.0,\"ask\":" + (date.getDayOfMonth() == 10 ? 5.5 : 5.2) + "}]}");
+	}
+
+	@Test
+	void scanTest() {
+		BidAskHistory history = new BidAskHistory();
+		history.put(10, "USD", "bid", 3.4);
+		history.put(10, "USD", "ask", 3.6);
+		history.put(10, "EUR", "bid", 4.1);
+		history.put(10, "EUR", "ask", 4.2);
+		history.put(11, "EUR", "bid", 3.0);
+		history.put(11, "EUR", "ask", 3.5);
+		//a price of a day preceding the last row, without a row of its own, is ignored
+		history.put(9, "USD", "bid", 1.0);
+		history.put(12, "USD", "ask", 3.7);
+		//the records without a bid or ask field are ignored
+		history.accept(LocalDate.ofEpochDay(12).toString(), "USD", 1.0);
+		history.accept(LocalDate.ofEpochDay(12).toString(), "USD", "mid", 1.0);
+		assertEquals(3, history.getDays());
+		assertTrue(Double.isNaN(history.getBid(0, 2)));
+		SpreadScan scan = history.scan(2);
+		assertEquals("USD", scan.getCheapest(0));
+		assertEquals("EUR", scan.getCheapest(1));
+		assertNull(scan.getCheapest(2));
+		assertEquals(0.2, scan.getAverageSpread(0), 1e-9);
+		assertEquals(1, scan.getSpreadCount(0));
+		assertEquals(0.3, scan.getAverageSpread(1), 1e-9);
+		assertEquals(2, scan.getWidestCount());
+		assertEquals("EUR", scan.getWidestCode(0));
+		assertEquals(11, scan.getWidestDay(0));
+		assertEquals(0.2, scan.getWidestSpread(1), 1e-9);
+	}
+
+	@Test
+	void orderTest() throws Exception {
+		SeriesStore store = SeriesStore.getInstance();
+		store.clear();
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> path.startsWith("exchangerates/tables/C/") ? tables(path) : null);
+			NBPDataSource mirror = NBPDataSource.createMirror(stub.getUrlStart());
+			mirror.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+			mirror.setMaxPeriodPerQuery2(10);
+			NBPOrderPerformer performer = new NBPOrderPerformer(null, mirror);
+
+			String output = LocalNBPStub.run(performer, "spread-history", new String[] {"2018-01-01", "2018-01-19", "2"});
+			assertEquals(2, stub.getHits());
+			assertTrue(output.contains("The spreads of table C from 2018-01-01 to 2018-01-19 (15 days, 3 currencies)"), output);
+			assertTrue(output.contains("2018-01-05: JPY (bid price 0.03)"), output);
+			assertTrue(output.contains("USD: 0.1 (15 days)"), output);
+			assertTrue(output.contains("XDR: 0.22 (15 days)"), output);
+			assertTrue(output.contains("The 2 widest spreads:\n1. XDR on 2018-01-10 (Difference: 0.5)\n2. XDR on "), output);
+
+			//the orders do not populate the store, only the loads of the whole table do
+			assertNull(store.getSeries(SeriesStore.key("C", "USD", "ask")));
+			AsyncUtils.await(store.loadTableC(mirror, "2018-01-01", "2018-01-19", 10));
+			assertEquals(4, stub.getHits());
+			output = LocalNBPStub.run(performer, "spread-history", new String[] {"2018-01-02", "2018-01-12"});
+			assertEquals(4, stub.getHits());
+			assertTrue(output.contains("(9 days, 3 currencies)"), output);
+			assertTrue(output.contains("The 5 widest spreads:\n1. XDR on 2018-01-10 (Difference: 0.5)"), output);
+			assertTrue(LocalNBPStub.run(performer, "spread-history", new String[] {"2018-01-02", "x"}).contains("Error! The format of passed arguments is invalid"));
+		} finally {
+			store.clear();
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import webapi.AbstractDataSource;
+import webapi.AdaptiveConcurrencyLimiter;
+import webapi.AsyncUtils;
+import webapi.MinMaxFold;
+import webapi.RateRecordReader;
+import webapi.TokenBucketRateLimiter;
+
+class StreamingFoldTest {
+
+	private static final int CURRENCIES = 35;
+	private static final LocalDate LOWEST = LocalDate.of(1987, 3, 3);
+	private static final LocalDate HIGHEST = LocalDate.of(2011, 8, 10);
+
+	private static double price(int currency, LocalDate day) {
+		if(currency == 7 && day.equals(LOWEST)) return 0.0001;
+		if(currency == 7 && day.equals(HIGHEST)) return 999.9999;
+		return 1 + currency + Math.sin(day.toEpochDay() / 100.0 + currency) / 2;
+	}
+
+	private static String table(LocalDate day) {
+		StringBuilder table = new StringBuilder("{\"table\":\"A\",\"no\":\"1/A/NBP\",\"effectiveDate\":\"" + day + "\",\"rates\":[");
+		for(int i=0; i<CURRENCIES; i++) {
+			if(i > 0) table.append(',');
+			table.append("{\"currency\":\"waluta\",\"code\":\"C").append(i < 10 ? "0" : "").append(i).append("\",\"mid\":").append(price(i, day)).append('}');
+		}
+		return table.append("]}").toString();
+	}
+
+	private static boolean isWorkingDay(LocalDate day) {
+		return day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY;
+	}
+
+	/**
+	 * The response of tables/A/{from}/{to}, generated lazily day by day
+	 */
+	private static InputStream syntheticTables(LocalDate from, LocalDate to) {
+		return new InputStream() {
+			private LocalDate day = from;
+			private byte[] buffer = "[".getBytes(StandardCharsets.UTF_8);
+			private int position = 0;
+			private boolean first = true;
+			private boolean finished = false;
+
+			private boolean refill() {
+				if(finished) return false;
+				while(!day.isAfter(to) && !isWorkingDay(day))
+					day = day.plusDays(1);
+				if(day.isAfter(to)) {
+					buffer = "]".getBytes(StandardCharsets.UTF_8);
+					finished = true;
+				} else {
+					buffer = ((first ? "" : ",") + table(day)).getBytes(StandardCharsets.UTF_8);
+					first = false;
+					day = day.plusDays(1);
+				}
+				position = 0;
+				return true;
+			}
+
+			@Override
+			public int read() {
+				if(position == buffer.length && !refill()) return -1;
+				return buffer[position++] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if(len == 0) return 0;
+				if(position == buffer.length && !refill()) return -1;
+				int count = Math.min(len, buffer.length - position);
+				System.arraycopy(buffer, position, b, off, count);
+				position += count;
+				return count;
+			}
+		};
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Folds the synthetic range and returns the peak growth of the used heap, sampled while the records are being folded
+	 */
+	private long foldAndMeasure(LocalDate from, LocalDate to, MinMaxFold fold) {
+		long before = usedHeap();
+		AtomicLong peak = new AtomicLong();
+		AtomicInteger records = new AtomicInteger();
+		RateRecordReader.forMidRates().read(syntheticTables(from, to), (date, code, value) -> {
+			fold.accept(date, code, value);
+			if(records.incrementAndGet() % 25000 == 0)
+				peak.accumulateAndGet(usedHeap() - before, Math::max);
+		});
+		assertTrue(records.get() > 0);
+		return peak.get();
+	}
+
+	@Test
+	void readerTest() {
+		List<String> records = new ArrayList<>();
+		InputStream gold = new ByteArrayInputStream("[{\"data\":\"2013-01-02\",\"cena\":165.83},{\"data\":\"2013-01-03\",\"cena\":166.97}]".getBytes(StandardCharsets.UTF_8));
+		RateRecordReader.forGoldPrices("XAU").read(gold, (date, code, value) -> records.add(date + " " + code + " " + value));
+		InputStream rates = new ByteArrayInputStream("{\"table\":\"A\",\"code\":\"USD\",\"rates\":[{\"no\":\"1/A/NBP/2018\",\"effectiveDate\":\"2018-01-02\",\"mid\":3.4546}]}".getBytes(StandardCharsets.UTF_8));
+		RateRecordReader.forMidRates().read(rates, (date, code, value) -> records.add(date + " " + code + " " + value));
+		InputStream tables = new ByteArrayInputStream("[{\"effectiveDate\":\"2018-01-02\",\"rates\":[{\"code\":\"EUR\",\"mid\":4.1701},{\"mid\":3.4546,\"code\":\"USD\"}]}]".getBytes(StandardCharsets.UTF_8));
+		RateRecordReader.forMidRates().read(tables, (date, code, value) -> records.add(date + " " + code + " " + value));
+
+		assertEquals(List.of("2013-01-02 XAU 165.83", "2013-01-03 XAU 166.97", "2018-01-02 USD 3.4546",
+				"2018-01-02 EUR 4.1701", "2018-01-02 USD 3.4546"), records);
+	}
+
+	@Test
+	void boundedHeapTest() {
+		LocalDate end = LocalDate.of(2018, 12, 31);
+		MinMaxFold shortFold = new MinMaxFold();
+		long shortPeak = foldAndMeasure(end.minusYears(5), end, shortFold);
+		MinMaxFold longFold = new MinMaxFold();
+		long longPeak = foldAndMeasure(end.minusYears(50), end, longFold);
+
+		assertEquals(CURRENCIES, longFold.size());
+		int found = longFold.findMaxAmplitude();
+		assertEquals("C07", longFold.getCode(found));
+		assertEquals(LOWEST.toString(), longFold.getWhenMin(found));
+		assertEquals(HIGHEST.toString(), longFold.getWhenMax(found));
+		//the decoded 50 year range alone (about 450 000 records) would take tens of megabytes
+		assertTrue(longPeak < 8L * 1024 * 1024);
+		assertTrue(longPeak < shortPeak + 4L * 1024 * 1024);
+	}
+
+	@Test
+	void chunkedStreamTest() throws Exception {
+		try (LocalNBPStub stub = new LocalNBPStub()) {
+			stub.setFallback(path -> {
+				if(!path.startsWith("exchangerates/tables/A/")) return null;
+				return LocalNBPStub.workingDays(path, day -> table(day));
+			});
+			AbstractDataSource dataSource = new AbstractDataSource() {};
+			dataSource.setUrlStart(stub.getUrlStart());
+			dataSource.setUrlEnd("/?format=json");
+			dataSource.setLimiters(new TokenBucketRateLimiter(1000, 100), new AdaptiveConcurrencyLimiter(4, 1, 16));
+
+			RateRecordReader reader = RateRecordReader.forMidRates();
+			List<String[]> chunks = dataSource.splitPeriod("1985-01-01", "2014-12-31", 93);
+			MinMaxFold global = AsyncUtils.await(dataSource.foldChunks(chunks, chunk -> {
+				MinMaxFold partial = new MinMaxFold();
+				return dataSource.streamRecordsAsync("exchangerates/tables/A/" + chunk[0] + "/" + chunk[1], reader, partial).thenApply(v -> partial);
+			}, new MinMaxFold(), MinMaxFold::merge));
+
+			assertEquals(chunks.size(), stub.getHits());
+			int found = global.findMaxAmplitude();
+			assertEquals("C07", global.getCode(found));
+			assertEquals(0.0001, global.getMin(found));
+			assertEquals(LOWEST.toString(), global.getWhenMin(found));
+			assertEquals(HIGHEST.toString(), global.getWhenMax(found));
+		}
+	}
+
+}
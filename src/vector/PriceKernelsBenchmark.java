@@ -0,0 +1,68 @@
+package webapi;
+
+import java.util.Random;
+
+/**
+ * Measures the scalar and the vectorized price kernels on a scan of the whole history of table A (the minimum, the
+ * maximum and the sum of about 6000 daily prices of 35 currencies). It is a separate runnable rather than a test,
+ * since its timings depend on the machine: run it with --add-modules jdk.incubator.vector after building src/vector
+ * @author Patryk Wegrzyn
+ */
+public class PriceKernelsBenchmark {
+
+	/**
+	 * The number of the currencies of table A
+	 */
+	private static final int CURRENCIES = 35;
+	/**
+	 * The number of the days of the history of table A
+	 */
+	private static final int DAYS = 6000;
+	/**
+	 * The number of the scans of every implementation, the fastest one is reported
+	 */
+	private static final int ROUNDS = 200;
+
+	/**
+	 * Prints the time of the fastest scan of every implementation
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		Random random = new Random(6000);
+		double[][] columns = new double[CURRENCIES][DAYS];
+		for(double[] column : columns) {
+			double price = 1 + random.nextDouble() * 5;
+			for(int i=0; i<DAYS; i++)
+				column[i] = price += random.nextGaussian() * 0.01;
+		}
+		PriceKernels scalar = new ScalarPriceKernels();
+		PriceKernels vector = new VectorPriceKernels();
+		System.out.printf("Full history scan of %d currencies x %d days (min, max, sum): %s %d us, %s %d us%n", CURRENCIES, DAYS,
+				scalar.getName(), scan(scalar, columns) / 1000, vector.getName(), scan(vector, columns) / 1000);
+	}
+
+	/**
+	 * Helper method, scans the columns repeatedly
+	 * @param kernels the implementation to be measured
+	 * @param columns the columns of prices
+	 * @return the time of the fastest scan, in nanoseconds
+	 */
+	private static long scan(PriceKernels kernels, double[][] columns) {
+		long best = Long.MAX_VALUE;
+		double checksum = 0;
+		for(int round=0; round<ROUNDS; round++) {
+			long start = System.nanoTime();
+			for(double[] column : columns) {
+				checksum += column[kernels.indexOfMin(column, 0, DAYS)];
+				checksum += column[kernels.indexOfMax(column, 0, DAYS)];
+				checksum += kernels.sum(column, 0, DAYS);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		//the checksum keeps the scans from being optimized away
+		if(Double.isNaN(checksum))
+			System.out.println("Unexpected checksum");
+		return best;
+	}
+
+}
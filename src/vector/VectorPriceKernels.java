@@ -0,0 +1,155 @@
+package webapi;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The implementation of the reductions over the columns of prices with the Vector API, every step processes as many
+ * prices as fit into the widest vector register of the processor. The minimum and the maximum are found with a
+ * vectorized reduction first, and then their first occurrence with a vectorized comparison.
+ * Requires the jdk.incubator.vector module, so it is kept out of src/main and compiled on its own (see the README),
+ * it is loaded reflectively by PriceKernels.getInstance when it is on the classpath
+ * @author Patryk Wegrzyn
+ */
+class VectorPriceKernels extends PriceKernels {
+
+	/**
+	 * The widest vectors of doubles supported by the processor
+	 */
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	/**
+	 * The widest vectors of longs supported by the processor
+	 */
+	private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#getName()
+	 */
+	@Override
+	public String getName() {
+		return "vector (" + DOUBLES.length() + " doubles per step)";
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#sum(double[], int, int)
+	 */
+	@Override
+	public double sum(double[] values, int from, int to) {
+		int i = from;
+		int bound = from + DOUBLES.loopBound(Math.max(0, to - from));
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		for(; i<bound; i+=DOUBLES.length())
+			sums = sums.add(DoubleVector.fromArray(DOUBLES, values, i));
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for(; i<to; i++)
+			sum += values[i];
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#sum(long[], int, int)
+	 */
+	@Override
+	public long sum(long[] values, int from, int to) {
+		int i = from;
+		int bound = from + LONGS.loopBound(Math.max(0, to - from));
+		LongVector sums = LongVector.zero(LONGS);
+		for(; i<bound; i+=LONGS.length())
+			sums = sums.add(LongVector.fromArray(LONGS, values, i));
+		long sum = sums.reduceLanes(VectorOperators.ADD);
+		for(; i<to; i++)
+			sum += values[i];
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#dot(double[], int, double[], int, int)
+	 */
+	@Override
+	public double dot(double[] values, int from, double[] other, int otherFrom, int length) {
+		int i = 0;
+		int bound = DOUBLES.loopBound(Math.max(0, length));
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		for(; i<bound; i+=DOUBLES.length())
+			sums = DoubleVector.fromArray(DOUBLES, values, from + i).fma(DoubleVector.fromArray(DOUBLES, other, otherFrom + i), sums);
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for(; i<length; i++)
+			sum += values[from + i] * other[otherFrom + i];
+		return sum;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#scale(double[], int, int, double, double[], int)
+	 */
+	@Override
+	public void scale(double[] values, int from, int length, double factor, double[] target, int targetFrom) {
+		int i = 0;
+		int bound = DOUBLES.loopBound(Math.max(0, length));
+		for(; i<bound; i+=DOUBLES.length())
+			DoubleVector.fromArray(DOUBLES, values, from + i).mul(factor).intoArray(target, targetFrom + i);
+		for(; i<length; i++)
+			target[targetFrom + i] = values[from + i] * factor;
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#indexOfMin(double[], int, int)
+	 */
+	@Override
+	public int indexOfMin(double[] values, int from, int to) {
+		if(from >= to)
+			return -1;
+		int i = from;
+		int bound = from + DOUBLES.loopBound(to - from);
+		DoubleVector mins = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+		for(; i<bound; i+=DOUBLES.length())
+			mins = mins.min(DoubleVector.fromArray(DOUBLES, values, i));
+		double min = mins.reduceLanes(VectorOperators.MIN);
+		for(; i<to; i++)
+			min = Math.min(min, values[i]);
+		return indexOf(values, from, to, min);
+	}
+
+	/* (non-Javadoc)
+	 * @see webapi.PriceKernels#indexOfMax(double[], int, int)
+	 */
+	@Override
+	public int indexOfMax(double[] values, int from, int to) {
+		if(from >= to)
+			return -1;
+		int i = from;
+		int bound = from + DOUBLES.loopBound(to - from);
+		DoubleVector maxs = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+		for(; i<bound; i+=DOUBLES.length())
+			maxs = maxs.max(DoubleVector.fromArray(DOUBLES, values, i));
+		double max = maxs.reduceLanes(VectorOperators.MAX);
+		for(; i<to; i++)
+			max = Math.max(max, values[i]);
+		return indexOf(values, from, to, max);
+	}
+
+	/**
+	 * Helper method, finds the first occurrence of a price in a range
+	 * @param values the column of prices
+	 * @param from the first index of the range
+	 * @param to the index following the range
+	 * @param target the price, it has to occur in the range
+	 * @return the index of its first occurrence
+	 */
+	private int indexOf(double[] values, int from, int to, double target) {
+		int i = from;
+		int bound = from + DOUBLES.loopBound(to - from);
+		for(; i<bound; i+=DOUBLES.length()) {
+			VectorMask<Double> found = DoubleVector.fromArray(DOUBLES, values, i).compare(VectorOperators.EQ, target);
+			if(found.anyTrue())
+				return i + found.firstTrue();
+		}
+		for(; i<to; i++)
+			if(values[i] == target)
+				return i;
+		return -1;
+	}
+
+}